@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.data.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+
+/**
+ * Pool of canonical instances of the attribute names and of the values of low cardinality
+ * attributes, such as content types and security markings. Metacards decoded from a result set or
+ * parsed from a document otherwise hold their own copy of the same few strings.
+ *
+ * The pool is a lock-free Guava weak interner, so an entry is dropped once no metacard uses it.
+ * Strings longer than {@link #MAX_LENGTH} are returned as they are.
+ */
+public final class AttributeInterner {
+
+    /**
+     * Maximum length of a pooled string
+     */
+    public static final int MAX_LENGTH = 256;
+
+    private static final Set<String> INTERNED_ATTRIBUTES = Collections
+            .unmodifiableSet(new HashSet<String>(Arrays.asList(Metacard.CONTENT_TYPE,
+                    Metacard.CONTENT_TYPE_VERSION, Metacard.TARGET_NAMESPACE,
+                    Metacard.POINT_OF_CONTACT, Metacard.SECURITY)));
+
+    private static final Interner<String> POOL = Interners.newWeakInterner();
+
+    private AttributeInterner() {
+    }
+
+    /**
+     * @return the canonical instance of the string, or the string itself if it is not pooled
+     */
+    public static String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+
+        return POOL.intern(value);
+    }
+
+    /**
+     * @return true if the values of the attribute are interned
+     */
+    public static boolean isInterned(String attributeName) {
+        return INTERNED_ATTRIBUTES.contains(attributeName);
+    }
+
+    /**
+     * Interns the strings of a value of the attribute, including the elements of lists and the
+     * keys and values of maps, if the values of the attribute are interned.
+     *
+     * @return the value holding canonical strings, which is a copy of the value for lists and maps
+     */
+    public static Serializable intern(String attributeName, Serializable value) {
+        if (!isInterned(attributeName)) {
+            return value;
+        }
+        return internValue(value);
+    }
+
+    /**
+     * Replaces the attributes of the metacard whose values are interned by attributes holding the
+     * canonical strings.
+     */
+    public static void intern(Metacard metacard) {
+        if (metacard == null) {
+            return;
+        }
+
+        for (String name : INTERNED_ATTRIBUTES) {
+            Attribute attribute = metacard.getAttribute(name);
+            if (attribute == null || attribute.getValues() == null) {
+                continue;
+            }
+
+            AttributeImpl interned = null;
+            for (Serializable value : attribute.getValues()) {
+                if (interned == null) {
+                    interned = new AttributeImpl(name, internValue(value));
+                } else {
+                    interned.addValue(internValue(value));
+                }
+            }
+            if (interned != null) {
+                metacard.setAttribute(interned);
+            }
+        }
+    }
+
+    private static Serializable internValue(Serializable value) {
+        if (value instanceof String) {
+            return intern((String) value);
+        } else if (value instanceof List) {
+            ArrayList<Serializable> list = new ArrayList<Serializable>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                if (element != null && !(element instanceof Serializable)) {
+                    return value;
+                }
+                list.add(internValue((Serializable) element));
+            }
+            return list;
+        } else if (value instanceof Map) {
+            LinkedHashMap<Serializable, Serializable> map = new LinkedHashMap<Serializable, Serializable>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof Serializable)
+                        || !(entry.getValue() instanceof Serializable || entry.getValue() == null)) {
+                    return value;
+                }
+                map.put(internValue((Serializable) entry.getKey()),
+                        internValue((Serializable) entry.getValue()));
+            }
+            return map;
+        }
+        return value;
+    }
+}
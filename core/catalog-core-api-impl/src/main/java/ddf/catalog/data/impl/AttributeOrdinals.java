@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.data.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.collections.map.AbstractReferenceMap;
+import org.apache.commons.collections.map.ReferenceIdentityMap;
+
+import ddf.catalog.data.AttributeDescriptor;
+import ddf.catalog.data.MetacardType;
+
+/**
+ * Stable ordinals of the {@link AttributeDescriptor}s of a {@link MetacardType}, used by
+ * {@link MetacardImpl} to store the attributes of the type in an array. The ordinals are computed
+ * once per type and shared by all the metacards of the type. A {@link MetacardTypeImpl} holds its
+ * own ordinals; the ordinals of other types are kept in a weak map keyed by type identity.
+ */
+final class AttributeOrdinals {
+
+    @SuppressWarnings("unchecked")
+    private static final Map<MetacardType, AttributeOrdinals> ORDINALS = Collections
+            .synchronizedMap(new ReferenceIdentityMap(AbstractReferenceMap.WEAK,
+                    AbstractReferenceMap.HARD));
+
+    private static final AttributeOrdinals EMPTY = new AttributeOrdinals(
+            Collections.<String, Integer> emptyMap());
+
+    private final Map<String, Integer> ordinals;
+
+    private final int descriptorCount;
+
+    private AttributeOrdinals(Map<String, Integer> ordinals) {
+        this(ordinals, 0);
+    }
+
+    private AttributeOrdinals(Map<String, Integer> ordinals, int descriptorCount) {
+        this.ordinals = ordinals;
+        this.descriptorCount = descriptorCount;
+    }
+
+    static AttributeOrdinals forType(MetacardType type) {
+        if (type == null) {
+            return EMPTY;
+        }
+
+        if (type instanceof MetacardTypeImpl) {
+            return ((MetacardTypeImpl) type).getAttributeOrdinals();
+        }
+
+        AttributeOrdinals attributeOrdinals = ORDINALS.get(type);
+        if (attributeOrdinals == null) {
+            attributeOrdinals = forDescriptors(type.getAttributeDescriptors(), null);
+            ORDINALS.put(type, attributeOrdinals);
+        }
+        return attributeOrdinals;
+    }
+
+    /**
+     * @return the ordinals of the descriptors, or {@code cached} if they were computed from the
+     *         same number of descriptors
+     */
+    static AttributeOrdinals forDescriptors(Set<AttributeDescriptor> descriptors,
+            AttributeOrdinals cached) {
+        if (descriptors == null || descriptors.isEmpty()) {
+            return EMPTY;
+        }
+        if (cached != null && cached.descriptorCount == descriptors.size()) {
+            return cached;
+        }
+
+        Map<String, Integer> ordinals = new HashMap<String, Integer>();
+        for (AttributeDescriptor descriptor : descriptors) {
+            if (descriptor != null && descriptor.getName() != null
+                    && !ordinals.containsKey(descriptor.getName())) {
+                ordinals.put(descriptor.getName(), ordinals.size());
+            }
+        }
+        return new AttributeOrdinals(ordinals, descriptors.size());
+    }
+
+    /**
+     * @return the ordinal of the attribute, or -1 if the type does not describe it
+     */
+    int getOrdinal(String name) {
+        Integer ordinal = ordinals.get(name);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    int size() {
+        return ordinals.size();
+    }
+}
@@ -75,9 +75,18 @@ public class MetacardImpl implements Metacard {
     private static final XLogger logger = new XLogger(LoggerFactory.getLogger(MetacardImpl.class));
 
     /**
-     * key/value map of {@link Attribute}s.
+     * {@link Attribute}s described by the {@link MetacardType}, indexed by the ordinal of their
+     * {@link AttributeDescriptor}.
      */
-    private transient Map<String, Attribute> map = null;
+    private transient Attribute[] attributes = null;
+
+    /**
+     * key/value map of the {@link Attribute}s not described by the {@link MetacardType}, created
+     * when the first one is set.
+     */
+    private transient Map<String, Attribute> overflow = null;
+
+    private transient AttributeOrdinals ordinals = null;
 
     private transient Metacard wrappedMetacard;
 
@@ -113,9 +122,9 @@ public MetacardImpl(MetacardType type) {
          * serialized object is maintained. For instance, if a null check is added in the
          * constructor, the same check should be added in the readObject() method.
          */
-        map = new HashMap<String, Attribute>();
         if (type != null) {
             this.type = type;
+            initAttributes();
         } else {
             throw new IllegalArgumentException(MetacardType.class.getName()
                     + " instance should not be null.");
@@ -354,7 +363,17 @@ public MetacardType getMetacardType() {
      * @see MetacardType
      */
     public void setType(MetacardType type) {
+        if (wrappedMetacard != null) {
+            this.type = type;
+            return;
+        }
+
+        List<Attribute> current = getAttributes();
         this.type = type;
+        initAttributes();
+        for (Attribute attribute : current) {
+            setAttribute(attribute);
+        }
     }
 
     @Override
@@ -653,7 +672,15 @@ protected byte[] requestBytes(String key) {
 
     @Override
     public Attribute getAttribute(String name) {
-        return (wrappedMetacard != null) ? wrappedMetacard.getAttribute(name) : map.get(name);
+        if (wrappedMetacard != null) {
+            return wrappedMetacard.getAttribute(name);
+        }
+
+        int ordinal = ordinals.getOrdinal(name);
+        if (ordinal >= 0) {
+            return attributes[ordinal];
+        }
+        return overflow == null ? null : overflow.get(name);
     }
 
     /**
@@ -681,13 +708,43 @@ public void setAttribute(Attribute attribute) {
             String name = attribute.getName();
             Serializable value = attribute.getValue();
             if (name != null) {
-                if (value != null) {
-                    map.put(name, attribute);
-                } else {
-                    map.remove(name);
+                int ordinal = ordinals.getOrdinal(name);
+                if (ordinal >= 0) {
+                    attributes[ordinal] = value != null ? attribute : null;
+                } else if (value != null) {
+                    if (overflow == null) {
+                        overflow = new HashMap<String, Attribute>();
+                    }
+                    overflow.put(name, attribute);
+                } else if (overflow != null) {
+                    overflow.remove(name);
+                }
+            }
+        }
+    }
+
+    private void initAttributes() {
+        ordinals = AttributeOrdinals.forType(type);
+        attributes = new Attribute[ordinals.size()];
+        overflow = null;
+    }
+
+    /**
+     * @return the attributes set on this metacard, which does not wrap another metacard
+     */
+    private List<Attribute> getAttributes() {
+        List<Attribute> attributeList = new ArrayList<Attribute>();
+        if (attributes != null) {
+            for (Attribute attribute : attributes) {
+                if (attribute != null) {
+                    attributeList.add(attribute);
                 }
             }
         }
+        if (overflow != null) {
+            attributeList.addAll(overflow.values());
+        }
+        return attributeList;
     }
 
     /**
@@ -732,10 +789,11 @@ private void writeObject(ObjectOutputStream stream) throws IOException {
             stream.writeObject(mt);
         }
 
-        if (map != null) {
-            stream.writeInt(map.size());
+        if (wrappedMetacard == null) {
+            List<Attribute> attributeList = getAttributes();
+            stream.writeInt(attributeList.size());
 
-            for (Attribute attribute : this.map.values()) {
+            for (Attribute attribute : attributeList) {
                 stream.writeObject(attribute);
             }
         } else {
@@ -790,8 +848,6 @@ private void readObject(ObjectInputStream stream) throws IOException, ClassNotFo
          */
         stream.defaultReadObject();
 
-        map = new HashMap<String, Attribute>();
-
         wrappedMetacard = null;
 
         type = (MetacardType) stream.readObject();
@@ -801,6 +857,8 @@ private void readObject(ObjectInputStream stream) throws IOException, ClassNotFo
                     + " instance cannot be null.");
         }
 
+        initAttributes();
+
         int numElements = stream.readInt();
 
         for (int i = 0; i < numElements; i++) {
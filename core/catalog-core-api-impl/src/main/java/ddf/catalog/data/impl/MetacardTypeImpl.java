@@ -59,6 +59,12 @@ public class MetacardTypeImpl implements MetacardType {
      */
     protected String name;
 
+    /**
+     * The ordinals used by {@link MetacardImpl} to store the attributes of this type, computed on
+     * first use.
+     */
+    private transient volatile AttributeOrdinals ordinals;
+
     /**
      * Creates a {@code MetacardTypeImpl} with the provided {@code name} and
      * {@link AttributeDescriptor}s.
@@ -91,6 +97,20 @@ public Set<AttributeDescriptor> getAttributeDescriptors() {
         return Collections.unmodifiableSet(descriptors);
     }
 
+    /**
+     * @return the ordinals of the attribute descriptors of this type, recomputed when the number
+     *         of descriptors changes
+     */
+    AttributeOrdinals getAttributeOrdinals() {
+        AttributeOrdinals current = ordinals;
+        AttributeOrdinals updated = AttributeOrdinals.forDescriptors(getAttributeDescriptors(),
+                current);
+        if (updated != current) {
+            ordinals = updated;
+        }
+        return updated;
+    }
+
     @Override
     public AttributeDescriptor getAttributeDescriptor(String attributeName) {
         if (attributeName == null) {
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.operation.impl;
+
+import java.util.Date;
+
+import ddf.catalog.operation.FacetRequest;
+
+/**
+ * Default implementation of {@link FacetRequest}
+ * 
+ */
+public class FacetRequestImpl implements FacetRequest {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default maximum number of values returned for a {@link FacetType#TERMS} facet
+     */
+    public static final int DEFAULT_LIMIT = 100;
+
+    protected String name;
+
+    protected String attributeName;
+
+    protected FacetType type;
+
+    protected int limit = DEFAULT_LIMIT;
+
+    protected Date start;
+
+    protected Date end;
+
+    protected long interval;
+
+    protected int precision;
+
+    /**
+     * Create a new {@link FacetType#TERMS} {@link FacetRequestImpl}
+     * 
+     * @param name
+     *            the name of the facet
+     * @param attributeName
+     *            the name of the attribute to count the values of
+     * @param limit
+     *            the maximum number of values to return
+     */
+    public FacetRequestImpl(String name, String attributeName, int limit) {
+        this.name = name;
+        this.attributeName = attributeName;
+        this.type = FacetType.TERMS;
+        this.limit = limit;
+    }
+
+    /**
+     * Create a new {@link FacetType#DATE_HISTOGRAM} {@link FacetRequestImpl}
+     * 
+     * @param name
+     *            the name of the facet
+     * @param attributeName
+     *            the name of the date attribute to count the values of
+     * @param start
+     *            start of the first interval
+     * @param end
+     *            end of the last interval
+     * @param interval
+     *            length of each interval in milliseconds
+     */
+    public FacetRequestImpl(String name, String attributeName, Date start, Date end,
+            long interval) {
+        if (start == null || end == null || interval <= 0) {
+            throw new IllegalArgumentException(
+                    "A date histogram facet requires a start, an end and a positive interval.");
+        }
+        this.name = name;
+        this.attributeName = attributeName;
+        this.type = FacetType.DATE_HISTOGRAM;
+        this.start = new Date(start.getTime());
+        this.end = new Date(end.getTime());
+        this.interval = interval;
+    }
+
+    /**
+     * Create a new {@link FacetType#GEOHASH_GRID} {@link FacetRequestImpl}
+     * 
+     * @param name
+     *            the name of the facet
+     * @param attributeName
+     *            the name of the geometry attribute to count the values of
+     * @param precision
+     *            the number of geohash characters identifying each cell
+     * @param limit
+     *            the maximum number of cells to return
+     */
+    public FacetRequestImpl(String name, String attributeName, int precision, int limit) {
+        if (precision < 1) {
+            throw new IllegalArgumentException("A geohash grid facet requires a positive precision.");
+        }
+        this.name = name;
+        this.attributeName = attributeName;
+        this.type = FacetType.GEOHASH_GRID;
+        this.precision = precision;
+        this.limit = limit;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    @Override
+    public FacetType getType() {
+        return type;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public Date getStart() {
+        return start == null ? null : new Date(start.getTime());
+    }
+
+    @Override
+    public Date getEnd() {
+        return end == null ? null : new Date(end.getTime());
+    }
+
+    @Override
+    public long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public int getPrecision() {
+        return precision;
+    }
+
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.operation.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import ddf.catalog.operation.FacetRequest;
+import ddf.catalog.operation.FacetResult;
+import ddf.catalog.operation.QueryRequest;
+
+/**
+ * Default implementation of {@link FacetResult}
+ * 
+ */
+public class FacetResultImpl implements FacetResult {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Comparator<Entry<String, Long>> COUNT_COMPARATOR =
+            new Comparator<Entry<String, Long>>() {
+                @Override
+                public int compare(Entry<String, Long> first, Entry<String, Long> second) {
+                    int comparison = second.getValue().compareTo(first.getValue());
+                    return comparison != 0 ? comparison : first.getKey().compareTo(
+                            second.getKey());
+                }
+            };
+
+    protected String name;
+
+    protected String attributeName;
+
+    protected LinkedHashMap<String, Long> counts = new LinkedHashMap<String, Long>();
+
+    /**
+     * Create a new {@link FacetResultImpl} without any counts
+     * 
+     * @param name
+     *            the name of the facet request
+     * @param attributeName
+     *            the name of the aggregated attribute
+     */
+    public FacetResultImpl(String name, String attributeName) {
+        this.name = name;
+        this.attributeName = attributeName;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Adds to the count of a value.
+     * 
+     * @param value
+     *            the facet value
+     * @param count
+     *            the number of records to add
+     */
+    public void addCount(String value, long count) {
+        Long current = counts.get(value);
+        counts.put(value, current == null ? count : current + count);
+    }
+
+    /**
+     * Merges the {@link FacetResult}s returned by a source with the ones already collected from
+     * other sources. Counts of facets with the same name are summed per value.
+     * 
+     * @param collected
+     *            the {@link FacetResult#FACET_RESULTS} property collected so far, may be
+     *            {@code null}
+     * @param returned
+     *            the {@link FacetResult#FACET_RESULTS} property returned by a source, may be
+     *            {@code null}
+     * @return the merged facet results, or {@code null} if neither argument holds any
+     */
+    public static Serializable merge(Serializable collected, Serializable returned) {
+        return merge(collected, returned, null);
+    }
+
+    /**
+     * Merges the {@link FacetResult}s returned by a source with the ones already collected from
+     * other sources. Counts of facets with the same name are summed per value. The values of the
+     * {@link FacetRequest.FacetType#TERMS} and {@link FacetRequest.FacetType#GEOHASH_GRID} facets
+     * of the request are then sorted by decreasing count and cut to the limit of the facet.
+     * 
+     * @param collected
+     *            the {@link FacetResult#FACET_RESULTS} property collected so far, may be
+     *            {@code null}
+     * @param returned
+     *            the {@link FacetResult#FACET_RESULTS} property returned by a source, may be
+     *            {@code null}
+     * @param request
+     *            the request holding the {@link FacetRequest#FACETS} property, may be
+     *            {@code null}
+     * @return the merged facet results, or {@code null} if neither argument holds any
+     */
+    public static Serializable merge(Serializable collected, Serializable returned,
+            QueryRequest request) {
+        if (!(returned instanceof List)) {
+            return collected instanceof List ? collected : null;
+        }
+
+        Map<String, FacetResultImpl> merged = new LinkedHashMap<String, FacetResultImpl>();
+        addAll(merged, collected);
+        addAll(merged, returned);
+
+        Map<String, FacetRequest> facets = getFacets(request);
+        for (FacetResultImpl facetResult : merged.values()) {
+            FacetRequest facet = facets.get(facetResult.getName());
+            if (facet != null && !FacetRequest.FacetType.DATE_HISTOGRAM.equals(facet.getType())) {
+                facetResult.sortByCount(facet.getLimit());
+            }
+        }
+
+        return new ArrayList<FacetResult>(merged.values());
+    }
+
+    /**
+     * Orders the values by decreasing count, then by value, and keeps the first ones.
+     * 
+     * @param limit
+     *            the number of values to keep, all are kept when not positive
+     */
+    public void sortByCount(int limit) {
+        List<Entry<String, Long>> entries = new ArrayList<Entry<String, Long>>(counts.entrySet());
+        Collections.sort(entries, COUNT_COMPARATOR);
+
+        LinkedHashMap<String, Long> sorted = new LinkedHashMap<String, Long>();
+        for (Entry<String, Long> entry : entries) {
+            if (limit > 0 && sorted.size() >= limit) {
+                break;
+            }
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        counts = sorted;
+    }
+
+    private static Map<String, FacetRequest> getFacets(QueryRequest request) {
+        Map<String, FacetRequest> facets = new HashMap<String, FacetRequest>();
+        if (request == null || !(request.getPropertyValue(FacetRequest.FACETS) instanceof List)) {
+            return facets;
+        }
+
+        for (Object object : (List<?>) request.getPropertyValue(FacetRequest.FACETS)) {
+            if (object instanceof FacetRequest) {
+                FacetRequest facet = (FacetRequest) object;
+                facets.put(facet.getName(), facet);
+            }
+        }
+        return facets;
+    }
+
+    private static void addAll(Map<String, FacetResultImpl> merged, Serializable facetResults) {
+        if (!(facetResults instanceof List)) {
+            return;
+        }
+
+        for (Object object : (List<?>) facetResults) {
+            if (object instanceof FacetResult) {
+                FacetResult facetResult = (FacetResult) object;
+
+                FacetResultImpl mergedResult = merged.get(facetResult.getName());
+                if (mergedResult == null) {
+                    mergedResult = new FacetResultImpl(facetResult.getName(),
+                            facetResult.getAttributeName());
+                    merged.put(facetResult.getName(), mergedResult);
+                }
+
+                for (Entry<String, Long> count : facetResult.getCounts().entrySet()) {
+                    mergedResult.addCount(count.getKey(), count.getValue());
+                }
+            }
+        }
+    }
+}
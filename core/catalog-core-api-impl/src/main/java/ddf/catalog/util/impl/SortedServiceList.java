@@ -24,7 +24,6 @@
 import org.slf4j.ext.XLogger;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -55,14 +54,25 @@
  * {@link PreIngestPlugin} object.
  * </p>
  * 
+ * <p>
+ * The services are read from an immutable snapshot of the list that is only rebuilt when a service
+ * is bound or unbound, so iterating the list takes no locks and is never affected by services
+ * registered or unregistered meanwhile.
+ * </p>
+ * 
  * @param <T>
  */
 public class SortedServiceList<T> implements List<T> {
 
     private static final String READ_ONLY_ERROR_MESSAGE = "This list is meant to be read only.";
 
-    private Map<ServiceReference, T> serviceMap = Collections
-            .synchronizedMap(new TreeMap<ServiceReference, T>(new ServiceComparator()));
+    /**
+     * Guarded by itself, only used to rebuild the snapshot
+     */
+    private final Map<ServiceReference, T> serviceMap = new TreeMap<ServiceReference, T>(
+            new ServiceComparator());
+
+    private volatile List<T> services = Collections.emptyList();
 
     private static final XLogger logger = new XLogger(LoggerFactory.getLogger(SortedServiceList.class));
 
@@ -100,12 +110,15 @@ public void bindPlugin(ServiceReference ref) {
         if (context != null) {
             T service = (T) context.getService(ref);
 
-            serviceMap.put(ref, service);
+            synchronized (serviceMap) {
+                serviceMap.put(ref, service);
+                updateServices();
+            }
         } else {
             logger.debug("BundleContext was null, unable to add service reference");
         }
 
-        logger.debug(Arrays.asList(serviceMap.values()).toString());
+        logger.debug(services.toString());
 
     }
 
@@ -121,9 +134,16 @@ public void unbindPlugin(ServiceReference ref) {
 
         logger.debug("Unbinding " + ref);
 
-        serviceMap.remove(ref);
+        synchronized (serviceMap) {
+            serviceMap.remove(ref);
+            updateServices();
+        }
+
+        logger.debug(services.toString());
+    }
 
-        logger.debug(Arrays.asList(serviceMap.values()).toString());
+    private void updateServices() {
+        services = Collections.unmodifiableList(new ArrayList<T>(serviceMap.values()));
     }
 
     /**
@@ -168,72 +188,47 @@ public void clear() {
 
     @Override
     public boolean contains(Object arg0) {
-        return serviceMap.containsValue(arg0);
+        return services.contains(arg0);
     }
 
     @Override
     public boolean containsAll(Collection<?> arg0) {
-
-        return serviceMap.values().containsAll(arg0);
+        return services.containsAll(arg0);
     }
 
     @Override
     public T get(int arg0) {
-        logger.debug("GET called on : " + arg0);
-        if (serviceMap.values() != null) {
-            ArrayList<T> list = new ArrayList<T>(serviceMap.values());
-            return list.get(arg0);
-        }
-        return null;
+        return services.get(arg0);
     }
 
     @Override
     public int indexOf(Object arg0) {
-        if (serviceMap.values() != null) {
-            ArrayList<T> list = new ArrayList<T>(serviceMap.values());
-            return list.indexOf(arg0);
-        }
-        return -1;
+        return services.indexOf(arg0);
     }
 
     @Override
     public boolean isEmpty() {
-        return serviceMap.isEmpty();
+        return services.isEmpty();
     }
 
     @Override
     public Iterator<T> iterator() {
-        synchronized (serviceMap) { // Synchronizing on m, not s!
-            return serviceMap.values().iterator();
-        }
-
+        return services.iterator();
     }
 
     @Override
     public int lastIndexOf(Object arg0) {
-        if (serviceMap.values() != null) {
-            ArrayList<T> list = new ArrayList<T>(serviceMap.values());
-            return list.lastIndexOf(arg0);
-        }
-        return -1;
+        return services.lastIndexOf(arg0);
     }
 
     @Override
     public ListIterator<T> listIterator() {
-        if (serviceMap.values() != null) {
-            ArrayList<T> list = new ArrayList<T>(serviceMap.values());
-            return list.listIterator();
-        }
-        return null;
+        return services.listIterator();
     }
 
     @Override
     public ListIterator<T> listIterator(int arg0) {
-        if (serviceMap.values() != null) {
-            ArrayList<T> list = new ArrayList<T>(serviceMap.values());
-            return list.listIterator(arg0);
-        }
-        return null;
+        return services.listIterator(arg0);
     }
 
     /**
@@ -278,26 +273,22 @@ public T set(int arg0, T arg1) {
 
     @Override
     public int size() {
-        return serviceMap.size();
+        return services.size();
     }
 
     @Override
     public List<T> subList(int arg0, int arg1) {
-        if (serviceMap.values() != null) {
-            ArrayList<T> list = new ArrayList<T>(serviceMap.values());
-            return list.subList(arg0, arg1);
-        }
-        return null;
+        return services.subList(arg0, arg1);
     }
 
     @Override
     public Object[] toArray() {
-        return serviceMap.values().toArray();
+        return services.toArray();
     }
 
     @Override
     public <T> T[] toArray(T[] arg0) {
-        return serviceMap.values().toArray(arg0);
+        return services.toArray(arg0);
     }
 
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.data.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ddf.catalog.data.Metacard;
+
+public class AttributeInternerTest {
+
+    @Test
+    public void testInternReturnsCanonicalInstance() {
+        String first = new String("text/xml");
+        String second = new String("text/xml");
+
+        assertSame(first, AttributeInterner.intern(first));
+        assertSame(first, AttributeInterner.intern(second));
+
+        String longValue = new String(new char[AttributeInterner.MAX_LENGTH + 1]);
+        assertSame(longValue, AttributeInterner.intern(longValue));
+        assertNotSame(longValue, AttributeInterner.intern(new String(longValue)));
+    }
+
+    @Test
+    public void testOnlyLowCardinalityAttributesAreInterned() {
+        String title = new String("title of a record");
+        AttributeInterner.intern(new String("title of a record"));
+
+        assertSame(title, AttributeInterner.intern(Metacard.TITLE, title));
+        assertEquals(title, AttributeInterner.intern(Metacard.CONTENT_TYPE, title));
+    }
+
+    @Test
+    public void testInternMetacard() {
+        HashMap<String, List<String>> security = new HashMap<String, List<String>>();
+        security.put(new String("classification"), Arrays.asList(new String("U")));
+
+        MetacardImpl first = new MetacardImpl();
+        first.setContentTypeName(new String("nitf"));
+        first.setAttribute(Metacard.SECURITY, security);
+        first.setTitle(new String("first"));
+        AttributeInterner.intern(first);
+
+        MetacardImpl second = new MetacardImpl();
+        second.setContentTypeName(new String("nitf"));
+        second.setAttribute(Metacard.SECURITY, (Serializable) security.clone());
+        AttributeInterner.intern(second);
+
+        assertSame(first.getContentTypeName(), second.getContentTypeName());
+        assertEquals("first", first.getTitle());
+
+        Map<?, ?> firstSecurity = (Map<?, ?>) first.getAttribute(Metacard.SECURITY).getValue();
+        Map<?, ?> secondSecurity = (Map<?, ?>) second.getAttribute(Metacard.SECURITY).getValue();
+        assertEquals(security, secondSecurity);
+        assertSame(((List<?>) firstSecurity.get("classification")).get(0),
+                ((List<?>) secondSecurity.get("classification")).get(0));
+    }
+}
@@ -222,6 +222,45 @@ public void testUpdatingWrappedMetacardFields() {
         assertEquals(testType, mi.getMetacardType());
     }
 
+    @Test
+    public void testAttributesNotDescribedByType() {
+        HashSet<AttributeDescriptor> descriptors = new HashSet<AttributeDescriptor>();
+        descriptors.add(new AttributeDescriptorImpl(Metacard.TITLE, true /* indexed */,
+                true /* stored */, false /* tokenized */, false /* multivalued */,
+                BasicTypes.STRING_TYPE));
+        MetacardImpl metacard = new MetacardImpl(new MetacardTypeImpl("test.type", descriptors));
+
+        metacard.setTitle("title");
+        metacard.setAttribute("adhoc", "value");
+
+        assertEquals("title", metacard.getTitle());
+        assertEquals("value", metacard.getAttribute("adhoc").getValue());
+
+        metacard.setAttribute("adhoc", null);
+        metacard.setTitle(null);
+
+        assertNull(metacard.getAttribute("adhoc"));
+        assertNull(metacard.getTitle());
+    }
+
+    @Test
+    public void testSettingTypeKeepsAttributes() {
+        HashSet<AttributeDescriptor> descriptors = new HashSet<AttributeDescriptor>();
+        descriptors.add(new AttributeDescriptorImpl("test-string", true /* indexed */,
+                true /* stored */, false /* tokenized */, false /* multivalued */,
+                BasicTypes.STRING_TYPE));
+        MetacardType testType = new MetacardTypeImpl("test.type", descriptors);
+
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setTitle("title");
+        metacard.setAttribute("test-string", "value");
+        metacard.setType(testType);
+
+        assertEquals(testType, metacard.getMetacardType());
+        assertEquals("title", metacard.getTitle());
+        assertEquals("value", metacard.getAttribute("test-string").getValue());
+    }
+
     @Test
     public void testSetNullFields() {
         mc.setContentTypeName(null);
@@ -520,4 +559,28 @@ public void testDeserializingHiddenAttribute() throws IOException, ClassNotFound
 
     }
 
+    @Test
+    public void testDescriptorAddedAfterFirstMetacard() {
+        Set<AttributeDescriptor> basicDescriptors = new HashSet<AttributeDescriptor>(
+                BasicTypes.BASIC_METACARD.getAttributeDescriptors());
+        MetacardTypeImpl type = new MetacardTypeImpl("growing", basicDescriptors) {
+            private static final long serialVersionUID = 1L;
+
+            {
+                new MetacardImpl(this);
+                descriptors.add(new AttributeDescriptorImpl("added", true, true, false, false,
+                        BasicTypes.STRING_TYPE));
+            }
+        };
+
+        MetacardImpl metacard = new MetacardImpl(type);
+        metacard.setAttribute("added", "value");
+        metacard.setTitle("title");
+
+        assertEquals("value", metacard.getAttribute("added").getValue());
+        assertEquals("title", metacard.getTitle());
+        assertEquals(type.getAttributeOrdinals(), type.getAttributeOrdinals());
+        assertTrue(type.getAttributeOrdinals().getOrdinal("added") >= 0);
+    }
+
 }
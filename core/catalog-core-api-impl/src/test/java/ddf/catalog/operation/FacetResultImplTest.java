@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.operation;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ddf.catalog.operation.impl.FacetRequestImpl;
+import ddf.catalog.operation.impl.FacetResultImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+
+/**
+ * Test {@link FacetResultImpl}
+ * 
+ */
+public class FacetResultImplTest {
+
+    @Test
+    public void testMergeSumsCountsOfSameFacet() {
+        FacetResultImpl first = new FacetResultImpl("types", "metadata-content-type");
+        first.addCount("a", 2);
+        first.addCount("b", 1);
+        FacetResultImpl second = new FacetResultImpl("types", "metadata-content-type");
+        second.addCount("b", 3);
+        second.addCount("c", 4);
+
+        List<FacetResult> merged = asList(FacetResultImpl.merge(list(first), list(second)));
+
+        assertThat(merged.size(), is(1));
+        assertThat(merged.get(0).getCounts().get("a"), is(2L));
+        assertThat(merged.get(0).getCounts().get("b"), is(4L));
+        assertThat(merged.get(0).getCounts().get("c"), is(4L));
+    }
+
+    @Test
+    public void testMergeKeepsDifferentFacets() {
+        FacetResultImpl first = new FacetResultImpl("types", "metadata-content-type");
+        first.addCount("a", 2);
+        FacetResultImpl second = new FacetResultImpl("sources", "source-id");
+        second.addCount("ddf", 5);
+
+        List<FacetResult> merged = asList(FacetResultImpl.merge(list(first), list(second)));
+
+        assertThat(merged.size(), is(2));
+        assertThat(merged.get(1).getCounts().get("ddf"), is(5L));
+    }
+
+    @Test
+    public void testMergeWithoutResults() {
+        FacetResultImpl first = new FacetResultImpl("types", "metadata-content-type");
+
+        assertThat(FacetResultImpl.merge(null, null), is(nullValue()));
+        assertThat(asList(FacetResultImpl.merge(list(first), null)).size(), is(1));
+        assertThat(asList(FacetResultImpl.merge(null, list(first))).size(), is(1));
+    }
+
+    @Test
+    public void testMergeSortsAndLimitsTermsCounts() {
+        FacetResultImpl first = new FacetResultImpl("types", "metadata-content-type");
+        first.addCount("a", 5);
+        first.addCount("b", 2);
+        FacetResultImpl second = new FacetResultImpl("types", "metadata-content-type");
+        second.addCount("c", 4);
+        second.addCount("b", 4);
+
+        ArrayList<FacetRequest> facets = new ArrayList<FacetRequest>();
+        facets.add(new FacetRequestImpl("types", "metadata-content-type", 2));
+        Map<String, Serializable> properties = new HashMap<String, Serializable>();
+        properties.put(FacetRequest.FACETS, facets);
+        QueryRequest request = new QueryRequestImpl(null, properties);
+
+        List<FacetResult> merged = asList(FacetResultImpl.merge(list(first), list(second),
+                request));
+
+        Map<String, Long> counts = merged.get(0).getCounts();
+        assertThat(counts.size(), is(2));
+        Iterator<Map.Entry<String, Long>> entries = counts.entrySet().iterator();
+        Map.Entry<String, Long> top = entries.next();
+        assertThat(top.getKey(), is("b"));
+        assertThat(top.getValue(), is(6L));
+        assertThat(entries.next().getKey(), is("a"));
+    }
+
+    private ArrayList<FacetResult> list(FacetResult facetResult) {
+        ArrayList<FacetResult> facetResults = new ArrayList<FacetResult>();
+        facetResults.add(facetResult);
+        return facetResults;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FacetResult> asList(Serializable facetResults) {
+        return (List<FacetResult>) facetResults;
+    }
+}
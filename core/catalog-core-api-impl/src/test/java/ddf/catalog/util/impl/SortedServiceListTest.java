@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.util.impl;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+public class SortedServiceListTest {
+
+    private BundleContext context;
+
+    private SortedServiceList<Integer> list;
+
+    @Before
+    public void setUp() {
+        context = mock(BundleContext.class);
+        when(context.getService(any(ServiceReference.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                return (Integer) ((ServiceReference) invocation.getArguments()[0])
+                        .getProperty(Constants.SERVICE_RANKING);
+            }
+        });
+
+        list = new SortedServiceList<Integer>() {
+            @Override
+            protected BundleContext getContext() {
+                return context;
+            }
+        };
+    }
+
+    @Test
+    public void testSortedByRanking() {
+        list.bindPlugin(new ServiceReferenceImpl(1));
+        list.bindPlugin(new ServiceReferenceImpl(3));
+        list.bindPlugin(new ServiceReferenceImpl(2));
+
+        assertThat(list, contains(3, 2, 1));
+        assertThat(list.get(0), is(3));
+        assertThat(list.indexOf(1), is(2));
+    }
+
+    @Test
+    public void testIteratorIsNotAffectedByBinding() {
+        ServiceReferenceImpl first = new ServiceReferenceImpl(1);
+        list.bindPlugin(first);
+        list.bindPlugin(new ServiceReferenceImpl(2));
+
+        Iterator<Integer> iterator = list.iterator();
+        list.bindPlugin(new ServiceReferenceImpl(3));
+        list.unbindPlugin(first);
+
+        List<Integer> iterated = new ArrayList<Integer>();
+        while (iterator.hasNext()) {
+            iterated.add(iterator.next());
+        }
+
+        assertThat(iterated, contains(2, 1));
+        assertThat(list, contains(3, 2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIteratorIsReadOnly() {
+        list.bindPlugin(new ServiceReferenceImpl(1));
+
+        Iterator<Integer> iterator = list.iterator();
+        iterator.next();
+        iterator.remove();
+    }
+}
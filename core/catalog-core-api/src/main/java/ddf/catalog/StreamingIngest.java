@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.operation.CreateRequest;
+import ddf.catalog.operation.IngestProgress;
+import ddf.catalog.source.CatalogProvider;
+import ddf.catalog.source.IngestException;
+import ddf.catalog.source.SourceUnavailableException;
+
+/**
+ * A {@link CatalogFramework} able to create a stream of {@link Metacard}s without holding the
+ * whole stream in memory. It is a separate interface so that the existing implementations of
+ * {@link CatalogFramework} are not affected; clients look it up as its own service.
+ */
+public interface StreamingIngest {
+
+    /**
+     * Creates a stream of {@link Metacard}s in the {@link CatalogProvider}, without holding the
+     * whole stream in memory.
+     * 
+     * <p>
+     * The stream is read in batches, each created as a {@link CreateRequest} with the given
+     * properties through {@link CatalogFramework#create(CreateRequest)}, so the batches go through
+     * the same plugins as any other create. Several batches may be processed concurrently. The
+     * metacards of a batch that fails are retried one by one, except those the
+     * {@link CatalogProvider} already holds, so that a failure is reported for the metacards that
+     * could not be created only.
+     * </p>
+     * 
+     * @param metacards
+     *            the {@link Metacard}s to create, read as the ingest progresses
+     * @param properties
+     *            the properties of each {@link CreateRequest}, may be null
+     * @return the {@link IngestProgress} of the ingest, which continues after this method returns
+     * @throws IngestException
+     *             if the ingest cannot be started
+     * @throws SourceUnavailableException
+     *             if the {@link CatalogProvider} is unavailable
+     */
+    public IngestProgress ingest(Iterator<Metacard> metacards, Map<String, Serializable> properties)
+        throws IngestException, SourceUnavailableException;
+}
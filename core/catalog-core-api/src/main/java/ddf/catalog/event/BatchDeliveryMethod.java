@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.event;
+
+import java.util.List;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.operation.Update;
+
+/**
+ * A {@link DeliveryMethod} accepting the {@link Metacard}s of several events in one call, for
+ * subscribers whose deliveries have a fixed cost, such as a round trip to a remote endpoint.
+ * 
+ * <p>
+ * The events matched by the subscription are collected until there are
+ * {@link #getMaxBatchSize()} of them, or until the oldest one has waited
+ * {@link #getMaxBatchDelayMillis()}, then delivered together. A batch only holds consecutive
+ * events of the same operation, so that the deliveries are made in the order of the events. The
+ * single {@link Metacard} methods of {@link DeliveryMethod} are still called where events are
+ * delivered one at a time.
+ * </p>
+ * 
+ * @see Subscription
+ */
+public interface BatchDeliveryMethod extends DeliveryMethod {
+
+    /**
+     * @return the largest number of {@link Metacard}s delivered in one call
+     */
+    public int getMaxBatchSize();
+
+    /**
+     * @return the longest time in milliseconds an event waits for others to fill its batch
+     */
+    public long getMaxBatchDelayMillis();
+
+    /**
+     * This method will determine how to handle {@link Metacard}s when they are created/ingested.
+     * 
+     * @param newMetacards
+     *            the {@link Metacard}s that were ingested, in the order of their events
+     */
+    public void created(List<Metacard> newMetacards);
+
+    /**
+     * This method will determine how to handle {@link Metacard}s when they are updated.
+     * 
+     * @param updates
+     *            the updates of the {@link Metacard}s, in the order of their events
+     */
+    public void updatedHit(List<Update> updates);
+
+    /**
+     * This method will determine how to handle {@link Metacard}s when they are deleted.
+     * 
+     * @param oldMetacards
+     *            the {@link Metacard}s that were deleted, in the order of their events
+     */
+    public void deleted(List<Metacard> oldMetacards);
+
+}
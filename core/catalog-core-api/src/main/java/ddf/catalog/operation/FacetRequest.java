@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.operation;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import ddf.catalog.source.Source;
+
+/**
+ * Describes a count aggregation (facet) that a {@link Source} computes over all of the records
+ * matching a {@link Query}, in addition to returning the page of results. Facets are requested by
+ * adding a {@link java.util.List} of {@link FacetRequest}s to the {@link QueryRequest} properties
+ * under {@link #FACETS}. The computed counts are returned in the response properties under
+ * {@link FacetResult#FACET_RESULTS}. Sources that do not support faceting ignore the property.
+ */
+public interface FacetRequest extends Serializable {
+
+    /**
+     * {@link QueryRequest} property holding the {@link java.util.List} of {@link FacetRequest}s
+     */
+    public static final String FACETS = "facets";
+
+    /**
+     * The kinds of aggregations that can be requested.
+     */
+    public enum FacetType {
+        /**
+         * Counts of the most frequent distinct values of an attribute
+         */
+        TERMS,
+
+        /**
+         * Counts of the values of a date attribute in consecutive intervals
+         */
+        DATE_HISTOGRAM,
+
+        /**
+         * Counts of the values of a geometry attribute falling in each geohash cell of a given
+         * precision
+         */
+        GEOHASH_GRID
+    }
+
+    /**
+     * @return the name used to identify the {@link FacetResult} of this request
+     */
+    public String getName();
+
+    /**
+     * @return the name of the attribute being aggregated
+     */
+    public String getAttributeName();
+
+    /**
+     * @return the kind of aggregation
+     */
+    public FacetType getType();
+
+    /**
+     * @return the maximum number of values returned for a {@link FacetType#TERMS} or
+     *         {@link FacetType#GEOHASH_GRID} facet
+     */
+    public int getLimit();
+
+    /**
+     * @return the start of the first interval of a {@link FacetType#DATE_HISTOGRAM} facet
+     */
+    public Date getStart();
+
+    /**
+     * @return the end of the last interval of a {@link FacetType#DATE_HISTOGRAM} facet
+     */
+    public Date getEnd();
+
+    /**
+     * @return the length in milliseconds of each interval of a {@link FacetType#DATE_HISTOGRAM}
+     *         facet
+     */
+    public long getInterval();
+
+    /**
+     * @return the number of geohash characters identifying each cell of a
+     *         {@link FacetType#GEOHASH_GRID} facet
+     */
+    public int getPrecision();
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.operation;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The counts computed for a {@link FacetRequest}. A {@link java.util.List} of {@link FacetResult}s
+ * is returned in the {@link SourceResponse} properties under {@link #FACET_RESULTS}.
+ */
+public interface FacetResult extends Serializable {
+
+    /**
+     * {@link SourceResponse} property holding the {@link java.util.List} of {@link FacetResult}s
+     */
+    public static final String FACET_RESULTS = "facet-results";
+
+    /**
+     * @return the name of the {@link FacetRequest} these counts were computed for
+     */
+    public String getName();
+
+    /**
+     * @return the name of the attribute that was aggregated
+     */
+    public String getAttributeName();
+
+    /**
+     * Returns the counts of this facet. For a {@link FacetRequest.FacetType#TERMS} facet the keys
+     * are the attribute values, for a {@link FacetRequest.FacetType#DATE_HISTOGRAM} facet the keys
+     * are the start of each interval.
+     * 
+     * @return the number of matching records for each value, in the order returned by the source
+     */
+    public Map<String, Long> getCounts();
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.operation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The progress of a streaming ingest started with
+ * {@link ddf.catalog.StreamingIngest#ingest(java.util.Iterator, java.util.Map)}. The counts are
+ * updated as the batches of the ingest complete.
+ */
+public interface IngestProgress {
+
+    /**
+     * @return the number of metacards read from the stream so far
+     */
+    public long getSubmittedCount();
+
+    /**
+     * @return the number of metacards created so far
+     */
+    public long getCreatedCount();
+
+    /**
+     * @return the number of metacards that could not be created so far
+     */
+    public long getFailedCount();
+
+    /**
+     * @return the metacards that could not be created so far, each with the reason of its failure.
+     *         Only the first failures are kept, {@link #getFailedCount()} counts all of them.
+     */
+    public List<IngestFailure> getFailures();
+
+    /**
+     * @return true once the stream has been read entirely, or the ingest was cancelled, and every
+     *         batch read has completed
+     */
+    public boolean isDone();
+
+    /**
+     * Waits for the ingest to complete.
+     * 
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the unit of the timeout
+     * @return true if the ingest completed, false if the timeout elapsed first
+     * @throws InterruptedException
+     *             if the current thread was interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Stops reading the stream. The batches already read are still completed.
+     */
+    public void cancel();
+}
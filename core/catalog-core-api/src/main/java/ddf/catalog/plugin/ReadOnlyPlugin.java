@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.plugin;
+
+/**
+ * Marker interface for plugins that only read the requests and responses they are given, such as
+ * plugins recording metrics. A read-only plugin never modifies its input, always returns it
+ * unchanged, and does not rely on running on the thread of the operation.
+ *
+ * <p>
+ * The framework may run read-only plugins concurrently with each other and with the rest of the
+ * operation, without waiting for them, in which case they are given an unmodifiable copy of
+ * their input rather than the input itself. The metacards of that copy are unmodifiable views of
+ * the metacards of the operation, whose attributes are read only when the plugin asks for them
+ * and may reflect changes made after the plugin was invoked. The return values of read-only
+ * plugins are ignored, and a {@link StopProcessingException} thrown by one does not stop the
+ * operation. Plugins that transform their input, or that may stop an operation, must not
+ * implement this interface; they keep running in order of their service ranking.
+ * </p>
+ */
+public interface ReadOnlyPlugin {
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.source;
+
+import java.util.Collection;
+import java.util.List;
+
+import ddf.catalog.data.Metacard;
+
+/**
+ * Implemented by {@link CatalogProvider}s that can retrieve {@link Metacard}s by ID directly,
+ * without evaluating a query. The {@link ddf.catalog.CatalogFramework} uses it to resolve the
+ * metacard of a resource and to answer local queries on a single ID; for providers that do not
+ * implement it, those lookups are run as queries.
+ */
+public interface MetacardIdLookup {
+
+    /**
+     * Retrieves the {@link Metacard}s with the given IDs.
+     * 
+     * @param ids
+     *            the IDs of the metacards to retrieve
+     * @return the metacards found, in no particular order; IDs that match no metacard are left out
+     * @throws UnsupportedQueryException
+     *             if the metacards could not be retrieved
+     */
+    public List<Metacard> getMetacards(Collection<String> ids) throws UnsupportedQueryException;
+}
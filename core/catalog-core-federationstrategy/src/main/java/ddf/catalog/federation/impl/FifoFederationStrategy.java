@@ -31,11 +31,13 @@
 
 import ddf.catalog.data.Result;
 import ddf.catalog.federation.FederationStrategy;
+import ddf.catalog.operation.FacetResult;
 import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.FacetResultImpl;
 import ddf.catalog.operation.impl.ProcessingDetailsImpl;
 import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryRequestImpl;
@@ -361,7 +363,15 @@ public void run() {
                                     object, site.getId());
                         }
 
+                        Serializable facetResults = FacetResultImpl.merge(returnResults
+                                .getProperties().get(FacetResult.FACET_RESULTS),
+                                originalSourceProperties.get(FacetResult.FACET_RESULTS),
+                                returnResults.getRequest());
                         returnResults.getProperties().putAll(originalSourceProperties);
+                        if (facetResults != null) {
+                            returnResults.getProperties().put(FacetResult.FACET_RESULTS,
+                                    facetResults);
+                        }
                     }
                 }
 
@@ -40,10 +40,12 @@
 import ddf.catalog.data.Result;
 import ddf.catalog.federation.FederationStrategy;
 import ddf.catalog.federation.base.AbstractFederationStrategy;
+import ddf.catalog.operation.FacetResult;
 import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryResponse;
 import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.FacetResultImpl;
 import ddf.catalog.operation.impl.ProcessingDetailsImpl;
 import ddf.catalog.operation.impl.QueryResponseImpl;
 import ddf.catalog.plugin.PostFederatedQueryPlugin;
@@ -196,7 +198,14 @@ public void run() {
                         // this is not the best idea because we could get properties from records
                         // that get eliminated by the max results enforcement done below.
                         // See DDF-1183 for a possible solution.
+                        Serializable facetResults = FacetResultImpl.merge(
+                                returnProperties.get(FacetResult.FACET_RESULTS),
+                                originalSourceProperties.get(FacetResult.FACET_RESULTS),
+                                returnResults.getRequest());
                         returnProperties.putAll(originalSourceProperties);
+                        if (facetResults != null) {
+                            returnProperties.put(FacetResult.FACET_RESULTS, facetResults);
+                        }
                     }
                     returnProperties.put(site.getId(), (Serializable) newSourceProperties);
                     logger.debug("Setting the query responseProperties for site {}", site.getId());
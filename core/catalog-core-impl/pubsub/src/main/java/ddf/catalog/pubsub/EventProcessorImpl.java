@@ -15,20 +15,22 @@
 
 package ddf.catalog.pubsub;
 
+import java.io.File;
 import java.net.URI;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.lucene.store.Directory;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
-import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,9 +50,11 @@
 import ddf.catalog.plugin.PostIngestPlugin;
 import ddf.catalog.plugin.PreDeliveryPlugin;
 import ddf.catalog.plugin.PreSubscriptionPlugin;
-import ddf.catalog.pubsub.criteria.contextual.ContextualEvaluator;
+import ddf.catalog.pubsub.internal.DeliveryExecutor;
+import ddf.catalog.pubsub.internal.EventEnvelope;
+import ddf.catalog.pubsub.internal.EventExecutor;
 import ddf.catalog.pubsub.internal.PubSubConstants;
-import ddf.catalog.pubsub.internal.PubSubThread;
+import ddf.catalog.pubsub.internal.SubscriberQueue;
 import ddf.catalog.pubsub.internal.SubscriptionFilterVisitor;
 import ddf.catalog.pubsub.predicate.Predicate;
 
@@ -71,7 +75,11 @@ public static enum DateType {
 
     protected CatalogFramework catalog;
 
-    private Map<String, ServiceRegistration> existingSubscriptions;
+    private SubscriptionDispatcher dispatcher;
+
+    private EventExecutor eventExecutor;
+
+    private DeliveryExecutor deliveryExecutor;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EventProcessorImpl.class);
 
@@ -89,7 +97,8 @@ public EventProcessorImpl(BundleContext bundleContext, EventAdmin eventAdmin,
         this.preSubscription = preSubscription;
         this.preDelivery = preDelivery;
         this.catalog = catalog;
-        this.existingSubscriptions = new HashMap<String, ServiceRegistration>();
+        this.dispatcher = new SubscriptionDispatcher(catalog, eventAdmin);
+        this.eventExecutor = new EventExecutor(dispatcher);
 
         if (this.preSubscription == null) {
             LOGGER.debug("preSubscription plugins list is NULL");
@@ -110,6 +119,9 @@ public void init() {
         String methodName = "init";
         LOGGER.debug("ENTERING: {}", methodName);
 
+        getEventExecutor().registerMBean();
+        getDeliveryExecutor().registerMBean();
+
         LOGGER.debug("EXITING: {}", methodName);
 
     }
@@ -118,14 +130,17 @@ public void destroy() {
         String methodName = "destroy";
         LOGGER.debug("ENTERING: {}", methodName);
 
+        getEventExecutor().shutdown();
+        getDeliveryExecutor().shutdown();
+
         LOGGER.debug("EXITING: {}", methodName);
     }
 
     /**
      * By default the Felix EventAdmin implementation has a timeout of 5000 ms. Your event handler
      * has to return from the handle event method in this time frame. If it does not, it gets
-     * Blacklisted. Therefore, this method processes its events in a separate thread than the
-     * EventAdmin who called it.
+     * Blacklisted. Therefore, this method queues its events for a pool of worker threads, whose
+     * size, queue capacity and overflow policy are configurable.
      */
     public void handleEvent(Event event) {
         String methodName = "handleEvent";
@@ -133,12 +148,12 @@ public void handleEvent(Event event) {
 
         LOGGER.debug("Received event: {}", event.getTopic());
 
-        if (!existingSubscriptions.isEmpty()) {
+        if (dispatcher.getSubscriptionCount() > 0) {
             String topic = event.getTopic();
             Metacard entry = (Metacard) event.getProperty(EventProcessor.EVENT_METACARD);
             LOGGER.debug("metacard ID = {}", entry.getId());
 
-            new PubSubThread(entry, topic, eventAdmin).start();
+            getEventExecutor().execute(entry, topic);
         } else {
             LOGGER.debug("No existing subscriptions, so no need to handle event since there is no one listening ...");
         }
@@ -146,6 +161,189 @@ public void handleEvent(Event event) {
         LOGGER.debug("EXITING: {}", methodName);
     }
 
+    /**
+     * Invoked by blueprint when the configuration changes. The settings are applied together, so
+     * the event queue is replaced at most once and no event is lost.
+     *
+     * @param properties
+     *            the new configuration
+     */
+    public void update(Map<String, Object> properties) {
+        if (properties == null) {
+            return;
+        }
+        LOGGER.debug("Updating the event processor configuration");
+
+        Object value = properties.get("eventThreads");
+        if (value != null) {
+            setEventThreads(Integer.parseInt(value.toString().trim()));
+        }
+        value = properties.get("eventQueueCapacity");
+        if (value != null) {
+            setEventQueueCapacity(Integer.parseInt(value.toString().trim()));
+        }
+        value = properties.get("eventOverflowPolicy");
+        if (value != null) {
+            setEventOverflowPolicy(value.toString());
+        }
+        value = properties.get("eventSpillDirectory");
+        if (value != null) {
+            setEventSpillDirectory(value.toString());
+        }
+        value = properties.get("deliveryThreads");
+        if (value != null) {
+            setDeliveryThreads(Integer.parseInt(value.toString().trim()));
+        }
+        value = properties.get("deliveryQueueCapacity");
+        if (value != null) {
+            setDeliveryQueueCapacity(Integer.parseInt(value.toString().trim()));
+        }
+        value = properties.get("deliveryMaxRetries");
+        if (value != null) {
+            setDeliveryMaxRetries(Integer.parseInt(value.toString().trim()));
+        }
+        value = properties.get("deliveryRetryBackoffMillis");
+        if (value != null) {
+            setDeliveryRetryBackoffMillis(Long.parseLong(value.toString().trim()));
+        }
+        value = properties.get("slowSubscriberPolicy");
+        if (value != null) {
+            setSlowSubscriberPolicy(value.toString());
+        }
+        value = properties.get("persistentDeliveries");
+        if (value != null) {
+            setPersistentDeliveries(Boolean.parseBoolean(value.toString().trim()));
+        }
+
+        getEventExecutor().update();
+    }
+
+    /**
+     * @param eventThreads
+     *            number of threads processing the events
+     */
+    public void setEventThreads(int eventThreads) {
+        LOGGER.debug("Setting event threads to {}", eventThreads);
+        getEventExecutor().setThreads(eventThreads);
+    }
+
+    /**
+     * @param eventQueueCapacity
+     *            number of events waiting for a thread before the overflow policy applies
+     */
+    public void setEventQueueCapacity(int eventQueueCapacity) {
+        LOGGER.debug("Setting event queue capacity to {}", eventQueueCapacity);
+        getEventExecutor().setQueueCapacity(eventQueueCapacity);
+    }
+
+    /**
+     * @param eventOverflowPolicy
+     *            name of an {@link EventExecutor.OverflowPolicy}: BLOCK, DROP or SPILL
+     */
+    public void setEventOverflowPolicy(String eventOverflowPolicy) {
+        LOGGER.debug("Setting event overflow policy to {}", eventOverflowPolicy);
+        try {
+            getEventExecutor().setOverflowPolicy(
+                    EventExecutor.OverflowPolicy.valueOf(eventOverflowPolicy.trim().toUpperCase()));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            LOGGER.warn("Unknown event overflow policy [{}], using BLOCK.", eventOverflowPolicy);
+            getEventExecutor().setOverflowPolicy(EventExecutor.OverflowPolicy.BLOCK);
+        }
+    }
+
+    /**
+     * @param eventSpillDirectory
+     *            directory of the file holding the events spilled with the SPILL policy
+     */
+    public void setEventSpillDirectory(String eventSpillDirectory) {
+        LOGGER.debug("Setting event spill directory to {}", eventSpillDirectory);
+        if (eventSpillDirectory != null && !eventSpillDirectory.trim().isEmpty()) {
+            getEventExecutor().setSpillDirectory(new File(eventSpillDirectory.trim()));
+            getDeliveryExecutor().setSpillDirectory(
+                    new File(eventSpillDirectory.trim(), "deliveries"));
+        }
+    }
+
+    /**
+     * @param deliveryThreads
+     *            number of threads delivering the matched events to the subscribers
+     */
+    public void setDeliveryThreads(int deliveryThreads) {
+        LOGGER.debug("Setting delivery threads to {}", deliveryThreads);
+        getDeliveryExecutor().setThreads(deliveryThreads);
+    }
+
+    /**
+     * @param deliveryQueueCapacity
+     *            number of deliveries waiting for each subscriber before the slow subscriber
+     *            policy applies
+     */
+    public void setDeliveryQueueCapacity(int deliveryQueueCapacity) {
+        LOGGER.debug("Setting delivery queue capacity to {}", deliveryQueueCapacity);
+        getDeliveryExecutor().setQueueCapacity(deliveryQueueCapacity);
+    }
+
+    /**
+     * @param deliveryMaxRetries
+     *            number of times a failed delivery is retried before being dropped
+     */
+    public void setDeliveryMaxRetries(int deliveryMaxRetries) {
+        LOGGER.debug("Setting delivery max retries to {}", deliveryMaxRetries);
+        getDeliveryExecutor().setMaxRetries(deliveryMaxRetries);
+    }
+
+    /**
+     * @param deliveryRetryBackoffMillis
+     *            delay before the first retry of a failed delivery, doubled on each retry
+     */
+    public void setDeliveryRetryBackoffMillis(long deliveryRetryBackoffMillis) {
+        LOGGER.debug("Setting delivery retry backoff to {} ms", deliveryRetryBackoffMillis);
+        getDeliveryExecutor().setRetryBackoffMillis(deliveryRetryBackoffMillis);
+    }
+
+    /**
+     * @param slowSubscriberPolicy
+     *            name of a {@link SubscriberQueue.SlowSubscriberPolicy}: DROP_OLDEST, DROP_NEWEST
+     *            or SPILL
+     */
+    public void setSlowSubscriberPolicy(String slowSubscriberPolicy) {
+        LOGGER.debug("Setting slow subscriber policy to {}", slowSubscriberPolicy);
+        try {
+            getDeliveryExecutor().setSlowSubscriberPolicy(
+                    SubscriberQueue.SlowSubscriberPolicy.valueOf(slowSubscriberPolicy.trim()
+                            .toUpperCase()));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            LOGGER.warn("Unknown slow subscriber policy [{}], using DROP_OLDEST.",
+                    slowSubscriberPolicy);
+            getDeliveryExecutor().setSlowSubscriberPolicy(
+                    SubscriberQueue.SlowSubscriberPolicy.DROP_OLDEST);
+        }
+    }
+
+    /**
+     * @param persistentDeliveries
+     *            whether the deliveries not made on shutdown are kept on disk, to be made once
+     *            their subscription is created again after the restart
+     */
+    public void setPersistentDeliveries(boolean persistentDeliveries) {
+        LOGGER.debug("Setting persistent deliveries to {}", persistentDeliveries);
+        getDeliveryExecutor().setPersistentDeliveries(persistentDeliveries);
+    }
+
+    private synchronized EventExecutor getEventExecutor() {
+        if (eventExecutor == null) {
+            eventExecutor = new EventExecutor(dispatcher);
+        }
+        return eventExecutor;
+    }
+
+    private synchronized DeliveryExecutor getDeliveryExecutor() {
+        if (deliveryExecutor == null) {
+            deliveryExecutor = new DeliveryExecutor();
+        }
+        return deliveryExecutor;
+    }
+
     @Override
     public String createSubscription(Subscription subscription) throws InvalidSubscriptionException {
         String uuid = UUID.randomUUID().toString();
@@ -179,15 +377,9 @@ public void createSubscription(Subscription subscription, String subscriptionId)
             Predicate finalPredicate = (Predicate) subscription.accept(visitor, null);
             LOGGER.debug("predicate from filter visitor: {}", finalPredicate);
 
-            String[] topics = new String[] {PubSubConstants.PUBLISHED_EVENT_TOPIC_NAME};
-
-            Dictionary<String, String[]> props = new Hashtable<String, String[]>();
-            props.put(EventConstants.EVENT_TOPIC, topics);
-            ServiceRegistration serviceRegistration = bundleContext.registerService(
-                    EventHandler.class.getName(), new PublishedEventHandler(finalPredicate,
-                            subscription, preDelivery, catalog), props);
-
-            existingSubscriptions.put(subscriptionId, serviceRegistration);
+            dispatcher.addSubscription(subscriptionId, new PublishedEventHandler(finalPredicate,
+                    subscription, preDelivery, catalog, getDeliveryExecutor().register(
+                            subscriptionId, subscription, preDelivery)));
 
             LOGGER.debug("Subscription {} created.", subscriptionId);
         } catch (Exception e) {
@@ -225,15 +417,12 @@ public void deleteSubscription(String subscriptionId) throws SubscriptionNotFoun
 
         try {
             LOGGER.info("Removing subscription: {}", subscriptionId);
-            ServiceRegistration sr = (ServiceRegistration) existingSubscriptions
-                    .get(subscriptionId);
-            if (sr != null) {
-                sr.unregister();
+            if (dispatcher.removeSubscription(subscriptionId)) {
                 LOGGER.debug("Removal complete");
-                existingSubscriptions.remove(subscriptionId);
             } else {
                 LOGGER.info("Unable to find existing subscription: {}.  May already be deleted.", subscriptionId);
             }
+            getDeliveryExecutor().unregister(subscriptionId);
 
         } catch (Exception e) {
             LOGGER.debug("Could not delete subscription for {}", subscriptionId);
@@ -257,6 +446,31 @@ public static void processEntry(Metacard metacard, String operation, EventAdmin
         String methodName = "processEntry";
         LOGGER.debug("ENTERING: " + methodName);
 
+        Event event = createEvent(metacard, operation);
+        if (event == null) {
+            LOGGER.warn("Unable to post null metacard.");
+        } else if (eventAdmin != null) {
+            eventAdmin.postEvent(event);
+        } else {
+            LOGGER.warn("Unable to post event since eventAdmin is null.");
+        }
+
+        LOGGER.debug("EXITING: {}", methodName);
+    }
+
+    /**
+     * Creates the event published to the subscriptions for an entry, with the properties from the
+     * metacard evaluated by the subscription predicates.
+     * 
+     * @param metacard
+     *            - the metacard to process
+     * @param operation
+     *            - the {@link PubSubConstants} operation
+     * @return the event, or null if the metacard is null
+     */
+    public static Event createEvent(Metacard metacard, String operation) {
+        Event event = null;
+
         if (metacard != null) {
             LOGGER.debug("Input Metacard:{}\n", metacard.toString());
             LOGGER.debug("catalog ID = {}", metacard.getId());
@@ -305,42 +519,32 @@ public static void processEntry(Metacard metacard, String operation, EventAdmin
 
             // CONTEXTUAL INFORMATION
             if (metacard.getMetadata() != null) {
-                try {
-                    // Build Lucene search index on entry's entire metadata using
-                    // default XPaths (specified
-                    // in ContextualEvaluator) - this index will be used by all
-                    // contextual predicates that do
-                    // *NOT* specify any textPaths. (Building index here optimizes
-                    // code so that this index is
-                    // not built for every contextual subscription that has no
-                    // textPaths.)
-                    Directory index = ContextualEvaluator.buildIndex(metacard.getMetadata());
-
-                    // Build contextual info to be sent in event for this entry.
-                    // Include the default Lucene search
-                    // index and the entry's metadata (in case subscription has
-                    // textPaths, then it can create Lucene
-                    // search indices on the metadata using its textPaths)
-                    Map<String, Object> contextualMap = new HashMap<String, Object>();
-                    contextualMap.put("DEFAULT_INDEX", index);
-                    contextualMap.put("METADATA", metacard.getMetadata());
-                    properties.put(PubSubConstants.HEADER_CONTEXTUAL_KEY, contextualMap);
-                } catch (Exception e) {
-                    LOGGER.error("Exception updating context map", e);
-                }
+                // Build contextual info to be sent in event for this entry. The metadata is
+                // parsed once, the first time it is needed, and kept with the event. The Lucene
+                // search index on the entry's entire metadata using the default XPaths
+                // (specified in ContextualEvaluator) is built the first time a contextual
+                // predicate that does *NOT* specify any textPaths evaluates the event, and is used
+                // by all such predicates. The indices built for textPaths are kept with the event
+                // so that they are shared by the subscriptions with the same textPaths. The terms
+                // of the indices are used to look up the contextual subscriptions by the terms
+                // they require.
+                Map<String, Object> contextualMap = new ConcurrentHashMap<String, Object>();
+                contextualMap.put("METADATA", metacard.getMetadata());
+                contextualMap.put("TEXT_PATH_INDEXES",
+                        new ConcurrentHashMap<List<String>, MemoryIndex>());
+                contextualMap.put("TEXT_PATH_TERMS",
+                        new ConcurrentHashMap<List<String>, Set<Term>>());
+                properties.put(PubSubConstants.HEADER_CONTEXTUAL_KEY, contextualMap);
             }
 
-            if (eventAdmin != null) {
-                eventAdmin.postEvent(new Event(PubSubConstants.PUBLISHED_EVENT_TOPIC_NAME,
-                        properties));
-            } else {
-                LOGGER.warn("Unable to post event since eventAdmin is null.");
-            }
-        } else {
-            LOGGER.warn("Unable to post null metacard.");
+            // The values derived from the entry are shared by all of the subscriptions
+            // evaluating the event
+            properties.put(PubSubConstants.HEADER_ENVELOPE_KEY, new EventEnvelope(properties));
+
+            event = new Event(PubSubConstants.PUBLISHED_EVENT_TOPIC_NAME, properties);
         }
 
-        LOGGER.debug("EXITING: {}", methodName);
+        return event;
     }
 
     public Predicate createFinalPredicate(Subscription subscription) {
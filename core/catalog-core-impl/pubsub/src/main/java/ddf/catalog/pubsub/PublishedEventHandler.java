@@ -29,6 +29,7 @@
 import ddf.catalog.plugin.PreDeliveryPlugin;
 import ddf.catalog.pubsub.internal.DeliveryProcessor;
 import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.SubscriberQueue;
 import ddf.catalog.pubsub.predicate.Predicate;
 
 public class PublishedEventHandler implements EventHandler {
@@ -40,6 +41,8 @@ public class PublishedEventHandler implements EventHandler {
 
     private CatalogFramework catalog;
 
+    private SubscriberQueue deliveryQueue;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PublishedEventHandler.class);
 
     public PublishedEventHandler(Predicate finalPredicate, Subscription subscription,
@@ -50,6 +53,18 @@ public PublishedEventHandler(Predicate finalPredicate, Subscription subscription
         this.catalog = catalog;
     }
 
+    /**
+     * @param deliveryQueue
+     *            queue of the deliveries to the subscription, or null to deliver the matched events
+     *            on the thread evaluating them
+     */
+    public PublishedEventHandler(Predicate finalPredicate, Subscription subscription,
+            List<PreDeliveryPlugin> preDelivery, CatalogFramework catalog,
+            SubscriberQueue deliveryQueue) {
+        this(finalPredicate, subscription, preDelivery, catalog);
+        this.deliveryQueue = deliveryQueue;
+    }
+
     public void handleEvent(Event event) {
         String methodName = "handleEvent";
         LOGGER.debug("ENTERING: {}", methodName);
@@ -108,15 +123,31 @@ public void handleEvent(Event event) {
         LOGGER.debug("EXITING: {}", methodName);
     }
 
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
     private void evaluateEvent(Event event) {
         // If predicate is NULL then we are handling a filterless subscription - publish all events
         if (predicate == null) {
             LOGGER.debug("predicate is NULL (must be filterless subscription), publishing all events");
-            new DeliveryProcessor(subscription, preDelivery).process(event);
+            deliver(event);
         }
         // Otherwise, only send events that match the predicate's filter criteria
         else if (predicate.matches(event)) {
+            deliver(event);
+        }
+    }
+
+    private void deliver(Event event) {
+        if (deliveryQueue == null) {
             new DeliveryProcessor(subscription, preDelivery).process(event);
+        } else {
+            deliveryQueue.offer(event);
         }
     }
 
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.pubsub.internal.SubscriptionIndex;
+
+/**
+ * Delivers the published events to the subscriptions. Rather than having every subscription
+ * evaluate every event, the subscriptions are indexed by their source and by the entry ID or
+ * content type they require, and an event is only evaluated by the subscriptions it may match.
+ * The event is then posted to its topic, {@code ddf/pubsub/publish/event}, so that the handlers
+ * registered for that topic outside of this bundle still receive it.
+ */
+public class SubscriptionDispatcher implements EventHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionDispatcher.class);
+
+    private final SubscriptionIndex index = new SubscriptionIndex();
+
+    private final CatalogFramework catalog;
+
+    private final EventAdmin eventAdmin;
+
+    public SubscriptionDispatcher(CatalogFramework catalog) {
+        this(catalog, null);
+    }
+
+    /**
+     * @param eventAdmin
+     *            posts the published events to their topic once dispatched, may be null
+     */
+    public SubscriptionDispatcher(CatalogFramework catalog, EventAdmin eventAdmin) {
+        this.catalog = catalog;
+        this.eventAdmin = eventAdmin;
+    }
+
+    public void addSubscription(String subscriptionId, PublishedEventHandler handler) {
+        index.add(subscriptionId, handler);
+    }
+
+    /**
+     * @return true if the subscription existed
+     */
+    public boolean removeSubscription(String subscriptionId) {
+        return index.remove(subscriptionId) != null;
+    }
+
+    public int getSubscriptionCount() {
+        return index.size();
+    }
+
+    public void handleEvent(Event event) {
+        String localSourceId = catalog == null ? null : catalog.getId();
+        for (PublishedEventHandler handler : index.getCandidates(event, localSourceId)) {
+            try {
+                handler.handleEvent(event);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to process event for subscription {}",
+                        handler.getSubscription(), e);
+            }
+        }
+
+        if (eventAdmin != null) {
+            eventAdmin.postEvent(event);
+        }
+    }
+}
@@ -24,10 +24,28 @@ public class ContentTypeEvaluator {
     private static final Logger LOGGER = LoggerFactory.getLogger(ContentTypeEvaluator.class);
 
     public static boolean evaluate(ContentTypeEvaluationCriteriaImpl ctec) {
+        String input = ctec.getInputContentType();
+
+        return evaluate(ctec.getContentType(), getInputType(input), getInputVersion(input));
+    }
+
+    /**
+     * Evaluates a content type already split by {@link #getInputType(String)} and
+     * {@link #getInputVersion(String)}.
+     * 
+     * @param matchContentTypePredicate
+     *            the content type matched
+     * @param inputType
+     *            the type of the content of the event
+     * @param inputVersion
+     *            the version of the content of the event
+     * @return true if the content type of the event matches
+     */
+    public static boolean evaluate(ContentTypePredicate matchContentTypePredicate,
+            String inputType, String inputVersion) {
         String methodName = "evaluate";
         LOGGER.debug("ENTERING: {}", methodName);
 
-        ContentTypePredicate matchContentTypePredicate = ctec.getContentType();
         String matchType = matchContentTypePredicate.getType();
         String matchVersion = matchContentTypePredicate.getVersion();
                
@@ -43,37 +61,8 @@ public static boolean evaluate(ContentTypeEvaluationCriteriaImpl ctec) {
         	matchVersion = matchVersion.replaceAll("\\*", ".*");
         }
 
-        String input = ctec.getInputContentType();
         LOGGER.debug("Match ContentType: {}", matchContentTypePredicate);
-        
-        String inputType;
-        String inputVersion;
-        
-        //Check if both type and version are blank
-        if (input == null || input.matches(",")) {
-        	inputType = "null";
-        	inputVersion = "null";
-        }
-        else {
-        	String[] inputTypeVersionPair = input.split(",");
-        	
-        	//Check if content type is blank. If yes, set to null.
-        	if (inputTypeVersionPair[0].isEmpty()) {
-        		inputType = "null";
-        	}
-        	else {
-        		inputType = inputTypeVersionPair[0];
-        	}
-            
-            //Check if version is blank. If yes, set to null.
-            if (inputTypeVersionPair.length == 1) {
-            	inputVersion = "null";
-            }
-            else {
-            	inputVersion = inputTypeVersionPair[1];
-            }
-        }
-        	
+
         LOGGER.debug("inputType = {}, inputVersion = {}", inputType, inputVersion);
         LOGGER.debug("matchType = {}, matchVersion = {}", matchType, matchVersion);
 
@@ -94,4 +83,36 @@ public static boolean evaluate(ContentTypeEvaluationCriteriaImpl ctec) {
         return false;
     }
 
+    /**
+     * @param input
+     *            content type of an event, formatted as "type,version"
+     * @return the type, or "null" if it is blank
+     */
+    public static String getInputType(String input) {
+        //Check if both type and version are blank
+        if (input == null || input.matches(",")) {
+            return "null";
+        }
+
+        //Check if content type is blank. If yes, set to null.
+        String inputType = input.split(",")[0];
+        return inputType.isEmpty() ? "null" : inputType;
+    }
+
+    /**
+     * @param input
+     *            content type of an event, formatted as "type,version"
+     * @return the version, or "null" if it is blank
+     */
+    public static String getInputVersion(String input) {
+        //Check if both type and version are blank
+        if (input == null || input.matches(",")) {
+            return "null";
+        }
+
+        //Check if version is blank. If yes, set to null.
+        String[] inputTypeVersionPair = input.split(",");
+        return inputTypeVersionPair.length == 1 ? "null" : inputTypeVersionPair[1];
+    }
+
 }
@@ -15,7 +15,7 @@
 
 package ddf.catalog.pubsub.criteria.contextual;
 
-import org.apache.lucene.store.Directory;
+import org.apache.lucene.index.memory.MemoryIndex;
 
 public interface ContextualEvaluationCriteria {
 
@@ -24,7 +24,7 @@ public interface ContextualEvaluationCriteria {
      * 
      * @return
      */
-    public Directory getIndex();
+    public MemoryIndex getIndex();
 
     /**
      * The search phrase which forms the criteria to search over the document
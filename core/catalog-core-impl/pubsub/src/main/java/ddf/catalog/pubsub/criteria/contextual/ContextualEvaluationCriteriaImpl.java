@@ -17,7 +17,7 @@
 
 import java.io.IOException;
 
-import org.apache.lucene.store.Directory;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,12 +32,12 @@ public class ContextualEvaluationCriteriaImpl implements ContextualEvaluationCri
 
     private String metadata;
 
-    private Directory index;
+    private MemoryIndex index;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ContextualEvaluationCriteriaImpl.class);
 
     public ContextualEvaluationCriteriaImpl(String criteria, boolean fuzzy,
-            boolean caseSensitiveSearch, Directory index) {
+            boolean caseSensitiveSearch, MemoryIndex index) {
         super();
         this.criteria = criteria;
         this.fuzzy = fuzzy;
@@ -73,7 +73,7 @@ public String getCriteria() {
         return criteria;
     }
 
-    public Directory getIndex() {
+    public MemoryIndex getIndex() {
         return index;
     }
 
@@ -18,30 +18,33 @@
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.Version;
 import org.slf4j.LoggerFactory;
 import org.slf4j.ext.XLogger;
 import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -53,6 +56,13 @@ public final class ContextualEvaluator {
 
     private static final String CASE_SENSITIVE_FIELD_NAME = "cs_Resource";
 
+    // The analyzers keep their token streams per thread, so they are shared by all of the indexes
+    // and queries
+    private static final Analyzer CONTEXTUAL_ANALYZER = new ContextualAnalyzer(Version.LUCENE_30);
+
+    private static final Analyzer CASE_SENSITIVE_CONTEXTUAL_ANALYZER = new CaseSensitiveContextualAnalyzer(
+            Version.LUCENE_30);
+
     private static final XLogger logger = new XLogger(LoggerFactory.getLogger(ContextualEvaluator.class));
 
     private static final String DEFAULT_XPATH_1 = "/*[local-name()=\"Resource\"]/*"
@@ -66,6 +76,9 @@ public final class ContextualEvaluator {
             + "/*[local-name()=\"geospatialCoverage\"]/*[local-name()=\"GeospatialExtent\"]"
             + "/*[not(ancestor::node()[local-name()=\"boundingGeometry\"] or descendant-or-self::node()[local-name()=\"boundingGeometry\"])] ";
 
+    // kept in the contextual map in place of the document when the metadata could not be parsed
+    private static final Object UNPARSEABLE_DOCUMENT = new Object();
+
     private static final String[] DEFAULT_XPATH_SELECTORS = new String[] {DEFAULT_XPATH_1,
         DEFAULT_XPATH_2};
 
@@ -87,104 +100,180 @@ public static boolean evaluate(ContextualEvaluationCriteria cec) throws IOExcept
         String methodName = "evaluate";
         logger.entry(methodName);
 
-        Directory index = cec.getIndex();
         String searchPhrase = cec.getCriteria();
 
         // Handle case where no search phrase is specified. Contextual criteria should then specify
         // text path(s)
         // and be used to determine if an element or attribute exist
         if (searchPhrase == null || searchPhrase.isEmpty()) {
-            String[] textPaths = cec.getTextPaths();
-            String fullDocument = cec.getMetadata();
-
-            if (textPaths != null && textPaths.length > 0 && fullDocument != null) {
-                String indexableText = getIndexableText(fullDocument, textPaths);
-                if (indexableText != null && !indexableText.isEmpty()) {
-                    logger.trace("Found element/attribute for textPaths");
-                    logger.exit(methodName + " - returning true");
-                    return true;
-                }
-            }
+            boolean exists = hasIndexableText(cec.getMetadata(), cec.getTextPaths());
+            logger.exit(methodName + " - returning " + exists);
+            return exists;
+        }
 
-            logger.trace("No search phrase specified and could not find element/attribute based on textPaths");
-            logger.exit(methodName + " - returning false");
-            return false;
+        boolean matches = evaluate(cec.getIndex(), parseQuery(searchPhrase,
+                cec.isCaseSensitiveSearch()));
+
+        logger.exit(methodName);
+
+        return matches;
+    }
+
+    /**
+     * Searches an index built by {@link #buildIndex(String, String[])} with a query parsed by
+     * {@link #parseQuery(String, boolean)}.
+     * 
+     * @param index
+     *            the index of the text of one metacard
+     * @param query
+     *            the contextual query
+     * 
+     * @return true if the indexed text matches the query
+     */
+    public static boolean evaluate(MemoryIndex index, Query query) {
+        float score;
+        // the index sorts its fields on the first search, so searches of an index are serialized
+        synchronized (index) {
+            score = index.search(query);
         }
 
-        // a. query
+        logger.debug("Query [{}] scored {}", query, score);
+
+        return score > 0.0f;
+    }
+
+    /**
+     * Parses a contextual search phrase into a query that may be evaluated against any number of
+     * indexes, from any thread.
+     * 
+     * @param searchPhrase
+     *            the search phrase, in Lucene syntax
+     * @param caseSensitive
+     *            true to search the case-sensitive indexed text
+     * 
+     * @return the query
+     * 
+     * @throws ParseException
+     *             if the search phrase is not valid Lucene syntax
+     */
+    public static Query parseQuery(String searchPhrase, boolean caseSensitive)
+        throws ParseException {
         QueryParser queryParser = null;
-        if (cec.isCaseSensitiveSearch()) {
-            logger.debug("Doing case-sensitive search ...");
+        if (caseSensitive) {
+            logger.debug("Parsing case-sensitive query ...");
             queryParser = new QueryParser(Version.LUCENE_30, CASE_SENSITIVE_FIELD_NAME,
-                    new CaseSensitiveContextualAnalyzer(Version.LUCENE_30));
+                    CASE_SENSITIVE_CONTEXTUAL_ANALYZER);
 
             // Make Wildcard, Prefix, Fuzzy, and Range queries *not* be automatically lower-cased,
             // i.e., make them be case-sensitive
             queryParser.setLowercaseExpandedTerms(false);
         } else {
-            logger.debug("Doing case-insensitive search ...");
-            queryParser = new QueryParser(Version.LUCENE_30, FIELD_NAME, new ContextualAnalyzer(
-                    Version.LUCENE_30));
+            logger.debug("Parsing case-insensitive query ...");
+            queryParser = new QueryParser(Version.LUCENE_30, FIELD_NAME, CONTEXTUAL_ANALYZER);
         }
 
         // Configures Lucene query parser to allow a wildcard as first character in the
         // contextual search phrase
         queryParser.setAllowLeadingWildcard(true);
 
-        Query q = queryParser.parse(searchPhrase);
-
-        // b. search
-        int hitsPerPage = 1;
-        IndexSearcher searcher = new IndexSearcher(index, true);
-        TopDocs topDocs = searcher.search(q, hitsPerPage);
-
-        // c. display results
-        logger.debug("Found " + topDocs.totalHits + " hits.");
+        return queryParser.parse(searchPhrase);
+    }
 
-        // searcher can only be closed when there
-        // is no need to access the documents any more.
-        searcher.close();
+    /**
+     * Returns terms of which an index must contain at least one for a query to match it: the term
+     * of a term query, one of the terms of a phrase query, the terms required by one of the
+     * required clauses of a boolean query, or the terms required by each of its optional clauses
+     * when none is required.
+     * 
+     * @param query
+     *            a query parsed by {@link #parseQuery(String, boolean)}
+     * 
+     * @return the terms, or null if the query may match an index without any specific term, as
+     *         the wildcard, fuzzy and range queries do
+     */
+    public static Set<Term> getRequiredTerms(Query query) {
+        if (query instanceof TermQuery) {
+            return Collections.singleton(((TermQuery) query).getTerm());
+        } else if (query instanceof PhraseQuery) {
+            // the longest term of the phrase is likely the least common
+            Term longest = null;
+            for (Term term : ((PhraseQuery) query).getTerms()) {
+                if (longest == null || term.text().length() > longest.text().length()) {
+                    longest = term;
+                }
+            }
+            return longest == null ? null : Collections.singleton(longest);
+        } else if (query instanceof BooleanQuery) {
+            return getRequiredTerms((BooleanQuery) query);
+        }
+        return null;
+    }
 
-        logger.exit(methodName);
+    private static Set<Term> getRequiredTerms(BooleanQuery query) {
+        Set<Term> required = null;
+        boolean hasRequiredClause = false;
+        Set<Term> optional = new HashSet<Term>();
+        boolean hasOptionalClause = false;
+
+        for (BooleanClause clause : query.getClauses()) {
+            if (clause.getOccur() == BooleanClause.Occur.MUST) {
+                hasRequiredClause = true;
+                Set<Term> terms = getRequiredTerms(clause.getQuery());
+                if (terms != null && (required == null || terms.size() < required.size())) {
+                    required = terms;
+                }
+            } else if (clause.getOccur() == BooleanClause.Occur.SHOULD) {
+                hasOptionalClause = true;
+                Set<Term> terms = getRequiredTerms(clause.getQuery());
+                if (terms == null) {
+                    optional = null;
+                } else if (optional != null) {
+                    optional.addAll(terms);
+                }
+            }
+        }
 
-        return topDocs.totalHits > 0;
+        if (hasRequiredClause) {
+            return required;
+        }
+        // without required clauses, one of the optional clauses must match
+        return hasOptionalClause ? optional : null;
     }
 
     /**
-     * Create a field with the specified field name and value, and add it to a Lucene Document to be
-     * added to the specified IndexWriter.
+     * Build one Lucene index for the specified XML Document that contains both case-insensitive and
+     * case-sensitive indexed text. Use the default XPath selectors to extract the indexable text
+     * from the specified XML document.
+     * 
+     * @param fullDocument
+     *            the XML document to be indexed
      * 
-     * @param indexWriter
-     * @param fieldName
-     * @param value
+     * @return the Lucene index for the indexed text from the XML document
      * 
      * @throws IOException
      */
-    private static void addDoc(IndexWriter indexWriter, String fieldName, String value)
-        throws IOException {
-        Document doc = new Document();
-        doc.add(new Field(fieldName, value, Field.Store.YES, Field.Index.ANALYZED,
-                Field.TermVector.WITH_POSITIONS_OFFSETS));
-        indexWriter.addDocument(doc);
+    public static MemoryIndex buildIndex(String fullDocument) throws IOException {
+        return buildIndex(fullDocument, (Set<Term>) null);
     }
 
     /**
-     * Build one Lucene index for the specified XML Document that contains both case-insensitive and
-     * case-sensitive indexed text. Use the default XPath selectors to extract the indexable text
-     * from the specified XML document.
+     * Build one Lucene index for the specified XML Document, as {@link #buildIndex(String)} does,
+     * collecting its terms.
      * 
      * @param fullDocument
      *            the XML document to be indexed
+     * @param terms
+     *            the set the terms of the index are added to
      * 
      * @return the Lucene index for the indexed text from the XML document
      * 
      * @throws IOException
      */
-    public static Directory buildIndex(String fullDocument) throws IOException {
+    public static MemoryIndex buildIndex(String fullDocument, Set<Term> terms) throws IOException {
         String methodName = "buildIndex (DEFAULT)";
         logger.entry(methodName);
 
-        return buildIndex(fullDocument, DEFAULT_XPATH_SELECTORS);
+        return buildIndex(fullDocument, DEFAULT_XPATH_SELECTORS, terms);
     }
 
     /**
@@ -192,6 +281,9 @@ public static Directory buildIndex(String fullDocument) throws IOException {
      * case-sensitive indexed text. Use the provided XPath selectors to extract the indexable text
      * from the specified XML document.
      * 
+     * The index holds a single document in memory and is searched without any index writer or
+     * searcher, so it is cheap enough to be built for every event.
+     * 
      * @param fullDocument
      *            the XML document to be indexed
      * @param xpathSelectors
@@ -201,76 +293,290 @@ public static Directory buildIndex(String fullDocument) throws IOException {
      * 
      * @throws IOException
      */
-    public static Directory buildIndex(String fullDocument, String[] xpathSelectors)
+    public static MemoryIndex buildIndex(String fullDocument, String[] xpathSelectors)
         throws IOException {
-        String methodName = "buildIndex";
-        logger.entry(methodName);
+        return buildIndex(fullDocument, xpathSelectors, null);
+    }
 
-        // logger.debug( XPathHelper.xmlToString( fullDocument ) );
+    /**
+     * Build one Lucene index for the specified XML Document, as
+     * {@link #buildIndex(String, String[])} does, collecting its terms.
+     * 
+     * @param fullDocument
+     *            the XML document to be indexed
+     * @param xpathSelectors
+     *            the XPath selectors to use to extract the indexable text from the XML document
+     * @param terms
+     *            the set the terms of the index are added to, or null
+     * 
+     * @return the Lucene index for the indexed text from the XML document
+     * 
+     * @throws IOException
+     */
+    public static MemoryIndex buildIndex(String fullDocument, String[] xpathSelectors,
+            Set<Term> terms) throws IOException {
+        logTokens(CONTEXTUAL_ANALYZER, FIELD_NAME, fullDocument, "ContextualAnalyzer");
 
-        // 0. Specify the analyzer for tokenizing text.
-        // The same analyzer should be used for indexing and searching
-//        StandardAnalyzer standardAnalyzer = new StandardAnalyzer(Version.LUCENE_30);
-        ContextualAnalyzer contextualAnalyzer = new ContextualAnalyzer(Version.LUCENE_30);
+        return buildIndex(parseDocument(fullDocument), xpathSelectors, terms);
+    }
 
-        // 1. create the index
-        Directory index = new RAMDirectory();
+    /**
+     * Build one Lucene index for an XML Document already parsed by
+     * {@link #parseDocument(String)}, as {@link #buildIndex(String, String[], Set)} does.
+     * 
+     * @param document
+     *            the parsed XML document to be indexed, or null if it could not be parsed
+     * @param xpathSelectors
+     *            the XPath selectors to use to extract the indexable text from the XML document
+     * @param terms
+     *            the set the terms of the index are added to, or null
+     * 
+     * @return the Lucene index for the indexed text from the XML document
+     * 
+     * @throws IOException
+     */
+    public static MemoryIndex buildIndex(Document document, String[] xpathSelectors,
+            Set<Term> terms) throws IOException {
+        String methodName = "buildIndex";
+        logger.entry(methodName);
 
         // Retrieve the text from the document that can be indexed using the specified XPath
         // selectors
-        String indexableText = getIndexableText(fullDocument, xpathSelectors);
-
-        // Create an IndexWriter using the case-insensitive StandardAnalyzer
-        // NOTE: the boolean arg in the IndexWriter constructor means to create a new index,
-        // overwriting any existing index
-//        IndexWriter indexWriter = new IndexWriter(index, standardAnalyzer, true,
-//                IndexWriter.MaxFieldLength.UNLIMITED);
-        IndexWriter indexWriter = new IndexWriter(index, contextualAnalyzer, true,
-                IndexWriter.MaxFieldLength.UNLIMITED);
-        logTokens(indexWriter.getAnalyzer(), FIELD_NAME, fullDocument, "ContextualAnalyzer");
-
-        // Add the indexable text to the case-insensitive index writer, assigning it the
-        // "case-insensitive" field name
-        addDoc(indexWriter, FIELD_NAME, indexableText);
-        indexWriter.close();
-
-        CaseSensitiveContextualAnalyzer caseSensitiveStandardAnalyzer = new CaseSensitiveContextualAnalyzer(
-                Version.LUCENE_30);
-
-        // Create a second IndexWriter using the custom case-sensitive StandardAnalyzer
-        // NOTE: set boolean to false to append the case-sensitive indexed text to the existing
-        // index (populated by first IndexWriter)
-        IndexWriter csIndexWriter = new IndexWriter(index, caseSensitiveStandardAnalyzer, false,
-                IndexWriter.MaxFieldLength.UNLIMITED);
-
-        // Add the indexable text to the case-sensitive index writer, assigning it the
-        // "case-sensitive" field name
-        addDoc(csIndexWriter, CASE_SENSITIVE_FIELD_NAME, indexableText);
-        csIndexWriter.close();
+        String indexableText = getIndexableText(document, xpathSelectors);
+
+        // Add the indexable text to the index twice: once with the case-insensitive analyzer under
+        // the "case-insensitive" field name, and once with the custom case-sensitive analyzer under
+        // the "case-sensitive" field name
+        MemoryIndex index = new MemoryIndex();
+        addField(index, FIELD_NAME, indexableText, CONTEXTUAL_ANALYZER, terms);
+        addField(index, CASE_SENSITIVE_FIELD_NAME, indexableText,
+                CASE_SENSITIVE_CONTEXTUAL_ANALYZER, terms);
 
         logger.exit(methodName);
 
         return index;
     }
-    
-    private static void logTokens(Analyzer analyzer, String fieldName, String fullDocument, String analyzerName) throws IOException {
+
+    /**
+     * Returns the index of the metadata of an event selected by text paths, building it the first
+     * time it is requested for the event. The indexes and their terms are kept in the contextual
+     * map of the event, when it has maps for them, so that they are shared by all of the
+     * subscriptions with the same text paths.
+     * 
+     * @param contextualMap
+     *            the contextual properties of the event
+     * @param textPaths
+     *            the XPath selectors of the indexed text, or null for the default index
+     * 
+     * @return the index, or null if the event has no metadata
+     * 
+     * @throws IOException
+     */
+    public static MemoryIndex getIndex(Map<String, Object> contextualMap, List<String> textPaths)
+        throws IOException {
+        String metadata = (String) contextualMap.get("METADATA");
+        if (metadata == null) {
+            return null;
+        }
+
+        if (textPaths == null) {
+            return getDefaultIndex(contextualMap);
+        }
+
+        String[] xpathSelectors = textPaths.toArray(new String[textPaths.size()]);
+        Map<List<String>, MemoryIndex> indexes = (Map<List<String>, MemoryIndex>) contextualMap
+                .get("TEXT_PATH_INDEXES");
+        Map<List<String>, Set<Term>> terms = (Map<List<String>, Set<Term>>) contextualMap
+                .get("TEXT_PATH_TERMS");
+        if (indexes == null || terms == null) {
+            return buildIndex(metadata, xpathSelectors);
+        }
+
+        MemoryIndex index = indexes.get(textPaths);
+        if (index == null) {
+            synchronized (indexes) {
+                index = indexes.get(textPaths);
+                if (index == null) {
+                    logger.debug("Building index for textPaths {}", textPaths);
+                    Set<Term> indexTerms = new HashSet<Term>();
+                    index = buildIndex(getDocument(contextualMap), xpathSelectors, indexTerms);
+                    // the terms are added first, so that they are there once the index is
+                    terms.put(textPaths, indexTerms);
+                    indexes.put(textPaths, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param contextualMap
+     *            the contextual properties of the event
+     * @param textPaths
+     *            the XPath selectors of the indexed text, or null for the default index
+     * 
+     * @return the terms of the index of the metadata of an event, or null if the event does not
+     *         keep them
+     * 
+     * @throws IOException
+     */
+    public static Set<Term> getTerms(Map<String, Object> contextualMap, List<String> textPaths)
+        throws IOException {
+        if (textPaths == null) {
+            getIndex(contextualMap, null);
+            return (Set<Term>) contextualMap.get("DEFAULT_TERMS");
+        }
+
+        Map<List<String>, Set<Term>> terms = (Map<List<String>, Set<Term>>) contextualMap
+                .get("TEXT_PATH_TERMS");
+        if (terms == null) {
+            return null;
+        }
+        if (!terms.containsKey(textPaths)) {
+            getIndex(contextualMap, textPaths);
+        }
+        return terms.get(textPaths);
+    }
+
+    /**
+     * Returns the metadata of an event parsed by {@link #parseDocument(String)}, parsing it the
+     * first time it is requested for the event. The document is kept in the contextual map of the
+     * event, so that it is parsed once for all of the indexes and subscriptions of the event.
+     * Threads using the document must synchronize on it. A metadata that could not be parsed is
+     * not parsed again for the event.
+     * 
+     * @param contextualMap
+     *            the contextual properties of the event
+     * 
+     * @return the document, or null if the event has no metadata or it could not be parsed
+     */
+    public static Document getDocument(Map<String, Object> contextualMap) {
+        String metadata = (String) contextualMap.get("METADATA");
+        if (metadata == null) {
+            return null;
+        }
+
+        synchronized (contextualMap) {
+            Object document = contextualMap.get("DOCUMENT");
+            if (document == null) {
+                document = parseDocument(metadata);
+                contextualMap.put("DOCUMENT", document == null ? UNPARSEABLE_DOCUMENT : document);
+            }
+            return document == UNPARSEABLE_DOCUMENT ? null : (Document) document;
+        }
+    }
+
+    /**
+     * Parses an XML document, treating its default namespace as no namespace, so that XPath
+     * selectors do not need to specify a namespace for the elements in the default namespace.
+     * 
+     * @param fullDocument
+     *            the XML document
+     * 
+     * @return the parsed document, or null if it could not be parsed
+     */
+    public static Document parseDocument(String fullDocument) {
+        // TODO Is this safe for all cases? Can there be multiple default namespaces such that
+        // this would screw up the metadata?
+
+        // Treat the "default namespace" (i.e., xmlns="http://some.namespace") the same as the
+        // "no namespace" (i.e., xmlns="")
+        // so that user-specified XPath Selectors do not need to specify a namespace for
+        // expressions in the default namespace
+        // (For example, user can specify //fileTitle vs. //namespace:fileTitle, where a
+        // NamespaceContext/NamespaceResolver
+        // would try to resolve the namespace they specified)
+        // The regex below, "xmlns=['\"].*?['\"]", looks for:
+        // xmlns="any chars between single or double quotes"
+        return new XPathHelper(fullDocument.replaceAll("xmlns=['\"].*?['\"]", "")).getDocument();
+    }
+
+    private static MemoryIndex getDefaultIndex(Map<String, Object> contextualMap)
+        throws IOException {
+        MemoryIndex index = (MemoryIndex) contextualMap.get("DEFAULT_INDEX");
+        if (index == null) {
+            synchronized (contextualMap) {
+                index = (MemoryIndex) contextualMap.get("DEFAULT_INDEX");
+                if (index == null) {
+                    logger.debug("Building default index");
+                    Set<Term> terms = new HashSet<Term>();
+                    index = buildIndex(getDocument(contextualMap), DEFAULT_XPATH_SELECTORS, terms);
+                    // the terms are added first, so that they are there once the index is
+                    contextualMap.put("DEFAULT_TERMS", terms);
+                    contextualMap.put("DEFAULT_INDEX", index);
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void addField(MemoryIndex index, String fieldName, String text,
+            Analyzer analyzer, Set<Term> terms) {
+        TokenStream tokenStream = analyzer.tokenStream(fieldName, new StringReader(text));
+        if (terms != null) {
+            tokenStream = new TermCollector(tokenStream, fieldName, terms);
+        }
+        index.addField(fieldName, tokenStream);
+    }
+
+    /**
+     * @param fullDocument
+     *            the XML document
+     * @param xpathSelectors
+     *            the XPath selectors of the text
+     * 
+     * @return true if the XPath selectors select any text of the XML document
+     */
+    public static boolean hasIndexableText(String fullDocument, String[] xpathSelectors) {
+        if (xpathSelectors != null && xpathSelectors.length > 0 && fullDocument != null) {
+            String indexableText = getIndexableText(fullDocument, xpathSelectors);
+            if (indexableText != null && !indexableText.isEmpty()) {
+                logger.trace("Found element/attribute for textPaths");
+                return true;
+            }
+        }
+
+        logger.trace("No search phrase specified and could not find element/attribute based on textPaths");
+        return false;
+    }
+
+    /**
+     * @param document
+     *            the XML document parsed by {@link #parseDocument(String)}
+     * @param xpathSelectors
+     *            the XPath selectors of the text
+     * 
+     * @return true if the XPath selectors select any text of the XML document
+     */
+    public static boolean hasIndexableText(Document document, String[] xpathSelectors) {
+        if (xpathSelectors != null && xpathSelectors.length > 0 && document != null) {
+            String indexableText = getIndexableText(document, xpathSelectors);
+            if (indexableText != null && !indexableText.isEmpty()) {
+                logger.trace("Found element/attribute for textPaths");
+                return true;
+            }
+        }
+
+        logger.trace("No search phrase specified and could not find element/attribute based on textPaths");
+        return false;
+    }
+
+    private static void logTokens(Analyzer analyzer, String fieldName, String fullDocument,
+            String analyzerName) throws IOException {
         if (!logger.isDebugEnabled()) {
             return;
         }
-        
+
         TokenStream tokenStream = analyzer.tokenStream(fieldName, new StringReader(fullDocument));
-        OffsetAttribute offsetAttribute = tokenStream.getAttribute(OffsetAttribute.class);
         TermAttribute termAttribute = tokenStream.getAttribute(TermAttribute.class);
         logger.debug("-----  {} tokens  -----", analyzerName);
         while (tokenStream.incrementToken()) {
-            int startOffset = offsetAttribute.startOffset();
-            int endOffset = offsetAttribute.endOffset();
             String term = termAttribute.term();
             logger.debug(term);
         }
         logger.debug("-----  END:  {} tokens  -----", analyzerName);
     }
-    
+
     /**
      * Extract the text from the specified XML Document that is to be indexed using the specified
      * XPath selectors.
@@ -280,6 +586,29 @@ private static void logTokens(Analyzer analyzer, String fieldName, String fullDo
      * @return
      */
     private static String getIndexableText(String document, String[] xpathSelectors) {
+        return getIndexableText(parseDocument(document), xpathSelectors);
+    }
+
+    /**
+     * Extract the text from the specified parsed XML Document that is to be indexed using the
+     * specified XPath selectors. The document may be shared by several threads, which
+     * synchronize on it since the DOM does not support concurrent reads.
+     * 
+     * @param document
+     * @param xpathSelectors
+     * @return
+     */
+    private static String getIndexableText(Document document, String[] xpathSelectors) {
+        if (document == null) {
+            return "";
+        }
+
+        synchronized (document) {
+            return selectIndexableText(document, xpathSelectors);
+        }
+    }
+
+    private static String selectIndexableText(Document document, String[] xpathSelectors) {
         String methodName = "getIndexableText";
         logger.entry(methodName);
 
@@ -292,31 +621,12 @@ private static String getIndexableText(String document, String[] xpathSelectors)
         StringBuilder sbuilder = new StringBuilder();
 
         try {
-            // logger.trace( "BEFORE - xmlString:\n" + document );
-
-            // TODO Is this safe for all cases? Can there be multiple default namespaces such that
-            // this would screw up the metadata?
-
-            // Treat the "default namespace" (i.e., xmlns="http://some.namespace") the same as the
-            // "no namespace" (i.e., xmlns="")
-            // so that user-specified XPath Selectors do not need to specify a namespace for
-            // expressions in the default namespace
-            // (For example, user can specify //fileTitle vs. //namespace:fileTitle, where a
-            // NamespaceContext/NamespaceResolver
-            // would try to resolve the namespace they specified)
-            // The regex below, "xmlns=['\"].*?['\"]", looks for:
-            // xmlns="any chars between single or double quotes"
-
-            document = document.replaceAll("xmlns=['\"].*?['\"]", "");
-            // logger.trace( "AFTER - xmlString:\n" + document );
-
-            XPathHelper xHelper = new XPathHelper(document);
-
             for (String xpath : xpathSelectors) {
                 logger.debug("Processing xpath selector:\n" + xpath);
                 // NodeList nodeList = (NodeList) xHelper.evaluate( xpath, XPathConstants.NODESET,
                 // new NamespaceResolver() );
-                NodeList nodeList = (NodeList) xHelper.evaluate(xpath, XPathConstants.NODESET);
+                NodeList nodeList = (NodeList) XPathExpressionCache.evaluate(xpath, document,
+                        XPathConstants.NODESET);
                 logger.debug("nodeList length = " + nodeList.getLength());
 
                 for (int i = 0; i < nodeList.getLength(); i++) {
@@ -386,4 +696,30 @@ private static void traverse(Node n, List<String> indexedText) {
         }
     }
 
+    /**
+     * Adds the terms of a token stream to a set, as they are indexed.
+     */
+    private static final class TermCollector extends TokenFilter {
+        private final TermAttribute termAttribute = addAttribute(TermAttribute.class);
+
+        private final String fieldName;
+
+        private final Set<Term> terms;
+
+        TermCollector(TokenStream input, String fieldName, Set<Term> terms) {
+            super(input);
+            this.fieldName = fieldName;
+            this.terms = terms;
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            if (!input.incrementToken()) {
+                return false;
+            }
+            terms.add(new Term(fieldName, termAttribute.term()));
+            return true;
+        }
+    }
+
 }
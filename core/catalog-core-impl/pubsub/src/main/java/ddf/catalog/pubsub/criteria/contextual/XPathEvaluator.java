@@ -21,20 +21,29 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import ddf.util.XPathHelper;
 
 public class XPathEvaluator {
     private static final Logger LOGGER = LoggerFactory.getLogger(XPathEvaluator.class);
 
+    /**
+     * Evaluates the XPath expression on the document without copying it. The document may be
+     * shared by the subscriptions evaluating the same event, which synchronize on it since the DOM
+     * does not support concurrent reads.
+     */
     public static boolean evaluate(XPathEvaluationCriteria xpathCriteria) {
         Document document = xpathCriteria.getDocument();
         String xpath = xpathCriteria.getXPath();
 
-        XPathHelper evaluator = new XPathHelper(document);
+        if (document == null) {
+            LOGGER.debug("No document to evaluate xpath {} against", xpath);
+            return false;
+        }
 
         try {
-            return (Boolean) evaluator.evaluate(xpath, XPathConstants.BOOLEAN);
-
+            synchronized (document) {
+                return (Boolean) XPathExpressionCache.evaluate(xpath, document,
+                        XPathConstants.BOOLEAN);
+            }
         } catch (XPathExpressionException e) {
             LOGGER.error("Unable to evaluate xpath", e);
         }
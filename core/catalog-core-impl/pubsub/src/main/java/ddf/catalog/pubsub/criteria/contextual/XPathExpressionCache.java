@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.criteria.contextual;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Node;
+
+import ddf.util.XPathCache;
+
+/**
+ * Compiles and evaluates the XPath expressions of the subscriptions. Compiled expressions and the
+ * {@link XPath} compiling them cannot be used by several threads at once, so each thread keeps its
+ * own, with the expressions it evaluated most recently in a bounded least recently used cache.
+ * Unlike {@link XPathCache}, no expression is shared by several threads and the cache does not
+ * grow with the number of distinct expressions.
+ */
+public final class XPathExpressionCache {
+
+    /** Maximum number of compiled expressions kept by each thread. */
+    public static final int MAX_EXPRESSIONS = 256;
+
+    private static final ThreadLocal<XPathExpressionCache> CACHES =
+            new ThreadLocal<XPathExpressionCache>() {
+                @Override
+                protected XPathExpressionCache initialValue() {
+                    return new XPathExpressionCache();
+                }
+            };
+
+    private final XPath xpath;
+
+    private final Map<String, XPathExpression> expressions =
+            new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                    return size() > MAX_EXPRESSIONS;
+                }
+            };
+
+    private XPathExpressionCache() {
+        // the XPath implementation is loaded from the class loader of this bundle
+        Thread thread = Thread.currentThread();
+        ClassLoader loader = thread.getContextClassLoader();
+        thread.setContextClassLoader(XPathExpressionCache.class.getClassLoader());
+
+        try {
+            xpath = XPathFactory.newInstance().newXPath();
+        } finally {
+            thread.setContextClassLoader(loader);
+        }
+        xpath.setNamespaceContext(XPathCache.getNamespaceResolver());
+    }
+
+    /**
+     * Evaluates an XPath expression, compiling it the first time the current thread evaluates it.
+     * The DOM does not support concurrent reads, so callers sharing a node with other threads must
+     * synchronize on its document.
+     * 
+     * @param expression
+     *            the XPath expression
+     * @param node
+     *            the node the expression is evaluated on
+     * @param returnType
+     *            one of the {@link javax.xml.xpath.XPathConstants} types
+     * @return the result of the expression
+     * @throws XPathExpressionException
+     *             if the expression cannot be compiled or evaluated
+     */
+    public static Object evaluate(String expression, Node node, QName returnType)
+        throws XPathExpressionException {
+        XPathExpression compiledExpression = CACHES.get().getCompiledExpression(expression);
+
+        Thread thread = Thread.currentThread();
+        ClassLoader loader = thread.getContextClassLoader();
+        thread.setContextClassLoader(XPathExpressionCache.class.getClassLoader());
+
+        try {
+            return compiledExpression.evaluate(node, returnType);
+        } finally {
+            thread.setContextClassLoader(loader);
+        }
+    }
+
+    private XPathExpression getCompiledExpression(String expression)
+        throws XPathExpressionException {
+        XPathExpression compiledExpression = expressions.get(expression);
+        if (compiledExpression == null) {
+            compiledExpression = xpath.compile(expression);
+            expressions.put(expression, compiledExpression);
+        }
+        return compiledExpression;
+    }
+}
@@ -33,6 +33,8 @@
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import com.vividsolutions.jts.operation.distance.DistanceOp;
 
 import ddf.catalog.pubsub.criteria.geospatial.SpatialOperator;
@@ -86,6 +88,74 @@ private static boolean overlapsWithGeometryCollection(Geometry criteria, Geometr
         return false;
     }
 
+    // Same as containsWithGeometryCollection, with the components of criteria prepared
+    private static boolean containsWithGeometryCollection(PreparedGeometry[] criteria,
+            Geometry input) {
+        for (int whichInput = 0; whichInput < input.getNumGeometries(); ++whichInput) {
+            boolean thisInputOk = false;
+            for (PreparedGeometry criteriaComponent : criteria) {
+                if (criteriaComponent.contains(input.getGeometryN(whichInput))) {
+                    thisInputOk = true;
+                    break;
+                }
+            }
+            if (!thisInputOk) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same as overlapsWithGeometryCollection, with the components of criteria prepared: a
+    // component intersects input if it intersects any component of input
+    private static boolean overlapsWithGeometryCollection(PreparedGeometry[] criteria,
+            Geometry input) {
+        for (PreparedGeometry criteriaComponent : criteria) {
+            if (criteriaComponent.intersects(input)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prepares the components of a criteria geometry, for the criteria to be evaluated many times
+     * by {@link #evaluate(PreparedGeometry[], String, Geometry, double)}. The prepared geometries
+     * build their indexes lazily and are not thread-safe, so they must not be shared by threads.
+     */
+    public static PreparedGeometry[] prepare(Geometry criteria) {
+        PreparedGeometry[] prepared = new PreparedGeometry[criteria.getNumGeometries()];
+        for (int i = 0; i < prepared.length; i++) {
+            prepared[i] = PreparedGeometryFactory.prepare(criteria.getGeometryN(i));
+        }
+        return prepared;
+    }
+
+    /**
+     * Evaluates an input geometry against criteria prepared by {@link #prepare(Geometry)}, with
+     * the same results as {@link #evaluate(GeospatialEvaluationCriteria)}.
+     */
+    public static boolean evaluate(PreparedGeometry[] criteria, String operation, Geometry input,
+            double distance) {
+        if (distance != 0.0) {
+            for (PreparedGeometry criteriaComponent : criteria) {
+                if (DistanceOp.distance(input, criteriaComponent.getGeometry()) <= distance) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        switch (SpatialOperator.valueOf(operation.toUpperCase())) {
+        case CONTAINS:
+            return containsWithGeometryCollection(criteria, input);
+        case OVERLAPS:
+            return overlapsWithGeometryCollection(criteria, input);
+        default:
+            return false;
+        }
+    }
+
     public static boolean evaluate(GeospatialEvaluationCriteria gec) {
         String methodName = "evaluate";
         LOGGER.debug("ENTERING: {}", methodName);
@@ -0,0 +1,429 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.event.EventProcessor;
+import ddf.catalog.event.Subscription;
+import ddf.catalog.plugin.PreDeliveryPlugin;
+import ddf.catalog.pubsub.internal.SubscriberQueue.SlowSubscriberPolicy;
+
+/**
+ * Delivers the matched events to the subscribers, through a {@link SubscriberQueue} for each
+ * subscription, on a pool of threads separate from the ones matching the events. A subscriber
+ * slow to accept its deliveries therefore delays neither the matching nor the other subscribers.
+ *
+ * <p>
+ * When the deliveries are persistent, the deliveries not made when the executor shuts down are
+ * kept in the spill directory, and made once the subscription is registered again with the same
+ * ID, after a restart for instance. A subscription that is unregistered drops its deliveries.
+ * </p>
+ */
+public class DeliveryExecutor implements DeliveryExecutorMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeliveryExecutor.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 1000;
+
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 60000;
+
+    private final ConcurrentMap<String, SubscriberQueue> queues =
+            new ConcurrentHashMap<String, SubscriberQueue>();
+
+    private volatile int threads = Runtime.getRuntime().availableProcessors();
+
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private volatile long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+
+    private volatile SlowSubscriberPolicy slowSubscriberPolicy = SlowSubscriberPolicy.DROP_OLDEST;
+
+    private volatile boolean persistentDeliveries;
+
+    private volatile File spillDirectory = new File(System.getProperty("karaf.home", "."),
+            "data" + File.separator + "pubsub" + File.separator + "deliveries");
+
+    private ThreadPoolExecutor executor;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    private volatile boolean stopped;
+
+    private ObjectName objectName;
+
+    /**
+     * Creates the delivery queue of a subscription, replacing the one it may already have. When
+     * the deliveries are persistent, the queue first makes the deliveries kept for the
+     * subscription.
+     *
+     * @return the queue of the deliveries to the subscription
+     */
+    public SubscriberQueue register(String subscriptionId, Subscription subscription,
+            List<PreDeliveryPlugin> preDelivery) {
+        SubscriberQueue queue = new SubscriberQueue(subscriptionId, new DeliveryProcessor(
+                subscription, preDelivery), this);
+        boolean persistent = persistentDeliveries;
+        SubscriberQueue previous = queues.put(subscriptionId, queue);
+        if (previous != null) {
+            previous.close(persistent);
+        }
+        if (stopped) {
+            // the deliveries kept for the subscription are left for the next run
+            if (queues.remove(subscriptionId, queue)) {
+                queue.close(persistent);
+            }
+        } else if (persistent) {
+            queue.recover();
+        }
+        return queue;
+    }
+
+    /**
+     * Removes the delivery queue of a subscription, dropping its pending deliveries.
+     */
+    public void unregister(String subscriptionId) {
+        SubscriberQueue queue = queues.remove(subscriptionId);
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    /**
+     * @return the delivery queue of a subscription, or null if it has none
+     */
+    public SubscriberQueue getQueue(String subscriptionId) {
+        return queues.get(subscriptionId);
+    }
+
+    /**
+     * @param threads
+     *            number of threads delivering the events, or 0 for one thread per processor
+     */
+    public synchronized void setThreads(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (executor != null) {
+            if (this.threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(this.threads);
+                executor.setCorePoolSize(this.threads);
+            } else {
+                executor.setCorePoolSize(this.threads);
+                executor.setMaximumPoolSize(this.threads);
+            }
+        }
+    }
+
+    /**
+     * @param queueCapacity
+     *            number of deliveries waiting for a subscriber before the slow subscriber policy
+     *            applies
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * @param maxRetries
+     *            number of times a failed delivery is retried before being dropped
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /**
+     * @param retryBackoffMillis
+     *            delay before the first retry of a failed delivery, doubled on each retry
+     */
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+    }
+
+    public void setSlowSubscriberPolicy(SlowSubscriberPolicy slowSubscriberPolicy) {
+        this.slowSubscriberPolicy = slowSubscriberPolicy == null ? SlowSubscriberPolicy.DROP_OLDEST
+                : slowSubscriberPolicy;
+    }
+
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @param persistentDeliveries
+     *            whether the deliveries not made on shutdown are kept in the spill directory, to
+     *            be made once their subscription is registered again
+     */
+    public void setPersistentDeliveries(boolean persistentDeliveries) {
+        this.persistentDeliveries = persistentDeliveries;
+    }
+
+    /**
+     * Registers the metrics of this executor with the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            objectName = new ObjectName(EventProcessor.class.getName()
+                    + ":service=delivery-executor");
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                mBeanServer.registerMBean(this, objectName);
+            } catch (InstanceAlreadyExistsException iaee) {
+                LOGGER.info("Re-registering Delivery Executor MBean");
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (MalformedObjectNameException mone) {
+            LOGGER.info("Could not create objectName.", mone);
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean.", e);
+        }
+    }
+
+    /**
+     * Drops the pending deliveries, or keeps them if the deliveries are persistent, stops the
+     * threads and unregisters the metrics. The executor cannot be restarted; the deliveries
+     * queued afterwards are dropped.
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.warn("Exception unregistering MBean: ", e);
+            }
+            objectName = null;
+        }
+
+        int undelivered = getPendingCount();
+        if (undelivered > 0) {
+            LOGGER.info("{} deliveries were not made before stopping{}.", undelivered,
+                    persistentDeliveries ? ", keeping them" : "");
+        }
+        for (String subscriptionId : queues.keySet()) {
+            SubscriberQueue queue = queues.remove(subscriptionId);
+            if (queue != null) {
+                queue.close(persistentDeliveries);
+            }
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+    }
+
+    @Override
+    public int getSubscriberCount() {
+        return queues.size();
+    }
+
+    @Override
+    public int getPendingCount() {
+        int pending = 0;
+        for (SubscriberQueue queue : queues.values()) {
+            pending += queue.getPendingCount();
+        }
+        return pending;
+    }
+
+    @Override
+    public long getMaxLagMillis() {
+        long lag = 0;
+        for (SubscriberQueue queue : queues.values()) {
+            lag = Math.max(lag, queue.getLagMillis());
+        }
+        return lag;
+    }
+
+    @Override
+    public long getFailedCount() {
+        long failed = 0;
+        for (SubscriberQueue queue : queues.values()) {
+            failed += queue.getFailedCount();
+        }
+        return failed;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (SubscriberQueue queue : queues.values()) {
+            dropped += queue.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    @Override
+    public String[] getSubscriberMetrics() {
+        List<String> metrics = new ArrayList<String>(queues.size());
+        for (SubscriberQueue queue : queues.values()) {
+            metrics.add(queue.getSubscriptionId() + ": pending=" + queue.getPendingCount()
+                    + ", lagMillis=" + queue.getLagMillis() + ", delivered="
+                    + queue.getDeliveredCount() + ", retried=" + queue.getRetriedCount()
+                    + ", failed=" + queue.getFailedCount() + ", dropped="
+                    + queue.getDroppedCount());
+        }
+        return metrics.toArray(new String[metrics.size()]);
+    }
+
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    SlowSubscriberPolicy getSlowSubscriberPolicy() {
+        return slowSubscriberPolicy;
+    }
+
+    File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @return the delay before a retry of a failed delivery, doubled on each retry up to a minute
+     */
+    long getRetryDelayMillis(int retry) {
+        long delay = retryBackoffMillis;
+        for (int i = 1; i < retry && delay < MAX_RETRY_BACKOFF_MILLIS; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_BACKOFF_MILLIS);
+    }
+
+    /**
+     * Runs the deliveries of a queue on one of the threads.
+     */
+    void execute(SubscriberQueue queue) {
+        ThreadPoolExecutor current = getExecutor();
+        try {
+            if (current != null) {
+                current.execute(queue);
+                return;
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.trace("Delivery executor rejected the queue.", e);
+        }
+        LOGGER.debug("Delivery is stopped, not delivering to subscription {}.",
+                queue.getSubscriptionId());
+        queue.unschedule();
+    }
+
+    /**
+     * Resumes the deliveries of a queue after a delay.
+     *
+     * @param wait
+     *            the wait of the queue ending after the delay
+     */
+    void schedule(final SubscriberQueue queue, long delayMillis, final long wait) {
+        ScheduledThreadPoolExecutor current = getScheduler();
+        try {
+            if (current != null) {
+                current.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        queue.resume(wait);
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.trace("Delivery scheduler rejected the queue.", e);
+        }
+        LOGGER.debug("Delivery is stopped, not resuming the deliveries to subscription {}.",
+                queue.getSubscriptionId());
+        queue.unschedule();
+    }
+
+    /**
+     * @return the delivery threads, or null once the executor is shut down
+     */
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null && !stopped) {
+            // each queue is submitted at most once at a time, so the work queue stays bounded
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DeliveryThreadFactory(
+                            "pubsub-delivery-"));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (scheduler == null && !stopped) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new DeliveryThreadFactory(
+                    "pubsub-delivery-timer-"));
+        }
+        return scheduler;
+    }
+
+    private static class DeliveryThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        private final String prefix;
+
+        DeliveryThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+/**
+ * Metrics of the delivery of matched events to the subscribers.
+ */
+public interface DeliveryExecutorMBean {
+
+    /**
+     * @return the number of subscriptions with a delivery queue
+     */
+    int getSubscriberCount();
+
+    /**
+     * @return the number of deliveries waiting, over all the subscribers
+     */
+    int getPendingCount();
+
+    /**
+     * @return the time in milliseconds the oldest pending delivery has been waiting, over all the
+     *         subscribers
+     */
+    long getMaxLagMillis();
+
+    /**
+     * @return the number of deliveries dropped because they still failed after the last retry,
+     *         over all the subscribers
+     */
+    long getFailedCount();
+
+    /**
+     * @return the number of deliveries dropped because a queue was full, over all the subscribers
+     */
+    long getDroppedCount();
+
+    /**
+     * @return for each subscriber, its subscription ID followed by its pending count, lag,
+     *         delivered, retried, failed and dropped counts
+     */
+    String[] getSubscriberMetrics();
+}
@@ -15,6 +15,7 @@
 
 package ddf.catalog.pubsub.internal;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.osgi.service.event.Event;
@@ -22,6 +23,8 @@
 import org.slf4j.LoggerFactory;
 
 import ddf.catalog.data.Metacard;
+import ddf.catalog.event.BatchDeliveryMethod;
+import ddf.catalog.event.DeliveryMethod;
 import ddf.catalog.event.Subscription;
 import ddf.catalog.operation.Update;
 import ddf.catalog.operation.impl.UpdateImpl;
@@ -42,12 +45,25 @@ public DeliveryProcessor(Subscription subscription, List<PreDeliveryPlugin> preD
     }
 
     public void process(Event event) {
+        process((Metacard) event.getProperty(PubSubConstants.HEADER_ENTRY_KEY), event
+                .getProperty(PubSubConstants.HEADER_OPERATION_KEY).toString());
+    }
+
+    /**
+     * Runs the pre-delivery plugins on an entry and delivers it to the subscription. A
+     * {@link RuntimeException} thrown by the delivery method is not caught, so that the caller may
+     * retry the delivery.
+     *
+     * @param entry
+     *            the created, updated or deleted entry
+     * @param operation
+     *            one of {@link PubSubConstants#CREATE}, {@link PubSubConstants#UPDATE} or
+     *            {@link PubSubConstants#DELETE}
+     */
+    public void process(Metacard entry, String operation) {
         String methodName = "process";
         LOGGER.debug("ENTERING: {}", methodName);
 
-        Metacard entry = (Metacard) event.getProperty(PubSubConstants.HEADER_ENTRY_KEY);
-        String operation = event.getProperty(PubSubConstants.HEADER_OPERATION_KEY).toString();
-
         LOGGER.debug("Delivering catalog entry.");
         if (subscription != null) {
             if (entry != null) {
@@ -113,4 +129,117 @@ public void process(Event event) {
         LOGGER.debug("EXITING: {}", methodName);
     }
 
+    /**
+     * @return the delivery method of the subscription if it accepts batches of entries, otherwise
+     *         null
+     */
+    public BatchDeliveryMethod getBatchDeliveryMethod() {
+        DeliveryMethod deliveryMethod = subscription == null ? null : subscription
+                .getDeliveryMethod();
+        return deliveryMethod instanceof BatchDeliveryMethod ? (BatchDeliveryMethod) deliveryMethod
+                : null;
+    }
+
+    /**
+     * Runs the pre-delivery plugins on entries of the same operation and delivers them to the
+     * {@link BatchDeliveryMethod} of the subscription in one call. A {@link RuntimeException}
+     * thrown by the delivery method is not caught, so that the caller may retry the delivery.
+     *
+     * @param entries
+     *            the created, updated or deleted entries, in the order of their events
+     * @param operation
+     *            one of {@link PubSubConstants#CREATE}, {@link PubSubConstants#UPDATE} or
+     *            {@link PubSubConstants#DELETE}
+     */
+    public void process(List<Metacard> entries, String operation) {
+        deliver(preDeliver(entries, operation), operation);
+    }
+
+    /**
+     * Runs the pre-delivery plugins on entries of the same operation, once per delivery, so that
+     * a retried delivery does not run them again.
+     *
+     * @return the entries processed by the pre-delivery plugins, without the ones that cannot be
+     *         delivered
+     */
+    public List<Metacard> preDeliver(List<Metacard> entries, String operation) {
+        List<Metacard> processed = new ArrayList<Metacard>(entries.size());
+        for (Metacard entry : entries) {
+            Metacard processedEntry = preDeliver(entry, operation);
+            if (processedEntry != null) {
+                processed.add(processedEntry);
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * Delivers entries already processed by {@link #preDeliver(List, String)}, in one call if the
+     * subscription has a {@link BatchDeliveryMethod}. A {@link RuntimeException} thrown by the
+     * delivery method is not caught, so that the caller may retry the delivery.
+     */
+    public void deliver(List<Metacard> entries, String operation) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (subscription == null) {
+            LOGGER.warn("Could not deliver hit for subscription. Subscription is null.");
+            return;
+        }
+
+        BatchDeliveryMethod deliveryMethod = getBatchDeliveryMethod();
+        if (deliveryMethod == null) {
+            DeliveryMethod singleDeliveryMethod = subscription.getDeliveryMethod();
+            for (Metacard entry : entries) {
+                if (operation.equalsIgnoreCase(PubSubConstants.CREATE)) {
+                    singleDeliveryMethod.created(entry);
+                } else if (operation.equalsIgnoreCase(PubSubConstants.UPDATE)) {
+                    singleDeliveryMethod.updatedHit(entry, entry);
+                } else if (operation.equalsIgnoreCase(PubSubConstants.DELETE)) {
+                    singleDeliveryMethod.deleted(entry);
+                } else {
+                    LOGGER.warn("Could not deliver hit for subscription.");
+                }
+            }
+            return;
+        }
+
+        LOGGER.debug("Delivering a batch of {} catalog entries.", entries.size());
+        if (operation.equalsIgnoreCase(PubSubConstants.CREATE)) {
+            deliveryMethod.created(entries);
+        } else if (operation.equalsIgnoreCase(PubSubConstants.UPDATE)) {
+            List<Update> updates = new ArrayList<Update>(entries.size());
+            for (Metacard entry : entries) {
+                updates.add(new UpdateImpl(entry, entry));
+            }
+            deliveryMethod.updatedHit(updates);
+        } else if (operation.equalsIgnoreCase(PubSubConstants.DELETE)) {
+            deliveryMethod.deleted(entries);
+        } else {
+            LOGGER.warn("Could not deliver hits for subscription.");
+        }
+    }
+
+    /**
+     * @return the entry processed by the pre-delivery plugins, or null if one of them determined
+     *         it cannot be delivered
+     */
+    private Metacard preDeliver(Metacard entry, String operation) {
+        try {
+            for (PreDeliveryPlugin plugin : preDelivery) {
+                if (operation.equalsIgnoreCase(PubSubConstants.UPDATE)) {
+                    entry = plugin.processUpdateHit(new UpdateImpl(entry, null)).getNewMetacard();
+                } else {
+                    entry = plugin.processCreate(entry);
+                }
+            }
+        } catch (PluginExecutionException e) {
+            LOGGER.debug("Plugin had exception during execution - still delivering the entry", e);
+        } catch (StopProcessingException e) {
+            LOGGER.error("Pre-delivery plugin determined entry cannot be delivered", e);
+            return null;
+        }
+        return entry;
+    }
+
 }
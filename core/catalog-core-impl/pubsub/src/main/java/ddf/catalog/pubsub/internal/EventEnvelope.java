@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.geotools.geometry.jts.WKTReader2;
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.pubsub.EventProcessorImpl.DateType;
+import ddf.catalog.pubsub.criteria.contenttype.ContentTypeEvaluator;
+import ddf.catalog.pubsub.criteria.contextual.ContextualEvaluator;
+import ddf.catalog.pubsub.predicate.TemporalPredicate;
+
+/**
+ * What the subscription predicates evaluate about the entry of a published event, worked out once
+ * for the event and shared by all of its evaluations. The envelope is created with the event and
+ * kept in its properties. The geometry, the dates, the resource URI and the DOM and terms of the
+ * metadata are computed on first use, so that an event only pays for what its subscriptions
+ * evaluate, and never change once computed; an envelope may be used by several threads.
+ */
+public final class EventEnvelope {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventEnvelope.class);
+
+    private final String operation;
+
+    private final Metacard entry;
+
+    private final String entryId;
+
+    private final String resourceUriText;
+
+    private final String contentTypeName;
+
+    private final String contentTypeVersion;
+
+    private final Map<String, Object> contextualMap;
+
+    private final boolean deletedEntry;
+
+    private volatile boolean geometryParsed;
+
+    private Geometry geometry;
+
+    private volatile boolean resourceUriParsed;
+
+    private URI resourceUri;
+
+    private volatile Map<DateType, Date> dates;
+
+    /**
+     * @param properties
+     *            the properties of the event, keyed by the {@link PubSubConstants} headers
+     */
+    @SuppressWarnings("unchecked")
+    public EventEnvelope(Map<String, ?> properties) {
+        operation = toString(properties.get(PubSubConstants.HEADER_OPERATION_KEY));
+        entry = (Metacard) properties.get(PubSubConstants.HEADER_ENTRY_KEY);
+        entryId = toString(properties.get(PubSubConstants.HEADER_ID_KEY));
+        resourceUriText = toString(properties.get(PubSubConstants.HEADER_DAD_KEY));
+
+        String contentType = toString(properties.get(PubSubConstants.HEADER_CONTENT_TYPE_KEY));
+        contentTypeName = contentType == null ? null : ContentTypeEvaluator
+                .getInputType(contentType);
+        contentTypeVersion = contentType == null ? null : ContentTypeEvaluator
+                .getInputVersion(contentType);
+
+        contextualMap = (Map<String, Object>) properties
+                .get(PubSubConstants.HEADER_CONTEXTUAL_KEY);
+        deletedEntry = contextualMap != null && PubSubConstants.DELETE.equals(operation)
+                && PubSubConstants.METADATA_DELETED.equals(contextualMap.get("METADATA"));
+
+        Object input = properties.get(PubSubConstants.HEADER_GEOSPATIAL_KEY);
+        if (input instanceof Geometry) {
+            geometry = (Geometry) input;
+            geometryParsed = true;
+        }
+    }
+
+    /**
+     * @return the envelope kept in the properties of the event, or a new one built from its
+     *         properties if it has none
+     */
+    public static EventEnvelope of(Event event) {
+        Object envelope = event.getProperty(PubSubConstants.HEADER_ENVELOPE_KEY);
+        if (envelope instanceof EventEnvelope) {
+            return (EventEnvelope) envelope;
+        }
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (String name : event.getPropertyNames()) {
+            properties.put(name, event.getProperty(name));
+        }
+        return new EventEnvelope(properties);
+    }
+
+    /**
+     * @return one of the {@link PubSubConstants} operations
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public Metacard getEntry() {
+        return entry;
+    }
+
+    public String getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * @return the type of the content of the entry, "null" if it is blank, or null if the event
+     *         has no content type
+     */
+    public String getContentTypeName() {
+        return contentTypeName;
+    }
+
+    /**
+     * @return the version of the content of the entry, "null" if it is blank, or null if the event
+     *         has no content type
+     */
+    public String getContentTypeVersion() {
+        return contentTypeVersion;
+    }
+
+    /**
+     * @return the contextual properties of the event, or null if the entry has no metadata
+     */
+    public Map<String, Object> getContextualMap() {
+        return contextualMap;
+    }
+
+    /**
+     * @return the metadata of the entry, or null if it has none
+     */
+    public String getMetadata() {
+        return contextualMap == null ? null : (String) contextualMap.get("METADATA");
+    }
+
+    /**
+     * @return true if the event deletes an entry without sending its metadata, in which case the
+     *         predicates cannot filter it and let it through to every subscriber
+     */
+    public boolean isDeletedEntry() {
+        return deletedEntry;
+    }
+
+    /**
+     * @return the location of the entry, or null if it has none or it is not valid WKT
+     */
+    public Geometry getGeometry() {
+        if (!geometryParsed) {
+            synchronized (this) {
+                if (!geometryParsed) {
+                    geometry = parseLocation();
+                    geometryParsed = true;
+                }
+            }
+        }
+        return geometry;
+    }
+
+    /**
+     * @return the URI of the product of the entry, or null if it has none or it is not valid
+     */
+    public URI getResourceUri() {
+        if (!resourceUriParsed) {
+            synchronized (this) {
+                if (!resourceUriParsed) {
+                    resourceUri = parseResourceUri();
+                    resourceUriParsed = true;
+                }
+            }
+        }
+        return resourceUri;
+    }
+
+    /**
+     * @return the date of the entry of the given type, or null if it has none
+     */
+    public Date getDate(DateType type) {
+        Map<DateType, Date> entryDates = dates;
+        if (entryDates == null) {
+            entryDates = new EnumMap<DateType, Date>(DateType.class);
+            if (entry != null) {
+                for (DateType dateType : DateType.values()) {
+                    entryDates.put(dateType, TemporalPredicate.getDate(entry, dateType));
+                }
+            }
+            dates = entryDates;
+        }
+        return entryDates.get(type);
+    }
+
+    /**
+     * @return the metadata of the entry parsed once for the event, or null if it has none or it
+     *         could not be parsed; threads using the document must synchronize on it. The XPath
+     *         and contextual predicates evaluate the same document, without its default namespace.
+     *
+     * @see ContextualEvaluator#getDocument(Map)
+     */
+    public Document getDocument() {
+        return contextualMap == null ? null : ContextualEvaluator.getDocument(contextualMap);
+    }
+
+    /**
+     * @param textPaths
+     *            the XPath selectors of the indexed text, or null for the default index
+     * @return the index of the metadata of the entry, built once for the event, or null if the
+     *         entry has no metadata
+     */
+    public MemoryIndex getIndex(List<String> textPaths) throws IOException {
+        return contextualMap == null ? null : ContextualEvaluator.getIndex(contextualMap,
+                textPaths);
+    }
+
+    /**
+     * @param textPaths
+     *            the XPath selectors of the indexed text, or null for the default index
+     * @return the terms of the index of the metadata of the entry, an empty set if the entry has no
+     *         metadata, or null if they are not known
+     */
+    public Set<Term> getTerms(List<String> textPaths) throws IOException {
+        if (contextualMap == null) {
+            return Collections.emptySet();
+        }
+        return ContextualEvaluator.getTerms(contextualMap, textPaths);
+    }
+
+    private Geometry parseLocation() {
+        String location = entry == null ? null : entry.getLocation();
+        if (location == null) {
+            return null;
+        }
+        try {
+            return new WKTReader2().read(location);
+        } catch (ParseException e) {
+            LOGGER.debug("Unable to parse location of metacard {}", entryId, e);
+            return null;
+        }
+    }
+
+    private URI parseResourceUri() {
+        if (resourceUriText == null) {
+            return null;
+        }
+        try {
+            return new URI(resourceUriText);
+        } catch (URISyntaxException e) {
+            LOGGER.debug("Unable to parse resource URI of metacard {}", entryId, e);
+            return null;
+        }
+    }
+
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
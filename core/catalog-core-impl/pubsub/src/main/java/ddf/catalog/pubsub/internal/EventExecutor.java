@@ -0,0 +1,512 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.event.EventProcessor;
+
+/**
+ * Processes the catalog events on a fixed number of threads, with a bounded queue. When the queue
+ * is full, an event is handled according to the {@link OverflowPolicy}.
+ * 
+ * <p>
+ * The number of threads changes in place. The queue capacity, overflow policy and spill directory
+ * are applied together by {@link #update()}, which replaces the queue once and moves the queued
+ * and spilled events over, so no event is lost while the settings change.
+ * </p>
+ */
+public class EventExecutor implements EventExecutorMBean {
+
+    /**
+     * What to do with an event that does not fit in the queue.
+     */
+    public static enum OverflowPolicy {
+        /**
+         * Wait for room in the queue, up to the block timeout, then drop the event. The timeout
+         * must stay below the time the EventAdmin allows its handlers before blacklisting them.
+         */
+        BLOCK,
+
+        /**
+         * Drop the event.
+         */
+        DROP,
+
+        /**
+         * Write the event to a file on disk, from which it is read back once the queue has room.
+         */
+        SPILL
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventExecutor.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 4000;
+
+    private static final String SPILL_FILE_NAME = "pubsub-events.spill";
+
+    private final EventHandler dispatcher;
+
+    private final AtomicLong processedCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    private volatile long blockTimeoutMillis = DEFAULT_BLOCK_TIMEOUT_MILLIS;
+
+    private File spillDirectory = new File(System.getProperty("karaf.home", "."), "data"
+            + File.separator + "pubsub");
+
+    // settings the running executor and spill were built with
+    private int runningQueueCapacity;
+
+    private volatile OverflowPolicy runningOverflowPolicy;
+
+    private File runningSpillDirectory;
+
+    private volatile ThreadPoolExecutor executor;
+
+    private volatile EventSpill spill;
+
+    private boolean stopped;
+
+    private ObjectName objectName;
+
+    /**
+     * @param dispatcher
+     *            handler of the published events, delivering them to the subscriptions
+     */
+    public EventExecutor(EventHandler dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Queues an event for processing.
+     *
+     * @param entry
+     *            the created, updated or deleted metacard
+     * @param topic
+     *            one of the {@link EventProcessor} topics
+     */
+    public void execute(Metacard entry, String topic) {
+        PubSubTask task = new PubSubTask(entry, topic, dispatcher);
+        ThreadPoolExecutor current = getExecutor();
+        EventSpill currentSpill = spill;
+        if (currentSpill != null && currentSpill.size() > 0) {
+            // keep the events in order while older ones are still spilled
+            spill(currentSpill, task);
+            refill();
+        } else if (current != null) {
+            current.execute(task);
+        } else {
+            rejectedCount.incrementAndGet();
+            LOGGER.debug("Event processing is stopped, dropping the event of metacard {}.",
+                    entry.getId());
+        }
+    }
+
+    /**
+     * @param threads
+     *            number of threads processing the events, or 0 for one thread per processor
+     */
+    public synchronized void setThreads(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor current = executor;
+        if (current != null) {
+            if (this.threads > current.getMaximumPoolSize()) {
+                current.setMaximumPoolSize(this.threads);
+                current.setCorePoolSize(this.threads);
+            } else {
+                current.setCorePoolSize(this.threads);
+                current.setMaximumPoolSize(this.threads);
+            }
+        }
+    }
+
+    /**
+     * Takes effect when the executor starts, or on the next {@link #update()}.
+     */
+    public synchronized void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Takes effect when the executor starts, or on the next {@link #update()}.
+     */
+    public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+    }
+
+    public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    /**
+     * Takes effect when the executor starts, or on the next {@link #update()}.
+     */
+    public synchronized void setSpillDirectory(File spillDirectory) {
+        if (spillDirectory != null) {
+            this.spillDirectory = spillDirectory;
+        }
+    }
+
+    /**
+     * Applies the queue capacity, overflow policy and spill directory set since the executor
+     * started. When the queue capacity changed, the events are handed to a new executor and the
+     * queued ones moved to its queue; the old threads finish the events they are processing. The
+     * spilled events are kept, and moved to the new spill directory if it changed.
+     */
+    public synchronized void update() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            return;
+        }
+
+        if (!spillDirectory.equals(runningSpillDirectory)
+                || overflowPolicy != runningOverflowPolicy) {
+            moveSpill();
+        }
+        runningOverflowPolicy = overflowPolicy;
+
+        if (queueCapacity != runningQueueCapacity) {
+            ThreadPoolExecutor replacement = newExecutor();
+            executor = replacement;
+            current.shutdown();
+            List<Runnable> queued = new ArrayList<>();
+            current.getQueue().drainTo(queued);
+            LOGGER.debug("Moving {} queued events to a queue of {} events.", queued.size(),
+                    queueCapacity);
+            for (Runnable task : queued) {
+                replacement.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Registers the metrics of this executor with the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            objectName = new ObjectName(EventProcessor.class.getName()
+                    + ":service=event-executor");
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                mBeanServer.registerMBean(this, objectName);
+            } catch (InstanceAlreadyExistsException iaee) {
+                LOGGER.info("Re-registering Event Executor MBean");
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (MalformedObjectNameException mone) {
+            LOGGER.info("Could not create objectName.", mone);
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean.", e);
+        }
+    }
+
+    /**
+     * Stops the threads, waiting a few seconds for the queued events, and unregisters the metrics.
+     */
+    public synchronized void shutdown() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.warn("Exception unregistering MBean: ", e);
+            }
+            objectName = null;
+        }
+        stopped = true;
+        stop(executor, spill);
+        executor = null;
+        spill = null;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    @Override
+    public int getSpilledCount() {
+        EventSpill currentSpill = spill;
+        return currentSpill == null ? 0 : currentSpill.size();
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public double getAverageLatencyMillis() {
+        long processed = processedCount.get();
+        return processed == 0 ? 0 : totalLatencyNanos.get() / 1000000.0 / processed;
+    }
+
+    @Override
+    public long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            synchronized (this) {
+                if (executor == null && !stopped) {
+                    runningOverflowPolicy = overflowPolicy;
+                    runningSpillDirectory = spillDirectory;
+                    spill = overflowPolicy == OverflowPolicy.SPILL ? newSpill() : null;
+                    executor = newExecutor();
+                }
+                current = executor;
+            }
+        }
+        return current;
+    }
+
+    private ThreadPoolExecutor newExecutor() {
+        runningQueueCapacity = queueCapacity;
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new EventThreadFactory(),
+                new OverflowHandler()) {
+            @Override
+            protected void afterExecute(Runnable runnable, Throwable throwable) {
+                recordLatency((PubSubTask) runnable);
+                refill();
+            }
+        };
+    }
+
+    private EventSpill newSpill() {
+        return new EventSpill(new File(spillDirectory, SPILL_FILE_NAME));
+    }
+
+    /**
+     * Replaces the spill after a change of the overflow policy or spill directory, copying the
+     * events it still holds. A spill that is no longer needed is kept until it is empty.
+     */
+    private void moveSpill() {
+        EventSpill oldSpill = spill;
+        boolean sameDirectory = spillDirectory.equals(runningSpillDirectory);
+        runningSpillDirectory = spillDirectory;
+        if (oldSpill != null && sameDirectory) {
+            return;
+        }
+        if (oldSpill == null || oldSpill.size() == 0) {
+            spill = overflowPolicy == OverflowPolicy.SPILL ? newSpill() : null;
+            if (oldSpill != null) {
+                oldSpill.close();
+            }
+            return;
+        }
+
+        EventSpill newSpill = newSpill();
+        synchronized (oldSpill) {
+            while (oldSpill.size() > 0) {
+                try {
+                    newSpill.write(oldSpill.read());
+                } catch (IOException | ClassNotFoundException e) {
+                    rejectedCount.incrementAndGet();
+                    LOGGER.warn("Unable to move a spilled event, dropping it.", e);
+                }
+            }
+            spill = newSpill;
+            oldSpill.close();
+        }
+    }
+
+    private void stop(ThreadPoolExecutor current, EventSpill currentSpill) {
+        if (current == null) {
+            return;
+        }
+        current.shutdown();
+        try {
+            if (!current.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.info("{} queued events were not processed before stopping.", current
+                        .shutdownNow().size());
+            }
+        } catch (InterruptedException e) {
+            current.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (currentSpill != null) {
+            if (currentSpill.size() > 0) {
+                LOGGER.info("{} spilled events were not processed before stopping.",
+                        currentSpill.size());
+            }
+            currentSpill.close();
+        }
+    }
+
+    private void recordLatency(PubSubTask task) {
+        long latency = System.nanoTime() - task.getSubmitted();
+        processedCount.incrementAndGet();
+        totalLatencyNanos.addAndGet(latency);
+        long max = maxLatencyNanos.get();
+        while (latency > max && !maxLatencyNanos.compareAndSet(max, latency)) {
+            max = maxLatencyNanos.get();
+        }
+    }
+
+    private void spill(EventSpill currentSpill, PubSubTask task) {
+        try {
+            currentSpill.write(new SpilledEvent(task.getEntry(), task.getTopic()));
+        } catch (IOException e) {
+            rejectedCount.incrementAndGet();
+            LOGGER.warn("Unable to spill the event of metacard " + task.getEntry().getId()
+                    + ", dropping it.", e);
+        }
+    }
+
+    /**
+     * Moves spilled events back to the queue while it has room.
+     */
+    private void refill() {
+        EventSpill currentSpill = spill;
+        ThreadPoolExecutor current = executor;
+        if (currentSpill == null || current == null || currentSpill.size() == 0) {
+            return;
+        }
+        synchronized (currentSpill) {
+            while (currentSpill.size() > 0 && current.getQueue().remainingCapacity() > 0
+                    && !current.isShutdown()) {
+                try {
+                    SpilledEvent event = (SpilledEvent) currentSpill.read();
+                    current.getQueue().offer(
+                            new PubSubTask(event.entry, event.topic, dispatcher));
+                } catch (IOException | ClassNotFoundException e) {
+                    rejectedCount.incrementAndGet();
+                    LOGGER.warn("Unable to read a spilled event, dropping it.", e);
+                }
+            }
+        }
+    }
+
+    private class OverflowHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor current) {
+            PubSubTask task = (PubSubTask) runnable;
+            if (current.isShutdown()) {
+                ThreadPoolExecutor replacement = executor;
+                if (replacement != null && replacement != current) {
+                    // submitted while update() replaced the executor
+                    replacement.execute(task);
+                    return;
+                }
+                rejectedCount.incrementAndGet();
+                LOGGER.debug("Event processing is stopped, dropping the event of metacard {}.",
+                        task.getEntry().getId());
+                return;
+            }
+
+            EventSpill overflowSpill = spill;
+            switch (runningOverflowPolicy) {
+            case SPILL:
+                if (overflowSpill != null) {
+                    spill(overflowSpill, task);
+                } else {
+                    drop(task);
+                }
+                break;
+            case BLOCK:
+                try {
+                    if (current.getQueue().offer(task, blockTimeoutMillis,
+                            TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                drop(task);
+                break;
+            default:
+                drop(task);
+            }
+        }
+
+        private void drop(PubSubTask task) {
+            rejectedCount.incrementAndGet();
+            LOGGER.debug("Event queue is full, dropping the event of metacard {}.", task
+                    .getEntry().getId());
+        }
+    }
+
+    private static class SpilledEvent implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Metacard entry;
+
+        private final String topic;
+
+        SpilledEvent(Metacard entry, String topic) {
+            this.entry = entry;
+            this.topic = topic;
+        }
+    }
+
+    private static class EventThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pubsub-event-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
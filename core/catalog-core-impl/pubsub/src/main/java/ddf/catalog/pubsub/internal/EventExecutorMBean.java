@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+/**
+ * Metrics of the processing of catalog events for the subscriptions.
+ */
+public interface EventExecutorMBean {
+
+    /**
+     * @return the number of events waiting in the queue
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of events waiting in the spill file
+     */
+    int getSpilledCount();
+
+    /**
+     * @return the number of events processed since the processor started
+     */
+    long getProcessedCount();
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    long getRejectedCount();
+
+    /**
+     * @return the average time in milliseconds from the reception of an event to the end of its
+     *         processing
+     */
+    double getAverageLatencyMillis();
+
+    /**
+     * @return the longest time in milliseconds from the reception of an event to the end of its
+     *         processing
+     */
+    long getMaxLatencyMillis();
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * First-in first-out file of the events that did not fit in the queue of the
+ * {@link EventExecutor}, or of the deliveries that did not fit in a {@link SubscriberQueue}. The
+ * file is emptied whenever every event has been read back. Once closed, the file is not written
+ * again.
+ *
+ * <p>
+ * Events still in the file when it is closed are discarded, unless it is closed with
+ * {@link #close(List)}, which keeps them behind the given ones for a spill of the same file to
+ * {@link #recover()}, after a restart for instance. Opening the file without recovering it
+ * discards what it holds.
+ * </p>
+ */
+class EventSpill {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventSpill.class);
+
+    private final File file;
+
+    private RandomAccessFile data;
+
+    private long readPosition;
+
+    // written under the lock, read without it so that a queue may check it under its own lock
+    private volatile int size;
+
+    private boolean closed;
+
+    EventSpill(File file) {
+        this.file = file;
+    }
+
+    synchronized void write(Serializable event) throws IOException {
+        if (closed) {
+            throw new IOException("The event spill file " + file.getAbsolutePath()
+                    + " is closed.");
+        }
+
+        byte[] bytes = serialize(event);
+        open(false);
+        data.seek(data.length());
+        data.writeInt(bytes.length);
+        data.write(bytes);
+        size++;
+    }
+
+    /**
+     * Opens the file kept by {@link #close(List)}, if any, to read back its events. A record
+     * only partly written ends the file: it is dropped.
+     *
+     * @return the number of events to read back
+     */
+    synchronized int recover() throws IOException {
+        if (closed) {
+            throw new IOException("The event spill file " + file.getAbsolutePath()
+                    + " is closed.");
+        }
+        if (data != null || !file.isFile()) {
+            return size;
+        }
+
+        open(true);
+        long length = data.length();
+        long position = 0;
+        int count = 0;
+        while (position + 4 <= length) {
+            data.seek(position);
+            int recordLength = data.readInt();
+            if (recordLength < 0 || recordLength > length - position - 4) {
+                break;
+            }
+            position += 4 + recordLength;
+            count++;
+        }
+        if (position < length) {
+            LOGGER.warn("Dropping an incomplete event at the end of the spill file {}.",
+                    file.getAbsolutePath());
+            data.setLength(position);
+        }
+        size = count;
+        readPosition = 0;
+        return size;
+    }
+
+    /**
+     * @return the oldest event of the file, or null if it is empty
+     */
+    synchronized Serializable read() throws IOException, ClassNotFoundException {
+        if (size == 0) {
+            return null;
+        }
+
+        data.seek(readPosition);
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        readPosition = data.getFilePointer();
+        size--;
+        if (size == 0) {
+            data.setLength(0);
+            readPosition = 0;
+        }
+
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        return (Serializable) input.readObject();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Closes the file, keeping the given events followed by the ones not read yet, to be read
+     * back by {@link #recover()}. The events that cannot be written are dropped, as well as the
+     * whole file if it cannot be replaced.
+     *
+     * @return the number of events kept
+     */
+    synchronized int close(List<? extends Serializable> unread) {
+        if (closed) {
+            return 0;
+        }
+
+        File kept = new File(file.getPath() + ".tmp");
+        int count = 0;
+        try {
+            // events kept earlier and not recovered are kept behind the given ones
+            recover();
+            RandomAccessFile output = new RandomAccessFile(kept, "rw");
+            try {
+                output.setLength(0);
+                for (Serializable event : unread) {
+                    try {
+                        byte[] bytes = serialize(event);
+                        output.writeInt(bytes.length);
+                        output.write(bytes);
+                        count++;
+                    } catch (NotSerializableException e) {
+                        LOGGER.debug("Unable to keep an unread event, dropping it.", e);
+                    }
+                }
+                if (data != null && size > 0) {
+                    data.seek(readPosition);
+                    byte[] buffer = new byte[8192];
+                    for (int read = data.read(buffer); read > 0; read = data.read(buffer)) {
+                        output.write(buffer, 0, read);
+                    }
+                    count += size;
+                }
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+
+            if (count > 0) {
+                closeFile();
+                Files.move(kept.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                size = 0;
+                readPosition = 0;
+                closed = true;
+                return count;
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to keep the unread events in the spill file "
+                    + file.getAbsolutePath() + ", dropping them.", e);
+            count = 0;
+        }
+        kept.delete();
+        close();
+        return count;
+    }
+
+    synchronized void close() {
+        closeFile();
+        size = 0;
+        readPosition = 0;
+        closed = true;
+        file.delete();
+    }
+
+    private void closeFile() {
+        if (data != null) {
+            try {
+                data.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close the event spill file.", e);
+            }
+            data = null;
+        }
+    }
+
+    /**
+     * @param keep
+     *            whether to keep the events the file already holds, or to discard them
+     */
+    private void open(boolean keep) throws IOException {
+        if (data == null) {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create the event spill directory "
+                        + directory.getAbsolutePath());
+            }
+            data = new RandomAccessFile(file, "rw");
+            if (!keep) {
+                data.setLength(0);
+            }
+        }
+    }
+
+    private static byte[] serialize(Serializable event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(event);
+        output.close();
+        return bytes.toByteArray();
+    }
+}
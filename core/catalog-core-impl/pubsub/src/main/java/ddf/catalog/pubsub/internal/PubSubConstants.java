@@ -36,6 +36,8 @@ public class PubSubConstants {
 
     public static final String HEADER_DAD_KEY = "dad";
 
+    public static final String HEADER_ENVELOPE_KEY = "envelope";
+
     public static final String CREATE = "CREATE";
 
     public static final String DELETE = "DELETE";
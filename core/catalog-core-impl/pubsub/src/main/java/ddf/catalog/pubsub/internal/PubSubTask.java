@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.event.EventProcessor;
+import ddf.catalog.pubsub.EventProcessorImpl;
+
+/**
+ * Publishes a created, updated or deleted entry to the subscriptions, through the handler
+ * dispatching the published events. Run by the {@link EventExecutor}.
+ */
+public class PubSubTask implements Runnable {
+    private final Metacard entry;
+
+    private final String topic;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PubSubTask.class);
+
+    private final EventHandler dispatcher;
+
+    private final long submitted = System.nanoTime();
+
+    public PubSubTask(Metacard entry, String topic, EventHandler dispatcher) {
+        this.entry = entry;
+        this.topic = topic;
+        this.dispatcher = dispatcher;
+    }
+
+    public Metacard getEntry() {
+        return entry;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which this task was created
+     */
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public void run() {
+        LOGGER.debug("Processing entry event - topic = {}", topic);
+
+        Event event = null;
+        if (topic.equals(EventProcessor.EVENTS_TOPIC_CREATED)) {
+            event = EventProcessorImpl.createEvent(entry, PubSubConstants.CREATE);
+        } else if (topic.equals(EventProcessor.EVENTS_TOPIC_UPDATED)) {
+            event = EventProcessorImpl.createEvent(entry, PubSubConstants.UPDATE);
+        } else if (topic.equals(EventProcessor.EVENTS_TOPIC_DELETED)) {
+            event = EventProcessorImpl.createEvent(entry, PubSubConstants.DELETE);
+        }
+
+        if (event != null) {
+            dispatcher.handleEvent(event);
+        }
+    }
+
+}
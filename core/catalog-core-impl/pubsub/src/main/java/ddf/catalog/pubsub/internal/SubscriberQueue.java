@@ -0,0 +1,647 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.event.BatchDeliveryMethod;
+
+/**
+ * The deliveries pending for one subscription. They are made in order, by at most one thread of
+ * the {@link DeliveryExecutor} at a time, so that a slow subscriber only holds up its own
+ * deliveries. A failed delivery is retried with an exponential backoff, up to the maximum number
+ * of retries, before being dropped. When the queue is full, a delivery is handled according to
+ * the {@link SlowSubscriberPolicy}. If the subscription has a {@link BatchDeliveryMethod}, the
+ * deliveries are collected into batches of consecutive deliveries of the same operation.
+ *
+ * <p>
+ * A queue may be closed keeping its undelivered deliveries in its spill file, from which the next
+ * queue of the subscription recovers them, even after a restart, and makes them before the ones
+ * offered to it. The deliveries being made when the queue is closed are kept as well, so they
+ * may be made twice.
+ * </p>
+ */
+public class SubscriberQueue implements Runnable {
+
+    /**
+     * What to do with a delivery that does not fit in the queue of a subscriber.
+     */
+    public static enum SlowSubscriberPolicy {
+        /**
+         * Drop the oldest delivery waiting in the queue to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drop the new delivery.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Write the delivery to a file on disk, from which it is read back once the queue has
+         * room.
+         */
+        SPILL
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriberQueue.class);
+
+    /**
+     * Deliveries made before the thread is given back to the other subscribers.
+     */
+    private static final int DELIVERIES_PER_RUN = 100;
+
+    private final String subscriptionId;
+
+    private final DeliveryProcessor processor;
+
+    private final DeliveryExecutor executor;
+
+    private final Deque<Delivery> pending = new ArrayDeque<Delivery>();
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    private final AtomicLong retriedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private List<Delivery> current;
+
+    // the entries of the current batch processed by the pre-delivery plugins, kept for its retries
+    private List<Metacard> prepared;
+
+    private int attempts;
+
+    private boolean scheduled;
+
+    private boolean waiting;
+
+    // incremented each time the queue starts waiting, so that only the timer of the latest wait
+    // resumes it
+    private long waits;
+
+    private boolean closed;
+
+    private EventSpill spill;
+
+    // deliveries handed to the spill and not yet back in the pending queue, including the ones
+    // being written or read outside of the lock
+    private int spilled;
+
+    SubscriberQueue(String subscriptionId, DeliveryProcessor processor, DeliveryExecutor executor) {
+        this.subscriptionId = subscriptionId;
+        this.processor = processor;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues the delivery of the entry of an event matched by the subscription.
+     */
+    public void offer(Event event) {
+        Metacard entry = (Metacard) event.getProperty(PubSubConstants.HEADER_ENTRY_KEY);
+        Object operation = event.getProperty(PubSubConstants.HEADER_OPERATION_KEY);
+        if (entry == null || operation == null) {
+            LOGGER.warn("Could not deliver hit for subscription. Catalog entry is null.");
+            return;
+        }
+
+        boolean start;
+        Delivery delivery = new Delivery(entry, operation.toString());
+        EventSpill target = null;
+        synchronized (this) {
+            if (closed) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            if (spilled > 0) {
+                // keep the deliveries in order while older ones are still spilled
+                target = getSpill();
+            } else if (pending.size() < executor.getQueueCapacity()) {
+                pending.addLast(delivery);
+            } else {
+                target = overflow(delivery);
+            }
+            if (target != null) {
+                spilled++;
+            }
+            start = !scheduled && (current != null || !pending.isEmpty());
+            scheduled |= start;
+            if (waiting && current == null && getBatchWaitMillis() == 0) {
+                // the batch filled up before the end of its window
+                waiting = false;
+                start = true;
+            }
+        }
+        if (start) {
+            executor.execute(this);
+        }
+        if (target != null) {
+            // the disk is written outside of the lock, so that offers are not held up by it
+            spill(target, delivery);
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean finished = false;
+        try {
+            deliverPending();
+            finished = true;
+        } finally {
+            if (!finished) {
+                // an Error ended the run, the next offer schedules the queue again
+                unschedule();
+            }
+        }
+    }
+
+    private void deliverPending() {
+        int delivered = 0;
+        while (delivered < DELIVERIES_PER_RUN) {
+            refill();
+            List<Delivery> batch;
+            List<Metacard> entries;
+            long batchWait = 0;
+            long wait = 0;
+            synchronized (this) {
+                if (current == null && !closed) {
+                    batchWait = getBatchWaitMillis();
+                    if (batchWait == 0) {
+                        current = takeBatch();
+                    }
+                }
+                if (batchWait > 0) {
+                    waiting = true;
+                    wait = ++waits;
+                } else if (current == null || closed) {
+                    if (!closed && spilled > 0 && spill != null && spill.size() > 0
+                            && pending.size() < executor.getQueueCapacity()) {
+                        // spilled while the queue was refilled
+                        continue;
+                    }
+                    scheduled = false;
+                    return;
+                }
+                batch = current;
+                entries = prepared;
+            }
+            if (batchWait > 0) {
+                executor.schedule(this, batchWait, wait);
+                return;
+            }
+
+            String operation = batch.get(0).operation;
+            try {
+                if (entries == null) {
+                    entries = prepare(batch);
+                }
+                processor.deliver(entries, operation);
+                deliveredCount.addAndGet(batch.size());
+                delivered += batch.size();
+                synchronized (this) {
+                    current = null;
+                    prepared = null;
+                    attempts = 0;
+                }
+            } catch (RuntimeException e) {
+                long delay = retry(batch, e);
+                if (delay >= 0) {
+                    executor.schedule(this, delay, startWaiting());
+                    return;
+                }
+            }
+        }
+        executor.execute(this);
+    }
+
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * @return the number of deliveries waiting in the queue and in the spill file, including the
+     *         one being made or retried
+     */
+    public synchronized int getPendingCount() {
+        return pending.size() + (current == null ? 0 : current.size()) + spilled;
+    }
+
+    /**
+     * @return the time in milliseconds the oldest pending delivery has been waiting, or 0 if no
+     *         delivery is pending
+     */
+    public synchronized long getLagMillis() {
+        Delivery oldest = current == null ? pending.peekFirst() : current.get(0);
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.queued;
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * @return the number of failed delivery attempts that were retried
+     */
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    /**
+     * @return the number of deliveries dropped because they still failed after the last retry
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the number of deliveries dropped because the queue was full or closed
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Reads back the deliveries kept by the previous queue of the subscription, to make them
+     * before the ones offered to this queue. Must be called before the queue is offered any
+     * delivery.
+     */
+    void recover() {
+        EventSpill target;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            target = getSpill();
+        }
+
+        int recovered;
+        try {
+            recovered = target.recover();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to recover the deliveries kept for subscription "
+                    + subscriptionId + ".", e);
+            return;
+        }
+        if (recovered == 0) {
+            return;
+        }
+
+        boolean start;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            spilled += recovered;
+            start = !scheduled;
+            scheduled = true;
+        }
+        LOGGER.info("Recovered {} deliveries kept for subscription {}.", recovered,
+                subscriptionId);
+        if (start) {
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * Drops the pending deliveries and stops delivering to the subscription.
+     */
+    void close() {
+        close(false);
+    }
+
+    /**
+     * Stops delivering to the subscription.
+     *
+     * @param keep
+     *            whether to keep the undelivered deliveries for the next queue of the
+     *            subscription, or to drop them
+     */
+    void close(boolean keep) {
+        EventSpill target;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            target = getSpill();
+        }
+
+        // the spill is locked before the queue, as when it is read back
+        synchronized (target) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                int undelivered = getPendingCount();
+                int kept = 0;
+                if (keep) {
+                    List<Delivery> unread = new ArrayList<Delivery>(pending.size()
+                            + (current == null ? 0 : current.size()));
+                    if (current != null) {
+                        unread.addAll(current);
+                    }
+                    unread.addAll(pending);
+                    kept = target.close(unread);
+                    LOGGER.debug("Kept {} deliveries to subscription {} when closing.", kept,
+                            subscriptionId);
+                } else {
+                    target.close();
+                }
+                if (undelivered > kept) {
+                    LOGGER.debug("{} deliveries to subscription {} were not made before closing.",
+                            undelivered - kept, subscriptionId);
+                    droppedCount.addAndGet(undelivered - kept);
+                }
+                pending.clear();
+                current = null;
+                prepared = null;
+                waiting = false;
+                spilled = 0;
+                spill = null;
+            }
+        }
+    }
+
+    /**
+     * Called at the end of a retry backoff or of a batch window, to resume the deliveries unless
+     * they already were.
+     *
+     * @param wait
+     *            the wait that ended, ignored if the queue was resumed and waits again since
+     */
+    void resume(long wait) {
+        synchronized (this) {
+            if (!waiting || wait != waits) {
+                return;
+            }
+            waiting = false;
+        }
+        executor.execute(this);
+    }
+
+    /**
+     * Called when the executor did not accept this queue, which then waits for the next offer.
+     */
+    synchronized void unschedule() {
+        scheduled = false;
+        waiting = false;
+    }
+
+    private synchronized long retry(List<Delivery> batch, RuntimeException e) {
+        if (closed) {
+            scheduled = false;
+            return -1;
+        }
+        String deliveries = batch.size() == 1 ? "metacard " + batch.get(0).entry.getId() : batch
+                .size() + " metacards";
+        if (attempts < executor.getMaxRetries()) {
+            attempts++;
+            retriedCount.incrementAndGet();
+            long delay = executor.getRetryDelayMillis(attempts);
+            LOGGER.debug("Delivery of " + deliveries + " to subscription " + subscriptionId
+                    + " failed, retry " + attempts + " in " + delay + " ms.", e);
+            return delay;
+        }
+
+        failedCount.addAndGet(batch.size());
+        LOGGER.warn("Delivery of " + deliveries + " to subscription " + subscriptionId
+                + " failed after " + attempts + " retries, dropping it.", e);
+        current = null;
+        prepared = null;
+        attempts = 0;
+        return -1;
+    }
+
+    /**
+     * @return the identifier of the wait, for {@link #resume(long)}
+     */
+    private synchronized long startWaiting() {
+        waiting = true;
+        return ++waits;
+    }
+
+    /**
+     * Runs the pre-delivery plugins on the entries of a batch, the first time it is delivered.
+     */
+    private List<Metacard> prepare(List<Delivery> batch) {
+        List<Metacard> entries = new ArrayList<Metacard>(batch.size());
+        for (Delivery delivery : batch) {
+            entries.add(delivery.entry);
+        }
+        entries = processor.preDeliver(entries, batch.get(0).operation);
+        synchronized (this) {
+            if (current == batch) {
+                prepared = entries;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return the time to wait for more deliveries to fill the batch of the oldest pending one,
+     *         or 0 if it should be delivered now
+     */
+    private long getBatchWaitMillis() {
+        BatchDeliveryMethod deliveryMethod = processor.getBatchDeliveryMethod();
+        Delivery oldest = pending.peekFirst();
+        if (deliveryMethod == null || oldest == null
+                || pending.size() >= deliveryMethod.getMaxBatchSize()
+                || pending.size() >= executor.getQueueCapacity()
+                || !pending.peekLast().operation.equals(oldest.operation)) {
+            return 0;
+        }
+        return Math.max(0, oldest.queued + deliveryMethod.getMaxBatchDelayMillis()
+                - System.currentTimeMillis());
+    }
+
+    /**
+     * @return the oldest pending deliveries of the same operation, up to the batch size of the
+     *         subscription, or null if no delivery is pending
+     */
+    private List<Delivery> takeBatch() {
+        Delivery first = pending.pollFirst();
+        if (first == null) {
+            return null;
+        }
+        BatchDeliveryMethod deliveryMethod = processor.getBatchDeliveryMethod();
+        int batchSize = deliveryMethod == null ? 1 : deliveryMethod.getMaxBatchSize();
+        List<Delivery> batch = new ArrayList<Delivery>(Math.min(batchSize, pending.size() + 1));
+        batch.add(first);
+        while (batch.size() < batchSize && !pending.isEmpty()
+                && pending.peekFirst().operation.equals(first.operation)) {
+            batch.add(pending.pollFirst());
+        }
+        return batch;
+    }
+
+    /**
+     * @return the spill to write the delivery to, or null if it was queued or dropped
+     */
+    private EventSpill overflow(Delivery delivery) {
+        switch (executor.getSlowSubscriberPolicy()) {
+        case SPILL:
+            return getSpill();
+        case DROP_OLDEST:
+            drop(pending.pollFirst());
+            pending.addLast(delivery);
+            return null;
+        default:
+            drop(delivery);
+            return null;
+        }
+    }
+
+    private EventSpill getSpill() {
+        if (spill == null) {
+            spill = new EventSpill(new File(executor.getSpillDirectory(),
+                    getSpillFileName(subscriptionId)));
+        }
+        return spill;
+    }
+
+    /**
+     * Writes a delivery to the spill, outside of the lock, then schedules the queue to read it
+     * back.
+     */
+    private void spill(EventSpill target, Delivery delivery) {
+        IOException failure = null;
+        try {
+            target.write(delivery);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        boolean start;
+        synchronized (this) {
+            if (closed) {
+                // counted as dropped when the queue was closed
+                return;
+            }
+            if (failure != null) {
+                spilled--;
+                droppedCount.incrementAndGet();
+                LOGGER.warn("Unable to spill the delivery of metacard " + delivery.entry.getId()
+                        + " to subscription " + subscriptionId + ", dropping it.", failure);
+            }
+            start = !scheduled;
+            scheduled = true;
+        }
+        if (start) {
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * Moves spilled deliveries back to the queue while it has room. Only the running thread
+     * reads the spill, outside of the queue lock; the deliveries read stay counted as spilled
+     * until they are queued, so that newer deliveries are spilled behind them. The spill stays
+     * locked until the delivery read is queued, so that a queue closed meanwhile keeps it.
+     */
+    private void refill() {
+        EventSpill source;
+        synchronized (this) {
+            source = spill;
+        }
+        while (source != null) {
+            synchronized (this) {
+                if (closed || spilled == 0 || pending.size() >= executor.getQueueCapacity()) {
+                    return;
+                }
+            }
+            synchronized (source) {
+                Delivery delivery = null;
+                try {
+                    delivery = (Delivery) source.read();
+                    if (delivery == null) {
+                        return;
+                    }
+                } catch (IOException | ClassNotFoundException e) {
+                    LOGGER.warn("Unable to read a spilled delivery to subscription "
+                            + subscriptionId + ", dropping it.", e);
+                }
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    spilled--;
+                    if (delivery == null) {
+                        droppedCount.incrementAndGet();
+                    } else {
+                        pending.addLast(delivery);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name of the spill file of a subscription, derived from a digest of its ID so that
+     *         distinct IDs never share a file, whatever characters they contain
+     */
+    static String getSpillFileName(String subscriptionId) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(
+                    subscriptionId.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder("subscription-");
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(
+                        Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(".spill").toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void drop(Delivery delivery) {
+        droppedCount.incrementAndGet();
+        LOGGER.debug("Delivery queue of subscription {} is full, dropping metacard {}.",
+                subscriptionId, delivery.entry.getId());
+    }
+
+    private static class Delivery implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Metacard entry;
+
+        private final String operation;
+
+        private final long queued = System.currentTimeMillis();
+
+        Delivery(Metacard entry, String operation) {
+            this.entry = entry;
+            this.operation = operation;
+        }
+    }
+}
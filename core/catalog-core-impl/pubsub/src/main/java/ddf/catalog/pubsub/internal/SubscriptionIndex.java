@@ -0,0 +1,773 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.index.Term;
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.bintree.Bintree;
+import com.vividsolutions.jts.index.bintree.Interval;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.event.Subscription;
+import ddf.catalog.pubsub.EventProcessorImpl.DateType;
+import ddf.catalog.pubsub.PublishedEventHandler;
+import ddf.catalog.pubsub.criteria.contextual.ContextualEvaluator;
+import ddf.catalog.pubsub.predicate.AndPredicate;
+import ddf.catalog.pubsub.predicate.ContentTypePredicate;
+import ddf.catalog.pubsub.predicate.ContextualPredicate;
+import ddf.catalog.pubsub.predicate.EntryPredicate;
+import ddf.catalog.pubsub.predicate.GeospatialPredicate;
+import ddf.catalog.pubsub.predicate.OrPredicate;
+import ddf.catalog.pubsub.predicate.Predicate;
+import ddf.catalog.pubsub.predicate.TemporalPredicate;
+
+/**
+ * Index of the subscriptions by the criteria an event must meet to match them: the source of the
+ * event, and the entry IDs, literal content types, areas, time windows and contextual terms required
+ * by their predicate. The areas are kept in a quadtree by their envelope, expanded by the distance
+ * of the distance predicates, the time windows in a bintree or sorted by their bounds, and the
+ * terms by the text paths of the index they must be found in.
+ * <p>
+ * The predicate of a subscription is reduced to a conjunction of constraints, each requiring one
+ * of several values of a criterion. Looking up an event counts the constraints of each
+ * subscription the event meets, and returns the subscriptions meeting all of them, which must
+ * still evaluate the event. Subscriptions without constraints are returned for every event of
+ * their sources.
+ * <p>
+ * Contextual subscriptions are found by looking up the terms indexed for the event, so that the
+ * cost of finding them grows with the size of the event rather than with their number.
+ */
+public class SubscriptionIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionIndex.class);
+
+    // characters giving a content type a special meaning in the ContentTypeEvaluator
+    private static final Pattern CONTENT_TYPE_PATTERN_CHARACTERS = Pattern
+            .compile("[\\\\\\[\\](){}.*+?^$|]");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private final Bucket enterprise = new Bucket();
+
+    private final Bucket local = new Bucket();
+
+    private final Map<String, Bucket> bySourceId = new HashMap<String, Bucket>();
+
+    /**
+     * Adds a subscription, replacing the subscription with the same ID.
+     */
+    public void add(String subscriptionId, PublishedEventHandler handler) {
+        Entry entry = new Entry(handler, getConstraints(handler.getPredicate()));
+        lock.writeLock().lock();
+        try {
+            removeEntry(entries.put(subscriptionId, entry));
+            entry.sourceIds = getSourceIds(handler.getSubscription());
+            for (Bucket bucket : getBuckets(entry.sourceIds)) {
+                bucket.add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the subscription removed, or null if there was no subscription with this ID
+     */
+    public PublishedEventHandler remove(String subscriptionId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(subscriptionId);
+            removeEntry(entry);
+            return entry == null ? null : entry.handler;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param event
+     *            a published event
+     * @param localSourceId
+     *            ID of the local catalog, whose events are evaluated by the local subscriptions
+     * @return the subscriptions the event may match
+     */
+    public Collection<PublishedEventHandler> getCandidates(Event event, String localSourceId) {
+        EventKeys eventKeys = new EventKeys(event);
+        String sourceId = eventKeys.metacard == null ? null : eventKeys.metacard.getSourceId();
+
+        Set<PublishedEventHandler> candidates = new LinkedHashSet<PublishedEventHandler>();
+        lock.readLock().lock();
+        try {
+            enterprise.collect(eventKeys, candidates);
+            if (localSourceId != null && localSourceId.equals(sourceId)) {
+                local.collect(eventKeys, candidates);
+            }
+            Bucket site = bySourceId.get(sourceId);
+            if (site != null) {
+                site.collect(eventKeys, candidates);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return candidates;
+    }
+
+    private void removeEntry(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        for (Bucket bucket : getBuckets(entry.sourceIds)) {
+            bucket.remove(entry);
+        }
+        if (entry.sourceIds != null) {
+            for (String sourceId : entry.sourceIds) {
+                Bucket bucket = bySourceId.get(sourceId);
+                if (bucket != null && bucket.isEmpty()) {
+                    bySourceId.remove(sourceId);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the sources whose events a subscription evaluates, as done by the
+     *         {@link PublishedEventHandler}: null for the enterprise subscriptions, and an empty
+     *         list for the local ones
+     */
+    private static List<String> getSourceIds(Subscription subscription) {
+        if (subscription.isEnterprise()) {
+            return null;
+        }
+        Set<String> sourceIds = subscription.getSourceIds();
+        return sourceIds == null ? Collections.<String> emptyList() : new ArrayList<String>(
+                sourceIds);
+    }
+
+    private List<Bucket> getBuckets(List<String> sourceIds) {
+        if (sourceIds == null) {
+            return Collections.singletonList(enterprise);
+        } else if (sourceIds.isEmpty()) {
+            return Collections.singletonList(local);
+        }
+
+        List<Bucket> buckets = new ArrayList<Bucket>(sourceIds.size());
+        for (String sourceId : sourceIds) {
+            Bucket bucket = bySourceId.get(sourceId);
+            if (bucket == null) {
+                bucket = new Bucket();
+                bySourceId.put(sourceId, bucket);
+            }
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    /**
+     * @return the constraints an event must all meet to match the predicate
+     */
+    static List<Constraint> getConstraints(Predicate predicate) {
+        Constraint constraint = null;
+        if (predicate instanceof EntryPredicate) {
+            String catalogId = ((EntryPredicate) predicate).getCatalogId();
+            if (catalogId != null) {
+                constraint = new Constraint(Criterion.ENTRY_ID);
+                constraint.values.add(catalogId);
+            }
+        } else if (predicate instanceof ContentTypePredicate) {
+            String type = ((ContentTypePredicate) predicate).getType();
+            if (type != null && !CONTENT_TYPE_PATTERN_CHARACTERS.matcher(type).find()) {
+                constraint = new Constraint(Criterion.CONTENT_TYPE);
+                constraint.values.add(type);
+            }
+        } else if (predicate instanceof GeospatialPredicate) {
+            constraint = getConstraint((GeospatialPredicate) predicate);
+        } else if (predicate instanceof TemporalPredicate) {
+            constraint = getConstraint((TemporalPredicate) predicate);
+        } else if (predicate instanceof ContextualPredicate) {
+            constraint = getConstraint((ContextualPredicate) predicate);
+        } else if (predicate instanceof AndPredicate) {
+            List<Constraint> constraints = new ArrayList<Constraint>();
+            constraints.addAll(getConstraints(((AndPredicate) predicate).getLeft()));
+            constraints.addAll(getConstraints(((AndPredicate) predicate).getRight()));
+            return constraints;
+        } else if (predicate instanceof OrPredicate) {
+            constraint = getConstraint((OrPredicate) predicate);
+        }
+        return constraint == null ? Collections.<Constraint> emptyList() : Collections
+                .singletonList(constraint);
+    }
+
+    /**
+     * Each constraint of either side is required by that side, so the union of a constraint of
+     * each side on the same criterion is required by the disjunction.
+     */
+    private static Constraint getConstraint(OrPredicate predicate) {
+        List<Constraint> left = getConstraints(predicate.getLeft());
+        List<Constraint> right = getConstraints(predicate.getRight());
+        for (Criterion criterion : Criterion.values()) {
+            for (Constraint leftConstraint : left) {
+                for (Constraint rightConstraint : right) {
+                    if (leftConstraint.criterion == criterion
+                            && rightConstraint.criterion == criterion) {
+                        Constraint union = new Constraint(criterion);
+                        union.addAll(leftConstraint);
+                        union.addAll(rightConstraint);
+                        return union;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Constraint getConstraint(GeospatialPredicate predicate) {
+        Geometry criteria = predicate.getGeoCriteria();
+        if (criteria == null || criteria.isEmpty()) {
+            return null;
+        }
+
+        Constraint constraint = new Constraint(Criterion.GEOSPATIAL);
+        // an entry within the distance of the area has its envelope within the distance of the
+        // envelope of one of the components of the area
+        for (int i = 0; i < criteria.getNumGeometries(); i++) {
+            Envelope envelope = new Envelope(criteria.getGeometryN(i).getEnvelopeInternal());
+            if (predicate.getDistance() > 0) {
+                envelope.expandBy(predicate.getDistance());
+            }
+            constraint.envelopes.add(envelope);
+        }
+        return constraint;
+    }
+
+    private static Constraint getConstraint(TemporalPredicate predicate) {
+        Window window = new Window();
+        window.dateType = predicate.getType();
+        if (predicate.getOffset() > 0) {
+            window.offset = predicate.getOffset();
+        } else if (predicate.getStart() != null || predicate.getEnd() != null) {
+            window.start = predicate.getStart() == null ? null : predicate.getStart().getTime();
+            window.end = predicate.getEnd() == null ? null : predicate.getEnd().getTime();
+        } else {
+            return null;
+        }
+        if (window.dateType == null) {
+            return null;
+        }
+
+        Constraint constraint = new Constraint(Criterion.TEMPORAL);
+        constraint.windows.add(window);
+        return constraint;
+    }
+
+    /**
+     * A contextual predicate requires one of the terms required by its query in the index it
+     * searches: the default index of the event, or the index of its text paths.
+     */
+    private static Constraint getConstraint(ContextualPredicate predicate) {
+        if (predicate.getQuery() == null) {
+            return null;
+        }
+        Set<Term> terms = ContextualEvaluator.getRequiredTerms(predicate.getQuery());
+        if (terms == null || terms.isEmpty()) {
+            return null;
+        }
+
+        Constraint constraint = new Constraint(Criterion.TERM);
+        List<String> textPaths = predicate.hasTextPaths() ? new ArrayList<String>(
+                predicate.getTextPaths()) : null;
+        constraint.terms.put(textPaths, new HashSet<Term>(terms));
+        return constraint;
+    }
+
+    /**
+     * The indexed criteria.
+     */
+    enum Criterion {
+        ENTRY_ID, GEOSPATIAL, TEMPORAL, CONTENT_TYPE, TERM
+    }
+
+    /**
+     * Requires an event to have one of the values of a criterion: one of the entry IDs or content
+     * types, a location intersecting one of the envelopes, a date in one of the windows, or one of
+     * the terms in the index of the text paths they are kept by.
+     */
+    static class Constraint {
+        final Criterion criterion;
+
+        final Set<String> values = new HashSet<String>();
+
+        final Set<Envelope> envelopes = new HashSet<Envelope>();
+
+        final List<Window> windows = new ArrayList<Window>();
+
+        // null text paths stand for the default index
+        final Map<List<String>, Set<Term>> terms = new HashMap<List<String>, Set<Term>>();
+
+        Entry entry;
+
+        Constraint(Criterion criterion) {
+            this.criterion = criterion;
+        }
+
+        void addAll(Constraint other) {
+            values.addAll(other.values);
+            envelopes.addAll(other.envelopes);
+            windows.addAll(other.windows);
+            for (Map.Entry<List<String>, Set<Term>> indexTerms : other.terms.entrySet()) {
+                Set<Term> union = terms.get(indexTerms.getKey());
+                if (union == null) {
+                    union = new HashSet<Term>();
+                    terms.put(indexTerms.getKey(), union);
+                }
+                union.addAll(indexTerms.getValue());
+            }
+        }
+    }
+
+    /**
+     * A time window of a temporal predicate: either relative, for the dates within the offset
+     * before the time of evaluation, or absolute, with a start and an end either of which may be
+     * open. Bounds are inclusive.
+     */
+    static class Window {
+        DateType dateType;
+
+        Long start;
+
+        Long end;
+
+        long offset;
+    }
+
+    private static class Entry {
+        final PublishedEventHandler handler;
+
+        final List<Constraint> constraints;
+
+        List<String> sourceIds;
+
+        Entry(PublishedEventHandler handler, List<Constraint> constraints) {
+            this.handler = handler;
+            this.constraints = constraints;
+            for (Constraint constraint : constraints) {
+                constraint.entry = this;
+            }
+        }
+    }
+
+    /**
+     * The values of the indexed criteria of an event, read from its envelope. The values that need
+     * parsing are only computed if a bucket indexes subscriptions on them, and are shared with the
+     * predicates evaluating the event.
+     */
+    private static class EventKeys {
+        final EventEnvelope eventEnvelope;
+
+        final Metacard metacard;
+
+        final String entryId;
+
+        final String contentType;
+
+        final long now = System.currentTimeMillis();
+
+        // the predicates match every delete that has no metadata
+        final boolean matchesAll;
+
+        private boolean envelopeComputed;
+
+        private Envelope envelope;
+
+        EventKeys(Event event) {
+            eventEnvelope = EventEnvelope.of(event);
+            metacard = eventEnvelope.getEntry();
+            entryId = eventEnvelope.getEntryId();
+            contentType = eventEnvelope.getContentTypeName();
+            matchesAll = eventEnvelope.isDeletedEntry();
+        }
+
+        /**
+         * @return the envelope of the location of the entry, or null if it has none
+         */
+        Envelope getEnvelope() {
+            if (!envelopeComputed) {
+                Geometry geometry = eventEnvelope.getGeometry();
+                envelope = geometry == null ? null : geometry.getEnvelopeInternal();
+                envelopeComputed = true;
+            }
+            return envelope;
+        }
+
+        /**
+         * @return the date of the entry in milliseconds, or null if it has none
+         */
+        Long getDate(DateType dateType) {
+            Date date = eventEnvelope.getDate(dateType);
+            return date == null ? null : date.getTime();
+        }
+
+        /**
+         * @return the terms of the index of the text paths, null for the default index, or null
+         *         if they are not known
+         */
+        Set<Term> getTerms(List<String> textPaths) {
+            try {
+                // the contextual predicates match no event without metadata
+                return eventEnvelope.getTerms(textPaths);
+            } catch (IOException e) {
+                LOGGER.debug("Unable to index the metadata of entry {}", entryId, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The subscriptions evaluating the events of a source.
+     */
+    private static class Bucket {
+        private final Set<Entry> entries = new LinkedHashSet<Entry>();
+
+        private final Set<Entry> unindexed = new LinkedHashSet<Entry>();
+
+        private final Map<String, Set<Constraint>> byEntryId = new HashMap<String, Set<Constraint>>();
+
+        private final Map<String, Set<Constraint>> byContentType = new HashMap<String, Set<Constraint>>();
+
+        private final Quadtree byArea = new Quadtree();
+
+        private final Map<DateType, TemporalIndex> byDate = new EnumMap<DateType, TemporalIndex>(
+                DateType.class);
+
+        private final Map<List<String>, Map<Term, Set<Constraint>>> byTerm = new HashMap<List<String>, Map<Term, Set<Constraint>>>();
+
+        void add(Entry entry) {
+            entries.add(entry);
+            if (entry.constraints.isEmpty()) {
+                unindexed.add(entry);
+            }
+            for (Constraint constraint : entry.constraints) {
+                for (String value : constraint.values) {
+                    put(getIndex(constraint), value, constraint);
+                }
+                for (Envelope envelope : constraint.envelopes) {
+                    byArea.insert(envelope, new Area(envelope, constraint));
+                }
+                for (Window window : constraint.windows) {
+                    TemporalIndex temporalIndex = byDate.get(window.dateType);
+                    if (temporalIndex == null) {
+                        temporalIndex = new TemporalIndex();
+                        byDate.put(window.dateType, temporalIndex);
+                    }
+                    temporalIndex.add(window, constraint);
+                }
+                for (Map.Entry<List<String>, Set<Term>> indexTerms : constraint.terms.entrySet()) {
+                    Map<Term, Set<Constraint>> termIndex = byTerm.get(indexTerms.getKey());
+                    if (termIndex == null) {
+                        termIndex = new HashMap<Term, Set<Constraint>>();
+                        byTerm.put(indexTerms.getKey(), termIndex);
+                    }
+                    for (Term term : indexTerms.getValue()) {
+                        put(termIndex, term, constraint);
+                    }
+                }
+            }
+        }
+
+        void remove(Entry entry) {
+            entries.remove(entry);
+            unindexed.remove(entry);
+            for (Constraint constraint : entry.constraints) {
+                for (String value : constraint.values) {
+                    SubscriptionIndex.remove(getIndex(constraint), value, constraint);
+                }
+                for (Envelope envelope : constraint.envelopes) {
+                    byArea.remove(envelope, new Area(envelope, constraint));
+                }
+                for (Window window : constraint.windows) {
+                    TemporalIndex temporalIndex = byDate.get(window.dateType);
+                    if (temporalIndex != null) {
+                        temporalIndex.remove(window, constraint);
+                        if (temporalIndex.isEmpty()) {
+                            byDate.remove(window.dateType);
+                        }
+                    }
+                }
+                for (Map.Entry<List<String>, Set<Term>> indexTerms : constraint.terms.entrySet()) {
+                    Map<Term, Set<Constraint>> termIndex = byTerm.get(indexTerms.getKey());
+                    if (termIndex != null) {
+                        for (Term term : indexTerms.getValue()) {
+                            SubscriptionIndex.remove(termIndex, term, constraint);
+                        }
+                        if (termIndex.isEmpty()) {
+                            byTerm.remove(indexTerms.getKey());
+                        }
+                    }
+                }
+            }
+        }
+
+        void collect(EventKeys eventKeys, Collection<PublishedEventHandler> candidates) {
+            if (eventKeys.matchesAll) {
+                for (Entry entry : entries) {
+                    candidates.add(entry.handler);
+                }
+                return;
+            }
+
+            Set<Constraint> met = new HashSet<Constraint>();
+            addAll(byEntryId.get(eventKeys.entryId), met);
+            addAll(byContentType.get(eventKeys.contentType), met);
+            // the location of the entry is only parsed if there are geospatial subscriptions
+            Envelope envelope = byArea.size() > 0 ? eventKeys.getEnvelope() : null;
+            if (envelope != null) {
+                // the quadtree returns the areas of the nodes overlapping the envelope
+                for (Object item : byArea.query(envelope)) {
+                    Area area = (Area) item;
+                    if (area.envelope.intersects(envelope)) {
+                        met.add(area.constraint);
+                    }
+                }
+            }
+            for (Map.Entry<DateType, TemporalIndex> temporalIndex : byDate.entrySet()) {
+                Long date = eventKeys.getDate(temporalIndex.getKey());
+                if (date != null) {
+                    temporalIndex.getValue().collect(date, eventKeys.now, met);
+                }
+            }
+            for (Map.Entry<List<String>, Map<Term, Set<Constraint>>> termIndex : byTerm
+                    .entrySet()) {
+                collect(termIndex.getValue(), eventKeys.getTerms(termIndex.getKey()), met);
+            }
+
+            Map<Entry, Integer> metCounts = new HashMap<Entry, Integer>();
+            for (Constraint constraint : met) {
+                Integer count = metCounts.get(constraint.entry);
+                count = count == null ? 1 : count + 1;
+                metCounts.put(constraint.entry, count);
+                if (count == constraint.entry.constraints.size()) {
+                    candidates.add(constraint.entry.handler);
+                }
+            }
+            for (Entry entry : unindexed) {
+                candidates.add(entry.handler);
+            }
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        /**
+         * Looks up the terms of the event in the term index, or the indexed terms in the terms of
+         * the event, whichever are fewer.
+         */
+        private static void collect(Map<Term, Set<Constraint>> termIndex, Set<Term> terms,
+                Set<Constraint> met) {
+            if (terms == null) {
+                for (Set<Constraint> constraints : termIndex.values()) {
+                    met.addAll(constraints);
+                }
+            } else if (terms.size() < termIndex.size()) {
+                for (Term term : terms) {
+                    addAll(termIndex.get(term), met);
+                }
+            } else {
+                for (Map.Entry<Term, Set<Constraint>> indexed : termIndex.entrySet()) {
+                    if (terms.contains(indexed.getKey())) {
+                        met.addAll(indexed.getValue());
+                    }
+                }
+            }
+        }
+
+        private Map<String, Set<Constraint>> getIndex(Constraint constraint) {
+            return constraint.criterion == Criterion.ENTRY_ID ? byEntryId : byContentType;
+        }
+    }
+
+    /**
+     * The time windows on one date of the entries. Windows with both bounds are kept in a bintree;
+     * windows open on one side are sorted by their other bound, and relative windows by their
+     * offset, so that they never need to be moved as time passes: a date is within the offset
+     * before the time of evaluation when the offset is at least the time elapsed since the date.
+     */
+    private static class TemporalIndex {
+        private final Bintree closed = new Bintree();
+
+        private final NavigableMap<Long, Set<Constraint>> byStart = new TreeMap<Long, Set<Constraint>>();
+
+        private final NavigableMap<Long, Set<Constraint>> byEnd = new TreeMap<Long, Set<Constraint>>();
+
+        private final NavigableMap<Long, Set<Constraint>> byOffset = new TreeMap<Long, Set<Constraint>>();
+
+        void add(Window window, Constraint constraint) {
+            if (window.offset > 0) {
+                put(byOffset, window.offset, constraint);
+            } else if (window.start == null) {
+                put(byEnd, window.end, constraint);
+            } else if (window.end == null) {
+                put(byStart, window.start, constraint);
+            } else {
+                closed.insert(new Interval(window.start, window.end), new Period(window,
+                        constraint));
+            }
+        }
+
+        void remove(Window window, Constraint constraint) {
+            if (window.offset > 0) {
+                SubscriptionIndex.remove(byOffset, window.offset, constraint);
+            } else if (window.start == null) {
+                SubscriptionIndex.remove(byEnd, window.end, constraint);
+            } else if (window.end == null) {
+                SubscriptionIndex.remove(byStart, window.start, constraint);
+            } else {
+                closed.remove(new Interval(window.start, window.end), new Period(window,
+                        constraint));
+            }
+        }
+
+        void collect(long date, long now, Set<Constraint> met) {
+            // the bintree returns the periods of the nodes containing the date
+            for (Object item : closed.query(date)) {
+                Period period = (Period) item;
+                if (period.window.start <= date && date <= period.window.end) {
+                    met.add(period.constraint);
+                }
+            }
+            addAll(byStart.headMap(date, true), met);
+            addAll(byEnd.tailMap(date, true), met);
+            // a date after now is kept, since the predicate is evaluated a little later
+            addAll(byOffset.tailMap(now - date, true), met);
+        }
+
+        boolean isEmpty() {
+            return closed.size() == 0 && byStart.isEmpty() && byEnd.isEmpty()
+                    && byOffset.isEmpty();
+        }
+
+        private static void addAll(Map<Long, Set<Constraint>> constraints, Set<Constraint> met) {
+            for (Set<Constraint> value : constraints.values()) {
+                met.addAll(value);
+            }
+        }
+    }
+
+    private static <K> void put(Map<K, Set<Constraint>> index, K key, Constraint constraint) {
+        Set<Constraint> constraints = index.get(key);
+        if (constraints == null) {
+            constraints = new HashSet<Constraint>();
+            index.put(key, constraints);
+        }
+        constraints.add(constraint);
+    }
+
+    private static <K> void remove(Map<K, Set<Constraint>> index, K key, Constraint constraint) {
+        Set<Constraint> constraints = index.get(key);
+        if (constraints != null && constraints.remove(constraint) && constraints.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static void addAll(Set<Constraint> constraints, Set<Constraint> met) {
+        if (constraints != null) {
+            met.addAll(constraints);
+        }
+    }
+
+    /**
+     * The envelope of an area of a constraint, in the quadtree.
+     */
+    private static class Area {
+        final Envelope envelope;
+
+        final Constraint constraint;
+
+        Area(Envelope envelope, Constraint constraint) {
+            this.envelope = envelope;
+            this.constraint = constraint;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Area && ((Area) other).envelope.equals(envelope)
+                    && ((Area) other).constraint == constraint;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * envelope.hashCode() + System.identityHashCode(constraint);
+        }
+    }
+
+    /**
+     * A closed time window of a constraint, in the bintree.
+     */
+    private static class Period {
+        final Window window;
+
+        final Constraint constraint;
+
+        Period(Window window, Constraint constraint) {
+            this.window = window;
+            this.constraint = constraint;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Period && ((Period) other).window == window
+                    && ((Period) other).constraint == constraint;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(window) + System.identityHashCode(constraint);
+        }
+    }
+}
@@ -15,15 +15,12 @@
 
 package ddf.catalog.pubsub.predicate;
 
-import java.util.Map;
-
 import org.osgi.service.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ddf.catalog.pubsub.criteria.contenttype.ContentTypeEvaluationCriteriaImpl;
 import ddf.catalog.pubsub.criteria.contenttype.ContentTypeEvaluator;
-import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.EventEnvelope;
 
 public class ContentTypePredicate implements Predicate {
 
@@ -47,35 +44,27 @@ public boolean matches(Event properties) {
 
         boolean status = false;
 
-        Map<String, Object> contextualMap = (Map<String, Object>) properties
-                .getProperty(PubSubConstants.HEADER_CONTEXTUAL_KEY);
-        String operation = (String) properties.getProperty(PubSubConstants.HEADER_OPERATION_KEY);
-        LOGGER.debug("operation = {}", operation);
-
-        if (contextualMap != null) {
-            String metadata = (String) contextualMap.get("METADATA");
-
-            // If deleting a catalog entry and the entry's location data is NULL is only the word
-            // "deleted" (i.e., the
-            // source is deleting the catalog entry and did not send any location data with the
-            // delete event), then
-            // cannot apply any geospatial filtering - just send the event on to the subscriber
-            if (PubSubConstants.DELETE.equals(operation)
-                    && PubSubConstants.METADATA_DELETED.equals(metadata)) {
-                LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
-                LOGGER.debug("EXITING: matches");
-                return true;
-            }
+        EventEnvelope envelope = EventEnvelope.of(properties);
+        LOGGER.debug("operation = {}", envelope.getOperation());
+
+        // If deleting a catalog entry and the entry's location data is NULL is only the word
+        // "deleted" (i.e., the
+        // source is deleting the catalog entry and did not send any location data with the
+        // delete event), then
+        // cannot apply any geospatial filtering - just send the event on to the subscriber
+        if (envelope.isDeletedEntry()) {
+            LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
+            LOGGER.debug("EXITING: matches");
+            return true;
         }
 
-        Object inputContentType = properties.getProperty(PubSubConstants.HEADER_CONTENT_TYPE_KEY);
-        LOGGER.debug("input obtained from event properties: ", inputContentType);
-
-        if (inputContentType != null) {
-            ContentTypeEvaluationCriteriaImpl ctec = new ContentTypeEvaluationCriteriaImpl(this,
-                    inputContentType.toString());
+        // the content type of the event is split once for all of its subscriptions
+        String inputType = envelope.getContentTypeName();
+        LOGGER.debug("input obtained from event properties: {}", inputType);
 
-            status = ContentTypeEvaluator.evaluate(ctec);
+        if (inputType != null) {
+            status = ContentTypeEvaluator.evaluate(this, inputType,
+                    envelope.getContentTypeVersion());
         }
 
         LOGGER.debug("EXITING: matches");
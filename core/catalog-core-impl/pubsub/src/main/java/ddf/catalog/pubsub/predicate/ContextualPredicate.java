@@ -18,20 +18,19 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.apache.lucene.queryParser.ParseException;
-import org.apache.lucene.store.Directory;
+import org.apache.lucene.search.Query;
 import org.osgi.service.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import ddf.catalog.pubsub.criteria.contextual.ContextualEvaluationCriteria;
-import ddf.catalog.pubsub.criteria.contextual.ContextualEvaluationCriteriaImpl;
 import ddf.catalog.pubsub.criteria.contextual.ContextualEvaluator;
-import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.EventEnvelope;
 
 public class ContextualPredicate implements Predicate {
     private String searchPhrase;
@@ -40,7 +39,10 @@ public class ContextualPredicate implements Predicate {
 
     private boolean caseSensitiveSearch;
 
-    private Collection<String> textPaths;
+    private List<String> textPaths;
+
+    // parsed once, when the subscription is created, and evaluated against the index of each event
+    private Query query;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ContextualPredicate.class);
 
@@ -54,6 +56,15 @@ public ContextualPredicate(String searchPhrase, boolean fuzzy, boolean caseSensi
             this.textPaths = new ArrayList<String>(textPaths);
         }
         this.searchPhrase = normalizePhrase(searchPhrase, fuzzy);
+
+        if (!this.searchPhrase.isEmpty()) {
+            try {
+                this.query = ContextualEvaluator.parseQuery(this.searchPhrase, caseSensitiveSearch);
+            } catch (ParseException e) {
+                LOGGER.warn("Unable to parse contextual search phrase [" + this.searchPhrase
+                        + "], it will not match any entry", e);
+            }
+        }
     }
 
     public boolean matches(Event properties) {
@@ -62,70 +73,63 @@ public boolean matches(Event properties) {
 
         LOGGER.debug("Headers: {}", properties);
 
-        ContextualEvaluationCriteria cec = null;
-        Map<String, Object> contextualMap = (Map<String, Object>) properties
-                .getProperty(PubSubConstants.HEADER_CONTEXTUAL_KEY);
+        EventEnvelope envelope = EventEnvelope.of(properties);
 
-        if (contextualMap == null) {
+        if (envelope.getContextualMap() == null) {
             LOGGER.debug("No contextual metadata to search against.");
             return false;
         }
 
-        String operation = (String) properties.getProperty(PubSubConstants.HEADER_OPERATION_KEY);
-        LOGGER.debug("operation = {}", operation);
-        String metadata = (String) contextualMap.get("METADATA");
-        LOGGER.debug("metadata = [{}]", metadata);
+        LOGGER.debug("operation = {}", envelope.getOperation());
+        LOGGER.debug("metadata = [{}]", envelope.getMetadata());
 
         // If deleting a catalog entry and the entry's metadata is only the word "deleted" (i.e.,
         // the
         // source is deleting the catalog entry and did not send any metadata with the delete
         // event), then
         // cannot apply any contextual filtering - just send the event on to the subscriber
-        if (operation.equals(PubSubConstants.DELETE)
-                && metadata.equals(PubSubConstants.METADATA_DELETED)) {
+        if (envelope.isDeletedEntry()) {
             LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
             return true;
         }
 
-        // If predicate specified one or more text paths, then extract the entry's metadata from the
-        // Event properties and
-        // pass it and the text path(s) to the evaluation criteria (which will build a Lucene index
-        // on the metadata using the
-        // text paths)
-        if (this.textPaths != null && !this.textPaths.isEmpty()) {
-            LOGGER.debug("creating criteria with textPaths and metadata document");
-            try {
-                cec = new ContextualEvaluationCriteriaImpl(searchPhrase, fuzzy,
-                        caseSensitiveSearch,
-                        (String[]) this.textPaths.toArray(new String[this.textPaths.size()]),
-                        (String) contextualMap.get("METADATA"));
-            } catch (IOException e) {
-                LOGGER.error("IO exception during context evaluation", e);
-                return false;
-            }
+        // Handle case where no search phrase is specified. The text path(s) are then used to
+        // determine if an element or attribute exist in the metadata parsed once for the event
+        if (searchPhrase.isEmpty()) {
+            return hasTextPaths()
+                    && ContextualEvaluator.hasIndexableText(envelope.getDocument(),
+                            textPaths.toArray(new String[textPaths.size()]));
         }
 
-        // This predicate has no text paths specified, so can use default Lucene search index, which
-        // indexed the entry's entire metadata
-        // per the default XPath expressions in ContextualEvaluator, from the event's properties
-        // data
-        else {
-            LOGGER.debug("using default Lucene search index for metadata");
-            cec = new ContextualEvaluationCriteriaImpl(searchPhrase, fuzzy, caseSensitiveSearch,
-                    (Directory) contextualMap.get("DEFAULT_INDEX"));
+        if (query == null) {
+            LOGGER.debug("Search phrase [{}] could not be parsed", searchPhrase);
+            return false;
         }
 
+        MemoryIndex index = null;
+
+        // If predicate specified one or more text paths, then use the index of the entry's metadata
+        // selected by the text paths, which is shared by all of the predicates with the same text
+        // paths. Otherwise use the default Lucene search index, which indexed the entry's entire
+        // metadata per the default XPath expressions in ContextualEvaluator. Either index is built
+        // the first time it is needed for the event.
+        if (hasTextPaths()) {
+            LOGGER.debug("using Lucene search index for textPaths");
+        } else {
+            LOGGER.debug("using default Lucene search index for metadata");
+        }
         try {
-            return ContextualEvaluator.evaluate(cec);
+            index = envelope.getIndex(hasTextPaths() ? textPaths : null);
         } catch (IOException e) {
-            LOGGER.error("IO Exception evaluating context criteria", e);
-        } catch (ParseException e) {
-            LOGGER.error("Parse Exception evaluating context criteria", e);
+            LOGGER.error("IO exception during context evaluation", e);
+            return false;
         }
 
+        boolean matches = index != null && ContextualEvaluator.evaluate(index, query);
+
         LOGGER.debug("EXITING: {}", methodName);
 
-        return false;
+        return matches;
     }
 
     public static boolean isContextual(String searchPhrase) {
@@ -152,6 +156,14 @@ public Collection<String> getTextPaths() {
         return textPaths;
     }
 
+    /**
+     * @return the query parsed from the search phrase, or null if there is no search phrase or it
+     *         could not be parsed
+     */
+    public Query getQuery() {
+        return query;
+    }
+
     /**
      * Normalizes a search phrase for a Lucene query
      * 
@@ -16,8 +16,6 @@
 package ddf.catalog.pubsub.predicate;
 
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Map;
 
 import org.osgi.service.event.Event;
 import org.slf4j.Logger;
@@ -29,7 +27,7 @@
 import ddf.catalog.pubsub.criteria.entry.EntryEvaluationCriteria;
 import ddf.catalog.pubsub.criteria.entry.EntryEvaluationCriteriaImpl;
 import ddf.catalog.pubsub.criteria.entry.EntryEvaluator;
-import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.EventEnvelope;
 
 public class EntryPredicate implements Predicate {
     private String catalogId;
@@ -57,45 +55,36 @@ public boolean matches(Event properties) {
         LOGGER.trace("ENTERING: EntryPredicate.matches");
         boolean status = false;
 
-        Map<String, Object> contextualMap = (Map<String, Object>) properties
-                .getProperty(PubSubConstants.HEADER_CONTEXTUAL_KEY);
-        String operation = (String) properties.getProperty(PubSubConstants.HEADER_OPERATION_KEY);
-        LOGGER.debug("operation = {}", operation);
-
-        if (contextualMap != null) {
-            String metadata = (String) contextualMap.get("METADATA");
-
-            // If deleting a catalog entry and the entry's location data is NULL is only the word
-            // "deleted" (i.e., the
-            // source is deleting the catalog entry and did not send any location data with the
-            // delete event), then
-            // cannot apply any geospatial filtering - just send the event on to the subscriber
-            if (PubSubConstants.DELETE.equals(operation)
-                    && PubSubConstants.METADATA_DELETED.equals(metadata)) {
-                LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
-                LOGGER.debug("EXITING: matches");
-                return true;
-            }
+        EventEnvelope envelope = EventEnvelope.of(properties);
+        LOGGER.debug("operation = {}", envelope.getOperation());
+
+        // If deleting a catalog entry and the entry's location data is NULL is only the word
+        // "deleted" (i.e., the
+        // source is deleting the catalog entry and did not send any location data with the
+        // delete event), then
+        // cannot apply any geospatial filtering - just send the event on to the subscriber
+        if (envelope.isDeletedEntry()) {
+            LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
+            LOGGER.debug("EXITING: matches");
+            return true;
         }
 
         if (catalogId != null) {
-            EntryEvaluationCriteria eec = new EntryEvaluationCriteriaImpl(catalogId, properties
-                    .getProperty(PubSubConstants.HEADER_ID_KEY).toString());
+            EntryEvaluationCriteria eec = new EntryEvaluationCriteriaImpl(catalogId,
+                    envelope.getEntryId());
 
             status = EntryEvaluator.evaluate(eec);
         } else if (productUri != null) {
             LOGGER.debug("Doing DAD matches");
 
-            String incomingProductUriString = (String) properties
-                    .getProperty(PubSubConstants.HEADER_DAD_KEY);
-            URI incomingProductUri;
-            try {
-                incomingProductUri = new URI(incomingProductUriString);
+            // the product URI of the event is parsed once for all of its subscriptions
+            URI incomingProductUri = envelope.getResourceUri();
+            if (incomingProductUri != null) {
                 DadEvaluationCriteria dec = new DadEvaluationCriteriaImpl(productUri,
                         incomingProductUri);
 
                 status = DadEvaluator.evaluate(dec);
-            } catch (URISyntaxException e) {
+            } else {
                 LOGGER.debug("Error comparing DADs");
                 status = false;
             }
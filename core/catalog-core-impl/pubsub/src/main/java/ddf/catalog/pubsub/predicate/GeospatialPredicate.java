@@ -24,13 +24,14 @@
 import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
 import com.vividsolutions.jts.io.ParseException;
 
 import ddf.catalog.data.Metacard;
 import ddf.catalog.pubsub.criteria.geospatial.GeospatialEvaluationCriteria;
 import ddf.catalog.pubsub.criteria.geospatial.GeospatialEvaluationCriteriaImpl;
 import ddf.catalog.pubsub.criteria.geospatial.GeospatialEvaluator;
-import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.EventEnvelope;
 
 public class GeospatialPredicate implements Predicate {
     private Geometry geoCriteria;
@@ -39,6 +40,9 @@ public class GeospatialPredicate implements Predicate {
 
     private double distance;
 
+    // PreparedGeometry is not thread-safe, so each event worker thread prepares its own copy
+    private ThreadLocal<PreparedGeometry[]> preparedCriteria;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(GeospatialPredicate.class);
 
     /**
@@ -56,6 +60,7 @@ public GeospatialPredicate(String wkt, String geoOperation, double distance) {
         try {
             WKTReader2 wktreader = new WKTReader2();
             this.geoCriteria = wktreader.read(wkt);
+            this.preparedCriteria = prepare(geoCriteria);
         } catch (Exception e) {
             LOGGER.error("Exception reading WKT", e);
         }
@@ -66,31 +71,40 @@ public GeospatialPredicate(Geometry geo, String geoOperation, double distance) {
         this.distance = distance;
 
         this.geoCriteria = geo;
+        if (geo != null) {
+            this.preparedCriteria = prepare(geo);
+        }
     }
 
-    public boolean matches(Event properties) {
-        Metacard entry = (Metacard) properties.getProperty(PubSubConstants.HEADER_ENTRY_KEY);
-
-        Map<String, Object> contextualMap = (Map<String, Object>) properties
-                .getProperty(PubSubConstants.HEADER_CONTEXTUAL_KEY);
-
-        String operation = (String) properties.getProperty(PubSubConstants.HEADER_OPERATION_KEY);
-        LOGGER.debug("operation = {}", operation);
-
-        if (contextualMap != null) {
-            String metadata = (String) contextualMap.get("METADATA");
-
-            // If deleting a catalog entry and the entry's location data is NULL is only the word
-            // "deleted" (i.e., the
-            // source is deleting the catalog entry and did not send any location data with the
-            // delete event), then
-            // cannot apply any geospatial filtering - just send the event on to the subscriber
-            if (PubSubConstants.DELETE.equals(operation)
-                    && PubSubConstants.METADATA_DELETED.equals(metadata)) {
-                LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
-                return true;
+    private static ThreadLocal<PreparedGeometry[]> prepare(final Geometry geo) {
+        return new ThreadLocal<PreparedGeometry[]>() {
+            @Override
+            protected PreparedGeometry[] initialValue() {
+                return GeospatialEvaluator.prepare(geo);
             }
+        };
+    }
+
+    public boolean matches(Event properties) {
+        EventEnvelope envelope = EventEnvelope.of(properties);
+        Metacard entry = envelope.getEntry();
+        LOGGER.debug("operation = {}", envelope.getOperation());
+
+        // If deleting a catalog entry and the entry's location data is NULL is only the word
+        // "deleted" (i.e., the
+        // source is deleting the catalog entry and did not send any location data with the
+        // delete event), then
+        // cannot apply any geospatial filtering - just send the event on to the subscriber
+        if (envelope.isDeletedEntry()) {
+            LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
+            return true;
+        }
 
+        // the location of the entry is parsed once per event, by the first predicate needing it
+        Geometry input = envelope.getGeometry();
+        if (input != null && preparedCriteria != null) {
+            return GeospatialEvaluator.evaluate(preparedCriteria.get(), geoOperation, input,
+                    distance);
         }
 
         GeospatialEvaluationCriteria gec;
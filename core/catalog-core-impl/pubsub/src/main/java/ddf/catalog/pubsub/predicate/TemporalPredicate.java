@@ -20,13 +20,12 @@
 import ddf.catalog.pubsub.criteria.temporal.TemporalEvaluationCriteria;
 import ddf.catalog.pubsub.criteria.temporal.TemporalEvaluationCriteriaImpl;
 import ddf.catalog.pubsub.criteria.temporal.TemporalEvaluator;
-import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.EventEnvelope;
 import org.osgi.service.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
-import java.util.Map;
 
 public class TemporalPredicate implements Predicate {
     private Date end;
@@ -69,59 +68,38 @@ public boolean matches(Event properties) {
         TemporalEvaluationCriteria tec = null;
         Date date = null;
 
-        Map<String, Object> contextualMap = (Map<String, Object>) properties
-                .getProperty(PubSubConstants.HEADER_CONTEXTUAL_KEY);
-        String operation = (String) properties.getProperty(PubSubConstants.HEADER_OPERATION_KEY);
-        LOGGER.debug("operation = {}", operation);
-        if (contextualMap != null) {
-            String metadata = (String) contextualMap.get("METADATA");
-
-            // If deleting a catalog entry and the entry's location data is NULL is only the word
-            // "deleted" (i.e., the
-            // source is deleting the catalog entry and did not send any location data with the
-            // delete event), then
-            // cannot apply any geospatial filtering - just send the event on to the subscriber
-            if (PubSubConstants.DELETE.equals(operation)
-                    && PubSubConstants.METADATA_DELETED.equals(metadata)) {
-                LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
-                return true;
-            }
+        EventEnvelope envelope = EventEnvelope.of(properties);
+        LOGGER.debug("operation = {}", envelope.getOperation());
+
+        // If deleting a catalog entry and the entry's location data is NULL is only the word
+        // "deleted" (i.e., the
+        // source is deleting the catalog entry and did not send any location data with the
+        // delete event), then
+        // cannot apply any geospatial filtering - just send the event on to the subscriber
+        if (envelope.isDeletedEntry()) {
+            LOGGER.debug("Detected a DELETE operation where metadata is just the word 'deleted', so send event on to subscriber");
+            return true;
         }
 
-        Metacard entry = (Metacard) properties.getProperty(PubSubConstants.HEADER_ENTRY_KEY);
+        Metacard entry = envelope.getEntry();
         if (entry != null) {
             LOGGER.debug("entry id: {}", entry.getId());
 
-            switch (this.type) {
-            case modified:
-                LOGGER.debug("search by modified: {}", entry.getModifiedDate());
-                date = entry.getModifiedDate();
-                break;
-            case effective:
-                LOGGER.debug("search by effective: {}", entry.getEffectiveDate());
-                date = entry.getEffectiveDate();
-                break;
-            case created:
-                // currently searches by createdDate not supported by endpoints
-                LOGGER.debug("search by created: {}", entry.getCreatedDate());
-                date = entry.getCreatedDate();
-                break;
-            case expiration:
-                // currently searches by expirationDate not supported by endpoints
-                LOGGER.debug("search by expiration: {}", entry.getExpirationDate());
-                date = entry.getExpirationDate();
-                break;
-            }
+            date = envelope.getDate(this.type);
+            LOGGER.debug("search by {}: {}", this.type, date);
 
+            // the relative time period is computed for each event, without modifying this
+            // predicate evaluated by several threads
+            Date periodStart = start;
+            Date periodEnd = end;
             if (offset > 0) {
-                this.end = new Date();
-                long startTimeMillis = end.getTime() - offset;
-                this.start = new Date(startTimeMillis);
+                periodEnd = new Date();
+                periodStart = new Date(periodEnd.getTime() - offset);
 
-                LOGGER.debug("time period lowerBound = {}", start);
-                LOGGER.debug("time period upperBound = {}", end);
+                LOGGER.debug("time period lowerBound = {}", periodStart);
+                LOGGER.debug("time period upperBound = {}", periodEnd);
             }
-            tec = new TemporalEvaluationCriteriaImpl(end, start, date);
+            tec = new TemporalEvaluationCriteriaImpl(periodEnd, periodStart, date);
         }
 
         LOGGER.debug("EXITING: matches");
@@ -129,6 +107,26 @@ public boolean matches(Event properties) {
         return TemporalEvaluator.evaluate(tec);
     }
 
+    /**
+     * @return the date of the entry of the given type
+     */
+    public static Date getDate(Metacard entry, DateType type) {
+        switch (type) {
+        case modified:
+            return entry.getModifiedDate();
+        case effective:
+            return entry.getEffectiveDate();
+        case created:
+            // currently searches by createdDate not supported by endpoints
+            return entry.getCreatedDate();
+        case expiration:
+            // currently searches by expirationDate not supported by endpoints
+            return entry.getExpirationDate();
+        default:
+            return null;
+        }
+    }
+
     public static boolean isTemporal(String startXML, String endXML) {
         return !startXML.isEmpty() && !endXML.isEmpty();
     }
@@ -141,6 +139,14 @@ public Date getStart() {
         return start;
     }
 
+    /**
+     * @return the length in milliseconds of the relative time period ending at the time of
+     *         evaluation, or 0 if the time period has a start and an end
+     */
+    public long getOffset() {
+        return offset;
+    }
+
     public DateType getType() {
         return type;
     }
@@ -16,12 +16,11 @@
 package ddf.catalog.pubsub.predicate;
 
 import org.osgi.service.event.Event;
-import org.w3c.dom.Document;
 
 import ddf.catalog.pubsub.criteria.contextual.XPathEvaluationCriteria;
 import ddf.catalog.pubsub.criteria.contextual.XPathEvaluationCriteriaImpl;
 import ddf.catalog.pubsub.criteria.contextual.XPathEvaluator;
-import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.EventEnvelope;
 
 public class XPathPredicate implements Predicate {
     private String xpath;
@@ -39,8 +38,9 @@ public static boolean isXPath(String xpath) {
     }
 
     public boolean matches(Event properties) {
-        XPathEvaluationCriteria xec = new XPathEvaluationCriteriaImpl(
-                (Document) properties.getProperty(PubSubConstants.HEADER_XPATH_KEY), xpath);
+        // the metadata is parsed once for all of the subscriptions evaluating the event
+        XPathEvaluationCriteria xec = new XPathEvaluationCriteriaImpl(EventEnvelope.of(properties)
+                .getDocument(), xpath);
 
         return XPathEvaluator.evaluate(xec);
     }
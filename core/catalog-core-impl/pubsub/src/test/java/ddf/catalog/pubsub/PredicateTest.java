@@ -31,7 +31,7 @@
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 
-import org.apache.lucene.store.Directory;
+import org.apache.lucene.index.memory.MemoryIndex;
 import org.geotools.filter.FilterTransformer;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
@@ -286,7 +286,7 @@ public void testContentTypeFilter() throws Exception {
     }
 
     private Map<String, Object> constructContextualMap(MetacardImpl metacard) throws IOException {
-        Directory index = ContextualEvaluator.buildIndex(metacard.getMetadata());
+        MemoryIndex index = ContextualEvaluator.buildIndex(metacard.getMetadata());
         Map<String, Object> contextualMap = new HashMap<String, Object>();
         contextualMap.put("DEFAULT_INDEX", index);
         contextualMap.put("METADATA", metacard.getMetadata());
@@ -1073,7 +1073,7 @@ public void testContextualQuery() throws Exception {
         contextualMap.clear();
         properties.clear();
         metacard.setMetadata(TestDataLibrary.getDogEntry());
-        Directory index1 = ContextualEvaluator.buildIndex(metacard.getMetadata());
+        MemoryIndex index1 = ContextualEvaluator.buildIndex(metacard.getMetadata());
         contextualMap.put("DEFAULT_INDEX", index1);
         contextualMap.put("METADATA", metacard.getMetadata());
         properties.put(PubSubConstants.HEADER_CONTEXTUAL_KEY, contextualMap);
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+import org.osgi.service.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.predicate.ContextualPredicate;
+import ddf.catalog.pubsub.predicate.Predicate;
+
+/**
+ * Measures the cost of matching one event against an increasing number of contextual
+ * subscriptions, including the cost of indexing the event. The costs are logged; the test only
+ * fails if the subscriptions do not match as expected.
+ */
+public class TestContextualBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestContextualBenchmark.class);
+
+    private static final int[] SUBSCRIPTION_COUNTS = {1, 10, 100, 1000};
+
+    private static final int EVENTS = 20;
+
+    private static final Collection<String> TITLE_PATH = Arrays.asList("//title");
+
+    @Test
+    public void testCostPerEvent() throws Exception {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("ABC123");
+        metacard.setMetadata(TestDataLibrary.getCatAndDogEntry());
+
+        for (int count : SUBSCRIPTION_COUNTS) {
+            List<Predicate> predicates = createPredicates(count);
+            int expected = count - count / 4;
+
+            // warm up
+            assertThat(match(predicates, metacard), is(expected));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                assertThat(match(predicates, metacard), is(expected));
+            }
+            long micros = (System.nanoTime() - start) / EVENTS / 1000;
+
+            LOGGER.info("{} contextual subscriptions: {} microseconds per event", count, micros);
+        }
+    }
+
+    /**
+     * Creates subscriptions of which three in four match the test entry: default index terms,
+     * wildcards, text paths sharing an index, and terms absent from the entry.
+     */
+    private List<Predicate> createPredicates(int count) {
+        List<Predicate> predicates = new ArrayList<Predicate>(count);
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+            case 0:
+                predicates.add(new ContextualPredicate("dog", false, false, null));
+                break;
+            case 1:
+                predicates.add(new ContextualPredicate("Ca*", false, true, null));
+                break;
+            case 2:
+                predicates.add(new ContextualPredicate("serengeti", false, false, TITLE_PATH));
+                break;
+            default:
+                predicates.add(new ContextualPredicate("zebra" + i, false, false, null));
+                break;
+            }
+        }
+        return predicates;
+    }
+
+    private int match(List<Predicate> predicates, MetacardImpl metacard) {
+        Event event = EventProcessorImpl.createEvent(metacard, PubSubConstants.CREATE);
+        int matched = 0;
+        for (Predicate predicate : predicates) {
+            if (predicate.matches(event)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
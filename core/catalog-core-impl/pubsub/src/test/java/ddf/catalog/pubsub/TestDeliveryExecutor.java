@@ -0,0 +1,509 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.service.event.Event;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.event.BatchDeliveryMethod;
+import ddf.catalog.event.DeliveryMethod;
+import ddf.catalog.event.Subscription;
+import ddf.catalog.operation.Update;
+import ddf.catalog.plugin.PreDeliveryPlugin;
+import ddf.catalog.pubsub.internal.DeliveryExecutor;
+import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.internal.SubscriberQueue;
+
+public class TestDeliveryExecutor {
+
+    @Rule
+    public TemporaryFolder spillFolder = new TemporaryFolder();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<String> deliveredIds = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    private DeliveryExecutor executor = new DeliveryExecutor();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSlowSubscriberDoesNotDelayOthers() throws Exception {
+        executor.setThreads(2);
+        SubscriberQueue slow = executor.register("slow", createSubscription(blockingDelivery()),
+                Collections.<PreDeliveryPlugin> emptyList());
+        DeliveryMethod fastDelivery = mock(DeliveryMethod.class);
+        SubscriberQueue fast = executor.register("fast", createSubscription(fastDelivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        for (String id : Arrays.asList("1", "2", "3")) {
+            slow.offer(createEvent(id));
+            fast.offer(createEvent(id));
+        }
+
+        verify(fastDelivery, timeout(5000).times(3)).created(any(Metacard.class));
+        assertThat(slow.getPendingCount(), is(3));
+        release.countDown();
+        waitForDelivered(slow, 3);
+        assertThat(deliveredIds, is(Arrays.asList("1", "2", "3")));
+    }
+
+    @Test
+    public void testRetryFailedDelivery() throws Exception {
+        executor.setRetryBackoffMillis(10);
+        DeliveryMethod delivery = mock(DeliveryMethod.class);
+        doThrow(new RuntimeException("unreachable")).doNothing().when(delivery)
+                .created(any(Metacard.class));
+        SubscriberQueue queue = executor.register("retried", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        queue.offer(createEvent("1"));
+
+        verify(delivery, timeout(5000).times(2)).created(any(Metacard.class));
+        waitForDelivered(queue, 1);
+        assertThat(queue.getRetriedCount(), is(1L));
+        assertThat(queue.getFailedCount(), is(0L));
+    }
+
+    @Test
+    public void testRetryDoesNotRunPreDeliveryAgain() throws Exception {
+        executor.setRetryBackoffMillis(10);
+        DeliveryMethod delivery = mock(DeliveryMethod.class);
+        doThrow(new RuntimeException("unreachable")).doNothing().when(delivery)
+                .created(any(Metacard.class));
+        PreDeliveryPlugin plugin = mock(PreDeliveryPlugin.class);
+        when(plugin.processCreate(any(Metacard.class))).thenAnswer(new Answer<Metacard>() {
+            @Override
+            public Metacard answer(InvocationOnMock invocation) throws Throwable {
+                return (Metacard) invocation.getArguments()[0];
+            }
+        });
+        SubscriberQueue queue = executor.register("retried", createSubscription(delivery),
+                Collections.singletonList(plugin));
+
+        queue.offer(createEvent("1"));
+
+        verify(delivery, timeout(5000).times(2)).created(any(Metacard.class));
+        waitForDelivered(queue, 1);
+        verify(plugin, times(1)).processCreate(any(Metacard.class));
+    }
+
+    @Test
+    public void testBatchWindowDoesNotCutRetryShort() throws Exception {
+        executor.setRetryBackoffMillis(1500);
+        BatchDeliveryMethod delivery = mock(BatchDeliveryMethod.class);
+        when(delivery.getMaxBatchSize()).thenReturn(2);
+        when(delivery.getMaxBatchDelayMillis()).thenReturn(300L);
+        doThrow(new RuntimeException("unreachable")).doNothing().when(delivery)
+                .created(anyListOf(Metacard.class));
+        SubscriberQueue queue = executor.register("batched", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        // the second delivery fills the batch before the end of the window of the first
+        queue.offer(createEvent("1"));
+        Thread.sleep(100);
+        queue.offer(createEvent("2"));
+        verify(delivery, timeout(5000).times(1)).created(anyListOf(Metacard.class));
+
+        // the timer of the window ends during the backoff, without resuming the deliveries
+        Thread.sleep(800);
+        verify(delivery, times(1)).created(anyListOf(Metacard.class));
+        verify(delivery, timeout(5000).times(2)).created(anyListOf(Metacard.class));
+        waitForDelivered(queue, 2);
+    }
+
+    @Test
+    public void testDropAfterLastRetry() throws Exception {
+        executor.setRetryBackoffMillis(10);
+        executor.setMaxRetries(2);
+        DeliveryMethod delivery = mock(DeliveryMethod.class);
+        doThrow(new RuntimeException("unreachable")).when(delivery).created(any(Metacard.class));
+        SubscriberQueue queue = executor.register("failing", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        queue.offer(createEvent("1"));
+
+        verify(delivery, timeout(5000).times(3)).created(any(Metacard.class));
+        for (int i = 0; i < 50 && queue.getFailedCount() == 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(queue.getFailedCount(), is(1L));
+        assertThat(queue.getPendingCount(), is(0));
+    }
+
+    @Test
+    public void testDropOldestWhenQueueFull() throws Exception {
+        executor.setQueueCapacity(1);
+        SubscriberQueue queue = executor.register("slow", createSubscription(blockingDelivery()),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        offer(queue, "1", "2", "3");
+
+        assertThat(queue.getDroppedCount(), is(1L));
+        release.countDown();
+        waitForDelivered(queue, 2);
+        assertThat(deliveredIds, is(Arrays.asList("1", "3")));
+    }
+
+    @Test
+    public void testDropNewestWhenQueueFull() throws Exception {
+        executor.setQueueCapacity(1);
+        executor.setSlowSubscriberPolicy(SubscriberQueue.SlowSubscriberPolicy.DROP_NEWEST);
+        SubscriberQueue queue = executor.register("slow", createSubscription(blockingDelivery()),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        offer(queue, "1", "2", "3");
+
+        assertThat(queue.getDroppedCount(), is(1L));
+        release.countDown();
+        waitForDelivered(queue, 2);
+        assertThat(deliveredIds, is(Arrays.asList("1", "2")));
+    }
+
+    @Test
+    public void testSpillKeepsOrder() throws Exception {
+        executor.setQueueCapacity(1);
+        executor.setSlowSubscriberPolicy(SubscriberQueue.SlowSubscriberPolicy.SPILL);
+        executor.setSpillDirectory(spillFolder.getRoot());
+        SubscriberQueue queue = executor.register("slow", createSubscription(blockingDelivery()),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        offer(queue, "1", "2", "3", "4");
+
+        assertThat(queue.getDroppedCount(), is(0L));
+        assertThat(queue.getPendingCount(), is(4));
+        release.countDown();
+        waitForDelivered(queue, 4);
+        assertThat(deliveredIds, is(Arrays.asList("1", "2", "3", "4")));
+    }
+
+    @Test
+    public void testSpillFilesOfSimilarIds() throws Exception {
+        executor.setQueueCapacity(1);
+        executor.setSlowSubscriberPolicy(SubscriberQueue.SlowSubscriberPolicy.SPILL);
+        executor.setSpillDirectory(spillFolder.getRoot());
+        SubscriberQueue slash = executor.register("a/b", createSubscription(blockingDelivery()),
+                Collections.<PreDeliveryPlugin> emptyList());
+        SubscriberQueue underscore = executor.register("a_b",
+                createSubscription(blockingDelivery()), Collections.<PreDeliveryPlugin> emptyList());
+
+        offer(slash, "1", "2", "3");
+        offer(underscore, "4", "5", "6");
+
+        assertThat(spillFolder.getRoot().list().length, is(2));
+        release.countDown();
+        waitForDelivered(slash, 3);
+        waitForDelivered(underscore, 3);
+        assertThat(slash.getDroppedCount() + underscore.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void testPersistentDeliveriesAreMadeAfterRestart() throws Exception {
+        executor.setQueueCapacity(1);
+        executor.setSlowSubscriberPolicy(SubscriberQueue.SlowSubscriberPolicy.SPILL);
+        executor.setSpillDirectory(spillFolder.getRoot());
+        executor.setPersistentDeliveries(true);
+        final SubscriberQueue queue = executor.register("slow",
+                createSubscription(blockingDelivery()), Collections.<PreDeliveryPlugin> emptyList());
+
+        // 1 is being delivered, 2 is queued, 3 and 4 are spilled
+        offer(queue, "1", "2", "3", "4");
+        Thread shutdown = new Thread() {
+            @Override
+            public void run() {
+                executor.shutdown();
+            }
+        };
+        shutdown.start();
+        for (int i = 0; i < 50 && queue.getPendingCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(queue.getPendingCount(), is(0));
+        assertThat(queue.getDroppedCount(), is(0L));
+        release.countDown();
+        shutdown.join(10000);
+
+        executor = new DeliveryExecutor();
+        executor.setSpillDirectory(spillFolder.getRoot());
+        executor.setPersistentDeliveries(true);
+        final List<String> redeliveredIds = Collections.synchronizedList(new ArrayList<String>());
+        DeliveryMethod delivery = mock(DeliveryMethod.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                redeliveredIds.add(((Metacard) invocation.getArguments()[0]).getId());
+                return null;
+            }
+        }).when(delivery).created(any(Metacard.class));
+        SubscriberQueue restarted = executor.register("slow", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+        restarted.offer(createEvent("5"));
+
+        // the delivery in progress on shutdown is made again
+        waitForDelivered(restarted, 5);
+        assertThat(redeliveredIds, is(Arrays.asList("1", "2", "3", "4", "5")));
+        assertThat(spillFolder.getRoot().list().length, is(1));
+    }
+
+    @Test
+    public void testErrorDoesNotStopQueue() throws Exception {
+        DeliveryMethod delivery = mock(DeliveryMethod.class);
+        doThrow(new AssertionError("failed")).doNothing().when(delivery)
+                .created(any(Metacard.class));
+        SubscriberQueue queue = executor.register("error", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        queue.offer(createEvent("1"));
+        verify(delivery, timeout(5000).times(1)).created(any(Metacard.class));
+        Thread.sleep(100);
+        queue.offer(createEvent("2"));
+
+        verify(delivery, timeout(5000).times(3)).created(any(Metacard.class));
+        waitForDelivered(queue, 2);
+    }
+
+    @Test
+    public void testShutdownIsFinal() throws Exception {
+        DeliveryMethod delivery = mock(DeliveryMethod.class);
+        executor.shutdown();
+        SubscriberQueue queue = executor.register("late", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        queue.offer(createEvent("1"));
+
+        Thread.sleep(100);
+        verify(delivery, times(0)).created(any(Metacard.class));
+        assertThat(queue.getDroppedCount(), is(1L));
+        assertThat(executor.getSubscriberCount(), is(0));
+    }
+
+    @Test
+    public void testUnregisterDropsPendingDeliveries() throws Exception {
+        SubscriberQueue queue = executor.register("slow", createSubscription(blockingDelivery()),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        offer(queue, "1", "2");
+        executor.unregister("slow");
+
+        assertThat(executor.getSubscriberCount(), is(0));
+        assertThat(queue.getPendingCount(), is(0));
+        assertThat(queue.getDroppedCount(), is(2L));
+    }
+
+    @Test
+    public void testBatchBySize() throws Exception {
+        RecordingBatchDelivery delivery = new RecordingBatchDelivery(3, 60000);
+        SubscriberQueue queue = executor.register("batched", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        for (String id : Arrays.asList("1", "2", "3", "4", "5", "6")) {
+            queue.offer(createEvent(id));
+        }
+
+        waitForDelivered(queue, 6);
+        assertThat(delivery.batches, is(Arrays.asList("created [1, 2, 3]", "created [4, 5, 6]")));
+    }
+
+    @Test
+    public void testBatchByDelay() throws Exception {
+        RecordingBatchDelivery delivery = new RecordingBatchDelivery(100, 200);
+        SubscriberQueue queue = executor.register("batched", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        queue.offer(createEvent("1"));
+        queue.offer(createEvent("2"));
+
+        assertThat(queue.getDeliveredCount(), is(0L));
+        waitForDelivered(queue, 2);
+        assertThat(delivery.batches, is(Arrays.asList("created [1, 2]")));
+    }
+
+    @Test
+    public void testBatchKeepsOperationsInOrder() throws Exception {
+        RecordingBatchDelivery delivery = new RecordingBatchDelivery(10, 100);
+        SubscriberQueue queue = executor.register("batched", createSubscription(delivery),
+                Collections.<PreDeliveryPlugin> emptyList());
+
+        queue.offer(createEvent("1"));
+        queue.offer(createEvent("2"));
+        queue.offer(createEvent("3", PubSubConstants.UPDATE));
+        queue.offer(createEvent("4", PubSubConstants.DELETE));
+
+        waitForDelivered(queue, 4);
+        assertThat(delivery.batches, is(Arrays.asList("created [1, 2]", "updated [3]",
+                "deleted [4]")));
+    }
+
+    private Subscription createSubscription(DeliveryMethod delivery) {
+        Subscription subscription = mock(Subscription.class);
+        when(subscription.getDeliveryMethod()).thenReturn(delivery);
+        return subscription;
+    }
+
+    /**
+     * A delivery method blocking until released, so that the first delivery holds up the queue.
+     */
+    private DeliveryMethod blockingDelivery() {
+        DeliveryMethod delivery = mock(DeliveryMethod.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                deliveredIds.add(((Metacard) invocation.getArguments()[0]).getId());
+                return null;
+            }
+        }).when(delivery).created(any(Metacard.class));
+        return delivery;
+    }
+
+    /**
+     * Offers the deliveries after the first one has started, so that it no longer counts against
+     * the capacity of the queue.
+     */
+    private void offer(SubscriberQueue queue, String... ids) throws InterruptedException {
+        queue.offer(createEvent(ids[0]));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < ids.length; i++) {
+            queue.offer(createEvent(ids[i]));
+        }
+    }
+
+    private Event createEvent(String id) {
+        return createEvent(id, PubSubConstants.CREATE);
+    }
+
+    private Event createEvent(String id, String operation) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(PubSubConstants.HEADER_ENTRY_KEY, metacard);
+        properties.put(PubSubConstants.HEADER_OPERATION_KEY, operation);
+        return new Event("ddf/catalog/event", properties);
+    }
+
+    private void waitForDelivered(SubscriberQueue queue, long count) throws InterruptedException {
+        for (int i = 0; i < 50 && queue.getDeliveredCount() != count; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(queue.getDeliveredCount(), is(count));
+    }
+
+    private static class RecordingBatchDelivery implements BatchDeliveryMethod {
+
+        private final List<String> batches = Collections.synchronizedList(new ArrayList<String>());
+
+        private final int maxBatchSize;
+
+        private final long maxBatchDelayMillis;
+
+        RecordingBatchDelivery(int maxBatchSize, long maxBatchDelayMillis) {
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchDelayMillis = maxBatchDelayMillis;
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        @Override
+        public long getMaxBatchDelayMillis() {
+            return maxBatchDelayMillis;
+        }
+
+        @Override
+        public void created(List<Metacard> newMetacards) {
+            batches.add("created " + getIds(newMetacards));
+        }
+
+        @Override
+        public void updatedHit(List<Update> updates) {
+            List<Metacard> newMetacards = new ArrayList<Metacard>();
+            for (Update update : updates) {
+                newMetacards.add(update.getNewMetacard());
+            }
+            batches.add("updated " + getIds(newMetacards));
+        }
+
+        @Override
+        public void deleted(List<Metacard> oldMetacards) {
+            batches.add("deleted " + getIds(oldMetacards));
+        }
+
+        @Override
+        public void created(Metacard newMetacard) {
+            batches.add("created " + newMetacard.getId());
+        }
+
+        @Override
+        public void updatedHit(Metacard newMetacard, Metacard oldMetacard) {
+            batches.add("updated " + newMetacard.getId());
+        }
+
+        @Override
+        public void updatedMiss(Metacard newMetacard, Metacard oldMetacard) {
+        }
+
+        @Override
+        public void deleted(Metacard oldMetacard) {
+            batches.add("deleted " + oldMetacard.getId());
+        }
+
+        private List<String> getIds(List<Metacard> metacards) {
+            List<String> ids = new ArrayList<String>();
+            for (Metacard metacard : metacards) {
+                ids.add(metacard.getId());
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.service.event.Event;
+import org.w3c.dom.Document;
+
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.pubsub.EventProcessorImpl.DateType;
+import ddf.catalog.pubsub.criteria.contextual.ContextualEvaluator;
+import ddf.catalog.pubsub.internal.EventEnvelope;
+import ddf.catalog.pubsub.internal.PubSubConstants;
+
+public class TestEventEnvelope {
+
+    @Test
+    public void testContentTypeSplitOnce() {
+        EventEnvelope envelope = new EventEnvelope(createProperties("nitf,",
+                PubSubConstants.CREATE));
+
+        assertThat(envelope.getContentTypeName(), is("nitf"));
+        assertThat(envelope.getContentTypeVersion(), is("null"));
+    }
+
+    @Test
+    public void testDerivedValuesShared() {
+        Map<String, Object> properties = createProperties("nitf,2.0", PubSubConstants.CREATE);
+        MetacardImpl metacard = (MetacardImpl) properties.get(PubSubConstants.HEADER_ENTRY_KEY);
+        metacard.setLocation("POINT (1 2)");
+        Date modified = new Date();
+        metacard.setModifiedDate(modified);
+        properties.put(PubSubConstants.HEADER_ENVELOPE_KEY, new EventEnvelope(properties));
+        Event event = new Event(PubSubConstants.PUBLISHED_EVENT_TOPIC_NAME, properties);
+
+        EventEnvelope envelope = EventEnvelope.of(event);
+        assertThat(EventEnvelope.of(event), sameInstance(envelope));
+        assertThat(envelope.getGeometry().toText(), is("POINT (1 2)"));
+        assertThat(envelope.getGeometry(), sameInstance(envelope.getGeometry()));
+        assertThat(envelope.getDate(DateType.modified), is(modified));
+        assertThat(envelope.getDate(DateType.effective), nullValue());
+    }
+
+    @Test
+    public void testInvalidLocation() {
+        Map<String, Object> properties = createProperties("nitf,2.0", PubSubConstants.CREATE);
+        ((MetacardImpl) properties.get(PubSubConstants.HEADER_ENTRY_KEY)).setLocation("POINT (1");
+
+        assertThat(new EventEnvelope(properties).getGeometry(), nullValue());
+    }
+
+    @Test
+    public void testDeletedEntry() {
+        Map<String, Object> properties = createProperties("nitf,2.0", PubSubConstants.DELETE);
+        ((Map<String, Object>) properties.get(PubSubConstants.HEADER_CONTEXTUAL_KEY)).put(
+                "METADATA", PubSubConstants.METADATA_DELETED);
+
+        assertThat(new EventEnvelope(properties).isDeletedEntry(), is(true));
+        properties.put(PubSubConstants.HEADER_OPERATION_KEY, PubSubConstants.UPDATE);
+        assertThat(new EventEnvelope(properties).isDeletedEntry(), is(false));
+    }
+
+    @Test
+    public void testDocumentParsedOnce() {
+        Map<String, Object> properties = createProperties("nitf,2.0", PubSubConstants.CREATE);
+        ((Map<String, Object>) properties.get(PubSubConstants.HEADER_CONTEXTUAL_KEY)).put(
+                "METADATA", "<Resource xmlns=\"urn:test\"><title>a</title></Resource>");
+        // the document of the XPath and contextual predicates is always parsed from the metadata
+        properties.put(PubSubConstants.HEADER_XPATH_KEY,
+                ContextualEvaluator.parseDocument("<other/>"));
+        EventEnvelope envelope = new EventEnvelope(properties);
+
+        Document document = envelope.getDocument();
+        assertThat(document.getDocumentElement().getLocalName(), is("Resource"));
+        assertThat(document.getDocumentElement().getNamespaceURI(), nullValue());
+        assertThat(envelope.getDocument(), sameInstance(document));
+    }
+
+    @Test
+    public void testUnparseableDocumentParsedOnce() {
+        Map<String, Object> properties = createProperties("nitf,2.0", PubSubConstants.CREATE);
+        Map<String, Object> contextualMap = (Map<String, Object>) properties
+                .get(PubSubConstants.HEADER_CONTEXTUAL_KEY);
+        contextualMap.put("METADATA", "<Resource>");
+        EventEnvelope envelope = new EventEnvelope(properties);
+
+        assertThat(envelope.getDocument(), nullValue());
+        Object failure = contextualMap.get("DOCUMENT");
+        assertThat(failure, notNullValue());
+        assertThat(envelope.getDocument(), nullValue());
+        assertThat(contextualMap.get("DOCUMENT"), sameInstance(failure));
+    }
+
+    private Map<String, Object> createProperties(String contentType, String operation) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("1");
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(PubSubConstants.HEADER_OPERATION_KEY, operation);
+        properties.put(PubSubConstants.HEADER_ENTRY_KEY, metacard);
+        properties.put(PubSubConstants.HEADER_ID_KEY, metacard.getId());
+        properties.put(PubSubConstants.HEADER_CONTENT_TYPE_KEY, contentType);
+        properties.put(PubSubConstants.HEADER_CONTEXTUAL_KEY, new HashMap<String, Object>());
+        return properties;
+    }
+}
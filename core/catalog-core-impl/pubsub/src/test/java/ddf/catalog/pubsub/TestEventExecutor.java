@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.event.EventProcessor;
+import ddf.catalog.pubsub.internal.EventExecutor;
+import ddf.catalog.pubsub.internal.PubSubConstants;
+
+public class TestEventExecutor {
+
+    @Rule
+    public TemporaryFolder spillFolder = new TemporaryFolder();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<String> postedIds = Collections.synchronizedList(new ArrayList<String>());
+
+    private EventExecutor executor;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDropWhenQueueFull() throws Exception {
+        executor = createExecutor(EventExecutor.OverflowPolicy.DROP);
+
+        execute("1", "2", "3");
+
+        assertThat(executor.getRejectedCount(), is(1L));
+        assertThat(executor.getQueueDepth(), is(1));
+        release.countDown();
+        waitForProcessed(2);
+        assertThat(postedIds, is(Arrays.asList("1", "2")));
+    }
+
+    @Test
+    public void testBlockTimesOutWhenQueueFull() throws Exception {
+        executor = createExecutor(EventExecutor.OverflowPolicy.BLOCK);
+        executor.setBlockTimeoutMillis(10);
+
+        execute("1", "2", "3");
+
+        assertThat(executor.getRejectedCount(), is(1L));
+        release.countDown();
+        waitForProcessed(2);
+    }
+
+    @Test
+    public void testSpillKeepsOrder() throws Exception {
+        executor = createExecutor(EventExecutor.OverflowPolicy.SPILL);
+        executor.setSpillDirectory(spillFolder.getRoot());
+
+        execute("1", "2", "3", "4");
+
+        assertThat(executor.getRejectedCount(), is(0L));
+        assertThat(executor.getSpilledCount(), is(2));
+        release.countDown();
+        waitForProcessed(4);
+        assertThat(postedIds, is(Arrays.asList("1", "2", "3", "4")));
+        assertThat(executor.getSpilledCount(), is(0));
+    }
+
+    @Test
+    public void testUpdateKeepsQueuedEvents() throws Exception {
+        executor = createExecutor(EventExecutor.OverflowPolicy.DROP);
+
+        execute("1", "2");
+        executor.setQueueCapacity(5);
+        executor.setThreads(2);
+        executor.update();
+        execute("3", "4", "5");
+
+        assertThat(executor.getRejectedCount(), is(0L));
+        release.countDown();
+        waitForProcessed(5);
+        assertThat(postedIds.size(), is(5));
+    }
+
+    @Test
+    public void testUpdateKeepsSpilledEvents() throws Exception {
+        executor = createExecutor(EventExecutor.OverflowPolicy.SPILL);
+        executor.setSpillDirectory(spillFolder.newFolder("first"));
+
+        execute("1", "2", "3", "4");
+        executor.setSpillDirectory(spillFolder.newFolder("second"));
+        executor.update();
+
+        assertThat(executor.getSpilledCount(), is(2));
+        release.countDown();
+        waitForProcessed(4);
+        assertThat(postedIds, is(Arrays.asList("1", "2", "3", "4")));
+    }
+
+    @Test
+    public void testSettingsWaitForUpdate() throws Exception {
+        executor = createExecutor(EventExecutor.OverflowPolicy.DROP);
+
+        execute("1", "2");
+        executor.setQueueCapacity(5);
+        execute("3");
+
+        assertThat(executor.getRejectedCount(), is(1L));
+        release.countDown();
+        waitForProcessed(2);
+    }
+
+    private EventExecutor createExecutor(EventExecutor.OverflowPolicy policy) {
+        EventHandler dispatcher = mock(EventHandler.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                release.await(5, TimeUnit.SECONDS);
+                Event event = (Event) invocation.getArguments()[0];
+                postedIds.add((String) event.getProperty(PubSubConstants.HEADER_ID_KEY));
+                return null;
+            }
+        }).when(dispatcher).handleEvent(any(Event.class));
+
+        EventExecutor eventExecutor = new EventExecutor(dispatcher);
+        eventExecutor.setThreads(1);
+        eventExecutor.setQueueCapacity(1);
+        eventExecutor.setOverflowPolicy(policy);
+        return eventExecutor;
+    }
+
+    /**
+     * The first event starts the only thread, which blocks on it, and the second one fills the
+     * queue.
+     */
+    private void execute(String... ids) {
+        for (String id : ids) {
+            MetacardImpl metacard = new MetacardImpl();
+            metacard.setId(id);
+            executor.execute(metacard, EventProcessor.EVENTS_TOPIC_CREATED);
+        }
+    }
+
+    private void waitForProcessed(long count) throws InterruptedException {
+        for (int i = 0; i < 50 && executor.getProcessedCount() != count; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(executor.getProcessedCount(), is(count));
+    }
+}
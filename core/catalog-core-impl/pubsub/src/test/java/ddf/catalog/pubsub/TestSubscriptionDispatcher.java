@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.event.DeliveryMethod;
+import ddf.catalog.event.Subscription;
+import ddf.catalog.pubsub.EventProcessorImpl.DateType;
+import ddf.catalog.plugin.PreDeliveryPlugin;
+import ddf.catalog.pubsub.criteria.geospatial.SpatialOperator;
+import ddf.catalog.pubsub.internal.PubSubConstants;
+import ddf.catalog.pubsub.predicate.AndPredicate;
+import ddf.catalog.pubsub.predicate.ContentTypePredicate;
+import ddf.catalog.pubsub.predicate.ContextualPredicate;
+import ddf.catalog.pubsub.predicate.EntryPredicate;
+import ddf.catalog.pubsub.predicate.GeospatialPredicate;
+import ddf.catalog.pubsub.predicate.OrPredicate;
+import ddf.catalog.pubsub.predicate.Predicate;
+import ddf.catalog.pubsub.predicate.TemporalPredicate;
+
+public class TestSubscriptionDispatcher {
+
+    private static final String LOCAL_ID = "local";
+
+    private SubscriptionDispatcher dispatcher;
+
+    private Predicate evaluated;
+
+    private DeliveryMethod deliveryMethod;
+
+    @Before
+    public void setUp() {
+        CatalogFramework catalog = mock(CatalogFramework.class);
+        when(catalog.getId()).thenReturn(LOCAL_ID);
+        dispatcher = new SubscriptionDispatcher(catalog);
+        evaluated = mock(Predicate.class);
+        when(evaluated.matches(any(Event.class))).thenReturn(true);
+        deliveryMethod = mock(DeliveryMethod.class);
+    }
+
+    @Test
+    public void testEntryIdSubscription() {
+        subscribe("s1", new AndPredicate(new EntryPredicate("id1"), evaluated), true, null);
+
+        dispatcher.handleEvent(createEvent("id2", "remote", "nitf,2.0", PubSubConstants.CREATE));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", "remote", "nitf,2.0", PubSubConstants.CREATE));
+        verify(evaluated, times(1)).matches(any(Event.class));
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+    }
+
+    @Test
+    public void testContentTypeSubscription() {
+        subscribe("s1", new AndPredicate(evaluated, new OrPredicate(new ContentTypePredicate(
+                "nitf", null), new ContentTypePredicate("pdf", null))), true, null);
+
+        dispatcher.handleEvent(createEvent("id1", "remote", "xml,1.0", PubSubConstants.CREATE));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", "remote", "pdf,", PubSubConstants.CREATE));
+        verify(evaluated, times(1)).matches(any(Event.class));
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+    }
+
+    @Test
+    public void testWildcardContentTypeIsNotIndexed() {
+        subscribe("s1", new AndPredicate(new ContentTypePredicate("ni*", null), evaluated), true,
+                null);
+
+        dispatcher.handleEvent(createEvent("id1", "remote", "xml,1.0", PubSubConstants.CREATE));
+        verify(deliveryMethod, never()).created(any(Metacard.class));
+
+        dispatcher.handleEvent(createEvent("id1", "remote", "nitf,2.0", PubSubConstants.CREATE));
+        verify(evaluated, times(1)).matches(any(Event.class));
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+    }
+
+    @Test
+    public void testGeospatialSubscription() throws Exception {
+        subscribe("s1", new AndPredicate(new GeospatialPredicate(
+                "POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0))", SpatialOperator.OVERLAPS.name(), 0.0),
+                evaluated), true, null);
+
+        dispatcher.handleEvent(createEvent("id1", "POINT (20 20)"));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        // within the envelope of the polygon, but outside of it
+        subscribe("s2", new GeospatialPredicate("POLYGON ((0 0, 10 0, 0 10, 0 0))",
+                SpatialOperator.OVERLAPS.name(), 0.0), true, null);
+        dispatcher.handleEvent(createEvent("id1", "POINT (8 8)"));
+        verify(evaluated, times(1)).matches(any(Event.class));
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+    }
+
+    @Test
+    public void testDistanceSubscription() throws Exception {
+        subscribe("s1", new AndPredicate(new GeospatialPredicate("POINT (0 0)", null, 1.0),
+                evaluated), true, null);
+
+        dispatcher.handleEvent(createEvent("id1", "POINT (1.5 0)"));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", "POINT (0.5 0.5)"));
+        verify(evaluated, times(1)).matches(any(Event.class));
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+
+        dispatcher.removeSubscription("s1");
+        dispatcher.handleEvent(createEvent("id1", "POINT (0.5 0.5)"));
+        verify(evaluated, times(1)).matches(any(Event.class));
+    }
+
+    @Test
+    public void testTemporalSubscriptionWithContentType() {
+        subscribe("s1", new AndPredicate(new AndPredicate(new ContentTypePredicate("nitf", null),
+                new TemporalPredicate(new Date(1000), new Date(2000), DateType.modified)),
+                evaluated), true, null);
+
+        dispatcher.handleEvent(createEvent("id1", "nitf,2.0", new Date(3000)));
+        dispatcher.handleEvent(createEvent("id1", "pdf,", new Date(1500)));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", "nitf,2.0", new Date(2000)));
+        verify(evaluated, times(1)).matches(any(Event.class));
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+    }
+
+    @Test
+    public void testOpenTemporalSubscription() {
+        subscribe("s1", new AndPredicate(new TemporalPredicate(new Date(1000), null,
+                DateType.modified), evaluated), true, null);
+
+        dispatcher.handleEvent(createEvent("id1", "nitf,2.0", new Date(999)));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", "nitf,2.0", new Date(5000)));
+        verify(evaluated, times(1)).matches(any(Event.class));
+    }
+
+    @Test
+    public void testRelativeTemporalSubscription() {
+        long hour = 60 * 60 * 1000;
+        subscribe("s1", new AndPredicate(new TemporalPredicate(hour, DateType.modified),
+                evaluated), true, null);
+
+        dispatcher.handleEvent(createEvent("id1", "nitf,2.0", new Date(System.currentTimeMillis()
+                - 2 * hour)));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", "nitf,2.0", new Date(System.currentTimeMillis()
+                - hour / 2)));
+        verify(evaluated, times(1)).matches(any(Event.class));
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+    }
+
+    @Test
+    public void testContextualSubscription() {
+        ContextualPredicate contextual = mock(ContextualPredicate.class);
+        when(contextual.getQuery()).thenReturn(new TermQuery(new Term("Resource", "dog")));
+        subscribe("s1", new AndPredicate(evaluated, contextual), true, null);
+
+        dispatcher.handleEvent(createEvent("id1", new Term("Resource", "cat")));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", new Term("Resource", "cat"), new Term(
+                "Resource", "dog")));
+        verify(evaluated, times(1)).matches(any(Event.class));
+    }
+
+    @Test
+    public void testSourceSubscriptions() {
+        subscribe("local", evaluated, false, null);
+        subscribe("site", evaluated, false, Collections.singleton("siteA"));
+
+        dispatcher.handleEvent(createEvent("id1", "siteB", "nitf,2.0", PubSubConstants.CREATE));
+        verify(evaluated, never()).matches(any(Event.class));
+
+        dispatcher.handleEvent(createEvent("id1", LOCAL_ID, "nitf,2.0", PubSubConstants.CREATE));
+        dispatcher.handleEvent(createEvent("id1", "siteA", "nitf,2.0", PubSubConstants.CREATE));
+        verify(evaluated, times(2)).matches(any(Event.class));
+        verify(deliveryMethod, times(2)).created(any(Metacard.class));
+    }
+
+    @Test
+    public void testDeletedEntryWithoutMetadata() {
+        subscribe("s1", new AndPredicate(new EntryPredicate("id1"), evaluated), true, null);
+
+        Event event = createEvent("id2", "remote", "nitf,2.0", PubSubConstants.DELETE);
+        ((Map<String, Object>) event.getProperty(PubSubConstants.HEADER_CONTEXTUAL_KEY)).put(
+                "METADATA", PubSubConstants.METADATA_DELETED);
+        dispatcher.handleEvent(event);
+
+        verify(deliveryMethod, times(1)).deleted(any(Metacard.class));
+    }
+
+    @Test
+    public void testRemoveSubscription() {
+        subscribe("s1", evaluated, true, null);
+        assertThat(dispatcher.getSubscriptionCount(), is(1));
+
+        assertThat(dispatcher.removeSubscription("s1"), is(true));
+        assertThat(dispatcher.removeSubscription("s1"), is(false));
+        dispatcher.handleEvent(createEvent("id1", LOCAL_ID, "nitf,2.0", PubSubConstants.CREATE));
+
+        verify(evaluated, never()).matches(any(Event.class));
+        assertThat(dispatcher.getSubscriptionCount(), is(0));
+    }
+
+    @Test
+    public void testEventIsPostedToTopic() {
+        EventAdmin eventAdmin = mock(EventAdmin.class);
+        dispatcher = new SubscriptionDispatcher(mock(CatalogFramework.class), eventAdmin);
+        subscribe("s1", evaluated, true, null);
+
+        Event event = createEvent("id1", "remote", "nitf,2.0", PubSubConstants.CREATE);
+        dispatcher.handleEvent(event);
+
+        verify(deliveryMethod, times(1)).created(any(Metacard.class));
+        verify(eventAdmin, times(1)).postEvent(event);
+    }
+
+    private void subscribe(String subscriptionId, Predicate predicate, boolean enterprise,
+            Set<String> sourceIds) {
+        Subscription subscription = mock(Subscription.class);
+        when(subscription.isEnterprise()).thenReturn(enterprise);
+        when(subscription.getSourceIds()).thenReturn(sourceIds);
+        when(subscription.getDeliveryMethod()).thenReturn(deliveryMethod);
+        CatalogFramework catalog = mock(CatalogFramework.class);
+        when(catalog.getId()).thenReturn(LOCAL_ID);
+
+        dispatcher.addSubscription(subscriptionId, new PublishedEventHandler(predicate,
+                subscription, Collections.<PreDeliveryPlugin> emptyList(), catalog));
+    }
+
+    private Event createEvent(String id, String contentType, Date modified) {
+        Event event = createEvent(id, "remote", contentType, PubSubConstants.CREATE);
+        ((MetacardImpl) event.getProperty(PubSubConstants.HEADER_ENTRY_KEY))
+                .setModifiedDate(modified);
+        return event;
+    }
+
+    private Event createEvent(String id, String location) throws Exception {
+        Event event = createEvent(id, "remote", "nitf,2.0", PubSubConstants.CREATE);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (String name : event.getPropertyNames()) {
+            properties.put(name, event.getProperty(name));
+        }
+        Geometry geometry = new WKTReader().read(location);
+        ((MetacardImpl) properties.get(PubSubConstants.HEADER_ENTRY_KEY)).setLocation(location);
+        properties.put(PubSubConstants.HEADER_GEOSPATIAL_KEY, geometry);
+        return new Event(PubSubConstants.PUBLISHED_EVENT_TOPIC_NAME, properties);
+    }
+
+    private Event createEvent(String id, Term... terms) {
+        Event event = createEvent(id, "remote", "nitf,2.0", PubSubConstants.CREATE);
+        ((Map<String, Object>) event.getProperty(PubSubConstants.HEADER_CONTEXTUAL_KEY)).put(
+                "DEFAULT_TERMS", new HashSet<Term>(Arrays.asList(terms)));
+        return event;
+    }
+
+    private Event createEvent(String id, String sourceId, String contentType, String operation) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        metacard.setSourceId(sourceId);
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(PubSubConstants.HEADER_OPERATION_KEY, operation);
+        properties.put(PubSubConstants.HEADER_ENTRY_KEY, metacard);
+        properties.put(PubSubConstants.HEADER_ID_KEY, id);
+        properties.put(PubSubConstants.HEADER_CONTENT_TYPE_KEY, contentType);
+        properties.put(PubSubConstants.HEADER_CONTEXTUAL_KEY, new HashMap<String, Object>());
+        return new Event(PubSubConstants.PUBLISHED_EVENT_TOPIC_NAME, properties);
+    }
+}
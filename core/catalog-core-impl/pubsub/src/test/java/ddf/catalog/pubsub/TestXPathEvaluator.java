@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.pubsub;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import ddf.catalog.pubsub.criteria.contextual.XPathEvaluationCriteriaImpl;
+import ddf.catalog.pubsub.criteria.contextual.XPathEvaluator;
+import ddf.catalog.pubsub.criteria.contextual.XPathExpressionCache;
+
+public class TestXPathEvaluator {
+
+    @Test
+    public void testEvaluate() throws Exception {
+        Document document = parse("<metadata><title>ocean</title></metadata>");
+
+        assertThat(evaluate(document, "/metadata/title"), is(true));
+        assertThat(evaluate(document, "//title[text()='ocean']"), is(true));
+        assertThat(evaluate(document, "//title[text()='lake']"), is(false));
+        assertThat(evaluate(document, "/metadata/creator"), is(false));
+        assertThat(evaluate(document, "/metadata["), is(false));
+        assertThat(evaluate(null, "/metadata/title"), is(false));
+    }
+
+    @Test
+    public void testEvaluateMoreExpressionsThanCached() throws Exception {
+        Document document = parse("<metadata><title>ocean</title></metadata>");
+
+        for (int i = 0; i <= XPathExpressionCache.MAX_EXPRESSIONS; i++) {
+            assertThat(evaluate(document, "count(//title) = " + (i % 2)), is(i % 2 == 1));
+        }
+        assertThat(evaluate(document, "count(//title) = 0"), is(false));
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        final Document ocean = parse("<metadata><title>ocean</title></metadata>");
+        final Document lake = parse("<metadata><title>lake</title></metadata>");
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 2000; i++) {
+                final boolean matching = i % 2 == 0;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        Document document = matching ? ocean : lake;
+                        return evaluate(document, "//title[text()='ocean']") == matching
+                                && evaluate(document, "/metadata/title");
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean evaluate(Document document, String xpath) {
+        return XPathEvaluator.evaluate(new XPathEvaluationCriteriaImpl(document, xpath));
+    }
+
+    private static Document parse(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+}
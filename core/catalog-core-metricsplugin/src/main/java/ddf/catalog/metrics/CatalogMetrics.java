@@ -41,19 +41,21 @@
 import ddf.catalog.plugin.PostQueryPlugin;
 import ddf.catalog.plugin.PostResourcePlugin;
 import ddf.catalog.plugin.PreQueryPlugin;
+import ddf.catalog.plugin.ReadOnlyPlugin;
 import ddf.catalog.plugin.StopProcessingException;
 import ddf.catalog.source.SourceUnavailableException;
 import ddf.catalog.source.UnsupportedQueryException;
 
 /**
- * Catalog plug-in to capture metrics on catalog operations.
+ * Catalog plug-in to capture metrics on catalog operations. It only reads the operations, so the
+ * framework may record the metrics without making the operations wait.
  * 
  * @author Phillip Klinefelter
  * @author ddf.isgs@lmco.com
  * 
  */
 public final class CatalogMetrics implements PreQueryPlugin, PostQueryPlugin, PostIngestPlugin,
-        PostResourcePlugin, ConfigurationWatcher {
+        PostResourcePlugin, ReadOnlyPlugin, ConfigurationWatcher {
 
     protected static final String EXCEPTIONS_SCOPE = "Exceptions";
 
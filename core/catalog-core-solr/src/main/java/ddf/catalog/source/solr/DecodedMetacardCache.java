@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.MetacardType;
+import ddf.catalog.data.impl.MetacardImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded least recently used cache of the attribute values decoded from Solr documents. An entry
+ * is only used while the version of the record it was decoded from is unchanged, so updated
+ * records are decoded again. Every lookup returns a new {@link MetacardImpl} holding its own copy of
+ * the mutable values, such as dates, byte arrays and lists, so that a caller modifying the metacard
+ * or its values does not change the cached record. Records holding values the cache cannot copy,
+ * such as deserialized objects, are not cached.
+ *
+ * The memory used by the cache is an estimate based on the size of the cached values.
+ */
+public class DecodedMetacardCache implements DecodedMetacardCacheMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecodedMetacardCache.class);
+
+    /**
+     * Default maximum estimated memory used by the cached values, in bytes
+     */
+    public static final long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024;
+
+    private static final long ENTRY_OVERHEAD = 128;
+
+    private static final long ATTRIBUTE_OVERHEAD = 64;
+
+    private static final long OBJECT_ESTIMATE = 64;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private int maxEntries;
+
+    private long maxMemory;
+
+    private long memory;
+
+    private ObjectName objectName;
+
+    /**
+     * @param maxEntries
+     *            maximum number of cached records
+     * @param maxMemory
+     *            maximum estimated memory used by the cached values, in bytes
+     */
+    public DecodedMetacardCache(int maxEntries, long maxMemory) {
+        setLimits(maxEntries, maxMemory);
+    }
+
+    /**
+     * Returns a new metacard built from the values cached for the record.
+     *
+     * @param id
+     *            ID of the record
+     * @param version
+     *            version of the record, such as its modified date
+     * @return the metacard, or null if the record is not cached at that version
+     */
+    public MetacardImpl get(String id, String version) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+        }
+
+        if (entry == null || !entry.version.equals(version)) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+
+        MetacardImpl metacard = new MetacardImpl(entry.type);
+        for (Map.Entry<String, Serializable> value : entry.values.entrySet()) {
+            metacard.setAttribute(value.getKey(), copy(value.getValue()));
+        }
+        return metacard;
+    }
+
+    /**
+     * Caches copies of the values decoded for a record, replacing any other version of the record.
+     * The record is not cached if one of its values cannot be copied.
+     */
+    public void put(String id, String version, MetacardType type,
+            Map<String, Serializable> values) {
+        Map<String, Serializable> copies = new LinkedHashMap<>();
+        for (Map.Entry<String, Serializable> value : values.entrySet()) {
+            if (!isCopyable(value.getValue())) {
+                invalidate(Collections.singleton(id));
+                return;
+            }
+            copies.put(value.getKey(), copy(value.getValue()));
+        }
+        Entry entry = new Entry(version, type, copies);
+
+        synchronized (this) {
+            Entry previous = entries.put(id, entry);
+            if (previous != null) {
+                memory -= previous.memory;
+            }
+            memory += entry.memory;
+            evict();
+        }
+    }
+
+    /**
+     * Removes the cached values of the given records.
+     */
+    public synchronized void invalidate(Collection<? extends Serializable> ids) {
+        for (Serializable id : ids) {
+            if (id != null) {
+                Entry previous = entries.remove(id.toString());
+                if (previous != null) {
+                    memory -= previous.memory;
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        memory = 0;
+    }
+
+    public synchronized void setLimits(int maxEntries, long maxMemory) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxMemory = Math.max(0, maxMemory);
+        evict();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Registers the metrics of this cache with the platform MBean server.
+     *
+     * @param core
+     *            the Solr core the cached records are read from, such as its URL, distinguishing
+     *            the caches of the providers running in the same JVM
+     */
+    public synchronized void registerMBean(String core) {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            objectName = new ObjectName(DecodedMetacardCache.class.getName()
+                    + ":service=decoded-metacard-cache,core=" + ObjectName.quote(core));
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                mBeanServer.registerMBean(this, objectName);
+            } catch (InstanceAlreadyExistsException iaee) {
+                LOGGER.info("Re-registering Decoded Metacard Cache MBean");
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (MalformedObjectNameException mone) {
+            LOGGER.info("Could not create objectName.", mone);
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean.", e);
+        }
+    }
+
+    /**
+     * Unregisters the metrics of this cache, once it is no longer used.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                LOGGER.warn("Exception unregistering MBean: ", e);
+            }
+            objectName = null;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > maxEntries || memory > maxMemory) && iterator.hasNext()) {
+            memory -= iterator.next().memory;
+            iterator.remove();
+        }
+    }
+
+    private static boolean isCopyable(Object value) {
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (!isCopyable(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value == null || value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Date || value instanceof byte[];
+    }
+
+    /**
+     * Copies a value accepted by {@link #isCopyable(Object)}, immutable values are shared.
+     */
+    private static Serializable copy(Serializable value) {
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        } else if (value instanceof Collection) {
+            ArrayList<Serializable> copy = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                copy.add(copy((Serializable) element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static long estimate(Object value) {
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        } else if (value instanceof Number || value instanceof Date || value instanceof Boolean) {
+            return 24;
+        } else if (value instanceof Collection) {
+            long size = 40;
+            for (Object element : (Collection<?>) value) {
+                size += estimate(element);
+            }
+            return size;
+        }
+        return OBJECT_ESTIMATE;
+    }
+
+    private static final class Entry {
+
+        private final String version;
+
+        private final MetacardType type;
+
+        private final Map<String, Serializable> values;
+
+        private final long memory;
+
+        private Entry(String version, MetacardType type, Map<String, Serializable> values) {
+            this.version = version;
+            this.type = type;
+            this.values = Collections.unmodifiableMap(values);
+
+            long size = ENTRY_OVERHEAD + estimate(version);
+            for (Map.Entry<String, Serializable> value : values.entrySet()) {
+                size += ATTRIBUTE_OVERHEAD + estimate(value.getKey()) + estimate(value.getValue());
+            }
+            this.memory = size;
+        }
+    }
+}
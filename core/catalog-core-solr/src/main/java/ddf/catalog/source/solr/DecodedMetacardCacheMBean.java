@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+/**
+ * Metrics of the cache of decoded metacards of a Solr catalog provider.
+ */
+public interface DecodedMetacardCacheMBean {
+
+    /**
+     * @return the number of cached records
+     */
+    int getSize();
+
+    /**
+     * @return the estimated memory used by the cached values, in bytes
+     */
+    long getMemory();
+
+    /**
+     * @return the number of lookups that found the record
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of lookups that did not find the record
+     */
+    long getMissCount();
+
+    /**
+     * @return the ratio of lookups that found the record, 0 if there were no lookups
+     */
+    double getHitRate();
+}
@@ -23,6 +23,12 @@
 import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.impl.AttributeDescriptorImpl;
 import ddf.catalog.data.impl.MetacardTypeImpl;
+import com.spatial4j.core.io.GeohashUtils;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -49,14 +55,21 @@
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * This class tries to resolve all user given field names to their corresponding dynamic Solr index
@@ -84,13 +97,44 @@ public class DynamicSchemaResolver {
 
     public static final String LUX_XML_FIELD_NAME = "lux_xml";
 
-    protected Set<String> fieldsCache = new HashSet<>();
+    /**
+     * Default maximum number of characters of text extracted from a single XML attribute.
+     */
+    public static final int DEFAULT_MAX_EXTRACTED_TEXT_LENGTH = 1024 * 1024;
+
+    private static final String EXTRACTED_TEXT_DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * Longest geohash indexed for each geometry. Precision 6 cells are roughly 1.2km by 0.6km.
+     */
+    public static final int MAX_GEOHASH_PRECISION = 6;
+
+    private static final double MAX_LONGITUDE = 180;
+
+    /*
+     * Fields and types are added from the ingest threads which may run concurrently, so these
+     * caches must be safe for concurrent access.
+     */
+    protected Set<String> fieldsCache = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     protected SchemaFields schemaFields;
 
-    protected Map<String, MetacardType> metacardTypesCache = new HashMap<>();
+    protected Map<String, MetacardType> metacardTypesCache = new ConcurrentHashMap<>();
 
-    protected Map<String, byte[]> metacardTypeNameToSerialCache = new HashMap<>();
+    protected Map<String, byte[]> metacardTypeNameToSerialCache = new ConcurrentHashMap<>();
+
+    private volatile int maxExtractedTextLength = DEFAULT_MAX_EXTRACTED_TEXT_LENGTH;
+
+    private volatile Set<String> skippedTextNamespaces = Collections.emptySet();
+
+    /*
+     * Written with the XML digest so that text extracted with other settings is not reused.
+     */
+    private volatile String extractionSettings = getExtractionSettings(
+            DEFAULT_MAX_EXTRACTED_TEXT_LENGTH, Collections.<String> emptySet());
+
+    private volatile boolean spatialPrefilterEnabled = false;
 
     protected static final XMLInputFactory xmlInputFactory;
 
@@ -162,6 +206,20 @@ public void addFieldsFromServer(SolrServer server) {
      */
     public void addFields(Metacard metacard, SolrInputDocument solrInputDocument)
         throws MetacardCreationException {
+        addFields(metacard, solrInputDocument, null);
+    }
+
+    /**
+     * Adds the fields of the Metacard into the {@link SolrInputDocument}. The text of an XML
+     * attribute whose digest matches the one stored in the previous document of the record is
+     * reused rather than extracted again.
+     *
+     * @param previousDocument
+     *            the stored document being replaced, holding at least the
+     *            {@link #getExtractedTextFields() extracted text fields}, may be {@code null}
+     */
+    public void addFields(Metacard metacard, SolrInputDocument solrInputDocument,
+            SolrDocument previousDocument) throws MetacardCreationException {
         MetacardType schema = metacard.getMetacardType();
 
         // TODO: register these metacard types when a new one is seen
@@ -182,7 +240,8 @@ public void addFields(Metacard metacard, SolrInputDocument solrInputDocument)
                         String specialStringIndexName = ad.getName()
                                 + getFieldSuffix(AttributeFormat.STRING)
                                 + getSpecialIndexSuffix(AttributeFormat.STRING);
-                        String parsedText = parseTextFrom(attributeValue.toString());
+                        String parsedText = getExtractedText(ad.getName(),
+                                attributeValue.toString(), previousDocument, solrInputDocument);
                         solrInputDocument.addField(specialStringIndexName, parsedText);
 
                         // text case sensitive
@@ -190,6 +249,10 @@ public void addFields(Metacard metacard, SolrInputDocument solrInputDocument)
                                 parsedText);
                     } else if (AttributeFormat.GEOMETRY.equals(format)) {
                         solrInputDocument.addField(formatIndexName, attributeValue);
+
+                        // bounding box and geohash cells used to prefilter and facet
+                        addSpatialPrefilterFields(formatIndexName, attributeValue.toString(),
+                                solrInputDocument);
                     } else if (AttributeFormat.OBJECT.equals(format)) {
                         ByteArrayOutputStream byteArrayOS = new ByteArrayOutputStream();
 
@@ -310,7 +373,51 @@ public String resolveFieldName(String solrFieldName) {
     }
 
     public boolean isPrivateField(String solrFieldName) {
-        return PRIVATE_SOLR_FIELDS.contains(solrFieldName);
+        return PRIVATE_SOLR_FIELDS.contains(solrFieldName)
+                || solrFieldName.contains(SchemaFields.GEO_SUFFIX + SchemaFields.BBOX)
+                || solrFieldName.contains(SchemaFields.GEO_SUFFIX + SchemaFields.GEOHASH)
+                || isExtractedTextField(solrFieldName);
+    }
+
+    private boolean isExtractedTextField(String solrFieldName) {
+        return solrFieldName.endsWith(SchemaFields.XML_HASH + SchemaFields.TEXT_SUFFIX)
+                || solrFieldName.endsWith(SchemaFields.EXTRACTED_TEXT + SchemaFields.BINARY_SUFFIX);
+    }
+
+    /**
+     * Returns the Solr field list selecting the digests and text stored for the XML attributes of
+     * a document, see {@link #addFields(Metacard, SolrInputDocument, SolrDocument)}.
+     */
+    public List<String> getExtractedTextFields() {
+        return Arrays.asList("*" + SchemaFields.XML_HASH + SchemaFields.TEXT_SUFFIX, "*"
+                + SchemaFields.EXTRACTED_TEXT + SchemaFields.BINARY_SUFFIX);
+    }
+
+    /**
+     * Returns the name of the field holding one bound of the bounding box of a geometry field.
+     * 
+     * @param geometryField
+     *            the Solr name of the geometry field, e.g. {@code location_geo}
+     * @param bound
+     *            one of {@link SchemaFields#BBOX_MIN_X}, {@link SchemaFields#BBOX_MIN_Y},
+     *            {@link SchemaFields#BBOX_MAX_X} or {@link SchemaFields#BBOX_MAX_Y}
+     */
+    public String getBoundingBoxField(String geometryField, String bound) {
+        return geometryField + bound + getFieldSuffix(AttributeFormat.DOUBLE);
+    }
+
+    /**
+     * Returns the name of the field holding the geohash cell of the given precision in which the
+     * center of the bounding box of a geometry field falls.
+     * 
+     * @param geometryField
+     *            the Solr name of the geometry field, e.g. {@code location_geo}
+     * @param precision
+     *            number of geohash characters, from 1 to {@link #MAX_GEOHASH_PRECISION}
+     */
+    public String getGeohashField(String geometryField, int precision) {
+        return geometryField + SchemaFields.GEOHASH + FIRST_CHAR_OF_SUFFIX + precision
+                + getFieldSuffix(AttributeFormat.STRING);
     }
 
     /**
@@ -335,6 +442,30 @@ public List<String> getAnonymousField(String field) {
         return list;
     }
 
+    /**
+     * Returns the Solr fields to request so that the given attributes are left out of query
+     * results. Solr cannot exclude fields from its field list, so every other known field is
+     * listed.
+     *
+     * @param excludedAttributes
+     *            names of the attributes left out
+     * @return the field list, including the private fields needed to create metacards
+     */
+    public List<String> getProjectedFields(Collection<String> excludedAttributes) {
+        Set<String> excludedFields = new HashSet<>();
+        for (String attribute : excludedAttributes) {
+            excludedFields.addAll(getAnonymousField(attribute));
+        }
+
+        List<String> fields = new ArrayList<>(PRIVATE_SOLR_FIELDS);
+        for (String field : fieldsCache) {
+            if (!excludedFields.contains(field) && !isExtractedTextField(field)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
     /**
      * Attempts to find the fieldName for the given propertyName value.
      * 
@@ -508,9 +639,109 @@ private String findAnyMatchingNumericalField(String propertyName) {
         return propertyName + SchemaFields.INTEGER_SUFFIX;
     }
 
+    /**
+     * Indexes the bounding box of the geometry and the geohash cells containing its center so
+     * that spatial queries can discard most documents with cheap range comparisons before the
+     * exact geometry test, and so that geometries can be counted on a geohash grid.
+     */
+    private void addSpatialPrefilterFields(String geometryField, String wkt,
+            SolrInputDocument solrInputDocument) {
+        Geometry geometry;
+        try {
+            geometry = new WKTReader().read(wkt);
+        } catch (ParseException e) {
+            LOGGER.debug("Unable to read WKT [{}], spatial prefilter fields will not be indexed.",
+                    wkt, e);
+            return;
+        }
+
+        if (geometry.isEmpty()) {
+            return;
+        }
+
+        Envelope envelope = geometry.getEnvelopeInternal();
+        double minX = envelope.getMinX();
+        double maxX = envelope.getMaxX();
+        if (envelope.getWidth() > MAX_LONGITUDE) {
+            // the geometry crosses the dateline, its longitudes cannot be bounded by one range
+            minX = -MAX_LONGITUDE;
+            maxX = MAX_LONGITUDE;
+        }
+
+        solrInputDocument.addField(getBoundingBoxField(geometryField, SchemaFields.BBOX_MIN_X),
+                minX);
+        solrInputDocument.addField(getBoundingBoxField(geometryField, SchemaFields.BBOX_MIN_Y),
+                envelope.getMinY());
+        solrInputDocument.addField(getBoundingBoxField(geometryField, SchemaFields.BBOX_MAX_X),
+                maxX);
+        solrInputDocument.addField(getBoundingBoxField(geometryField, SchemaFields.BBOX_MAX_Y),
+                envelope.getMaxY());
+
+        // the center of the indexed box, so that the cell agrees with the bounding box fields
+        Coordinate center = new Coordinate((minX + maxX) / 2, envelope.centre().y);
+        if (Math.abs(center.y) <= 90 && Math.abs(center.x) <= MAX_LONGITUDE) {
+            String geohash = GeohashUtils.encodeLatLon(center.y, center.x,
+                    MAX_GEOHASH_PRECISION);
+            for (int precision = 1; precision <= geohash.length(); precision++) {
+                solrInputDocument.addField(getGeohashField(geometryField, precision),
+                        geohash.substring(0, precision));
+            }
+        }
+    }
+
+    /**
+     * Returns the text of the given XML attribute. When the digest of the XML matches the digest
+     * stored in the previous document, the text stored along with it is reused so that unchanged
+     * metadata is not parsed again when a record is updated. The digest and the text are added to
+     * the new document for the next update.
+     *
+     * @param attributeName
+     *            name of the XML attribute
+     * @param xmlData
+     *            XML as a {@code String}
+     * @param previousDocument
+     *            the stored document being replaced, may be {@code null}
+     * @param solrInputDocument
+     *            the document receiving the digest and the text
+     * @return parsed CDATA, element and attribute text
+     */
+    protected String getExtractedText(String attributeName, String xmlData,
+            SolrDocument previousDocument, SolrInputDocument solrInputDocument) {
+        String digest = digest(xmlData);
+
+        if (digest == null) {
+            return parseTextFrom(xmlData);
+        }
+
+        String hashField = attributeName + SchemaFields.XML_HASH + SchemaFields.TEXT_SUFFIX;
+        String textField = attributeName + SchemaFields.EXTRACTED_TEXT
+                + SchemaFields.BINARY_SUFFIX;
+
+        String text = null;
+        if (previousDocument != null && digest.equals(previousDocument.getFirstValue(hashField))) {
+            text = decompress(previousDocument.getFirstValue(textField));
+        }
+
+        if (text == null) {
+            text = parseTextFrom(xmlData);
+        } else {
+            LOGGER.debug("Reusing extracted text of [{}] for unchanged XML with digest [{}]",
+                    attributeName, digest);
+        }
+
+        byte[] compressedText = compress(text);
+        if (compressedText != null) {
+            solrInputDocument.addField(hashField, digest);
+            solrInputDocument.addField(textField, compressedText);
+        }
+
+        return text;
+    }
+
     /**
      * Given xml as a string, this method will parse out element text and CDATA text. It separates
-     * each by one space character.
+     * each by one space character. Text of elements in one of the skipped namespaces is ignored,
+     * and parsing stops once the maximum extracted text length has been reached.
      * 
      * @param xmlData
      *            XML as a {@code String}
@@ -520,6 +751,9 @@ protected String parseTextFrom(String xmlData) {
 
         StringBuilder builder = new StringBuilder();
 
+        int maxLength = maxExtractedTextLength;
+        Set<String> skippedNamespaces = skippedTextNamespaces;
+
         XMLStreamReader xmlStreamReader = null;
         StringReader sr = null;
         long starttime = System.currentTimeMillis();
@@ -529,19 +763,19 @@ protected String parseTextFrom(String xmlData) {
             xmlStreamReader = xmlInputFactory
                     .createXMLStreamReader(sr);
 
-            while (xmlStreamReader.hasNext()) {
-                int event = xmlStreamReader.next();
-
-                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+            // depth inside of an element whose namespace is skipped, 0 when not skipping
+            int skippedDepth = 0;
 
-                    String text = xmlStreamReader.getText();
+            while (xmlStreamReader.hasNext() && builder.length() < maxLength) {
+                int event = xmlStreamReader.next();
 
-                    if (StringUtils.isNotBlank(text)) {
-                        builder.append(" ").append(text.trim());
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (skippedDepth > 0
+                            || skippedNamespaces.contains(xmlStreamReader.getNamespaceURI())) {
+                        skippedDepth++;
+                        continue;
                     }
 
-                }
-                if (event == XMLStreamConstants.START_ELEMENT) {
                     for (int i = 0; i < xmlStreamReader.getAttributeCount(); i++) {
 
                         String text = xmlStreamReader.getAttributeValue(i);
@@ -550,6 +784,19 @@ protected String parseTextFrom(String xmlData) {
                             builder.append(" ").append(text.trim());
                         }
                     }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (skippedDepth > 0) {
+                        skippedDepth--;
+                    }
+                } else if (skippedDepth == 0
+                        && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+
+                    String text = xmlStreamReader.getText();
+
+                    if (StringUtils.isNotBlank(text)) {
+                        builder.append(" ").append(text.trim());
+                    }
+
                 }
             }
         } catch (XMLStreamException e1) {
@@ -570,8 +817,125 @@ protected String parseTextFrom(String xmlData) {
 
         LOGGER.debug("Parsing took {} ms", endTime - starttime);
 
+        if (builder.length() > maxLength) {
+            LOGGER.debug("Extracted text truncated to {} characters.", maxLength);
+            builder.setLength(maxLength);
+        }
+
         return builder.toString();
     }
+
+    /**
+     * Sets the maximum number of characters of text extracted from a single XML attribute.
+     * Parsing of the XML stops once this limit is reached.
+     *
+     * @param maxExtractedTextLength
+     *            maximum length, must be positive
+     */
+    public void setMaxExtractedTextLength(int maxExtractedTextLength) {
+        if (maxExtractedTextLength <= 0) {
+            LOGGER.warn("Invalid maximum extracted text length [{}], using [{}] instead.",
+                    maxExtractedTextLength, DEFAULT_MAX_EXTRACTED_TEXT_LENGTH);
+            this.maxExtractedTextLength = DEFAULT_MAX_EXTRACTED_TEXT_LENGTH;
+        } else {
+            this.maxExtractedTextLength = maxExtractedTextLength;
+        }
+        extractionSettings = getExtractionSettings(this.maxExtractedTextLength,
+                skippedTextNamespaces);
+    }
+
+    public int getMaxExtractedTextLength() {
+        return maxExtractedTextLength;
+    }
+
+    /**
+     * Sets the XML namespaces whose elements (and their descendants) are not included in the
+     * extracted text.
+     *
+     * @param skippedTextNamespaces
+     *            namespace URIs to skip, may be {@code null}
+     */
+    public void setSkippedTextNamespaces(List<String> skippedTextNamespaces) {
+        Set<String> namespaces = new HashSet<>();
+
+        if (skippedTextNamespaces != null) {
+            for (String namespace : skippedTextNamespaces) {
+                if (StringUtils.isNotBlank(namespace)) {
+                    namespaces.add(namespace.trim());
+                }
+            }
+        }
+
+        this.skippedTextNamespaces = Collections.unmodifiableSet(namespaces);
+        extractionSettings = getExtractionSettings(maxExtractedTextLength,
+                this.skippedTextNamespaces);
+    }
+
+    public Set<String> getSkippedTextNamespaces() {
+        return skippedTextNamespaces;
+    }
+
+    /**
+     * Sets whether spatial queries are prefiltered on the indexed bounding boxes. Documents
+     * indexed before the bounding boxes were added have none, so this should only be enabled once
+     * the catalog has been reindexed.
+     */
+    public void setSpatialPrefilterEnabled(boolean spatialPrefilterEnabled) {
+        this.spatialPrefilterEnabled = spatialPrefilterEnabled;
+    }
+
+    public boolean isSpatialPrefilterEnabled() {
+        return spatialPrefilterEnabled;
+    }
+
+    private static String getExtractionSettings(int maxLength, Set<String> skippedNamespaces) {
+        List<String> namespaces = new ArrayList<>(skippedNamespaces);
+        Collections.sort(namespaces);
+        return maxLength + " " + namespaces;
+    }
+
+    private String digest(String xmlData) {
+        try {
+            MessageDigest messageDigest = MessageDigest
+                    .getInstance(EXTRACTED_TEXT_DIGEST_ALGORITHM);
+            messageDigest.update(extractionSettings.getBytes(StandardCharsets.UTF_8));
+            byte[] hash = messageDigest.digest(xmlData.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.debug("Could not compute digest of XML data.", e);
+            return null;
+        }
+    }
+
+    private byte[] compress(String text) {
+        ByteArrayOutputStream byteArrayOS = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(byteArrayOS)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.debug("Could not compress extracted text.", e);
+            return null;
+        }
+        return byteArrayOS.toByteArray();
+    }
+
+    private String decompress(Object compressedText) {
+        if (!(compressedText instanceof byte[])) {
+            return null;
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(
+                (byte[]) compressedText))) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            LOGGER.debug("Could not decompress stored extracted text.", e);
+            return null;
+        }
+    }
     
     private Set<AttributeDescriptor> convertAttributeDescriptors(Set<AttributeDescriptor> attributeDescriptors) {
         Set<AttributeDescriptor> newAttributeDescriptors = new HashSet<>(attributeDescriptors.size());
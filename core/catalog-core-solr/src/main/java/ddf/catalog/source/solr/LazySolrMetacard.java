@@ -0,0 +1,335 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.MetacardType;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.data.impl.AttributeInterner;
+import ddf.catalog.data.impl.MetacardImpl;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link MetacardImpl} created from a Solr document that decodes each attribute from the document
+ * the first time it is read. Attributes that were left out of the query results are all fetched
+ * from Solr by the ID of the document, in one request, the first time one of them is read.
+ *
+ * Lazy metacards are shared by the threads processing a response, so the attributes are held in a
+ * concurrent map rather than in the storage of {@link MetacardImpl}: reads never take a lock, and
+ * the lock of this metacard is only held to publish an attribute, never while decoding or
+ * fetching.
+ *
+ * A lazy metacard is serialized as a {@link MetacardImpl} holding all of its attributes.
+ */
+public class LazySolrMetacard extends MetacardImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazySolrMetacard.class);
+
+    private transient SolrDocument document;
+
+    private transient DynamicSchemaResolver resolver;
+
+    private transient SolrServer server;
+
+    /**
+     * Attributes decoded, fetched or set
+     */
+    private final transient Map<String, Attribute> attributes = new ConcurrentHashMap<>();
+
+    /**
+     * Solr field of each attribute of the document not decoded yet, indexed on first access
+     */
+    private transient volatile Map<String, String> pendingFields;
+
+    /**
+     * Attributes left out of the query results and not fetched yet
+     */
+    private transient volatile Set<String> fetchableAttributes = Collections.emptySet();
+
+    /**
+     * Fetch of the attributes left out of the query results, run by the first thread reading one
+     * of them while the others wait for it
+     */
+    private final transient AtomicReference<FutureTask<Void>> fetch = new AtomicReference<>();
+
+    /**
+     * @param type
+     *            type of the metacard
+     * @param document
+     *            Solr document the attributes are decoded from
+     * @param resolver
+     *            resolver of the Solr fields
+     * @param server
+     *            Solr server the attributes left out of the document are fetched from
+     */
+    public LazySolrMetacard(MetacardType type, SolrDocument document,
+            DynamicSchemaResolver resolver, SolrServer server) {
+        super(type);
+        this.document = document;
+        this.resolver = resolver;
+        this.server = server;
+    }
+
+    /**
+     * Sets the attributes that may have been left out of the document. They are fetched from Solr
+     * the first time one of them is read if the document does not hold them.
+     */
+    public synchronized void setFetchableAttributes(Collection<String> fetchableAttributes) {
+        Set<String> fetchable = Collections
+                .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        fetchable.addAll(fetchableAttributes);
+        fetchable.removeAll(attributes.keySet());
+        this.fetchableAttributes = fetchable;
+        fetch.set(null);
+    }
+
+    @Override
+    public Attribute getAttribute(String name) {
+        if (name == null) {
+            return null;
+        }
+        decode(name);
+        if (fetchableAttributes.contains(name)) {
+            fetch();
+        }
+        return attributes.get(name);
+    }
+
+    @Override
+    public synchronized void setAttribute(Attribute attribute) {
+        if (attribute == null || attribute.getName() == null) {
+            return;
+        }
+        String name = attribute.getName();
+        publish(name, attribute.getValue() == null ? null : attribute);
+        getPendingFields().remove(name);
+        fetchableAttributes.remove(name);
+    }
+
+    /**
+     * Decodes every attribute held by the document and fetches the attributes left out of it.
+     */
+    public void materialize() {
+        for (String name : getPendingFields().keySet().toArray(new String[0])) {
+            decode(name);
+        }
+        if (!fetchableAttributes.isEmpty()) {
+            fetch();
+        }
+    }
+
+    private Map<String, String> getPendingFields() {
+        Map<String, String> fields = pendingFields;
+        if (fields == null) {
+            synchronized (this) {
+                fields = pendingFields;
+                if (fields == null) {
+                    fields = new ConcurrentHashMap<>();
+                    if (document != null) {
+                        for (String solrFieldName : document.getFieldNames()) {
+                            if (!resolver.isPrivateField(solrFieldName)) {
+                                fields.put(AttributeInterner.intern(resolver
+                                        .resolveFieldName(solrFieldName)), solrFieldName);
+                            }
+                        }
+                    }
+                    pendingFields = fields;
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Decodes the attribute outside of the lock, then publishes it unless another thread set or
+     * decoded it first. The attribute stays pending until it is published, so readers that no
+     * longer find it pending see its value.
+     */
+    private void decode(String name) {
+        Map<String, String> fields = getPendingFields();
+        String solrFieldName = fields.get(name);
+        if (solrFieldName == null) {
+            return;
+        }
+
+        Serializable value = AttributeInterner.intern(name,
+                resolver.getDocValue(solrFieldName, document.getFieldValue(solrFieldName)));
+        synchronized (this) {
+            if (fields.containsKey(name)) {
+                fetchableAttributes.remove(name);
+                publish(name, value == null ? null : new AttributeImpl(name, value));
+                fields.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Fetches all the attributes left out of the query results, or waits for the thread already
+     * fetching them.
+     */
+    private void fetch() {
+        FutureTask<Void> task = fetch.get();
+        if (task == null) {
+            FutureTask<Void> newTask = new FutureTask<>(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    fetchFromServer();
+                    return null;
+                }
+            });
+            if (fetch.compareAndSet(null, newTask)) {
+                newTask.run();
+            }
+            task = fetch.get();
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            LOGGER.warn("Could not fetch the attributes of metacard " + getDocumentId() + ".",
+                    e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void fetchFromServer() {
+        Set<String> names = new LinkedHashSet<>(fetchableAttributes);
+        // the attributes found in the document are decoded instead
+        names.removeAll(getPendingFields().keySet());
+
+        Map<String, List<String>> fieldsByName = new HashMap<>();
+        List<String> fields = new ArrayList<>();
+        for (String name : names) {
+            List<String> nameFields = resolver.getAnonymousField(name);
+            fieldsByName.put(name, nameFields);
+            fields.addAll(nameFields);
+        }
+
+        Object id = getDocumentId();
+        Map<String, Attribute> fetched = new HashMap<>();
+        if (id != null && !fields.isEmpty()) {
+            SolrQuery query = new SolrQuery(Metacard.ID + SchemaFields.TEXT_SUFFIX + ":"
+                    + ClientUtils.escapeQueryChars(id.toString()));
+            query.setFields(fields.toArray(new String[fields.size()]));
+            query.setRows(1);
+
+            try {
+                SolrDocumentList docs = server.query(query, METHOD.POST).getResults();
+                if (!docs.isEmpty()) {
+                    for (Map.Entry<String, List<String>> entry : fieldsByName.entrySet()) {
+                        Attribute attribute = getFetchedAttribute(entry.getKey(),
+                                entry.getValue(), docs.get(0));
+                        if (attribute != null) {
+                            fetched.put(entry.getKey(), attribute);
+                        }
+                    }
+                }
+            } catch (SolrServerException | SolrException e) {
+                LOGGER.warn("Could not fetch attributes " + names + " of metacard " + id + ".",
+                        e);
+            }
+        }
+
+        synchronized (this) {
+            for (String name : names) {
+                // an attribute set while fetching is kept
+                if (fetchableAttributes.remove(name) && fetched.containsKey(name)) {
+                    publish(name, fetched.get(name));
+                }
+            }
+        }
+    }
+
+    private Attribute getFetchedAttribute(String name, List<String> fields, SolrDocument doc) {
+        for (String field : fields) {
+            Object value = doc.getFieldValue(field);
+            if (value != null) {
+                return new AttributeImpl(name, AttributeInterner.intern(name,
+                        resolver.getDocValue(field, value)));
+            }
+        }
+        return null;
+    }
+
+    private Object getDocumentId() {
+        return document == null ? null : document.getFieldValue(Metacard.ID
+                + SchemaFields.TEXT_SUFFIX);
+    }
+
+    /**
+     * Sets or, given null, removes an attribute. Called while holding the lock of this metacard.
+     */
+    private void publish(String name, Attribute attribute) {
+        if (attribute == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, attribute);
+        }
+    }
+
+    /**
+     * Replaces this metacard by a {@link MetacardImpl} holding all of its attributes, so that
+     * reading it back does not depend on Solr.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        materialize();
+
+        MetacardImpl metacard = new MetacardImpl(getMetacardType());
+        for (Attribute attribute : attributes.values()) {
+            metacard.setAttribute(attribute);
+        }
+        metacard.setSourceId(getSourceId());
+        return metacard;
+    }
+}
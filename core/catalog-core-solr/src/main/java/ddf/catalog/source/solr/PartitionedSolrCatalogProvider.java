@@ -0,0 +1,667 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.ContentType;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.filter.FilterAdapter;
+import ddf.catalog.filter.impl.SortByImpl;
+import ddf.catalog.operation.CreateRequest;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.DeleteRequest;
+import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.FacetResult;
+import ddf.catalog.operation.Query;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.Update;
+import ddf.catalog.operation.UpdateRequest;
+import ddf.catalog.operation.UpdateResponse;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.operation.impl.DeleteRequestImpl;
+import ddf.catalog.operation.impl.DeleteResponseImpl;
+import ddf.catalog.operation.impl.FacetResultImpl;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.operation.impl.SourceResponseImpl;
+import ddf.catalog.operation.impl.UpdateRequestImpl;
+import ddf.catalog.operation.impl.UpdateResponseImpl;
+import ddf.catalog.source.CatalogProvider;
+import ddf.catalog.source.IngestException;
+import ddf.catalog.source.MetacardIdLookup;
+import ddf.catalog.source.SourceMonitor;
+import ddf.catalog.source.UnsupportedQueryException;
+import ddf.catalog.util.impl.DistanceResultComparator;
+import ddf.catalog.util.impl.MaskableImpl;
+import ddf.catalog.util.impl.RelevanceResultComparator;
+import ddf.catalog.util.impl.TemporalResultComparator;
+import org.apache.solr.client.solrj.SolrServer;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link CatalogProvider} that spreads the catalog over several Solr cores. Each {@link Metacard}
+ * is stored in exactly one partition, chosen by hashing its ID. Creates, updates and deletes are
+ * written to the partitions concerned in parallel. Queries are sent to every partition in parallel
+ * and the results are merged on the requested sort, or on relevance when none is requested, with
+ * the hit counts summed.
+ *
+ * The partitions must always be configured in the same order, otherwise records will no longer be
+ * found in the partition their ID hashes to.
+ */
+public class PartitionedSolrCatalogProvider extends MaskableImpl implements CatalogProvider,
+        MetacardIdLookup {
+
+    private static final Logger LOGGER = LoggerFactory
+            .getLogger(PartitionedSolrCatalogProvider.class);
+
+    private static final String REQUEST_MUST_NOT_BE_NULL_MESSAGE = "Request must not be null";
+
+    private static final String WARMUP_QUERY_FILE_FORMAT = "warmup-queries_%d.txt";
+
+    private static final SortBy RELEVANCE_SORT = new SortByImpl(Result.RELEVANCE,
+            SortOrder.DESCENDING);
+
+    private final List<CatalogProvider> partitions;
+
+    private final ExecutorService partitionExecutor;
+
+    /**
+     * Creates a {@link SolrCatalogProvider} for each of the given Solr servers. The partitions
+     * share one {@link DynamicSchemaResolver}.
+     *
+     * @param servers
+     *            one Solr server per partition, always in the same order
+     * @param adapter
+     *            injected implementation of FilterAdapter
+     * @param solrFilterDelegateFactory
+     *            factory of the Solr filter delegates
+     */
+    public PartitionedSolrCatalogProvider(List<SolrServer> servers, FilterAdapter adapter,
+            SolrFilterDelegateFactory solrFilterDelegateFactory) {
+        this(createPartitions(servers, adapter, solrFilterDelegateFactory));
+    }
+
+    /**
+     * @param partitions
+     *            the providers holding each partition, always in the same order
+     */
+    public PartitionedSolrCatalogProvider(List<? extends CatalogProvider> partitions) {
+        if (partitions == null || partitions.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition must be provided.");
+        }
+        this.partitions = Collections.unmodifiableList(new ArrayList<>(partitions));
+        this.partitionExecutor = Executors.newFixedThreadPool(partitions.size(),
+                new PartitionThreadFactory());
+    }
+
+    private static List<CatalogProvider> createPartitions(List<SolrServer> servers,
+            FilterAdapter adapter, SolrFilterDelegateFactory solrFilterDelegateFactory) {
+        if (servers == null || servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one SolrServer must be provided.");
+        }
+
+        DynamicSchemaResolver resolver = new DynamicSchemaResolver();
+        List<CatalogProvider> providers = new ArrayList<>(servers.size());
+        for (int i = 0; i < servers.size(); i++) {
+            SolrCatalogProvider provider = new SolrCatalogProvider(servers.get(i), adapter,
+                    solrFilterDelegateFactory, resolver);
+            // each partition records its own queries to replay
+            provider.setWarmupQueryFileName(String.format(WARMUP_QUERY_FILE_FORMAT, i));
+            providers.add(provider);
+        }
+        return providers;
+    }
+
+    /**
+     * @return the providers holding each partition
+     */
+    public List<CatalogProvider> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Returns the index of the partition holding the {@link Metacard} with the given ID.
+     */
+    protected int getPartition(Serializable id) {
+        return (id.toString().hashCode() & Integer.MAX_VALUE) % partitions.size();
+    }
+
+    @Override
+    public void maskId(String id) {
+        super.maskId(id);
+        for (CatalogProvider partition : partitions) {
+            partition.maskId(id);
+        }
+    }
+
+    @Override
+    public Set<ContentType> getContentTypes() {
+        Set<ContentType> contentTypes = new HashSet<>();
+        for (CatalogProvider partition : partitions) {
+            contentTypes.addAll(partition.getContentTypes());
+        }
+        return contentTypes;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        for (CatalogProvider partition : partitions) {
+            if (!partition.isAvailable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isAvailable(SourceMonitor callback) {
+        return isAvailable();
+    }
+
+    @Override
+    public String getDescription() {
+        return partitions.get(0).getDescription();
+    }
+
+    @Override
+    public String getOrganization() {
+        return partitions.get(0).getOrganization();
+    }
+
+    @Override
+    public String getTitle() {
+        return partitions.get(0).getTitle();
+    }
+
+    @Override
+    public String getVersion() {
+        return partitions.get(0).getVersion();
+    }
+
+    @Override
+    public SourceResponse query(final QueryRequest request) throws UnsupportedQueryException {
+        if (request == null || request.getQuery() == null) {
+            throw new UnsupportedQueryException(REQUEST_MUST_NOT_BE_NULL_MESSAGE);
+        }
+
+        Query query = request.getQuery();
+        int startIndex = query.getStartIndex();
+        int pageSize = query.getPageSize();
+
+        /*
+         * Any partition may hold all of the records of the requested page, so each one has to
+         * return everything up to the end of the page.
+         */
+        int partitionPageSize = pageSize < 1 ? pageSize : startIndex - 1 + pageSize;
+
+        /*
+         * Without a sort, each partition would return its results in its own order and the merged
+         * page would depend on the order the partitions are read in. The partitions then sort on
+         * relevance so that their scores are returned and the results can be merged on them.
+         */
+        SortBy sortBy = query.getSortBy();
+        if (sortBy == null || sortBy.getPropertyName() == null
+                || sortBy.getPropertyName().getPropertyName() == null) {
+            sortBy = RELEVANCE_SORT;
+        }
+
+        final QueryRequest partitionRequest = new QueryRequestImpl(new QueryImpl(query, 1,
+                partitionPageSize, sortBy, query.requestsTotalResultsCount(),
+                query.getTimeoutMillis()), request.isEnterprise(), request.getSourceIds(),
+                request.getProperties());
+
+        List<Future<SourceResponse>> futures = new ArrayList<>(partitions.size());
+        for (final CatalogProvider partition : partitions) {
+            futures.add(partitionExecutor.submit(new Callable<SourceResponse>() {
+                @Override
+                public SourceResponse call() throws UnsupportedQueryException {
+                    return partition.query(partitionRequest);
+                }
+            }));
+        }
+
+        List<Result> results = new ArrayList<>();
+        Map<String, Serializable> properties = new HashMap<>();
+        Serializable facetResults = null;
+        long hits = 0;
+
+        try {
+            for (Future<SourceResponse> future : futures) {
+                SourceResponse response = future.get();
+                results.addAll(response.getResults());
+                hits += response.getHits();
+
+                facetResults = FacetResultImpl.merge(facetResults,
+                        response.getPropertyValue(FacetResult.FACET_RESULTS), request);
+                properties.putAll(response.getProperties());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(futures);
+            throw new UnsupportedQueryException("Interrupted while querying the partitions.", e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            if (e.getCause() instanceof UnsupportedQueryException) {
+                throw (UnsupportedQueryException) e.getCause();
+            }
+            throw new UnsupportedQueryException("Could not query the partitions.", e.getCause());
+        }
+
+        if (facetResults != null) {
+            properties.put(FacetResult.FACET_RESULTS, facetResults);
+        }
+
+        // ties are broken on the ID so that pages do not overlap or skip records
+        Collections.sort(results, new IdTieBreakingComparator(getComparator(sortBy)));
+
+        int fromIndex = Math.min(Math.max(startIndex - 1, 0), results.size());
+        int toIndex = pageSize < 1 ? results.size() : Math.min(fromIndex + pageSize,
+                results.size());
+
+        return new SourceResponseImpl(request, properties, new ArrayList<>(results.subList(
+                fromIndex, toIndex)), hits);
+    }
+
+    @Override
+    public CreateResponse create(CreateRequest request) throws IngestException {
+        if (request == null) {
+            throw new IngestException(REQUEST_MUST_NOT_BE_NULL_MESSAGE);
+        }
+
+        List<Metacard> output = new ArrayList<>();
+        if (request.getMetacards() == null) {
+            return new CreateResponseImpl(request, null, output);
+        }
+
+        List<List<Metacard>> partitionedMetacards = newPartitionedLists();
+        for (Metacard metacard : request.getMetacards()) {
+            /*
+             * The ID must be known to choose the partition, so it is generated here rather than by
+             * the partition.
+             */
+            if (metacard.getId() == null || metacard.getId().equals("")) {
+                if (metacard.getSourceId() != null && !"".equals(metacard.getSourceId())) {
+                    throw new IngestException("Metacard from a separate distribution must have ID");
+                }
+                metacard.setAttribute(new AttributeImpl(Metacard.ID, generatePrimaryKey()));
+            }
+            partitionedMetacards.get(getPartition(metacard.getId())).add(metacard);
+        }
+
+        Map<Integer, Callable<CreateResponse>> creates = new LinkedHashMap<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            if (!partitionedMetacards.get(i).isEmpty()) {
+                final CatalogProvider partition = partitions.get(i);
+                final CreateRequest partitionRequest = new CreateRequestImpl(
+                        partitionedMetacards.get(i), request.getProperties());
+                creates.put(i, new Callable<CreateResponse>() {
+                    @Override
+                    public CreateResponse call() throws IngestException {
+                        return partition.create(partitionRequest);
+                    }
+                });
+            }
+        }
+
+        for (CreateResponse response : ingest("Create", creates)) {
+            output.addAll(response.getCreatedMetacards());
+        }
+
+        return new CreateResponseImpl(request, null, output);
+    }
+
+    @Override
+    public UpdateResponse update(UpdateRequest request) throws IngestException {
+        if (request == null) {
+            throw new IngestException(REQUEST_MUST_NOT_BE_NULL_MESSAGE);
+        }
+
+        Map<Integer, Callable<UpdateResponse>> partitionUpdates = new LinkedHashMap<>();
+
+        if (UpdateRequest.UPDATE_BY_ID.equals(request.getAttributeName())
+                && request.getUpdates() != null) {
+            List<List<Entry<Serializable, Metacard>>> partitionedUpdates = newPartitionedLists();
+            for (Entry<Serializable, Metacard> update : request.getUpdates()) {
+                partitionedUpdates.get(getPartition(update.getKey())).add(update);
+            }
+
+            for (int i = 0; i < partitions.size(); i++) {
+                if (!partitionedUpdates.get(i).isEmpty()) {
+                    partitionUpdates.put(i, newUpdate(partitions.get(i), new UpdateRequestImpl(
+                            partitionedUpdates.get(i), request.getAttributeName(), request
+                                    .getProperties())));
+                }
+            }
+        } else {
+            // any partition may hold a record matching another attribute
+            for (int i = 0; i < partitions.size(); i++) {
+                partitionUpdates.put(i, newUpdate(partitions.get(i), request));
+            }
+        }
+
+        List<Update> updates = new ArrayList<>();
+        for (UpdateResponse response : ingest("Update", partitionUpdates)) {
+            updates.addAll(response.getUpdatedMetacards());
+        }
+
+        return new UpdateResponseImpl(request, null, updates);
+    }
+
+    /**
+     * Looks up each ID in the partition it hashes to.
+     */
+    @Override
+    public List<Metacard> getMetacards(Collection<String> ids) throws UnsupportedQueryException {
+        List<List<String>> partitionedIds = newPartitionedLists();
+        for (String id : ids) {
+            partitionedIds.get(getPartition(id)).add(id);
+        }
+
+        List<Metacard> metacards = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            if (!partitionedIds.get(i).isEmpty()) {
+                CatalogProvider partition = partitions.get(i);
+                if (!(partition instanceof MetacardIdLookup)) {
+                    throw new UnsupportedQueryException("Partition " + partition.getId()
+                            + " does not support lookups by ID.");
+                }
+                metacards.addAll(((MetacardIdLookup) partition).getMetacards(partitionedIds
+                        .get(i)));
+            }
+        }
+        return metacards;
+    }
+
+    @Override
+    public DeleteResponse delete(DeleteRequest request) throws IngestException {
+        if (request == null) {
+            throw new IngestException(REQUEST_MUST_NOT_BE_NULL_MESSAGE);
+        }
+
+        Map<Integer, Callable<DeleteResponse>> deletes = new LinkedHashMap<>();
+
+        if (DeleteRequest.DELETE_BY_ID.equals(request.getAttributeName())
+                && request.getAttributeValues() != null) {
+            List<List<Serializable>> partitionedIds = newPartitionedLists();
+            for (Serializable id : request.getAttributeValues()) {
+                partitionedIds.get(getPartition(id)).add(id);
+            }
+
+            for (int i = 0; i < partitions.size(); i++) {
+                if (!partitionedIds.get(i).isEmpty()) {
+                    deletes.put(i, newDelete(partitions.get(i), new DeleteRequestImpl(
+                            partitionedIds.get(i), request.getAttributeName(), request
+                                    .getProperties())));
+                }
+            }
+        } else {
+            for (int i = 0; i < partitions.size(); i++) {
+                deletes.put(i, newDelete(partitions.get(i), request));
+            }
+        }
+
+        List<Metacard> deletedMetacards = new ArrayList<>();
+        for (DeleteResponse response : ingest("Delete", deletes)) {
+            deletedMetacards.addAll(response.getDeletedMetacards());
+        }
+
+        return new DeleteResponseImpl(request, null, deletedMetacards);
+    }
+
+    /**
+     * Runs an ingest operation on several partitions in parallel and waits for all of them. The
+     * partitions are not written in a transaction: when some of them fail, the changes stored by
+     * the others are kept, so the exception thrown names both the partitions that failed and
+     * those that completed.
+     *
+     * @param operation
+     *            name of the operation, for the error message
+     * @param tasks
+     *            the operation on each partition, by partition index
+     * @return the responses of the partitions, in the order of the tasks
+     */
+    private <T> List<T> ingest(String operation, Map<Integer, Callable<T>> tasks)
+        throws IngestException {
+        Map<Integer, Future<T>> futures = new LinkedHashMap<>();
+        for (Entry<Integer, Callable<T>> task : tasks.entrySet()) {
+            futures.put(task.getKey(), partitionExecutor.submit(task.getValue()));
+        }
+
+        List<T> responses = new ArrayList<>(futures.size());
+        List<Integer> completed = new ArrayList<>();
+        List<Integer> failed = new ArrayList<>();
+        Throwable failure = null;
+        boolean interrupted = false;
+
+        /*
+         * The writes are not cancelled when the caller is interrupted, since it could then not
+         * tell which of the partitions stored their changes.
+         */
+        for (Entry<Integer, Future<T>> future : futures.entrySet()) {
+            while (true) {
+                try {
+                    responses.add(future.getValue().get());
+                    completed.add(future.getKey());
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    failed.add(future.getKey());
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failed.isEmpty()) {
+            return responses;
+        } else if (completed.isEmpty() && failed.size() == 1
+                && failure instanceof IngestException) {
+            throw (IngestException) failure;
+        }
+
+        String message = operation + " failed on partitions " + failed
+                + (completed.isEmpty() ? "." : " and completed on partitions " + completed
+                        + ", whose changes are kept.");
+        LOGGER.warn(message, failure);
+        throw new IngestException(message, failure);
+    }
+
+    private static Callable<UpdateResponse> newUpdate(final CatalogProvider partition,
+            final UpdateRequest request) {
+        return new Callable<UpdateResponse>() {
+            @Override
+            public UpdateResponse call() throws IngestException {
+                return partition.update(request);
+            }
+        };
+    }
+
+    private static Callable<DeleteResponse> newDelete(final CatalogProvider partition,
+            final DeleteRequest request) {
+        return new Callable<DeleteResponse>() {
+            @Override
+            public DeleteResponse call() throws IngestException {
+                return partition.delete(request);
+            }
+        };
+    }
+
+    /**
+     * Releases the query threads and shuts down the {@link SolrCatalogProvider} partitions.
+     */
+    public void shutdown() {
+        LOGGER.info("Shutting down {} solr partitions.", partitions.size());
+        partitionExecutor.shutdown();
+        for (CatalogProvider partition : partitions) {
+            if (partition instanceof SolrCatalogProvider) {
+                ((SolrCatalogProvider) partition).shutdown();
+            }
+        }
+    }
+
+    private <T> List<List<T>> newPartitionedLists() {
+        List<List<T>> lists = new ArrayList<>(partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            lists.add(new ArrayList<T>());
+        }
+        return lists;
+    }
+
+    private Comparator<Result> getComparator(SortBy sortBy) {
+        String sortProperty = sortBy.getPropertyName().getPropertyName();
+        SortOrder sortOrder = (sortBy.getSortOrder() == null) ? SortOrder.DESCENDING : sortBy
+                .getSortOrder();
+
+        if (Metacard.EFFECTIVE.equals(sortProperty) || Result.TEMPORAL.equals(sortProperty)) {
+            return new TemporalResultComparator(sortOrder);
+        } else if (Result.DISTANCE.equals(sortProperty)) {
+            return new DistanceResultComparator(sortOrder);
+        } else if (Result.RELEVANCE.equals(sortProperty)) {
+            return new RelevanceResultComparator(sortOrder);
+        }
+        return new AttributeResultComparator(sortProperty, sortOrder);
+    }
+
+    private static void cancel(List<Future<SourceResponse>> futures) {
+        for (Future<SourceResponse> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static String generatePrimaryKey() {
+        return UUID.randomUUID().toString().replaceAll("-", "");
+    }
+
+    /**
+     * Orders results on the value of an attribute, records without a comparable value last.
+     */
+    private static class AttributeResultComparator implements Comparator<Result> {
+
+        private final String attributeName;
+
+        private final SortOrder sortOrder;
+
+        public AttributeResultComparator(String attributeName, SortOrder sortOrder) {
+            this.attributeName = attributeName;
+            this.sortOrder = sortOrder;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public int compare(Result result1, Result result2) {
+            Comparable value1 = getValue(result1);
+            Comparable value2 = getValue(result2);
+
+            if (value1 == null || value2 == null) {
+                return value1 == null ? (value2 == null ? 0 : 1) : -1;
+            }
+
+            int comparison = value1.compareTo(value2);
+            return SortOrder.DESCENDING.equals(sortOrder) ? -comparison : comparison;
+        }
+
+        @SuppressWarnings("rawtypes")
+        private Comparable getValue(Result result) {
+            if (result == null || result.getMetacard() == null) {
+                return null;
+            }
+            Attribute attribute = result.getMetacard().getAttribute(attributeName);
+            if (attribute != null && attribute.getValue() instanceof Comparable) {
+                return (Comparable) attribute.getValue();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Orders results with another comparator, then on the ID of their metacard.
+     */
+    private static class IdTieBreakingComparator implements Comparator<Result> {
+
+        private final Comparator<Result> comparator;
+
+        public IdTieBreakingComparator(Comparator<Result> comparator) {
+            this.comparator = comparator;
+        }
+
+        @Override
+        public int compare(Result result1, Result result2) {
+            int comparison = comparator.compare(result1, result2);
+            if (comparison != 0) {
+                return comparison;
+            }
+
+            String id1 = getId(result1);
+            String id2 = getId(result2);
+            if (id1 == null || id2 == null) {
+                return id1 == null ? (id2 == null ? 0 : 1) : -1;
+            }
+            return id1.compareTo(id2);
+        }
+
+        private String getId(Result result) {
+            return result == null || result.getMetacard() == null ? null : result.getMetacard()
+                    .getId();
+        }
+    }
+
+    private static class PartitionThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "solr-partition-"
+                    + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
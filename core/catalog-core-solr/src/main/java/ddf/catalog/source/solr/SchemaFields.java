@@ -62,6 +62,22 @@ public class SchemaFields {
 
     public static final String INDEXED = "_index";
 
+    public static final String BBOX = "_bbox";
+
+    public static final String BBOX_MIN_X = BBOX + "_minx";
+
+    public static final String BBOX_MIN_Y = BBOX + "_miny";
+
+    public static final String BBOX_MAX_X = BBOX + "_maxx";
+
+    public static final String BBOX_MAX_Y = BBOX + "_maxy";
+
+    public static final String GEOHASH = "_geohash";
+
+    public static final String XML_HASH = "_xml_hash";
+
+    public static final String EXTRACTED_TEXT = "_extracted_text";
+
     public static final String METACARD_TYPE_FIELD_NAME = "metacard_type_name" + TEXT_SUFFIX;
 
     public static final String METACARD_TYPE_OBJECT_FIELD_NAME = "metacard_type" + OBJECT_SUFFIX;
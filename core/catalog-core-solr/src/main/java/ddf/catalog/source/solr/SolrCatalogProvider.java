@@ -37,6 +37,7 @@
 import ddf.catalog.operation.impl.UpdateResponseImpl;
 import ddf.catalog.source.CatalogProvider;
 import ddf.catalog.source.IngestException;
+import ddf.catalog.source.MetacardIdLookup;
 import ddf.catalog.source.SourceMonitor;
 import ddf.catalog.source.UnsupportedQueryException;
 import ddf.catalog.util.impl.MaskableImpl;
@@ -46,6 +47,7 @@
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.PivotField;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -57,9 +59,12 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -69,12 +74,14 @@
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * {@link CatalogProvider} implementation using Apache Solr 4+
  * 
  */
-public class SolrCatalogProvider extends MaskableImpl implements CatalogProvider {
+public class SolrCatalogProvider extends MaskableImpl implements CatalogProvider,
+        MetacardIdLookup {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SolrCatalogProvider.class);
 
@@ -88,12 +95,35 @@ public class SolrCatalogProvider extends MaskableImpl implements CatalogProvider
 
     private static final double HASHMAP_DEFAULT_LOAD_FACTOR = 0.75;
 
+    private static final String WARMUP_QUERY_FILE = "warmup-queries.txt";
+
+    /**
+     * Default time in milliseconds the content types are cached before the index is faceted again
+     */
+    public static final long DEFAULT_CONTENT_TYPES_CACHE_TTL = 10000;
+
     private DynamicSchemaResolver resolver;
 
     private SolrServer server;
 
     private SolrMetacardClient client;
 
+    private long contentTypesCacheTtl = DEFAULT_CONTENT_TYPES_CACHE_TTL;
+
+    private volatile Set<ContentType> cachedContentTypes;
+
+    private volatile long contentTypesExpiration;
+
+    private int metacardCacheSize = 0;
+
+    private long metacardCacheMemory = DecodedMetacardCache.DEFAULT_MAX_MEMORY;
+
+    private final SolrWarmer warmer;
+
+    private final AtomicBoolean warmingStarted = new AtomicBoolean();
+
+    private volatile double warmupAvailabilityThreshold = 0;
+
     private static Properties describableProperties = new Properties();
 
     static {
@@ -125,6 +155,39 @@ public SolrCatalogProvider(SolrServer server, FilterAdapter adapter,
 
         resolver.addFieldsFromServer(server);
         client = new ProviderSolrMetacardClient(server, adapter, solrFilterDelegateFactory, resolver);
+
+        warmer = new SolrWarmer(server, resolver);
+        setWarmupQueryFileName(WARMUP_QUERY_FILE);
+        client.setWarmer(warmer);
+        client.getCommitScheduler().addCommitListener(new Runnable() {
+            @Override
+            public void run() {
+                warmer.warm();
+            }
+        });
+    }
+
+    /**
+     * Starts warming Solr with the saved queries. Called once the configuration has been applied,
+     * so that the warming uses the configured query count.
+     */
+    public void init() {
+        if (warmingStarted.compareAndSet(false, true)) {
+            warmer.start();
+        }
+    }
+
+    /**
+     * Sets the name of the file, in the data directory, where the queries replayed to warm Solr
+     * are saved. Providers sharing the data directory, like the partitions of a
+     * {@link PartitionedSolrCatalogProvider}, must each have their own file. Must be called
+     * before {@link #init()} to load the saved queries from the file.
+     */
+    public void setWarmupQueryFileName(String warmupQueryFileName) {
+        String dataDirectoryPath = ConfigurationStore.getInstance().getDataDirectoryPath();
+        if (StringUtils.isNotBlank(dataDirectoryPath)) {
+            warmer.setQueryFile(new File(dataDirectoryPath, warmupQueryFileName));
+        }
     }
 
     /**
@@ -140,6 +203,29 @@ public SolrCatalogProvider(SolrServer server, FilterAdapter adapter,
 
     @Override
     public Set<ContentType> getContentTypes() {
+        Set<ContentType> contentTypes = cachedContentTypes;
+
+        if (contentTypes == null || System.currentTimeMillis() >= contentTypesExpiration) {
+            contentTypes = Collections.unmodifiableSet(queryContentTypes());
+            cachedContentTypes = contentTypes;
+            contentTypesExpiration = System.currentTimeMillis() + contentTypesCacheTtl;
+        }
+
+        return new HashSet<>(contentTypes);
+    }
+
+    /**
+     * Sets how long the content types are cached before the index is faceted again.
+     *
+     * @param contentTypesCacheTtl
+     *            time to live in milliseconds, 0 disables the cache
+     */
+    public void setContentTypesCacheTtl(long contentTypesCacheTtl) {
+        this.contentTypesCacheTtl = Math.max(0, contentTypesCacheTtl);
+        this.cachedContentTypes = null;
+    }
+
+    private Set<ContentType> queryContentTypes() {
 
         Set<ContentType> finalSet = new HashSet<>();
 
@@ -222,6 +308,11 @@ public Set<ContentType> getContentTypes() {
 
     @Override
     public boolean isAvailable() {
+        if (warmer.getProgress() < warmupAvailabilityThreshold) {
+            LOGGER.debug("Solr is warming up, {} complete.", warmer.getProgress());
+            return false;
+        }
+
         try {
             SolrPingResponse ping = server.ping();
 
@@ -311,6 +402,7 @@ public CreateResponse create(CreateRequest request) throws IngestException {
         } catch (SolrServerException | SolrException | IOException | MetacardCreationException e) {
             throw new IngestException("Server could not ingest metacard(s).");
         }
+        cachedContentTypes = null;
 
         return new CreateResponseImpl(request, null, output);
     }
@@ -351,28 +443,19 @@ public UpdateResponse update(UpdateRequest updateRequest) throws IngestException
             identifiers.add(updateEntry.getKey().toString());
         }
 
-        /* 1a. Create the old Metacard Query */
-        String attributeQuery = getQuery(attributeName, identifiers);
-
-        SolrQuery query = new SolrQuery(attributeQuery);
-
-        QueryResponse idResults = null;
-
-        /* 1b. Execute Query */
-        try {
-            idResults = server.query(query, METHOD.POST);
-        } catch (SolrServerException e) {
-            LOGGER.warn("SOLR server exception during query", e);
-        }
+        /* 1a. Find the old Metacards */
+        // the stored documents are kept to reuse the text extracted from their XML
+        Map<String, SolrDocument> previousDocuments = new HashMap<>();
+        List<Metacard> oldMetacards = materialize(findMetacards(attributeName, identifiers,
+                previousDocuments));
 
         // CHECK if we got any results back
-        if (idResults != null && idResults.getResults() != null
-                && idResults.getResults().size() != 0) {
+        if (!oldMetacards.isEmpty()) {
 
-            LOGGER.info("Found {} current metacard(s).", idResults.getResults().size());
+            LOGGER.info("Found {} current metacard(s).", oldMetacards.size());
 
             // CHECK updates size assertion
-            if (idResults.getResults().size() > updates.size()) {
+            if (oldMetacards.size() > updates.size()) {
                 throw new IngestException(
                         "Found more metacards than updated metacards provided. Please ensure your attribute values match unique records.");
             }
@@ -395,21 +478,14 @@ public UpdateResponse update(UpdateRequest updateRequest) throws IngestException
          * matter. If we use a List and the metacards are out of order, we might not match the new
          * metacards properly with the old metacards.
          */
-        int initialHashMapCapacity = (int) (idResults.getResults().size() / HASHMAP_DEFAULT_LOAD_FACTOR) + 1;
+        int initialHashMapCapacity = (int) (oldMetacards.size() / HASHMAP_DEFAULT_LOAD_FACTOR) + 1;
 
         // map of old metacards to be populated
         Map<Serializable, Metacard> idToMetacardMap = new HashMap<>(
                 initialHashMapCapacity);
 
-        /* 1c. Populate list of old metacards */
-        for (SolrDocument doc : idResults.getResults()) {
-            Metacard old;
-            try {
-                old = client.createMetacard(doc);
-            } catch (MetacardCreationException e) {
-                throw new IngestException("Could not create metacard(s).");
-            }
-
+        /* 1b. Populate map of old metacards */
+        for (Metacard old : oldMetacards) {
             if (!idToMetacardMap.containsKey(old.getAttribute(attributeName).getValue())) {
                 idToMetacardMap.put(old.getAttribute(attributeName).getValue(), old);
             } else {
@@ -444,10 +520,12 @@ public UpdateResponse update(UpdateRequest updateRequest) throws IngestException
         }
 
         try {
-            client.add(newMetacards, isForcedAutoCommit());
+            client.update(newMetacards, previousDocuments, isForcedAutoCommit());
         } catch (SolrServerException | SolrException | IOException | MetacardCreationException e) {
             throw new IngestException("Server could not ingest metacard(s).");
         }
+        cachedContentTypes = null;
+        client.invalidateMetacards(getIds(newMetacards));
 
         return new UpdateResponseImpl(updateRequest, null, updateList);
     }
@@ -475,6 +553,87 @@ public DeleteResponse delete(DeleteRequest deleteRequest) throws IngestException
 
         /* 1. Query first for the records */
         String fieldName = attributeName + SchemaFields.TEXT_SUFFIX;
+        if (Metacard.ID.equals(attributeName)) {
+            try {
+                deletedMetacards.addAll(client.getMetacards(toStrings(identifiers)));
+            } catch (UnsupportedQueryException e) {
+                LOGGER.info("SOLR server exception deleting request message", e);
+                throw new IngestException(COULD_NOT_COMPLETE_DELETE_REQUEST_MESSAGE);
+            }
+        } else {
+            addMetacards(fieldName, identifiers, deletedMetacards);
+        }
+
+        materialize(deletedMetacards);
+
+        /* 2. Delete */
+        try {
+            client.deleteByIds(fieldName, identifiers, isForcedAutoCommit());
+        } catch (SolrServerException | IOException e) {
+            throw new IngestException(COULD_NOT_COMPLETE_DELETE_REQUEST_MESSAGE);
+        }
+        cachedContentTypes = null;
+        client.invalidateMetacards(getIds(deletedMetacards));
+
+        return new DeleteResponseImpl(deleteRequest, null, deletedMetacards);
+    }
+
+    @Override
+    public List<Metacard> getMetacards(Collection<String> ids) throws UnsupportedQueryException {
+        return client.getMetacards(ids);
+    }
+
+    /**
+     * Finds the metacards to update, by ID directly or with a query on another attribute.
+     *
+     * @param documents
+     *            receives the stored documents of the metacards found, by metacard ID
+     */
+    private List<Metacard> findMetacards(String attributeName, List<String> identifiers,
+            Map<String, SolrDocument> documents) throws IngestException {
+        List<SolrDocument> docs = new ArrayList<>();
+        if (Metacard.ID.equals(attributeName)) {
+            try {
+                docs.addAll(client.getDocuments(identifiers));
+            } catch (UnsupportedQueryException e) {
+                throw new IngestException("Could not look up the metacard(s) to update.", e);
+            }
+        } else {
+            SolrQuery query = new SolrQuery(getQuery(attributeName, identifiers));
+
+            QueryResponse idResults = null;
+            try {
+                idResults = server.query(query, METHOD.POST);
+            } catch (SolrServerException e) {
+                LOGGER.warn("SOLR server exception during query", e);
+            }
+            if (idResults != null && idResults.getResults() != null) {
+                docs.addAll(idResults.getResults());
+            }
+        }
+
+        List<Metacard> metacards = new ArrayList<>(docs.size());
+        for (SolrDocument doc : docs) {
+            Metacard metacard;
+            try {
+                metacard = client.createMetacard(doc);
+            } catch (MetacardCreationException e) {
+                throw new IngestException("Could not create metacard(s).");
+            }
+            metacards.add(metacard);
+            if (metacard.getId() != null) {
+                documents.put(metacard.getId(), doc);
+            }
+        }
+        return metacards;
+    }
+
+    /**
+     * Adds the metacards matching the identifiers on the given field to the list of metacards to
+     * delete.
+     */
+    private void addMetacards(String fieldName, List<? extends Serializable> identifiers,
+            List<Metacard> deletedMetacards) throws IngestException {
         SolrQuery query = new SolrQuery(client.getIdentifierQuery(fieldName, identifiers));
         query.setRows(identifiers.size());
 
@@ -501,15 +660,27 @@ public DeleteResponse delete(DeleteRequest deleteRequest) throws IngestException
             }
 
         }
+    }
 
-        /* 2. Delete */
-        try {
-            client.deleteByIds(fieldName, identifiers, isForcedAutoCommit());
-        } catch (SolrServerException | IOException e) {
-            throw new IngestException(COULD_NOT_COMPLETE_DELETE_REQUEST_MESSAGE);
+    /**
+     * Decodes the lazy metacards fully, since their attributes cannot be read from Solr once the
+     * documents are replaced or deleted.
+     */
+    private List<Metacard> materialize(List<Metacard> metacards) {
+        for (Metacard metacard : metacards) {
+            if (metacard instanceof LazySolrMetacard) {
+                ((LazySolrMetacard) metacard).materialize();
+            }
         }
+        return metacards;
+    }
 
-        return new DeleteResponseImpl(deleteRequest, null, deletedMetacards);
+    private List<String> toStrings(List<? extends Serializable> identifiers) {
+        List<String> ids = new ArrayList<>(identifiers.size());
+        for (Serializable identifier : identifiers) {
+            ids.add(identifier.toString());
+        }
+        return ids;
     }
 
     private void prepareForUpdate(Date now, String keyId, MetacardImpl newMetacard,
@@ -559,6 +730,14 @@ private String getQuery(String attributeName, List<String> ids) throws IngestExc
         return query;
     }
 
+    private List<String> getIds(List<Metacard> metacards) {
+        List<String> ids = new ArrayList<>(metacards.size());
+        for (Metacard metacard : metacards) {
+            ids.add(metacard.getId());
+        }
+        return ids;
+    }
+
     private String generatePrimaryKey() {
         return UUID.randomUUID().toString().replaceAll("-", "");
     }
@@ -567,11 +746,182 @@ public boolean isForcedAutoCommit() {
         return ConfigurationStore.getInstance().isForceAutoCommit();
     }
 
+    /**
+     * Sets the maximum time before ingested records are visible to searches. The writes made
+     * during that time are made visible by a single commit.
+     *
+     * @param commitLatency
+     *            maximum time in milliseconds, 0 to leave commits to Solr unless auto commit is
+     *            forced
+     */
+    public void setCommitLatency(long commitLatency) {
+        client.getCommitScheduler().setMaxLatency(commitLatency);
+    }
+
+    /**
+     * Sets the number of ingested records that triggers a commit before the commit latency is
+     * reached.
+     *
+     * @param commitMaxDocuments
+     *            number of records, 0 for no limit
+     */
+    public void setCommitMaxDocuments(int commitMaxDocuments) {
+        client.getCommitScheduler().setMaxDocuments(commitMaxDocuments);
+    }
+
+    /**
+     * Sets the maximum number of characters of text extracted from each XML attribute for
+     * indexing.
+     *
+     * @param maxExtractedTextLength
+     *            maximum length in characters
+     */
+    public void setMaxExtractedTextLength(int maxExtractedTextLength) {
+        resolver.setMaxExtractedTextLength(maxExtractedTextLength);
+    }
+
+    /**
+     * Sets the XML namespaces whose elements are excluded from the extracted text.
+     *
+     * @param skippedTextNamespaces
+     *            namespace URIs
+     */
+    public void setSkippedTextNamespaces(List<String> skippedTextNamespaces) {
+        resolver.setSkippedTextNamespaces(skippedTextNamespaces);
+    }
+
+    /**
+     * Sets whether spatial queries are first narrowed down on the indexed bounding boxes of the
+     * geometries before the exact spatial test.
+     *
+     * @param spatialPrefilterEnabled
+     *            true to prefilter, only once all records have been indexed with bounding boxes
+     */
+    public void setSpatialPrefilterEnabled(boolean spatialPrefilterEnabled) {
+        resolver.setSpatialPrefilterEnabled(spatialPrefilterEnabled);
+    }
+
+    /**
+     * Sets the maximum number of decoded metacards cached to avoid decoding popular records on
+     * every query.
+     *
+     * @param metacardCacheSize
+     *            maximum number of records, 0 disables the cache
+     */
+    public void setMetacardCacheSize(int metacardCacheSize) {
+        this.metacardCacheSize = metacardCacheSize;
+        configureMetacardCache();
+    }
+
+    /**
+     * Sets the maximum estimated memory used by the decoded metacard cache.
+     *
+     * @param metacardCacheMemory
+     *            maximum memory in megabytes
+     */
+    public void setMetacardCacheMemory(int metacardCacheMemory) {
+        this.metacardCacheMemory = Math.max(0, metacardCacheMemory) * 1024L * 1024L;
+        configureMetacardCache();
+    }
+
+    /**
+     * @return the decoded metacard cache, holding the hit and miss counts, or null if disabled
+     */
+    public DecodedMetacardCache getMetacardCache() {
+        return client.getMetacardCache();
+    }
+
+    private synchronized void configureMetacardCache() {
+        DecodedMetacardCache cache = client.getMetacardCache();
+        if (metacardCacheSize <= 0) {
+            client.setMetacardCache(null);
+            if (cache != null) {
+                cache.unregisterMBean();
+            }
+            return;
+        }
+
+        if (cache == null) {
+            cache = new DecodedMetacardCache(metacardCacheSize, metacardCacheMemory);
+            cache.registerMBean(getCoreName());
+            client.setMetacardCache(cache);
+        } else {
+            cache.setLimits(metacardCacheSize, metacardCacheMemory);
+        }
+    }
+
+    /**
+     * Sets the attributes left out of query results. They are fetched by ID when a result is read,
+     * which saves decoding and transferring large attributes that clients reading summaries never
+     * use.
+     *
+     * @param projectedOutAttributes
+     *            attribute names, such as {@code metadata} or {@code thumbnail}
+     */
+    public void setProjectedOutAttributes(List<String> projectedOutAttributes) {
+        client.setProjectedOutAttributes(projectedOutAttributes);
+    }
+
+    /**
+     * Sets the number of the most frequent queries replayed to warm Solr at startup and after
+     * commits.
+     *
+     * @param warmupQueryCount
+     *            number of queries, 0 disables the recording and replay of queries
+     */
+    public void setWarmupQueryCount(int warmupQueryCount) {
+        warmer.setQueryCount(warmupQueryCount);
+    }
+
+    /**
+     * Sets how much of the startup warming must be complete before the provider reports itself
+     * available.
+     *
+     * @param warmupAvailabilityThreshold
+     *            fraction from 0, do not wait, to 1, wait for the whole warming
+     */
+    public void setWarmupAvailabilityThreshold(double warmupAvailabilityThreshold) {
+        this.warmupAvailabilityThreshold = Math.min(1, Math.max(0, warmupAvailabilityThreshold));
+    }
+
+    /**
+     * @return the fraction, from 0 to 1, of the startup warming that has completed
+     */
+    public double getWarmupProgress() {
+        return warmer.getProgress();
+    }
+
     public void shutdown() {
         LOGGER.info("Shutting down solr server.");
+        release();
         server.shutdown();
     }
 
+    /**
+     * Commits the pending documents and stops the warming, leaving the {@link SolrServer} open so
+     * that it can be used by another provider.
+     */
+    public void release() {
+        client.shutdown();
+        warmer.shutdown();
+        synchronized (this) {
+            DecodedMetacardCache cache = client.getMetacardCache();
+            if (cache != null) {
+                cache.unregisterMBean();
+            }
+        }
+    }
+
+    /**
+     * @return the URL of the core of a remote Solr server, otherwise the ID of this provider
+     */
+    private String getCoreName() {
+        if (server instanceof HttpSolrServer) {
+            return ((HttpSolrServer) server).getBaseURL();
+        }
+        return String.valueOf(getId());
+    }
+
     private class ProviderSolrMetacardClient extends SolrMetacardClient {
 
         public ProviderSolrMetacardClient(SolrServer solrServer,
@@ -0,0 +1,387 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.UpdateParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the soft commits that make the documents written to a Solr core visible to searches.
+ * Instead of committing on every request, the writes are recorded and a single commit is made
+ * once the oldest pending write reaches the maximum visibility latency or the number of pending
+ * documents reaches the maximum. Writers that need to read their writes wait on the visibility
+ * future returned when they record them; writers waiting at the same time share one commit. Once
+ * the scheduler is shut down, writes and commit requests are committed on the calling thread so
+ * that their futures still complete.
+ *
+ * Soft commits do not make the writes durable. The scheduler also makes a hard commit, without
+ * opening a searcher, once the oldest write not yet durable reaches the hard commit interval or
+ * the number of such writes reaches the hard commit maximum, and on shutdown. Writes are then
+ * durable within the hard commit interval whatever the autoCommit setting of the core.
+ */
+public class SolrCommitScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SolrCommitScheduler.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Default maximum time in milliseconds before written documents are durable
+     */
+    public static final long DEFAULT_HARD_COMMIT_INTERVAL = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Default number of written documents not yet durable that triggers a hard commit
+     */
+    public static final int DEFAULT_HARD_COMMIT_MAX_DOCUMENTS = 10000;
+
+    private final SolrServer server;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    private final AtomicLong commitCount = new AtomicLong();
+
+    private final AtomicLong hardCommitCount = new AtomicLong();
+
+    private final List<Runnable> commitListeners = new CopyOnWriteArrayList<>();
+
+    private final Runnable commitTask = new Runnable() {
+        @Override
+        public void run() {
+            runCommit();
+        }
+    };
+
+    private final Runnable hardCommitTask = new Runnable() {
+        @Override
+        public void run() {
+            runHardCommit();
+        }
+    };
+
+    private long maxLatency = 0;
+
+    private long hardCommitInterval = DEFAULT_HARD_COMMIT_INTERVAL;
+
+    private int hardCommitMaxDocuments = DEFAULT_HARD_COMMIT_MAX_DOCUMENTS;
+
+    private int undurableDocuments = 0;
+
+    private boolean hardCommitScheduled = false;
+
+    private int maxDocuments = 0;
+
+    private int pendingDocuments = 0;
+
+    private boolean commitPending = false;
+
+    private long scheduledCommitTime = Long.MAX_VALUE;
+
+    private Visibility visibility = new Visibility();
+
+    public SolrCommitScheduler(SolrServer server) {
+        this.server = server;
+        this.executor = new ScheduledThreadPoolExecutor(1, new CommitThreadFactory());
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Records documents written to the core and schedules their commit according to the maximum
+     * latency and number of documents.
+     *
+     * @param documents
+     *            number of documents added or deleted
+     * @return a future completed once the documents are visible to searches, which only happens
+     *         when a commit is scheduled or requested
+     */
+    public Future<Void> added(int documents) {
+        Future<Void> future;
+        synchronized (this) {
+            pendingDocuments += documents;
+            undurableDocuments += documents;
+            commitPending = true;
+            future = visibility;
+
+            if (!executor.isShutdown()) {
+                if (maxDocuments > 0 && pendingDocuments >= maxDocuments) {
+                    scheduleCommit(0);
+                } else if (maxLatency > 0) {
+                    scheduleCommit(maxLatency);
+                }
+                scheduleHardCommit();
+                return future;
+            }
+        }
+        runCommit();
+        runHardCommit();
+        return future;
+    }
+
+    /**
+     * Requests a commit as soon as possible. Requests made while a commit is running are combined
+     * into the next commit.
+     *
+     * @return a future completed once all the documents written so far are visible to searches
+     */
+    public Future<Void> commit() {
+        return requestCommit(0);
+    }
+
+    /**
+     * Requests a commit within the maximum latency, or as soon as possible without one.
+     *
+     * @return a future completed once all the documents written so far are visible to searches
+     */
+    public Future<Void> getVisibility() {
+        return requestCommit(getMaxLatency());
+    }
+
+    private Future<Void> requestCommit(long delay) {
+        Future<Void> future;
+        synchronized (this) {
+            commitPending = true;
+            future = visibility;
+            if (!executor.isShutdown()) {
+                scheduleCommit(delay);
+                return future;
+            }
+        }
+        runCommit();
+        return future;
+    }
+
+    /**
+     * @param maxLatency
+     *            maximum time in milliseconds before written documents are visible, 0 to only
+     *            commit when requested or when the maximum number of documents is reached
+     */
+    public synchronized void setMaxLatency(long maxLatency) {
+        this.maxLatency = Math.max(0, maxLatency);
+        if (commitPending && this.maxLatency > 0) {
+            scheduleCommit(this.maxLatency);
+        }
+    }
+
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * @param maxDocuments
+     *            number of pending documents that triggers a commit, 0 for no limit
+     */
+    public synchronized void setMaxDocuments(int maxDocuments) {
+        this.maxDocuments = Math.max(0, maxDocuments);
+    }
+
+    public synchronized int getMaxDocuments() {
+        return maxDocuments;
+    }
+
+    /**
+     * @param hardCommitInterval
+     *            maximum time in milliseconds before written documents are durable
+     */
+    public synchronized void setHardCommitInterval(long hardCommitInterval) {
+        this.hardCommitInterval = Math.max(0, hardCommitInterval);
+    }
+
+    /**
+     * @param hardCommitMaxDocuments
+     *            number of written documents not yet durable that triggers a hard commit, 0 for
+     *            no limit
+     */
+    public synchronized void setHardCommitMaxDocuments(int hardCommitMaxDocuments) {
+        this.hardCommitMaxDocuments = Math.max(0, hardCommitMaxDocuments);
+    }
+
+    /**
+     * Adds a listener run on the commit thread after each successful commit.
+     */
+    public void addCommitListener(Runnable listener) {
+        commitListeners.add(listener);
+    }
+
+    /**
+     * @return the number of commits made
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * @return the number of hard commits made
+     */
+    public long getHardCommitCount() {
+        return hardCommitCount.get();
+    }
+
+    /**
+     * Stops scheduling commits, committing the pending documents first and making them durable.
+     * Documents recorded after the shutdown are committed right away.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            // scheduling is checked under the same lock, so no commit is scheduled after this
+            executor.shutdown();
+        }
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Solr commit did not complete within {} seconds.",
+                        SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        runCommit();
+        runHardCommit();
+    }
+
+    private void scheduleHardCommit() {
+        if (hardCommitMaxDocuments > 0 && undurableDocuments >= hardCommitMaxDocuments) {
+            // a hard commit scheduled later finds nothing left to commit and returns
+            executor.execute(hardCommitTask);
+            hardCommitScheduled = true;
+        } else if (!hardCommitScheduled) {
+            executor.schedule(hardCommitTask, hardCommitInterval, TimeUnit.MILLISECONDS);
+            hardCommitScheduled = true;
+        }
+    }
+
+    /**
+     * Makes the documents written so far durable, without opening a new searcher since the soft
+     * commits take care of the visibility.
+     */
+    private void runHardCommit() {
+        int documents;
+        synchronized (this) {
+            hardCommitScheduled = false;
+            if (undurableDocuments == 0) {
+                return;
+            }
+            documents = undurableDocuments;
+            undurableDocuments = 0;
+        }
+
+        try {
+            UpdateRequest request = new UpdateRequest();
+            request.setAction(AbstractUpdateRequest.ACTION.COMMIT, /* waitFlush */true,
+                    /* waitSearcher */false);
+            request.setParam(UpdateParams.OPEN_SEARCHER, Boolean.FALSE.toString());
+            request.process(server);
+            hardCommitCount.incrementAndGet();
+            LOGGER.debug("Hard committed {} document(s).", documents);
+        } catch (SolrServerException | SolrException | IOException e) {
+            LOGGER.warn("Unable to hard commit {} document(s) to Solr.", documents, e);
+            synchronized (this) {
+                undurableDocuments += documents;
+                if (!executor.isShutdown() && !hardCommitScheduled) {
+                    executor.schedule(hardCommitTask, hardCommitInterval, TimeUnit.MILLISECONDS);
+                    hardCommitScheduled = true;
+                }
+            }
+        }
+    }
+
+    private void scheduleCommit(long delay) {
+        long commitTime = System.currentTimeMillis() + delay;
+        if (commitTime >= scheduledCommitTime) {
+            return;
+        }
+        scheduledCommitTime = commitTime;
+        executor.schedule(commitTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runCommit() {
+        Visibility committed;
+        int documents;
+        synchronized (this) {
+            // an earlier commit may have already covered the writes this commit was scheduled for
+            if (!commitPending) {
+                return;
+            }
+            committed = visibility;
+            documents = pendingDocuments;
+            visibility = new Visibility();
+            pendingDocuments = 0;
+            commitPending = false;
+            scheduledCommitTime = Long.MAX_VALUE;
+        }
+
+        try {
+            server.commit(/* waitFlush */true, /* waitSearcher */true, /* softCommit */true);
+            commitCount.incrementAndGet();
+            LOGGER.debug("Committed {} document(s).", documents);
+            committed.run();
+        } catch (SolrServerException | SolrException | IOException e) {
+            LOGGER.warn("Unable to commit {} document(s) to Solr.", documents, e);
+            committed.fail(e);
+            return;
+        }
+
+        for (Runnable listener : commitListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Solr commit listener failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Future completed when the commit covering a set of writes ends.
+     */
+    private static class Visibility extends FutureTask<Void> {
+
+        private Visibility() {
+            super(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    return null;
+                }
+            });
+        }
+
+        private void fail(Throwable cause) {
+            setException(cause);
+        }
+    }
+
+    private static class CommitThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "solr-commit");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -15,6 +15,8 @@
 package ddf.catalog.source.solr;
 
 import com.spatial4j.core.distance.DistanceUtils;
+import com.spatial4j.core.io.GeohashUtils;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.MultiPoint;
@@ -70,6 +72,16 @@ public class SolrFilterDelegate extends FilterDelegate<SolrQuery> {
 
     private static final String INTERSECTS_OPERATION = "Intersects";
 
+    private static final String CONTAINS_OPERATION = "Contains";
+
+    private static final String WITHIN_OPERATION = "IsWithin";
+
+    private static final String OVERLAPS_OPERATION = "Overlaps";
+
+    private static final double MAX_LONGITUDE = 180;
+
+    private static final double MAX_LATITUDE = 90;
+
     private static final String SPATIAL_INDEX = "_geo_index";
 
     private static final double NEAREST_NEIGHBOR_DISTANCE_LIMIT = metersToDegrees(new Distance(
@@ -521,7 +533,7 @@ private String geoPointToCircleQuery(String propertyName, double distanceInDegre
 
     @Override
     public SolrQuery contains(String propertyName, String wkt) {
-        return operationToQuery("Contains", propertyName, wkt);
+        return operationToQuery(CONTAINS_OPERATION, propertyName, wkt);
     }
 
     @Override
@@ -539,7 +551,7 @@ public SolrQuery dwithin(String propertyName, String wkt, double distance) {
             } else {
                 Geometry bufferGeo = geo.buffer(distanceInDegrees, QUADRANT_SEGMENTS);
                 String bufferWkt = WKT_WRITER.write(bufferGeo);
-                return operationToQuery(INTERSECTS_OPERATION, propertyName, bufferWkt);
+                return operationToQuery(INTERSECTS_OPERATION, propertyName, bufferWkt, bufferGeo);
             }
         } else {
             throw new UnsupportedOperationException("Unable to read given WKT: " + wkt);
@@ -597,7 +609,7 @@ public SolrQuery intersects(String propertyName, String wkt) {
 
     @Override
     public SolrQuery within(String propertyName, String wkt) {
-        return operationToQuery("IsWithin", propertyName, wkt);
+        return operationToQuery(WITHIN_OPERATION, propertyName, wkt);
     }
 
     @Override
@@ -607,7 +619,7 @@ public SolrQuery disjoint(String propertyName, String wkt) {
 
     @Override
     public SolrQuery overlaps(String propertyName, String wkt) {
-        return operationToQuery("Overlaps", propertyName, wkt);
+        return operationToQuery(OVERLAPS_OPERATION, propertyName, wkt);
     }
 
     @Override
@@ -855,8 +867,120 @@ private String escapeSpecialCharacters(String searchPhrase) {
     }
 
     private SolrQuery operationToQuery(String operation, String propertyName, String wkt) {
+        return operationToQuery(operation, propertyName, wkt, null);
+    }
+
+    private SolrQuery operationToQuery(String operation, String propertyName, String wkt,
+            Geometry geometry) {
         String geoIndexName = getMappedPropertyName(propertyName, AttributeFormat.GEOMETRY, false);
-        return operationOnIndexToQuery(operation, geoIndexName, wkt);
+        SolrQuery query = operationOnIndexToQuery(operation, geoIndexName, wkt);
+
+        if (resolver.isSpatialPrefilterEnabled()) {
+            Geometry geo = geometry;
+            if (geo == null) {
+                geo = getGeometry(wkt);
+            }
+            String prefilter = getBoundingBoxPrefilter(operation, geoIndexName, geo);
+            if (prefilter != null) {
+                query.setQuery(START_PAREN + prefilter + AND + query.getQuery() + END_PAREN);
+            }
+        }
+
+        return query;
+    }
+
+    /**
+     * Builds range clauses on the indexed bounding box of the geometry field that every document
+     * satisfying the spatial operation must match. Lucene can then skip documents on these cheap
+     * numeric ranges before evaluating the exact geometry.
+     * 
+     * @return the prefilter clauses, or null if the operation cannot be prefiltered
+     */
+    private String getBoundingBoxPrefilter(String operation, String geoIndexName, Geometry geo) {
+        if (geo == null || geo.isEmpty() || !geoIndexName.endsWith(SchemaFields.INDEXED)) {
+            return null;
+        }
+
+        String geometryField = StringUtils.removeEnd(geoIndexName, SchemaFields.INDEXED);
+        String minX = resolver.getBoundingBoxField(geometryField, SchemaFields.BBOX_MIN_X);
+        String minY = resolver.getBoundingBoxField(geometryField, SchemaFields.BBOX_MIN_Y);
+        String maxX = resolver.getBoundingBoxField(geometryField, SchemaFields.BBOX_MAX_X);
+        String maxY = resolver.getBoundingBoxField(geometryField, SchemaFields.BBOX_MAX_Y);
+
+        Envelope envelope = geo.getEnvelopeInternal();
+
+        // Geometries crossing the dateline cannot be bounded by a single longitude range
+        boolean boundedLongitude = envelope.getWidth() <= MAX_LONGITUDE
+                && envelope.getMinX() >= -MAX_LONGITUDE && envelope.getMaxX() <= MAX_LONGITUDE;
+
+        List<String> clauses = new ArrayList<>();
+        if (INTERSECTS_OPERATION.equals(operation) || OVERLAPS_OPERATION.equals(operation)) {
+            if (boundedLongitude) {
+                clauses.add(atMost(minX, envelope.getMaxX()));
+                clauses.add(atLeast(maxX, envelope.getMinX()));
+            }
+            clauses.add(atMost(minY, envelope.getMaxY()));
+            clauses.add(atLeast(maxY, envelope.getMinY()));
+        } else if (WITHIN_OPERATION.equals(operation)) {
+            if (boundedLongitude) {
+                String geohashClause = getGeohashPrefilter(geometryField, envelope);
+                if (geohashClause != null) {
+                    clauses.add(geohashClause);
+                }
+                clauses.add(atLeast(minX, envelope.getMinX()));
+                clauses.add(atMost(maxX, envelope.getMaxX()));
+            }
+            clauses.add(atLeast(minY, envelope.getMinY()));
+            clauses.add(atMost(maxY, envelope.getMaxY()));
+        } else if (CONTAINS_OPERATION.equals(operation)) {
+            if (boundedLongitude) {
+                clauses.add(atMost(minX, envelope.getMinX()));
+                clauses.add(atLeast(maxX, envelope.getMaxX()));
+            }
+            clauses.add(atMost(minY, envelope.getMinY()));
+            clauses.add(atLeast(maxY, envelope.getMaxY()));
+        } else {
+            return null;
+        }
+
+        return StringUtils.join(clauses, AND);
+    }
+
+    /**
+     * Builds a term clause on the indexed geohash cell of the bounding box center of the geometry
+     * field. The center of a geometry lying within the query geometry also lies within the
+     * envelope of the query, so when that envelope fits in a single geohash cell only the
+     * documents indexed in that cell can match, and a single term lookup discards the others.
+     * 
+     * @return the prefilter clause, or null if the corners of the envelope are in different cells
+     */
+    private String getGeohashPrefilter(String geometryField, Envelope envelope) {
+        if (envelope.getMinY() < -MAX_LATITUDE || envelope.getMaxY() > MAX_LATITUDE) {
+            return null;
+        }
+
+        String lowerLeft = GeohashUtils.encodeLatLon(envelope.getMinY(), envelope.getMinX(),
+                DynamicSchemaResolver.MAX_GEOHASH_PRECISION);
+        String upperRight = GeohashUtils.encodeLatLon(envelope.getMaxY(), envelope.getMaxX(),
+                DynamicSchemaResolver.MAX_GEOHASH_PRECISION);
+        int precision = StringUtils.indexOfDifference(lowerLeft, upperRight);
+        if (precision == -1) {
+            precision = lowerLeft.length();
+        }
+        if (precision == 0) {
+            return null;
+        }
+
+        return resolver.getGeohashField(geometryField, precision) + ":" + QUOTE
+                + lowerLeft.substring(0, precision) + QUOTE;
+    }
+
+    private String atLeast(String field, double value) {
+        return field + SOLR_INCLUSIVE_START + value + TO + SOLR_WILDCARD_CHAR + SOLR_INCLUSIVE_END;
+    }
+
+    private String atMost(String field, double value) {
+        return field + SOLR_INCLUSIVE_START + SOLR_WILDCARD_CHAR + TO + value + SOLR_INCLUSIVE_END;
     }
 
     private SolrQuery operationOnIndexToQuery(String operation, String indexName, String wkt) {
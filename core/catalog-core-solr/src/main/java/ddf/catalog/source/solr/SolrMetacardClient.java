@@ -20,11 +20,15 @@
 import ddf.catalog.data.MetacardCreationException;
 import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeInterner;
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.data.impl.ResultImpl;
 import ddf.catalog.filter.FilterAdapter;
+import ddf.catalog.operation.FacetRequest;
+import ddf.catalog.operation.FacetResult;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.FacetResultImpl;
 import ddf.catalog.operation.impl.QueryResponseImpl;
 import ddf.catalog.operation.impl.SourceResponseImpl;
 import ddf.catalog.source.UnsupportedQueryException;
@@ -33,8 +37,9 @@
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
+import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.response.RangeFacet;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrException;
@@ -45,10 +50,29 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SolrMetacardClient {
 
@@ -58,6 +82,28 @@ public class SolrMetacardClient {
 
     private static final String QUOTE = "\"";
 
+    private static final String SOLR_VERSION_FIELD = "_version_";
+
+    private static final String REALTIME_GET_HANDLER = "/get";
+
+    // message of the exception of an embedded server asked for a handler it does not have
+    private static final String UNKNOWN_HANDLER_MESSAGE = "unknown handler";
+
+    /**
+     * Maximum time waited for written documents to become visible to searches
+     */
+    protected static final long VISIBILITY_TIMEOUT_SECONDS = 60;
+
+    private static final Object DOCUMENT_EXECUTOR_LOCK = new Object();
+
+    /*
+     * Solr documents of every client are created on one pool sized to the available processors,
+     * it is shut down once the last client using it is shut down.
+     */
+    private static ExecutorService sharedDocumentExecutor;
+
+    private static int documentExecutorClients;
+
     private final SolrServer server;
 
     private final SolrFilterDelegateFactory filterDelegateFactory;
@@ -66,6 +112,20 @@ public class SolrMetacardClient {
 
     private final DynamicSchemaResolver resolver;
 
+    private final ExecutorService documentExecutor;
+
+    private final SolrCommitScheduler commitScheduler;
+
+    private final AtomicBoolean isShutdown = new AtomicBoolean();
+
+    private volatile DecodedMetacardCache metacardCache;
+
+    private volatile SolrWarmer warmer;
+
+    private volatile Set<String> projectedOutAttributes = Collections.emptySet();
+
+    private volatile boolean realtimeGetSupported = true;
+
     public SolrMetacardClient(SolrServer solrServer, FilterAdapter catalogFilterAdapter,
             SolrFilterDelegateFactory solrFilterDelegateFactory, DynamicSchemaResolver
             dynamicSchemaResolver) {
@@ -73,6 +133,8 @@ public SolrMetacardClient(SolrServer solrServer, FilterAdapter catalogFilterAdap
         filterDelegateFactory = solrFilterDelegateFactory;
         filterAdapter = catalogFilterAdapter;
         resolver = dynamicSchemaResolver;
+        documentExecutor = acquireDocumentExecutor();
+        commitScheduler = new SolrCommitScheduler(solrServer);
     }
 
     public SourceResponse query(QueryRequest request) throws UnsupportedQueryException {
@@ -82,12 +144,28 @@ public SourceResponse query(QueryRequest request) throws UnsupportedQueryExcepti
 
         SolrQuery query = getSolrQuery(request, filterDelegateFactory.newInstance(resolver));
         String sortProperty = getSortProperty(request, query);
+        Map<String, FacetRequest> facetFields = addFacets(request, query);
+        // cached metacards must hold every attribute, so nothing is left out while caching
+        Set<String> projectedOut = metacardCache == null ? projectedOutAttributes : Collections
+                .<String> emptySet();
+        if (!projectedOut.isEmpty()) {
+            project(query, projectedOut);
+        }
+
+        SolrWarmer queryWarmer = warmer;
+        if (queryWarmer != null) {
+            queryWarmer.record(query);
+        }
 
         long totalHits;
         List<Result> results = new ArrayList<>();
+        ArrayList<FacetResult> facetResults = null;
         try {
             QueryResponse solrResponse = server.query(query, SolrRequest.METHOD.POST);
             totalHits = solrResponse.getResults().getNumFound();
+            if (!facetFields.isEmpty()) {
+                facetResults = getFacetResults(solrResponse, facetFields);
+            }
             SolrDocumentList docs = solrResponse.getResults();
 
             for (SolrDocument doc : docs) {
@@ -98,6 +176,11 @@ public SourceResponse query(QueryRequest request) throws UnsupportedQueryExcepti
                 ResultImpl tmpResult;
                 try {
                     tmpResult = createResult(doc, sortProperty);
+                    if (!projectedOut.isEmpty()
+                            && tmpResult.getMetacard() instanceof LazySolrMetacard) {
+                        ((LazySolrMetacard) tmpResult.getMetacard())
+                                .setFetchableAttributes(projectedOut);
+                    }
                     // TODO: register metacard type???
                 } catch (MetacardCreationException e) {
                     LOGGER.warn("Metacard creation exception creating result", e);
@@ -120,9 +203,111 @@ public SourceResponse query(QueryRequest request) throws UnsupportedQueryExcepti
         /* Total Count */
         sourceResponseImpl.setHits(totalHits);
 
+        if (facetResults != null) {
+            sourceResponseImpl.getProperties().put(FacetResult.FACET_RESULTS, facetResults);
+        }
+
         return sourceResponseImpl;
     }
 
+    /**
+     * Translates the {@link FacetRequest}s found in the request properties into Solr facet
+     * parameters.
+     *
+     * @return the requested facets keyed by the Solr field they are computed on
+     */
+    protected Map<String, FacetRequest> addFacets(QueryRequest request, SolrQuery query) {
+        Map<String, FacetRequest> facetFields = new HashMap<>();
+
+        Serializable facets = request.getPropertyValue(FacetRequest.FACETS);
+        if (!(facets instanceof List)) {
+            return facetFields;
+        }
+
+        for (Object object : (List<?>) facets) {
+            if (!(object instanceof FacetRequest)) {
+                continue;
+            }
+            FacetRequest facet = (FacetRequest) object;
+
+            if (FacetRequest.FacetType.DATE_HISTOGRAM.equals(facet.getType())) {
+                String field = resolver.getField(facet.getAttributeName(),
+                        AttributeType.AttributeFormat.DATE, true);
+                query.addDateRangeFacet(field, facet.getStart(), facet.getEnd(), "+"
+                        + facet.getInterval() + "MILLISECONDS");
+                facetFields.put(field, facet);
+            } else if (FacetRequest.FacetType.TERMS.equals(facet.getType())) {
+                List<String> fields = resolver.getAnonymousField(facet.getAttributeName());
+                if (fields.isEmpty()) {
+                    LOGGER.debug("No schema field was found for facet attribute [{}].",
+                            facet.getAttributeName());
+                    continue;
+                }
+                String field = fields.get(0);
+                addFacetField(query, field, facet.getLimit());
+                facetFields.put(field, facet);
+            } else if (FacetRequest.FacetType.GEOHASH_GRID.equals(facet.getType())) {
+                String attributeName = facet.getAttributeName();
+                if (Metacard.ANY_GEO.equals(attributeName)) {
+                    attributeName = Metacard.GEOGRAPHY;
+                }
+                int precision = Math.min(facet.getPrecision(),
+                        DynamicSchemaResolver.MAX_GEOHASH_PRECISION);
+                String field = resolver.getGeohashField(resolver.getField(attributeName,
+                        AttributeType.AttributeFormat.GEOMETRY, true), precision);
+                addFacetField(query, field, facet.getLimit());
+                facetFields.put(field, facet);
+            }
+        }
+
+        if (!facetFields.isEmpty()) {
+            query.setFacet(true);
+        }
+
+        return facetFields;
+    }
+
+    private void addFacetField(SolrQuery query, String field, int limit) {
+        query.addFacetField(field);
+        query.set("f." + field + ".facet.limit", limit);
+        query.set("f." + field + ".facet.mincount", 1);
+    }
+
+    private ArrayList<FacetResult> getFacetResults(QueryResponse solrResponse,
+            Map<String, FacetRequest> facetFields) {
+        ArrayList<FacetResult> facetResults = new ArrayList<>();
+
+        if (solrResponse.getFacetFields() != null) {
+            for (FacetField facetField : solrResponse.getFacetFields()) {
+                FacetRequest facet = facetFields.get(facetField.getName());
+                if (facet != null && facetField.getValues() != null) {
+                    FacetResultImpl facetResult = new FacetResultImpl(facet.getName(),
+                            facet.getAttributeName());
+                    for (FacetField.Count count : facetField.getValues()) {
+                        facetResult.addCount(count.getName(), count.getCount());
+                    }
+                    facetResults.add(facetResult);
+                }
+            }
+        }
+
+        if (solrResponse.getFacetRanges() != null) {
+            for (RangeFacet<?, ?> rangeFacet : solrResponse.getFacetRanges()) {
+                FacetRequest facet = facetFields.get(rangeFacet.getName());
+                if (facet != null) {
+                    FacetResultImpl facetResult = new FacetResultImpl(facet.getName(),
+                            facet.getAttributeName());
+                    for (RangeFacet.Count count : rangeFacet.getCounts()) {
+                        facetResult.addCount(count.getValue(), count.getCount());
+                    }
+                    facetResults.add(facetResult);
+                }
+            }
+        }
+
+        return facetResults;
+    }
+
     protected SolrQuery getSolrQuery(QueryRequest request, SolrFilterDelegate solrFilterDelegate)
             throws UnsupportedQueryException {
         solrFilterDelegate.setSortPolicy(request.getQuery().getSortBy());
@@ -197,6 +382,18 @@ protected String getSortProperty(QueryRequest request, SolrQuery query) {
         return sortProperty;
     }
 
+    /**
+     * Leaves the given attributes out of the fields returned by the query.
+     */
+    private void project(SolrQuery query, Set<String> projectedOut) {
+        String fieldList = query.getFields();
+        List<String> fields = resolver.getProjectedFields(projectedOut);
+        if (fieldList != null && fieldList.contains(RELEVANCE_SORT_FIELD)) {
+            fields.add(RELEVANCE_SORT_FIELD);
+        }
+        query.setFields(fields.toArray(new String[fields.size()]));
+    }
+
     private ResultImpl createResult(SolrDocument doc, String sortProperty)
             throws MetacardCreationException {
         ResultImpl result = new ResultImpl(createMetacard(doc));
@@ -227,45 +424,402 @@ private Double degreesToMeters(double distance) {
     }
 
     public MetacardImpl createMetacard(SolrDocument doc) throws MetacardCreationException {
+        DecodedMetacardCache cache = metacardCache;
+        Object id = doc.getFieldValue(Metacard.ID + SchemaFields.TEXT_SUFFIX);
+        String version = getVersion(doc);
+
+        if (cache != null && id != null && version != null) {
+            MetacardImpl metacard = cache.get(id.toString(), version);
+            if (metacard != null) {
+                // the score differs with every query, it is never cached
+                if (doc.getFieldValue(RELEVANCE_SORT_FIELD) != null) {
+                    metacard.setAttribute(RELEVANCE_SORT_FIELD,
+                            (Serializable) doc.getFieldValue(RELEVANCE_SORT_FIELD));
+                }
+                return metacard;
+            }
+        }
+
         MetacardType metacardType = resolver.getMetacardType(doc);
+        if (cache == null) {
+            return new LazySolrMetacard(metacardType, doc, resolver, server);
+        }
+
         MetacardImpl metacard = new MetacardImpl(metacardType);
+        Map<String, Serializable> values = new LinkedHashMap<>();
 
         for (String solrFieldName : doc.getFieldNames()) {
             if (!resolver.isPrivateField(solrFieldName)) {
-                Serializable value = resolver.getDocValue(solrFieldName,
-                        doc.getFieldValue(solrFieldName));
-                metacard.setAttribute(resolver.resolveFieldName(solrFieldName), value);
+                String attributeName = AttributeInterner.intern(resolver
+                        .resolveFieldName(solrFieldName));
+                Serializable value = AttributeInterner.intern(attributeName,
+                        resolver.getDocValue(solrFieldName, doc.getFieldValue(solrFieldName)));
+                metacard.setAttribute(attributeName, value);
+                if (!RELEVANCE_SORT_FIELD.equals(solrFieldName)) {
+                    values.put(attributeName, value);
+                }
             }
         }
 
+        if (id != null && version != null) {
+            cache.put(id.toString(), version, metacardType, values);
+        }
+
         return metacard;
     }
 
+    /**
+     * Returns the version of the record held by the document, built from its modified date and
+     * Solr version when available.
+     *
+     * @return the version, or null if the document carries neither
+     */
+    private String getVersion(SolrDocument doc) {
+        Object modified = doc.getFieldValue(Metacard.MODIFIED + SchemaFields.DATE_SUFFIX);
+        Object solrVersion = doc.getFieldValue(SOLR_VERSION_FIELD);
+
+        if (modified == null && solrVersion == null) {
+            return null;
+        }
+
+        StringBuilder version = new StringBuilder();
+        if (modified instanceof Date) {
+            version.append(((Date) modified).getTime());
+        } else if (modified != null) {
+            version.append(modified);
+        }
+        version.append(':');
+        if (solrVersion != null) {
+            version.append(solrVersion);
+        }
+        return version.toString();
+    }
+
+    /**
+     * Sets the cache of decoded metacards checked before decoding query results.
+     *
+     * @param metacardCache
+     *            the cache, or null to always decode the documents
+     */
+    public void setMetacardCache(DecodedMetacardCache metacardCache) {
+        this.metacardCache = metacardCache;
+    }
+
+    public DecodedMetacardCache getMetacardCache() {
+        return metacardCache;
+    }
+
+    /**
+     * Sets the attributes left out of query results, such as large metadata or thumbnails. The
+     * metacards returned fetch them from Solr by ID when they are read. This only applies while
+     * the decoded metacard cache is disabled.
+     *
+     * @param projectedOutAttributes
+     *            attribute names, empty to return all the attributes
+     */
+    public void setProjectedOutAttributes(Collection<String> projectedOutAttributes) {
+        this.projectedOutAttributes = projectedOutAttributes == null ? Collections
+                .<String> emptySet() : Collections.unmodifiableSet(new HashSet<>(
+                projectedOutAttributes));
+    }
+
+    /**
+     * Sets the warmer recording the queries executed by this client.
+     */
+    public void setWarmer(SolrWarmer warmer) {
+        this.warmer = warmer;
+    }
+
+    /**
+     * Retrieves metacards by ID with a Solr realtime get, which reads the documents directly from
+     * the index and the transaction log. When the Solr configuration has no realtime get handler,
+     * the metacards are searched by ID instead.
+     *
+     * @return the metacards found, IDs that match no record are left out
+     */
+    public List<Metacard> getMetacards(Collection<String> ids) throws UnsupportedQueryException {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        SolrDocumentList docs = getDocuments(ids);
+
+        List<Metacard> metacards = new ArrayList<>(docs.size());
+        for (SolrDocument doc : docs) {
+            try {
+                metacards.add(createMetacard(doc));
+            } catch (MetacardCreationException e) {
+                LOGGER.warn("Metacard creation exception creating metacard by id", e);
+                throw new UnsupportedQueryException("Could not create metacard(s).");
+            }
+        }
+        return metacards;
+    }
+
+    /**
+     * Retrieves the stored documents of records by ID, the same way as
+     * {@link #getMetacards(Collection)}, so that documents not yet committed are found.
+     *
+     * @return the documents found, IDs that match no record are left out
+     */
+    public SolrDocumentList getDocuments(Collection<String> ids) throws UnsupportedQueryException {
+        SolrDocumentList docs = null;
+        if (realtimeGetSupported) {
+            docs = realtimeGet(ids);
+        }
+        if (docs == null) {
+            docs = searchIds(ids);
+        }
+        return docs;
+    }
+
+    private SolrDocumentList realtimeGet(Collection<String> ids) {
+        SolrQuery query = new SolrQuery();
+        query.setRequestHandler(REALTIME_GET_HANDLER);
+        // repeated id parameters, the ids parameter would split IDs containing commas
+        query.set("id", ids.toArray(new String[ids.size()]));
+
+        try {
+            QueryResponse solrResponse = server.query(query, SolrRequest.METHOD.POST);
+            if (solrResponse.getResults() != null) {
+                return solrResponse.getResults();
+            }
+            // a single id is returned as a document rather than a document list
+            SolrDocumentList docs = new SolrDocumentList();
+            Object doc = solrResponse.getResponse().get("doc");
+            if (doc instanceof SolrDocument) {
+                docs.add((SolrDocument) doc);
+            }
+            return docs;
+        } catch (SolrException e) {
+            if (isMissingHandler(e)) {
+                LOGGER.info("Solr realtime get is unavailable, metacards will be searched by id.",
+                        e);
+                realtimeGetSupported = false;
+            } else {
+                LOGGER.debug("Solr realtime get failed, searching metacards by id.", e);
+            }
+            return null;
+        } catch (SolrServerException e) {
+            LOGGER.debug("Solr realtime get failed, searching metacards by id.", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the exception reports that the Solr configuration has no realtime get
+     *         handler: a remote server does not find its path, an embedded server rejects the
+     *         unknown handler. Any other failure, such as a malformed request, may not happen on
+     *         the next lookup.
+     */
+    static boolean isMissingHandler(SolrException e) {
+        if (e.code() == SolrException.ErrorCode.NOT_FOUND.code) {
+            return true;
+        }
+        return e.code() == SolrException.ErrorCode.BAD_REQUEST.code && e.getMessage() != null
+                && e.getMessage().startsWith(UNKNOWN_HANDLER_MESSAGE);
+    }
+
+    private SolrDocumentList searchIds(Collection<String> ids) throws UnsupportedQueryException {
+        SolrQuery query = new SolrQuery(getIdentifierQuery(Metacard.ID + SchemaFields.TEXT_SUFFIX,
+                new ArrayList<>(ids)));
+        query.setRows(ids.size());
+
+        try {
+            return server.query(query, SolrRequest.METHOD.POST).getResults();
+        } catch (SolrServerException | SolrException e) {
+            LOGGER.warn("Failure in Solr server query by id.", e);
+            throw new UnsupportedQueryException("Could not complete solr query.");
+        }
+    }
+
+    /**
+     * Removes the given records from the cache of decoded metacards.
+     */
+    public void invalidateMetacards(Collection<? extends Serializable> ids) {
+        DecodedMetacardCache cache = metacardCache;
+        if (cache != null) {
+            cache.invalidate(ids);
+        }
+    }
+
+    /**
+     * @return the scheduler committing the documents written by this client
+     */
+    public SolrCommitScheduler getCommitScheduler() {
+        return commitScheduler;
+    }
+
+    /**
+     * Adds the metacards to Solr. They become visible to searches on the next commit made by the
+     * {@link SolrCommitScheduler} or by Solr.
+     *
+     * @param forceAutoCommit
+     *            true to commit as soon as possible and wait until the metacards are visible
+     */
     public List<SolrInputDocument> add(List<Metacard> metacards, boolean forceAutoCommit)
             throws IOException, SolrServerException, MetacardCreationException {
         if (metacards == null || metacards.size() == 0) {
             return null;
         }
 
-        List<SolrInputDocument> docs = new ArrayList<>();
-        for (Metacard metacard : metacards) {
-            docs.add(getSolrInputDocument(metacard));
+        return add(metacards, Collections.<String, SolrDocument> emptyMap(), forceAutoCommit);
+    }
+
+    /**
+     * Replaces the records of the metacards in Solr. The text extracted from the XML attributes of
+     * the stored records is reused when the XML did not change.
+     *
+     * @param previousDocuments
+     *            the stored documents being replaced, by metacard ID, as the caller looked them up
+     *            to find the records to update; a metacard without one has its text extracted
+     * @param forceAutoCommit
+     *            true to commit as soon as possible and wait until the metacards are visible
+     */
+    public List<SolrInputDocument> update(List<Metacard> metacards,
+            Map<String, SolrDocument> previousDocuments, boolean forceAutoCommit)
+            throws IOException, SolrServerException, MetacardCreationException {
+        if (metacards == null || metacards.size() == 0) {
+            return null;
         }
 
-        if (!forceAutoCommit) {
-            server.add(docs);
-        } else {
-            softCommit(docs);
+        return add(metacards, previousDocuments == null ? Collections
+                .<String, SolrDocument> emptyMap() : previousDocuments, forceAutoCommit);
+    }
+
+    private List<SolrInputDocument> add(List<Metacard> metacards,
+            Map<String, SolrDocument> previousDocuments, boolean forceAutoCommit)
+            throws IOException, SolrServerException, MetacardCreationException {
+        List<SolrInputDocument> docs = getSolrInputDocuments(metacards, previousDocuments);
+
+        server.add(docs);
+        commitScheduler.added(docs.size());
+        if (forceAutoCommit) {
+            awaitVisibility(commitScheduler.commit());
         }
 
         return docs;
     }
 
-    protected SolrInputDocument getSolrInputDocument(Metacard metacard)
-            throws MetacardCreationException {
+    /**
+     * Waits for a visibility future returned by the {@link SolrCommitScheduler}, for at most
+     * {@link #VISIBILITY_TIMEOUT_SECONDS}.
+     */
+    public void awaitVisibility(Future<Void> visibility)
+            throws IOException, SolrServerException {
+        try {
+            visibility.get(VISIBILITY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new SolrServerException("The Solr commit did not complete within "
+                    + VISIBILITY_TIMEOUT_SECONDS + " seconds.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Solr commit.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SolrServerException) {
+                throw (SolrServerException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SolrException) {
+                throw (SolrException) cause;
+            }
+            throw new SolrServerException(cause);
+        }
+    }
+
+    /**
+     * Converts the metacards into Solr documents. Text extraction from large metadata dominates
+     * the cost of the conversion, so the members of a batch are converted in parallel.
+     */
+    private List<SolrInputDocument> getSolrInputDocuments(List<Metacard> metacards,
+            final Map<String, SolrDocument> previousDocuments) throws MetacardCreationException {
+        List<SolrInputDocument> docs = new ArrayList<>(metacards.size());
+
+        if (metacards.size() == 1) {
+            Metacard metacard = metacards.get(0);
+            docs.add(getSolrInputDocument(metacard, previousDocuments.get(metacard.getId())));
+            return docs;
+        }
+
+        List<Future<SolrInputDocument>> futures = new ArrayList<>(metacards.size());
+        for (final Metacard metacard : metacards) {
+            futures.add(documentExecutor.submit(new Callable<SolrInputDocument>() {
+                @Override
+                public SolrInputDocument call() throws MetacardCreationException {
+                    return getSolrInputDocument(metacard,
+                            previousDocuments.get(metacard.getId()));
+                }
+            }));
+        }
+
+        try {
+            for (Future<SolrInputDocument> future : futures) {
+                docs.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new MetacardCreationException("Interrupted while creating Solr documents.");
+        } catch (ExecutionException e) {
+            cancel(futures);
+            if (e.getCause() instanceof MetacardCreationException) {
+                throw (MetacardCreationException) e.getCause();
+            }
+            throw new MetacardCreationException("Could not create Solr document.", e.getCause());
+        }
+
+        return docs;
+    }
+
+    private void cancel(List<Future<SolrInputDocument>> futures) {
+        for (Future<SolrInputDocument> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Commits the pending documents and releases the threads used to create and commit Solr
+     * documents.
+     */
+    public void shutdown() {
+        if (isShutdown.compareAndSet(false, true)) {
+            releaseDocumentExecutor();
+        }
+        commitScheduler.shutdown();
+    }
+
+    private static ExecutorService acquireDocumentExecutor() {
+        synchronized (DOCUMENT_EXECUTOR_LOCK) {
+            if (sharedDocumentExecutor == null) {
+                sharedDocumentExecutor = Executors.newFixedThreadPool(Runtime.getRuntime()
+                        .availableProcessors(), new DocumentThreadFactory());
+            }
+            documentExecutorClients++;
+            return sharedDocumentExecutor;
+        }
+    }
+
+    private static void releaseDocumentExecutor() {
+        synchronized (DOCUMENT_EXECUTOR_LOCK) {
+            documentExecutorClients--;
+            if (documentExecutorClients == 0) {
+                sharedDocumentExecutor.shutdown();
+                sharedDocumentExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * @param previousDocument
+     *            the stored document being replaced, see
+     *            {@link DynamicSchemaResolver#addFields(Metacard, SolrInputDocument, SolrDocument)}
+     */
+    protected SolrInputDocument getSolrInputDocument(Metacard metacard,
+            SolrDocument previousDocument) throws MetacardCreationException {
         SolrInputDocument solrInputDocument = new SolrInputDocument();
 
-        resolver.addFields(metacard, solrInputDocument);
+        resolver.addFields(metacard, solrInputDocument, previousDocument);
 
         return solrInputDocument;
     }
@@ -278,8 +832,9 @@ public void deleteByIds(String fieldName, List<? extends Serializable> identifie
 
         server.deleteByQuery(getIdentifierQuery(fieldName, identifiers));
 
+        commitScheduler.added(identifiers.size());
         if (forceAutoCommit) {
-            server.commit();
+            awaitVisibility(commitScheduler.commit());
         }
     }
 
@@ -295,13 +850,16 @@ public String getIdentifierQuery(String fieldName, List<? extends Serializable>
         return queryBuilder.toString();
     }
 
-    private org.apache.solr.client.solrj.response.UpdateResponse softCommit(
-            List<SolrInputDocument> docs) throws SolrServerException, IOException {
-        return new org.apache.solr.client.solrj.request.UpdateRequest().add(docs)
-                .setAction(AbstractUpdateRequest.ACTION.COMMIT,
-                        /* waitForFlush */ true,
-                        /* waitToMakeVisible */ true,
-                        /* softCommit */ true).process(server);
+    private static class DocumentThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "solr-document-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
 }
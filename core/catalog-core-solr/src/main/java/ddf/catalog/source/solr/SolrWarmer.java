@@ -0,0 +1,481 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.MetacardCreationException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Warms a Solr core so that the first queries after a restart or a commit do not pay for cold
+ * caches. Queries are counted by shape, their parameters with the quoted, numeric and date literals
+ * replaced and the start of the page ignored, and the latest query of each shape is kept to be
+ * replayed. The counts are halved periodically and the least frequent shapes are dropped when too
+ * many are recorded, so the warmed queries follow the current workload. The most frequent queries
+ * are saved on shutdown. Warming primes the {@link DynamicSchemaResolver} with the metacard types
+ * found in the index, then replays the recorded queries in the background. The caches warmed do
+ * not depend on the page or the fields returned, so the queries are replayed on the first page of
+ * at most {@link #MAX_WARMING_ROWS} rows, without field list. Warmings requested by commits are
+ * coalesced to at most one every {@link #MIN_WARMING_INTERVAL_MILLIS}.
+ */
+public class SolrWarmer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SolrWarmer.class);
+
+    /**
+     * Default number of the most frequent queries replayed when warming
+     */
+    public static final int DEFAULT_QUERY_COUNT = 20;
+
+    /**
+     * Maximum number of rows returned by a replayed query
+     */
+    public static final int MAX_WARMING_ROWS = 10;
+
+    /**
+     * Minimum time between the starts of two warmings
+     */
+    public static final long MIN_WARMING_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int MAX_RECORDED_QUERIES = 1000;
+
+    /**
+     * Number of recorded queries after which every count is halved
+     */
+    private static final long DECAY_INTERVAL = 10L * MAX_RECORDED_QUERIES;
+
+    private static final Pattern QUOTED_LITERAL = Pattern.compile("\"(?:[^\"\\\\]|\\\\.)*\"");
+
+    private static final Pattern DATE_LITERAL = Pattern
+            .compile("\\d{4}-\\d{2}-\\d{2}T[\\d:.]*Z?");
+
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("-?\\b\\d+(?:\\.\\d+)?\\b");
+
+    private static final List<String> SHAPED_PARAMS = Arrays.asList("q", "fq");
+
+    private static final String START_PARAM = "start";
+
+    private static final String ENCODING = StandardCharsets.UTF_8.name();
+
+    private final SolrServer server;
+
+    private final DynamicSchemaResolver resolver;
+
+    private final ConcurrentHashMap<String, RecordedQuery> queryCounts = new ConcurrentHashMap<>();
+
+    private final AtomicLong recordings = new AtomicLong();
+
+    private final ScheduledExecutorService warmingExecutor = Executors
+            .newSingleThreadScheduledExecutor(new WarmingThreadFactory());
+
+    private final AtomicBoolean warmingPending = new AtomicBoolean();
+
+    private volatile long lastWarming = 0;
+
+    private volatile int queryCount = DEFAULT_QUERY_COUNT;
+
+    private volatile File queryFile;
+
+    private volatile double progress = 0;
+
+    private volatile boolean warmed = false;
+
+    public SolrWarmer(SolrServer server, DynamicSchemaResolver resolver) {
+        this.server = server;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Counts a query executed on the core under its shape.
+     */
+    public void record(SolrQuery query) {
+        if (queryCount <= 0) {
+            return;
+        }
+
+        record(shape(query), encode(query), 1);
+
+        if (recordings.incrementAndGet() % DECAY_INTERVAL == 0) {
+            decay();
+        }
+    }
+
+    private void record(String shape, String encodedQuery, long count) {
+        RecordedQuery recorded = queryCounts.get(shape);
+        if (recorded == null) {
+            if (queryCounts.size() >= MAX_RECORDED_QUERIES) {
+                evict();
+            }
+            RecordedQuery newRecorded = new RecordedQuery();
+            recorded = queryCounts.putIfAbsent(shape, newRecorded);
+            if (recorded == null) {
+                recorded = newRecorded;
+            }
+        }
+        recorded.query = encodedQuery;
+        recorded.count.addAndGet(count);
+    }
+
+    /**
+     * Halves the counts so that queries that stopped being run eventually leave the warmed set.
+     */
+    private synchronized void decay() {
+        for (Iterator<RecordedQuery> iterator = queryCounts.values().iterator(); iterator
+                .hasNext();) {
+            RecordedQuery recorded = iterator.next();
+            long count = recorded.count.get();
+            while (!recorded.count.compareAndSet(count, count / 2)) {
+                count = recorded.count.get();
+            }
+            if (count / 2 == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the least frequent tenth of the recorded shapes to make room for new ones.
+     */
+    private synchronized void evict() {
+        if (queryCounts.size() < MAX_RECORDED_QUERIES) {
+            return;
+        }
+
+        List<Map.Entry<String, RecordedQuery>> entries = getSortedEntries();
+        for (int i = entries.size() - 1; i >= MAX_RECORDED_QUERIES * 9 / 10; i--) {
+            queryCounts.remove(entries.get(i).getKey());
+        }
+    }
+
+    /**
+     * Loads the saved queries and warms the core in the background.
+     */
+    public void start() {
+        load();
+        warm();
+    }
+
+    /**
+     * Warms the core in the background unless a warming is already waiting to run. The warming
+     * is delayed until {@link #MIN_WARMING_INTERVAL_MILLIS} after the start of the previous one, so
+     * that frequent commits during ingest do not keep replaying the queries.
+     */
+    public void warm() {
+        if (!warmingPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        long delay = Math.max(0, lastWarming + MIN_WARMING_INTERVAL_MILLIS
+                - System.currentTimeMillis());
+        warmingExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                warmingPending.set(false);
+                lastWarming = System.currentTimeMillis();
+                runWarming();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the fraction, from 0 to 1, of the first warming that has completed. Later warmings
+     *         after commits do not lower the progress.
+     */
+    public double getProgress() {
+        return warmed ? 1 : progress;
+    }
+
+    /**
+     * Saves the most frequent queries and stops warming.
+     */
+    public void shutdown() {
+        warmingExecutor.shutdownNow();
+        save();
+    }
+
+    /**
+     * @param queryCount
+     *            number of the most frequent queries replayed, 0 disables the recording and
+     *            replay of queries
+     */
+    public void setQueryCount(int queryCount) {
+        this.queryCount = Math.max(0, queryCount);
+    }
+
+    /**
+     * @param queryFile
+     *            file the most frequent queries are saved to, or null to keep them in memory only
+     */
+    public void setQueryFile(File queryFile) {
+        this.queryFile = queryFile;
+    }
+
+    protected void runWarming() {
+        long start = System.currentTimeMillis();
+        List<String> queries = getTopQueries();
+        List<String> metacardTypes = Collections.emptyList();
+        // the schema fields are added to the resolver by the provider before warming
+        int steps = 1 + queries.size();
+        int completed = 0;
+        progress = 0;
+
+        try {
+            metacardTypes = primeMetacardTypes();
+        } catch (SolrServerException | SolrException e) {
+            LOGGER.info("Could not prime the metacard types.", e);
+        }
+        progress = (double) ++completed / steps;
+
+        for (String query : queries) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                server.query(getWarmingQuery(query), METHOD.POST);
+            } catch (SolrServerException | SolrException e) {
+                LOGGER.debug("Warming query failed: {}", query, e);
+            }
+            progress = (double) ++completed / steps;
+        }
+
+        warmed = true;
+        LOGGER.info("Warmed Solr with {} metacard types and {} queries in {} ms.", new Object[] {
+                metacardTypes.size(), queries.size(), System.currentTimeMillis() - start});
+    }
+
+    /**
+     * Reads one document of each metacard type in the index so that the types are deserialized
+     * and their fields cached before the first query needs them.
+     */
+    private List<String> primeMetacardTypes() throws SolrServerException {
+        SolrQuery facetQuery = new SolrQuery("*:*");
+        facetQuery.setRows(0);
+        facetQuery.setFacet(true);
+        facetQuery.addFacetField(SchemaFields.METACARD_TYPE_FIELD_NAME);
+        facetQuery.setFacetMinCount(1);
+
+        QueryResponse response = server.query(facetQuery, METHOD.POST);
+        List<String> metacardTypes = new ArrayList<>();
+        FacetField facetField = response.getFacetField(SchemaFields.METACARD_TYPE_FIELD_NAME);
+        if (facetField == null || facetField.getValues() == null) {
+            return metacardTypes;
+        }
+
+        for (FacetField.Count count : facetField.getValues()) {
+            SolrQuery typeQuery = new SolrQuery(SchemaFields.METACARD_TYPE_FIELD_NAME + ":\""
+                    + count.getName() + "\"");
+            typeQuery.setRows(1);
+            for (SolrDocument doc : server.query(typeQuery, METHOD.POST).getResults()) {
+                try {
+                    resolver.getMetacardType(doc);
+                    metacardTypes.add(count.getName());
+                } catch (MetacardCreationException e) {
+                    LOGGER.debug("Could not read metacard type {}.", count.getName(), e);
+                }
+            }
+        }
+        return metacardTypes;
+    }
+
+    /**
+     * @return the latest query of each of the most frequent shapes, most frequent first
+     */
+    protected List<String> getTopQueries() {
+        List<String> queries = new ArrayList<>();
+        Iterator<Map.Entry<String, RecordedQuery>> iterator = getSortedEntries().iterator();
+        while (queries.size() < queryCount && iterator.hasNext()) {
+            queries.add(iterator.next().getValue().query);
+        }
+        return queries;
+    }
+
+    private List<Map.Entry<String, RecordedQuery>> getSortedEntries() {
+        List<Map.Entry<String, RecordedQuery>> entries = new ArrayList<>(queryCounts.entrySet());
+        final Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, RecordedQuery> entry : entries) {
+            // the counts keep changing, they are read once so that the sort is consistent
+            counts.put(entry.getKey(), entry.getValue().count.get());
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, RecordedQuery>>() {
+            @Override
+            public int compare(Map.Entry<String, RecordedQuery> entry1,
+                    Map.Entry<String, RecordedQuery> entry2) {
+                return Long.compare(counts.get(entry2.getKey()), counts.get(entry1.getKey()));
+            }
+        });
+        return entries;
+    }
+
+    private void load() {
+        File file = queryFile;
+        if (file == null || !file.isFile()) {
+            return;
+        }
+
+        try {
+            for (String line : FileUtils.readLines(file, ENCODING)) {
+                String[] parts = StringUtils.split(line, '\t');
+                if (parts.length == 2) {
+                    record(shape(decode(parts[1])), parts[1], Long.parseLong(parts[0]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.info("Could not load the warming queries from {}.", file, e);
+        }
+    }
+
+    private void save() {
+        File file = queryFile;
+        if (file == null || queryCount <= 0) {
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        Iterator<Map.Entry<String, RecordedQuery>> iterator = getSortedEntries().iterator();
+        while (lines.size() < queryCount && iterator.hasNext()) {
+            RecordedQuery recorded = iterator.next().getValue();
+            lines.add(recorded.count.get() + "\t" + recorded.query);
+        }
+
+        try {
+            File temporaryFile = new File(file.getPath() + ".tmp");
+            FileUtils.writeLines(temporaryFile, ENCODING, lines);
+            FileUtils.deleteQuietly(file);
+            FileUtils.moveFile(temporaryFile, file);
+        } catch (IOException e) {
+            LOGGER.info("Could not save the warming queries to {}.", file, e);
+        }
+    }
+
+    static String encode(SolrQuery query) {
+        List<String> params = new ArrayList<>();
+        try {
+            for (Iterator<String> names = query.getParameterNamesIterator(); names.hasNext();) {
+                String name = names.next();
+                for (String value : query.getParams(name)) {
+                    params.add(URLEncoder.encode(name, ENCODING) + "="
+                            + URLEncoder.encode(value, ENCODING));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        Collections.sort(params);
+        return StringUtils.join(params, '&');
+    }
+
+    /**
+     * Returns the shape of a query: its encoded parameters without the start of the page, with
+     * the quoted, date and numeric literals of the query and filter queries replaced.
+     */
+    static String shape(SolrQuery query) {
+        SolrQuery shape = new SolrQuery();
+        for (Iterator<String> names = query.getParameterNamesIterator(); names.hasNext();) {
+            String name = names.next();
+            if (START_PARAM.equals(name)) {
+                continue;
+            }
+            for (String value : query.getParams(name)) {
+                shape.add(name, SHAPED_PARAMS.contains(name) ? shape(value) : value);
+            }
+        }
+        return encode(shape);
+    }
+
+    private static String shape(String value) {
+        String shape = QUOTED_LITERAL.matcher(value).replaceAll("\"?\"");
+        shape = DATE_LITERAL.matcher(shape).replaceAll("?");
+        return NUMERIC_LITERAL.matcher(shape).replaceAll("?");
+    }
+
+    /**
+     * Decodes a recorded query to be replayed on the first page of at most
+     * {@link #MAX_WARMING_ROWS} rows, without field list, so that an unpaged or deep query does
+     * not fetch a large part of the index on every warming.
+     */
+    static SolrQuery getWarmingQuery(String encodedQuery) {
+        SolrQuery query = decode(encodedQuery);
+        query.remove(CommonParams.FL);
+        query.remove(START_PARAM);
+        Integer rows = query.getRows();
+        query.setRows(rows == null ? MAX_WARMING_ROWS : Math.min(Math.max(rows, 0),
+                MAX_WARMING_ROWS));
+        return query;
+    }
+
+    static SolrQuery decode(String encodedQuery) {
+        SolrQuery query = new SolrQuery();
+        try {
+            for (String param : StringUtils.split(encodedQuery, '&')) {
+                String name = URLDecoder.decode(StringUtils.substringBefore(param, "="), ENCODING);
+                String value = URLDecoder.decode(StringUtils.substringAfter(param, "="), ENCODING);
+                query.add(name, value);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return query;
+    }
+
+    private static class RecordedQuery {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private volatile String query;
+    }
+
+    private static class WarmingThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "solr-warming");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.BasicTypes;
+import ddf.catalog.data.impl.MetacardImpl;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class DecodedMetacardCacheTest {
+
+    @Test
+    public void testGetReturnsNewMetacardForSameVersion() {
+        DecodedMetacardCache cache = new DecodedMetacardCache(10,
+                DecodedMetacardCache.DEFAULT_MAX_MEMORY);
+        cache.put("id", "1", BasicTypes.BASIC_METACARD, values("title"));
+
+        MetacardImpl first = cache.get("id", "1");
+        MetacardImpl second = cache.get("id", "1");
+
+        assertThat(first.getTitle(), is("title"));
+        assertThat(first, not(sameInstance(second)));
+        assertThat(cache.get("id", "2"), nullValue());
+        assertThat(cache.getHitCount(), is(2L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvictedAndInvalidated() {
+        DecodedMetacardCache cache = new DecodedMetacardCache(2,
+                DecodedMetacardCache.DEFAULT_MAX_MEMORY);
+        cache.put("a", "1", BasicTypes.BASIC_METACARD, values("a"));
+        cache.put("b", "1", BasicTypes.BASIC_METACARD, values("b"));
+        cache.get("a", "1");
+        cache.put("c", "1", BasicTypes.BASIC_METACARD, values("c"));
+
+        assertThat(cache.get("b", "1"), nullValue());
+        assertThat(cache.get("a", "1").getTitle(), is("a"));
+
+        cache.invalidate(Arrays.asList("a", "c"));
+
+        assertThat(cache.getSize(), is(0));
+        assertThat(cache.getMemory(), is(0L));
+    }
+
+    @Test
+    public void testMemoryLimitEvicts() {
+        DecodedMetacardCache cache = new DecodedMetacardCache(10, 1000);
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            title.append('x');
+        }
+        cache.put("a", "1", BasicTypes.BASIC_METACARD, values(title.toString()));
+        cache.put("b", "1", BasicTypes.BASIC_METACARD, values(title.toString()));
+
+        assertThat(cache.getSize(), is(1));
+        assertThat(cache.get("b", "1").getTitle(), is(title.toString()));
+    }
+
+    @Test
+    public void testMutableValuesAreCopied() {
+        DecodedMetacardCache cache = new DecodedMetacardCache(10,
+                DecodedMetacardCache.DEFAULT_MAX_MEMORY);
+        Date modified = new Date(1000);
+        Map<String, Serializable> values = values("title");
+        values.put(Metacard.MODIFIED, modified);
+        values.put(Metacard.THUMBNAIL, new byte[] {1});
+        cache.put("id", "1", BasicTypes.BASIC_METACARD, values);
+
+        modified.setTime(2000);
+        MetacardImpl first = cache.get("id", "1");
+        first.getModifiedDate().setTime(3000);
+        first.getThumbnail()[0] = 2;
+
+        MetacardImpl second = cache.get("id", "1");
+        assertThat(second.getModifiedDate(), is(new Date(1000)));
+        assertThat(second.getThumbnail()[0], is((byte) 1));
+    }
+
+    @Test
+    public void testUncopyableValuesAreNotCached() {
+        DecodedMetacardCache cache = new DecodedMetacardCache(10,
+                DecodedMetacardCache.DEFAULT_MAX_MEMORY);
+        Map<String, Serializable> values = values("title");
+        values.put("object", new StringBuilder("mutable"));
+        cache.put("id", "1", BasicTypes.BASIC_METACARD, values);
+
+        assertThat(cache.getSize(), is(0));
+    }
+
+    @Test
+    public void testMetricsRegisteredAsMBean() throws Exception {
+        DecodedMetacardCache cache = new DecodedMetacardCache(10,
+                DecodedMetacardCache.DEFAULT_MAX_MEMORY);
+        cache.put("id", "1", BasicTypes.BASIC_METACARD, values("title"));
+        cache.get("id", "1");
+        cache.get("id", "2");
+        ObjectName objectName = new ObjectName(DecodedMetacardCache.class.getName()
+                + ":service=decoded-metacard-cache,core=" + ObjectName.quote("http://solr/a"));
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        cache.registerMBean("http://solr/a");
+        try {
+            assertThat(mBeanServer.getAttribute(objectName, "HitRate"), is((Object) 0.5));
+            assertThat(mBeanServer.getAttribute(objectName, "Size"), is((Object) 1));
+        } finally {
+            cache.unregisterMBean();
+        }
+        assertThat(mBeanServer.isRegistered(objectName), is(false));
+    }
+
+    private Map<String, Serializable> values(String title) {
+        Map<String, Serializable> values = new HashMap<>();
+        values.put(Metacard.TITLE, title);
+        return values;
+    }
+}
@@ -20,7 +20,10 @@
 import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.impl.AttributeDescriptorImpl;
 import ddf.catalog.data.impl.BasicTypes;
+import ddf.catalog.data.impl.MetacardImpl;
+import com.spatial4j.core.io.GeohashUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -29,6 +32,7 @@
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -37,6 +41,8 @@
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -80,6 +86,112 @@ public void testAddFields() throws Exception {
         }      
     }
     
+    @Test
+    public void testParseTextFromIsLimitedToMaxLength() {
+        DynamicSchemaResolver resolver = new DynamicSchemaResolver();
+        resolver.setMaxExtractedTextLength(10);
+
+        String text = resolver.parseTextFrom("<a><b>first element text</b><c>second</c></a>");
+
+        assertThat(text, is(" first ele"));
+    }
+
+    @Test
+    public void testParseTextFromSkipsNamespaces() {
+        DynamicSchemaResolver resolver = new DynamicSchemaResolver();
+        resolver.setSkippedTextNamespaces(Arrays.asList("urn:skipped"));
+
+        String text = resolver.parseTextFrom("<a xmlns:s=\"urn:skipped\"><b>kept</b>"
+                + "<s:c attr=\"hidden\"><d>nested</d></s:c><e>also kept</e></a>");
+
+        assertThat(text, is(" kept also kept"));
+    }
+
+    @Test
+    public void testExtractedTextReusedForUnchangedXml() {
+        DynamicSchemaResolver resolver = spy(new DynamicSchemaResolver());
+        String xml = "<a><b>text</b></a>";
+
+        SolrInputDocument first = new SolrInputDocument();
+        assertThat(resolver.getExtractedText(Metacard.METADATA, xml, null, first), is(" text"));
+
+        SolrInputDocument second = new SolrInputDocument();
+        assertThat(resolver.getExtractedText(Metacard.METADATA, xml, toStoredDocument(first),
+                second), is(" text"));
+
+        verify(resolver, times(1)).parseTextFrom(xml);
+        assertThat(second.getFieldValue(Metacard.METADATA + SchemaFields.XML_HASH
+                + SchemaFields.TEXT_SUFFIX), is(first.getFieldValue(Metacard.METADATA
+                + SchemaFields.XML_HASH + SchemaFields.TEXT_SUFFIX)));
+    }
+
+    @Test
+    public void testExtractedTextParsedForChangedXml() {
+        DynamicSchemaResolver resolver = spy(new DynamicSchemaResolver());
+        SolrInputDocument first = new SolrInputDocument();
+        resolver.getExtractedText(Metacard.METADATA, "<a><b>text</b></a>", null, first);
+
+        String changedXml = "<a><b>changed</b></a>";
+        assertThat(resolver.getExtractedText(Metacard.METADATA, changedXml,
+                toStoredDocument(first), new SolrInputDocument()), is(" changed"));
+
+        verify(resolver, times(1)).parseTextFrom(changedXml);
+    }
+
+    @Test
+    public void testExtractedTextParsedWhenSettingsChange() {
+        DynamicSchemaResolver resolver = spy(new DynamicSchemaResolver());
+        String xml = "<a><b>text</b></a>";
+        SolrInputDocument first = new SolrInputDocument();
+        resolver.getExtractedText(Metacard.METADATA, xml, null, first);
+
+        resolver.setMaxExtractedTextLength(3);
+
+        assertThat(resolver.getExtractedText(Metacard.METADATA, xml, toStoredDocument(first),
+                new SolrInputDocument()), is(" te"));
+        verify(resolver, times(2)).parseTextFrom(xml);
+    }
+
+    @Test
+    public void testExtractedTextFieldsArePrivate() {
+        DynamicSchemaResolver resolver = new DynamicSchemaResolver();
+
+        assertThat(resolver.isPrivateField(Metacard.METADATA + SchemaFields.XML_HASH
+                + SchemaFields.TEXT_SUFFIX), is(true));
+        assertThat(resolver.isPrivateField(Metacard.METADATA + SchemaFields.EXTRACTED_TEXT
+                + SchemaFields.BINARY_SUFFIX), is(true));
+    }
+
+    private SolrDocument toStoredDocument(SolrInputDocument solrInputDocument) {
+        SolrDocument solrDocument = new SolrDocument();
+        for (String name : solrInputDocument.getFieldNames()) {
+            solrDocument.setField(name, solrInputDocument.getFieldValue(name));
+        }
+        return solrDocument;
+    }
+
+    @Test
+    public void testAddFieldsIndexesBoundingBoxAndGeohash() throws Exception {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setLocation("LINESTRING (10 20, 30 40)");
+        SolrInputDocument solrInputDocument = new SolrInputDocument();
+        DynamicSchemaResolver resolver = new DynamicSchemaResolver();
+
+        resolver.addFields(metacard, solrInputDocument);
+
+        String geometryField = Metacard.GEOGRAPHY + SchemaFields.GEO_SUFFIX;
+        assertThat(solrInputDocument.getFieldValue(resolver.getBoundingBoxField(geometryField,
+                SchemaFields.BBOX_MIN_X)), is((Object) 10.0));
+        assertThat(solrInputDocument.getFieldValue(resolver.getBoundingBoxField(geometryField,
+                SchemaFields.BBOX_MAX_Y)), is((Object) 40.0));
+        String geohashField = resolver.getGeohashField(geometryField,
+                DynamicSchemaResolver.MAX_GEOHASH_PRECISION);
+        assertThat(solrInputDocument.getFieldValue(geohashField),
+                is((Object) GeohashUtils.encodeLatLon(30, 20,
+                        DynamicSchemaResolver.MAX_GEOHASH_PRECISION)));
+        assertThat(resolver.isPrivateField(geohashField), is(true));
+    }
+
     private MetacardType deserializeMetacardType(byte[] serializedMetacardType) throws ClassNotFoundException, IOException {
         ByteArrayInputStream bais = new ByteArrayInputStream((byte[]) serializedMetacardType);
         ObjectInputStream in = new ObjectInputStream(bais);
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.BasicTypes;
+import ddf.catalog.data.impl.MetacardImpl;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LazySolrMetacardTest {
+
+    private static final String ID_FIELD = Metacard.ID + SchemaFields.TEXT_SUFFIX;
+
+    private static final String METADATA_FIELD = Metacard.METADATA + SchemaFields.XML_SUFFIX;
+
+    private DynamicSchemaResolver resolver = new DynamicSchemaResolver();
+
+    private SolrServer server = mock(SolrServer.class);
+
+    @Test
+    public void testSerializedWithAllAttributes() throws Exception {
+        SolrDocument doc = new SolrDocument();
+        doc.setField(ID_FIELD, "id");
+        doc.setField(Metacard.TITLE + SchemaFields.TEXT_SUFFIX, "title");
+        LazySolrMetacard metacard = new LazySolrMetacard(BasicTypes.BASIC_METACARD, doc,
+                resolver, server);
+        metacard.setSourceId("source");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(metacard);
+        }
+        Object read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()))) {
+            read = in.readObject();
+        }
+
+        assertThat(read, is(instanceOf(MetacardImpl.class)));
+        assertThat(read, is(not(instanceOf(LazySolrMetacard.class))));
+        Metacard readMetacard = (Metacard) read;
+        assertThat(readMetacard.getId(), is("id"));
+        assertThat(readMetacard.getTitle(), is("title"));
+        assertThat(readMetacard.getSourceId(), is("source"));
+    }
+
+    @Test
+    public void testProjectedOutAttributeFetchedOnce() throws Exception {
+        resolver.fieldsCache.add(METADATA_FIELD);
+        SolrDocument doc = new SolrDocument();
+        doc.setField(ID_FIELD, "id");
+        LazySolrMetacard metacard = new LazySolrMetacard(BasicTypes.BASIC_METACARD, doc,
+                resolver, server);
+        metacard.setFetchableAttributes(Arrays.asList(Metacard.METADATA, Metacard.THUMBNAIL));
+
+        SolrDocument fetched = new SolrDocument();
+        fetched.setField(METADATA_FIELD, "<xml/>");
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.add(fetched);
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(docs);
+        when(server.query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        assertThat(metacard.getId(), is("id"));
+        assertThat(metacard.getMetadata(), is("<xml/>"));
+        assertThat(metacard.getMetadata(), is("<xml/>"));
+
+        verify(server, times(1)).query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST));
+    }
+
+    @Test
+    public void testProjectedOutAttributesFetchedInOneRequest() throws Exception {
+        String thumbnailField = Metacard.THUMBNAIL + SchemaFields.BINARY_SUFFIX;
+        resolver.fieldsCache.add(METADATA_FIELD);
+        resolver.fieldsCache.add(thumbnailField);
+        SolrDocument doc = new SolrDocument();
+        doc.setField(ID_FIELD, "id");
+        LazySolrMetacard metacard = new LazySolrMetacard(BasicTypes.BASIC_METACARD, doc,
+                resolver, server);
+        metacard.setFetchableAttributes(Arrays.asList(Metacard.METADATA, Metacard.THUMBNAIL));
+
+        SolrDocument fetched = new SolrDocument();
+        fetched.setField(METADATA_FIELD, "<xml/>");
+        fetched.setField(thumbnailField, new byte[] {1});
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.add(fetched);
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(docs);
+        when(server.query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        assertThat(metacard.getMetadata(), is("<xml/>"));
+        assertThat(metacard.getThumbnail(), is(new byte[] {1}));
+
+        ArgumentCaptor<SolrQuery> query = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(server, times(1)).query(query.capture(), eq(SolrRequest.METHOD.POST));
+        assertThat(Arrays.asList(query.getValue().getFields().split(",")),
+                containsInAnyOrder(METADATA_FIELD, thumbnailField));
+    }
+
+    @Test
+    public void testFetchDoesNotHoldLock() throws Exception {
+        resolver.fieldsCache.add(METADATA_FIELD);
+        SolrDocument doc = new SolrDocument();
+        doc.setField(ID_FIELD, "id");
+        final LazySolrMetacard metacard = new LazySolrMetacard(BasicTypes.BASIC_METACARD, doc,
+                resolver, server);
+        metacard.setFetchableAttributes(Arrays.asList(Metacard.METADATA));
+
+        final QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(new SolrDocumentList());
+        when(server.query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST))).thenAnswer(
+                new Answer<QueryResponse>() {
+                    @Override
+                    public QueryResponse answer(InvocationOnMock invocation) throws Exception {
+                        // another thread writes the metacard while the fetch waits on Solr
+                        Thread writer = new Thread() {
+                            @Override
+                            public void run() {
+                                metacard.setTitle("title");
+                            }
+                        };
+                        writer.start();
+                        writer.join(5000);
+                        assertThat(writer.isAlive(), is(false));
+                        return response;
+                    }
+                });
+
+        assertThat(metacard.getMetadata(), is(nullValue()));
+        assertThat(metacard.getTitle(), is("title"));
+    }
+
+    @Test
+    public void testFetchEscapesId() throws Exception {
+        resolver.fieldsCache.add(METADATA_FIELD);
+        SolrDocument doc = new SolrDocument();
+        doc.setField(ID_FIELD, "a\"b:c");
+        LazySolrMetacard metacard = new LazySolrMetacard(BasicTypes.BASIC_METACARD, doc,
+                resolver, server);
+        metacard.setFetchableAttributes(Arrays.asList(Metacard.METADATA));
+
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(new SolrDocumentList());
+        when(server.query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        assertThat(metacard.getMetadata(), is(nullValue()));
+
+        ArgumentCaptor<SolrQuery> query = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(server).query(query.capture(), eq(SolrRequest.METHOD.POST));
+        assertThat(query.getValue().getQuery(), is(ID_FIELD + ":a\\\"b\\:c"));
+    }
+}
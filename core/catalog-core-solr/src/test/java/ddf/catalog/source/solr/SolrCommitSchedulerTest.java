@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest.ACTION;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.params.UpdateParams;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SolrCommitSchedulerTest {
+
+    private SolrServer server = mock(SolrServer.class);
+
+    private SolrCommitScheduler scheduler = new SolrCommitScheduler(server);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testWritesWithinLatencyShareOneCommit() throws Exception {
+        scheduler.setMaxLatency(200);
+
+        Future<Void> first = scheduler.added(1);
+        Future<Void> second = scheduler.added(2);
+        assertThat(second, is(sameInstance(first)));
+
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(first.isDone(), is(true));
+        assertThat(scheduler.getCommitCount(), is(1L));
+        verify(server, times(1)).commit(true, true, true);
+    }
+
+    @Test
+    public void testMaxDocumentsTriggersCommit() throws Exception {
+        scheduler.setMaxDocuments(10);
+
+        Future<Void> visibility = scheduler.added(4);
+        verify(server, never()).commit(true, true, true);
+        scheduler.added(6).get(5, TimeUnit.SECONDS);
+
+        assertThat(visibility.isDone(), is(true));
+        verify(server, times(1)).commit(true, true, true);
+    }
+
+    @Test
+    public void testHardCommitWithinInterval() throws Exception {
+        scheduler.setMaxLatency(50);
+        scheduler.setHardCommitInterval(200);
+
+        scheduler.added(1).get(5, TimeUnit.SECONDS);
+        verify(server, never()).request(argThat(isHardCommit()));
+
+        verify(server, timeout(5000)).request(argThat(isHardCommit()));
+        assertThat(scheduler.getHardCommitCount(), is(1L));
+    }
+
+    @Test
+    public void testHardCommitMaxDocumentsTriggersHardCommit() throws Exception {
+        scheduler.setHardCommitMaxDocuments(10);
+
+        scheduler.added(4);
+        scheduler.added(6);
+
+        verify(server, timeout(5000)).request(argThat(isHardCommit()));
+    }
+
+    @Test
+    public void testShutdownHardCommits() throws Exception {
+        scheduler.added(1);
+
+        scheduler.shutdown();
+
+        verify(server).request(argThat(isHardCommit()));
+    }
+
+    @Test
+    public void testFailedCommitFailsVisibility() throws Exception {
+        when(server.commit(true, true, true)).thenThrow(new SolrServerException("down"));
+        scheduler.added(1);
+
+        try {
+            scheduler.commit().get(5, TimeUnit.SECONDS);
+            fail("Expected the commit to fail.");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(SolrServerException.class)));
+        }
+    }
+
+    @Test
+    public void testWritesAfterShutdownAreCommitted() throws Exception {
+        scheduler.setMaxLatency(60000);
+        Future<Void> pending = scheduler.added(1);
+
+        scheduler.shutdown();
+        assertThat(pending.isDone(), is(true));
+
+        scheduler.added(1).get(5, TimeUnit.SECONDS);
+        scheduler.commit().get(5, TimeUnit.SECONDS);
+        verify(server, times(3)).commit(true, true, true);
+    }
+
+    private static ArgumentMatcher<SolrRequest> isHardCommit() {
+        return new ArgumentMatcher<SolrRequest>() {
+            @Override
+            public boolean matches(Object request) {
+                return request instanceof UpdateRequest
+                        && ((UpdateRequest) request).getAction() == ACTION.COMMIT
+                        && "false".equals(((UpdateRequest) request).getParams().get(
+                                UpdateParams.OPEN_SEARCHER));
+            }
+        };
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.BasicTypes;
+import ddf.catalog.data.impl.MetacardImpl;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SolrMetacardClientTest {
+
+    private static final String ID_FIELD = Metacard.ID + SchemaFields.TEXT_SUFFIX;
+
+    private SolrServer server = mock(SolrServer.class);
+
+    private SolrMetacardClient client = new SolrMetacardClient(server, null, null,
+            new DynamicSchemaResolver());
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+    }
+
+    @Test
+    public void testRealtimeGetOfOneId() throws Exception {
+        NamedList<Object> body = new NamedList<>();
+        body.add("doc", doc("a,b"));
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResponse()).thenReturn(body);
+        when(server.query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        List<Metacard> metacards = client.getMetacards(Collections.singletonList("a,b"));
+
+        assertThat(metacards.size(), is(1));
+        assertThat(metacards.get(0).getId(), is("a,b"));
+        ArgumentCaptor<SolrQuery> query = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(server).query(query.capture(), eq(SolrRequest.METHOD.POST));
+        assertThat(query.getValue().getRequestHandler(), is("/get"));
+        assertThat(query.getValue().getParams("id"), is(new String[] {"a,b"}));
+    }
+
+    @Test
+    public void testRealtimeGetOfMissingId() throws Exception {
+        NamedList<Object> body = new NamedList<>();
+        body.add("doc", null);
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResponse()).thenReturn(body);
+        when(server.query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        assertThat(client.getMetacards(Collections.singletonList("a")).size(), is(0));
+    }
+
+    @Test
+    public void testRealtimeGetOfSeveralIds() throws Exception {
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.add(doc("a"));
+        docs.add(doc("b"));
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(docs);
+        when(server.query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        List<Metacard> metacards = client.getMetacards(Arrays.asList("a", "b"));
+
+        assertThat(metacards.size(), is(2));
+        assertThat(metacards.get(1).getId(), is("b"));
+    }
+
+    @Test
+    public void testMissingHandlerFallsBackToSearch() throws Exception {
+        QueryResponse response = searchResponse("a");
+        when(server.query(argThat(isRealtimeGet()), eq(SolrRequest.METHOD.POST))).thenThrow(
+                new SolrException(SolrException.ErrorCode.BAD_REQUEST, "unknown handler: /get"));
+        when(server.query(argThat(isSearch()), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        assertThat(client.getMetacards(Collections.singletonList("a")).get(0).getId(), is("a"));
+        assertThat(client.getMetacards(Collections.singletonList("a")).get(0).getId(), is("a"));
+
+        verify(server, times(1)).query(argThat(isRealtimeGet()), eq(SolrRequest.METHOD.POST));
+        verify(server, times(2)).query(argThat(isSearch()), eq(SolrRequest.METHOD.POST));
+    }
+
+    @Test
+    public void testBadRequestKeepsRealtimeGet() throws Exception {
+        QueryResponse response = searchResponse("a");
+        when(server.query(argThat(isRealtimeGet()), eq(SolrRequest.METHOD.POST))).thenThrow(
+                new SolrException(SolrException.ErrorCode.BAD_REQUEST, "missing required field"));
+        when(server.query(argThat(isSearch()), eq(SolrRequest.METHOD.POST))).thenReturn(
+                response);
+
+        assertThat(client.getMetacards(Collections.singletonList("a")).get(0).getId(), is("a"));
+        assertThat(client.getMetacards(Collections.singletonList("a")).get(0).getId(), is("a"));
+
+        verify(server, times(2)).query(argThat(isRealtimeGet()), eq(SolrRequest.METHOD.POST));
+    }
+
+    @Test
+    public void testIsMissingHandler() {
+        assertThat(SolrMetacardClient.isMissingHandler(new SolrException(
+                SolrException.ErrorCode.NOT_FOUND, "Not Found")), is(true));
+        assertThat(SolrMetacardClient.isMissingHandler(new SolrException(
+                SolrException.ErrorCode.BAD_REQUEST, "unknown handler: /get")), is(true));
+        assertThat(SolrMetacardClient.isMissingHandler(new SolrException(
+                SolrException.ErrorCode.BAD_REQUEST, "undefined field id")), is(false));
+        assertThat(SolrMetacardClient.isMissingHandler(new SolrException(
+                SolrException.ErrorCode.SERVER_ERROR, "unknown handler: /get")), is(false));
+    }
+
+    @Test
+    public void testNoIds() throws Exception {
+        assertThat(client.getMetacards(Collections.<String> emptyList()).size(), is(0));
+        verify(server, times(0)).query(any(SolrQuery.class), eq(SolrRequest.METHOD.POST));
+    }
+
+    @Test
+    public void testUpdateDoesNotSearchForPreviousDocuments() throws Exception {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("a");
+        metacard.setMetadata("<xml>text</xml>");
+
+        client.update(Collections.<Metacard> singletonList(metacard),
+                Collections.singletonMap("a", doc("a")), false);
+
+        verify(server).add(anyCollectionOf(SolrInputDocument.class));
+        verify(server, never()).query(any(SolrQuery.class), any(SolrRequest.METHOD.class));
+        verify(server, never()).query(any(SolrQuery.class));
+    }
+
+    private QueryResponse searchResponse(String id) throws Exception {
+        SolrDocumentList docs = new SolrDocumentList();
+        docs.add(doc(id));
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(docs);
+        return response;
+    }
+
+    private SolrDocument doc(String id) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(BasicTypes.BASIC_METACARD);
+        }
+        SolrDocument doc = new SolrDocument();
+        doc.setField(SchemaFields.METACARD_TYPE_FIELD_NAME, BasicTypes.BASIC_METACARD.getName());
+        doc.setField(SchemaFields.METACARD_TYPE_OBJECT_FIELD_NAME, bytes.toByteArray());
+        doc.setField(ID_FIELD, id);
+        return doc;
+    }
+
+    private static ArgumentMatcher<SolrQuery> isRealtimeGet() {
+        return new ArgumentMatcher<SolrQuery>() {
+            @Override
+            public boolean matches(Object query) {
+                return query != null && "/get".equals(((SolrQuery) query).getRequestHandler());
+            }
+        };
+    }
+
+    private static ArgumentMatcher<SolrQuery> isSearch() {
+        return new ArgumentMatcher<SolrQuery>() {
+            @Override
+            public boolean matches(Object query) {
+                return query != null && ((SolrQuery) query).getRequestHandler() == null;
+            }
+        };
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.junit.Test;
+import org.apache.solr.client.solrj.SolrQuery;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+
+public class SolrWarmerTest {
+
+    @Test
+    public void testEncodedQueryIsReplayedUnchanged() {
+        SolrQuery query = new SolrQuery("title_txt:\"a & b\"");
+        query.addFilterQuery("{!xpath}xpath:\"//a\"", "id_txt:*");
+        query.addSort("score", SolrQuery.ORDER.desc);
+
+        SolrQuery decoded = SolrWarmer.decode(SolrWarmer.encode(query));
+
+        assertThat(decoded.getQuery(), is(query.getQuery()));
+        assertThat(Arrays.asList(decoded.getFilterQueries()),
+                is(Arrays.asList(query.getFilterQueries())));
+        assertThat(decoded.getSortField(), is(query.getSortField()));
+    }
+
+    @Test
+    public void testReplayIsCappedToFirstPageWithoutFields() {
+        SolrQuery query = new SolrQuery("title_txt:*");
+        query.setRows(Integer.MAX_VALUE);
+        query.setStart(500);
+        query.setFields("id_txt", "score");
+        query.addFilterQuery("id_txt:*");
+
+        SolrQuery replayed = SolrWarmer.getWarmingQuery(SolrWarmer.encode(query));
+
+        assertThat(replayed.getRows(), is(SolrWarmer.MAX_WARMING_ROWS));
+        assertThat(replayed.getStart(), nullValue());
+        assertThat(replayed.getFields(), nullValue());
+        assertThat(replayed.getQuery(), is(query.getQuery()));
+        assertThat(Arrays.asList(replayed.getFilterQueries()), is(Arrays.asList("id_txt:*")));
+    }
+
+    @Test
+    public void testWarmingsAreCoalesced() throws Exception {
+        final AtomicInteger warmings = new AtomicInteger();
+        SolrWarmer warmer = new SolrWarmer(mock(SolrServer.class), new DynamicSchemaResolver()) {
+            @Override
+            protected void runWarming() {
+                warmings.incrementAndGet();
+            }
+        };
+
+        try {
+            warmer.warm();
+            Thread.sleep(100);
+            for (int i = 0; i < 5; i++) {
+                warmer.warm();
+            }
+            Thread.sleep(100);
+
+            // the commits following the first warming wait for the interval to elapse
+            assertThat(warmings.get(), is(1));
+        } finally {
+            warmer.shutdown();
+        }
+    }
+
+    @Test
+    public void testTopQueriesAreMostFrequent() {
+        SolrWarmer warmer = new SolrWarmer(mock(SolrServer.class), new DynamicSchemaResolver());
+        warmer.setQueryCount(2);
+        SolrQuery rare = new SolrQuery("rare");
+        SolrQuery common = new SolrQuery("common");
+        SolrQuery frequent = new SolrQuery("frequent");
+
+        warmer.record(rare);
+        for (int i = 0; i < 3; i++) {
+            warmer.record(common);
+        }
+        for (int i = 0; i < 5; i++) {
+            warmer.record(frequent);
+        }
+
+        assertThat(warmer.getTopQueries(), is(Arrays.asList(SolrWarmer.encode(frequent),
+                SolrWarmer.encode(common))));
+    }
+
+    @Test
+    public void testQueriesAreCountedByShape() {
+        SolrWarmer warmer = new SolrWarmer(mock(SolrServer.class), new DynamicSchemaResolver());
+        warmer.setQueryCount(1);
+        SolrQuery first = new SolrQuery(
+                "title_txt:\"first\" AND modified_tdt:[2014-01-01T00:00:00Z TO *]");
+        first.setStart(0);
+        SolrQuery second = new SolrQuery(
+                "title_txt:\"second\" AND modified_tdt:[2015-06-01T12:30:00Z TO *]");
+        second.setStart(20);
+
+        assertThat(SolrWarmer.shape(first), is(SolrWarmer.shape(second)));
+
+        warmer.record(new SolrQuery("other"));
+        warmer.record(first);
+        warmer.record(second);
+
+        // the latest query of the most frequent shape is replayed
+        assertThat(warmer.getTopQueries(), is(Arrays.asList(SolrWarmer.encode(second))));
+    }
+
+    @Test
+    public void testNewQueriesAreRecordedOnceFull() {
+        SolrWarmer warmer = new SolrWarmer(mock(SolrServer.class), new DynamicSchemaResolver());
+        warmer.setQueryCount(1);
+        for (int i = 0; i < 2000; i++) {
+            warmer.record(new SolrQuery("field" + (char) ('a' + i % 26) + i / 26 + "_txt:*"));
+        }
+
+        SolrQuery recent = new SolrQuery("recent");
+        for (int i = 0; i < 5; i++) {
+            warmer.record(recent);
+        }
+
+        assertThat(warmer.getTopQueries(), is(Arrays.asList(SolrWarmer.encode(recent))));
+    }
+}
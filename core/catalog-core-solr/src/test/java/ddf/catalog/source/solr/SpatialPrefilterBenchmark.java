@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.filter.proxy.adapter.GeotoolsFilterAdapterImpl;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import org.codice.solr.factory.ConfigurationFileProxy;
+import org.codice.solr.factory.ConfigurationStore;
+import org.codice.solr.factory.SolrServerFactory;
+import org.opengis.filter.Filter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures spatial queries on area-of-interest polygons with and without the bounding box and
+ * geohash prefilter of the {@link SolrFilterDelegate}. Random polygons are indexed in an embedded
+ * Solr, then the same within and intersects queries are timed in both modes and their hit counts
+ * compared.
+ *
+ * Usage: {@code SpatialPrefilterBenchmark [records] [queries]}
+ */
+public class SpatialPrefilterBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpatialPrefilterBenchmark.class);
+
+    private static final int DEFAULT_RECORDS = 100000;
+
+    private static final int DEFAULT_QUERIES = 200;
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int RECORD_VERTICES = 16;
+
+    private static final int AREA_OF_INTEREST_VERTICES = 64;
+
+    private static final TestSolrFilterBuilder FILTER_BUILDER = new TestSolrFilterBuilder();
+
+    private final Random random = new Random(42);
+
+    private SolrCatalogProvider provider;
+
+    public SpatialPrefilterBenchmark(SolrCatalogProvider provider) {
+        this.provider = provider;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RECORDS;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_QUERIES;
+
+        ConfigurationStore.getInstance().setDataDirectoryPath("target/solr-benchmark");
+        SolrCatalogProvider provider = new SolrCatalogProvider(
+                SolrServerFactory.getEmbeddedSolrServer("solrconfig.xml", "schema.xml",
+                        new ConfigurationFileProxy(ConfigurationStore.getInstance())),
+                new GeotoolsFilterAdapterImpl(), new SolrFilterDelegateFactoryImpl());
+        try {
+            new SpatialPrefilterBenchmark(provider).run(records, queries);
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    public void run(int records, int queries) throws Exception {
+        LOGGER.info("Indexing " + records + " polygons.");
+        long start = System.currentTimeMillis();
+        for (int indexed = 0; indexed < records; indexed += BATCH_SIZE) {
+            List<Metacard> batch = new ArrayList<Metacard>(BATCH_SIZE);
+            for (int i = indexed; i < Math.min(records, indexed + BATCH_SIZE); i++) {
+                MetacardImpl metacard = new MetacardImpl();
+                metacard.setTitle("polygon " + i);
+                metacard.setLocation(randomPolygon(RECORD_VERTICES, 0.01, 0.5));
+                batch.add(metacard);
+            }
+            provider.create(new CreateRequestImpl(batch));
+        }
+        LOGGER.info("Indexed in " + (System.currentTimeMillis() - start) + " ms.");
+
+        List<Filter> warmUp = new ArrayList<Filter>();
+        List<Filter> within = new ArrayList<Filter>();
+        List<Filter> intersecting = new ArrayList<Filter>();
+        for (int i = 0; i < queries; i++) {
+            warmUp.add(FILTER_BUILDER.attribute(Metacard.GEOGRAPHY).intersecting()
+                    .wkt(randomPolygon(AREA_OF_INTEREST_VERTICES, 1, 10)));
+            within.add(FILTER_BUILDER.attribute(Metacard.GEOGRAPHY).within()
+                    .wkt(randomPolygon(AREA_OF_INTEREST_VERTICES, 1, 10)));
+            intersecting.add(FILTER_BUILDER.attribute(Metacard.GEOGRAPHY).intersecting()
+                    .wkt(randomPolygon(AREA_OF_INTEREST_VERTICES, 1, 10)));
+        }
+
+        // warms the JVM and the searcher up on other polygons, so that the timed queries are not
+        // answered from the Solr caches; the prefilter changes the query strings of the second
+        // mode, so it does not hit the entries left by the first one either
+        provider.setSpatialPrefilterEnabled(false);
+        time(warmUp);
+        compare("within", within);
+        compare("intersects", intersecting);
+    }
+
+    private void compare(String operation, List<Filter> filters) throws Exception {
+        provider.setSpatialPrefilterEnabled(false);
+        long[] exact = time(filters);
+        provider.setSpatialPrefilterEnabled(true);
+        long[] prefiltered = time(filters);
+
+        if (exact[1] != prefiltered[1]) {
+            LOGGER.error(operation + ": the prefilter changed the hits from " + exact[1]
+                    + " to " + prefiltered[1] + ".");
+        }
+        LOGGER.info(operation + ": " + filters.size() + " queries, " + exact[1] + " hits, "
+                + exact[0] / filters.size() + " ms per query without the prefilter, "
+                + prefiltered[0] / filters.size() + " ms per query with it.");
+    }
+
+    /**
+     * @return the total time in milliseconds and the total number of hits of the queries
+     */
+    private long[] time(List<Filter> filters) throws Exception {
+        long hits = 0;
+        long start = System.currentTimeMillis();
+        for (Filter filter : filters) {
+            QueryImpl query = new QueryImpl(filter);
+            query.setPageSize(10);
+            query.setRequestsTotalResultsCount(true);
+            hits += provider.query(new QueryRequestImpl(query)).getHits();
+        }
+        return new long[] {System.currentTimeMillis() - start, hits};
+    }
+
+    /**
+     * Builds a polygon approximating a circle of random radius at a random location.
+     */
+    private String randomPolygon(int vertices, double minRadius, double maxRadius) {
+        double radius = minRadius + random.nextDouble() * (maxRadius - minRadius);
+        double centerX = -170 + random.nextDouble() * 340;
+        double centerY = -80 + random.nextDouble() * 160;
+
+        StringBuilder wkt = new StringBuilder("POLYGON ((");
+        for (int i = 0; i <= vertices; i++) {
+            double angle = 2 * Math.PI * (i % vertices) / vertices;
+            if (i > 0) {
+                wkt.append(", ");
+            }
+            wkt.append(centerX + radius * Math.cos(angle)).append(' ')
+                    .append(centerY + radius * Math.sin(angle));
+        }
+        return wkt.append("))").toString();
+    }
+}
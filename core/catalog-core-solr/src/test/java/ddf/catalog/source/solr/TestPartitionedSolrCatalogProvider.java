@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.source.solr;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.CreateRequest;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.Query;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.operation.impl.SourceResponseImpl;
+import ddf.catalog.source.CatalogProvider;
+import ddf.catalog.source.IngestException;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestPartitionedSolrCatalogProvider {
+
+    private CatalogProvider partition0 = mock(CatalogProvider.class);
+
+    private CatalogProvider partition1 = mock(CatalogProvider.class);
+
+    private PartitionedSolrCatalogProvider provider = new PartitionedSolrCatalogProvider(
+            Arrays.asList(partition0, partition1));
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+    }
+
+    @Test
+    public void testCreateRoutesMetacardsByIdHash() throws Exception {
+        when(partition0.create(any(CreateRequest.class))).thenAnswer(new CreateAnswer());
+        when(partition1.create(any(CreateRequest.class))).thenAnswer(new CreateAnswer());
+
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("id");
+        provider.create(new CreateRequestImpl(Arrays.<Metacard> asList(metacard)));
+
+        CatalogProvider expected = provider.getPartition("id") == 0 ? partition0 : partition1;
+        CatalogProvider other = expected == partition0 ? partition1 : partition0;
+        ArgumentCaptor<CreateRequest> request = ArgumentCaptor.forClass(CreateRequest.class);
+        verify(expected).create(request.capture());
+        verify(other, never()).create(any(CreateRequest.class));
+        assertThat(request.getValue().getMetacards().get(0).getId(), is("id"));
+    }
+
+    @Test
+    public void testCreateWritesPartitionsInParallel() throws Exception {
+        // each partition only returns once the other one has started writing
+        final CountDownLatch writing = new CountDownLatch(2);
+        Answer<CreateResponseImpl> concurrentAnswer = new CreateAnswer() {
+            @Override
+            public CreateResponseImpl answer(InvocationOnMock invocation) {
+                writing.countDown();
+                try {
+                    assertThat(writing.await(5, TimeUnit.SECONDS), is(true));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return super.answer(invocation);
+            }
+        };
+        when(partition0.create(any(CreateRequest.class))).thenAnswer(concurrentAnswer);
+        when(partition1.create(any(CreateRequest.class))).thenAnswer(concurrentAnswer);
+
+        CreateResponse response = provider.create(new CreateRequestImpl(Arrays.<Metacard> asList(
+                metacardInPartition(0), metacardInPartition(1))));
+
+        assertThat(response.getCreatedMetacards().size(), is(2));
+    }
+
+    @Test
+    public void testPartialCreateFailureNamesPartitions() throws Exception {
+        when(partition0.create(any(CreateRequest.class))).thenAnswer(new CreateAnswer());
+        when(partition1.create(any(CreateRequest.class))).thenThrow(
+                new IngestException("partition down"));
+
+        try {
+            provider.create(new CreateRequestImpl(Arrays.<Metacard> asList(
+                    metacardInPartition(0), metacardInPartition(1))));
+            fail("The create should have failed.");
+        } catch (IngestException e) {
+            assertThat(e.getMessage(), is("Create failed on partitions [1] and completed on "
+                    + "partitions [0], whose changes are kept."));
+            assertThat(e.getCause().getMessage(), is("partition down"));
+        }
+        verify(partition0).create(any(CreateRequest.class));
+    }
+
+    @Test
+    public void testQueryMergesPagesOnSortAndSumsHits() throws Exception {
+        when(partition0.query(any(QueryRequest.class))).thenReturn(
+                response(3, new Date(5000), new Date(3000), new Date(1000)));
+        when(partition1.query(any(QueryRequest.class))).thenReturn(
+                response(2, new Date(4000), new Date(2000)));
+
+        Query query = mock(Query.class);
+        SortBy sortBy = mock(SortBy.class);
+        PropertyName propertyName = mock(PropertyName.class);
+        when(propertyName.getPropertyName()).thenReturn(Result.TEMPORAL);
+        when(sortBy.getPropertyName()).thenReturn(propertyName);
+        when(sortBy.getSortOrder()).thenReturn(SortOrder.DESCENDING);
+        when(query.getSortBy()).thenReturn(sortBy);
+        when(query.getStartIndex()).thenReturn(2);
+        when(query.getPageSize()).thenReturn(2);
+
+        SourceResponse response = provider.query(new QueryRequestImpl(query));
+
+        ArgumentCaptor<QueryRequest> request = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(partition0).query(request.capture());
+        assertThat(request.getValue().getQuery().getStartIndex(), is(1));
+        assertThat(request.getValue().getQuery().getPageSize(), is(3));
+
+        assertThat(response.getHits(), is(5L));
+        assertThat(response.getResults().size(), is(2));
+        assertThat(response.getResults().get(0).getMetacard().getEffectiveDate(),
+                is(new Date(4000)));
+        assertThat(response.getResults().get(1).getMetacard().getEffectiveDate(),
+                is(new Date(3000)));
+    }
+
+    @Test
+    public void testQueryWithoutSortMergesOnRelevanceThenId() throws Exception {
+        when(partition0.query(any(QueryRequest.class))).thenReturn(
+                scoredResponse(result("b", 0.5), result("d", 0.2)));
+        when(partition1.query(any(QueryRequest.class))).thenReturn(
+                scoredResponse(result("c", 0.9), result("a", 0.5)));
+
+        Query query = mock(Query.class);
+        when(query.getStartIndex()).thenReturn(2);
+        when(query.getPageSize()).thenReturn(2);
+
+        SourceResponse response = provider.query(new QueryRequestImpl(query));
+
+        ArgumentCaptor<QueryRequest> request = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(partition1).query(request.capture());
+        assertThat(request.getValue().getQuery().getSortBy().getPropertyName()
+                .getPropertyName(), is(Result.RELEVANCE));
+
+        assertThat(response.getResults().size(), is(2));
+        assertThat(response.getResults().get(0).getMetacard().getId(), is("a"));
+        assertThat(response.getResults().get(1).getMetacard().getId(), is("b"));
+    }
+
+    private Metacard metacardInPartition(int partition) {
+        int i = 0;
+        while (provider.getPartition("id" + i) != partition) {
+            i++;
+        }
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("id" + i);
+        return metacard;
+    }
+
+    private Result result(String id, double relevance) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        ResultImpl result = new ResultImpl(metacard);
+        result.setRelevanceScore(relevance);
+        return result;
+    }
+
+    private SourceResponse scoredResponse(Result... results) {
+        return new SourceResponseImpl(null, null, Arrays.asList(results), results.length);
+    }
+
+    private SourceResponse response(long hits, Date... effectiveDates) {
+        List<Result> results = new ArrayList<>();
+        for (Date effectiveDate : effectiveDates) {
+            MetacardImpl metacard = new MetacardImpl();
+            metacard.setEffectiveDate(effectiveDate);
+            results.add(new ResultImpl(metacard));
+        }
+        return new SourceResponseImpl(null, null, results, hits);
+    }
+
+    private static class CreateAnswer implements Answer<CreateResponseImpl> {
+        @Override
+        public CreateResponseImpl answer(InvocationOnMock invocation) {
+            CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+            return new CreateResponseImpl(request, null, request.getMetacards());
+        }
+    }
+}
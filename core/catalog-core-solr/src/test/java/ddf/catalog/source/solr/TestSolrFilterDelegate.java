@@ -27,9 +27,14 @@
 import java.util.TimeZone;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.stub;
+import static org.mockito.Mockito.verify;
 
 public class TestSolrFilterDelegate {
 
@@ -69,6 +74,56 @@ public void intersectsWithInvalidJtsWkt() {
                 is("testProperty_geohash_index:\"Intersects(invalid JTS wkt)\""));
     }
 
+    @Test
+    public void withinWithSpatialPrefilter() {
+        // given a geospatial property and an index with bounding boxes
+        stub(mockResolver.getField("testProperty", AttributeFormat.GEOMETRY, false)).toReturn(
+                "testProperty_geo_index");
+        stub(mockResolver.isSpatialPrefilterEnabled()).toReturn(true);
+        for (String bound : Arrays.asList(SchemaFields.BBOX_MIN_X, SchemaFields.BBOX_MIN_Y,
+                SchemaFields.BBOX_MAX_X, SchemaFields.BBOX_MAX_Y)) {
+            stub(mockResolver.getBoundingBoxField("testProperty_geo", bound)).toReturn(
+                    "testProperty_geo" + bound + "_dbl");
+        }
+        stub(mockResolver.getGeohashField("testProperty_geo", 1)).toReturn(
+                "testProperty_geo_geohash_1_txt");
+        String wkt = "POLYGON ((10 20, 30 20, 30 40, 10 40, 10 20))";
+
+        // when the delegate searches within a polygon lying in the geohash cell "s"
+        SolrQuery query = toTest.within("testProperty", wkt);
+
+        // then the bounding boxes must lie inside the envelope of the polygon, and their centers
+        // in the cell
+        assertThat(query.getQuery(), is(" ( testProperty_geo_geohash_1_txt:\"s\" AND "
+                + "testProperty_geo_bbox_minx_dbl:[ 10.0 TO * ]  AND "
+                + "testProperty_geo_bbox_maxx_dbl:[ * TO 30.0 ]  AND "
+                + "testProperty_geo_bbox_miny_dbl:[ 20.0 TO * ]  AND "
+                + "testProperty_geo_bbox_maxy_dbl:[ * TO 40.0 ]  AND "
+                + "testProperty_geo_index:\"IsWithin(" + wkt + ")\" ) "));
+    }
+
+    @Test
+    public void withinAcrossGeohashCellsWithSpatialPrefilter() {
+        // given a geospatial property and an index with bounding boxes
+        stub(mockResolver.getField("testProperty", AttributeFormat.GEOMETRY, false)).toReturn(
+                "testProperty_geo_index");
+        stub(mockResolver.isSpatialPrefilterEnabled()).toReturn(true);
+        for (String bound : Arrays.asList(SchemaFields.BBOX_MIN_X, SchemaFields.BBOX_MIN_Y,
+                SchemaFields.BBOX_MAX_X, SchemaFields.BBOX_MAX_Y)) {
+            stub(mockResolver.getBoundingBoxField("testProperty_geo", bound)).toReturn(
+                    "testProperty_geo" + bound + "_dbl");
+        }
+
+        // when the delegate searches within a polygon crossing the prime meridian
+        SolrQuery query = toTest.within("testProperty",
+                "POLYGON ((-10 20, 10 20, 10 40, -10 40, -10 20))");
+
+        // then no geohash cell holds every match and only the bounding boxes are used
+        assertThat(query.getQuery(),
+                startsWith(" ( testProperty_geo_bbox_minx_dbl:[ -10.0 TO * ] "));
+        verify(mockResolver, never()).getGeohashField(anyString(), anyInt());
+    }
+
     @Test
     public void reservedSpecialCharactersIsEqual() {
         // given a text property
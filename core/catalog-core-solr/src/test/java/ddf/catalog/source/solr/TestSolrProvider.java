@@ -27,6 +27,8 @@
 import ddf.catalog.operation.CreateResponse;
 import ddf.catalog.operation.DeleteRequest;
 import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.FacetRequest;
+import ddf.catalog.operation.FacetResult;
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryRequest;
 import ddf.catalog.operation.SourceResponse;
@@ -34,6 +36,7 @@
 import ddf.catalog.operation.UpdateRequest;
 import ddf.catalog.operation.UpdateResponse;
 import ddf.catalog.operation.impl.DeleteRequestImpl;
+import ddf.catalog.operation.impl.FacetRequestImpl;
 import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryRequestImpl;
 import ddf.catalog.operation.impl.UpdateRequestImpl;
@@ -70,7 +73,9 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -611,6 +616,36 @@ public void testUpdateEmptyList() throws IngestException, UnsupportedQueryExcept
 
     }
 
+    @Test
+    public void testGetMetacards() throws Exception {
+
+        deleteAllIn(provider);
+
+        MockMetacard metacard1 = new MockMetacard(Library.getFlagstaffRecord());
+        MockMetacard metacard2 = new MockMetacard(Library.getShowLowRecord());
+        metacard2.setId("show,low");
+
+        create(Arrays.asList((Metacard) metacard1, metacard2));
+
+        List<Metacard> metacards = provider.getMetacards(Arrays.asList(metacard1.getId(),
+                "show,low", "unknown"));
+
+        assertEquals(2, metacards.size());
+        Set<String> ids = new HashSet<String>();
+        for (Metacard metacard : metacards) {
+            ids.add(metacard.getId());
+        }
+        assertThat(ids, is((Set<String>) new HashSet<String>(Arrays.asList(metacard1.getId(),
+                "show,low"))));
+
+        metacards = provider.getMetacards(Collections.singletonList("show,low"));
+
+        assertEquals(1, metacards.size());
+        assertEquals(metacard2.getTitle(), metacards.get(0).getTitle());
+
+        assertEquals(0, provider.getMetacards(Collections.singletonList("unknown")).size());
+    }
+
     @Test
     public void testUpdateByMetacardId() throws Exception {
 
@@ -4387,6 +4422,57 @@ public void testGetContentTypesVersionsAndNullVersions() throws Exception {
                 SAMPLE_CONTENT_VERSION_3)));
     }
 
+    @Test
+    public void testTermsFacet() throws Exception {
+
+        deleteAllIn(provider);
+
+        MockMetacard metacard1 = new MockMetacard(Library.getFlagstaffRecord());
+        MockMetacard metacard2 = new MockMetacard(Library.getShowLowRecord());
+        MockMetacard metacard3 = new MockMetacard(Library.getTampaRecord());
+
+        metacard1.setContentTypeName(SAMPLE_CONTENT_TYPE_1);
+        metacard2.setContentTypeName(SAMPLE_CONTENT_TYPE_2);
+        metacard3.setContentTypeName(SAMPLE_CONTENT_TYPE_2);
+
+        create(Arrays.asList((Metacard) metacard1, metacard2, metacard3));
+
+        ArrayList<FacetRequest> facets = new ArrayList<FacetRequest>();
+        facets.add(new FacetRequestImpl("types", Metacard.CONTENT_TYPE, 10));
+
+        QueryImpl query = new QueryImpl(filterBuilder.attribute(Metacard.ID).like().text("*"));
+        query.setPageSize(1);
+        Map<String, Serializable> properties = new HashMap<String, Serializable>();
+        properties.put(FacetRequest.FACETS, facets);
+
+        SourceResponse sourceResponse = provider.query(new QueryRequestImpl(query, properties));
+
+        assertEquals(1, sourceResponse.getResults().size());
+
+        @SuppressWarnings("unchecked")
+        List<FacetResult> facetResults = (List<FacetResult>) sourceResponse
+                .getPropertyValue(FacetResult.FACET_RESULTS);
+        assertEquals(1, facetResults.size());
+        assertEquals("types", facetResults.get(0).getName());
+        assertEquals(Long.valueOf(1), facetResults.get(0).getCounts().get(SAMPLE_CONTENT_TYPE_1));
+        assertEquals(Long.valueOf(2), facetResults.get(0).getCounts().get(SAMPLE_CONTENT_TYPE_2));
+    }
+
+    @Test
+    public void testGetContentTypesCacheInvalidatedOnCreate() throws Exception {
+
+        deleteAllIn(provider);
+
+        assertEquals(0, provider.getContentTypes().size());
+
+        MockMetacard metacard1 = new MockMetacard(Library.getFlagstaffRecord());
+        metacard1.setContentTypeName(SAMPLE_CONTENT_TYPE_1);
+
+        create(Arrays.asList((Metacard) metacard1));
+
+        assertEquals(1, provider.getContentTypes().size());
+    }
+
     @Test
     public void testGetContentTypesNone() throws Exception {
 
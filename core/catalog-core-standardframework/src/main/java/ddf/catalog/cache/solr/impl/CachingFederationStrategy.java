@@ -19,6 +19,7 @@
 import ddf.catalog.federation.FederationStrategy;
 import ddf.catalog.operation.CreateResponse;
 import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.FacetResult;
 import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryRequest;
@@ -26,6 +27,7 @@
 import ddf.catalog.operation.SourceResponse;
 import ddf.catalog.operation.Update;
 import ddf.catalog.operation.UpdateResponse;
+import ddf.catalog.operation.impl.FacetResultImpl;
 import ddf.catalog.operation.impl.ProcessingDetailsImpl;
 import ddf.catalog.operation.impl.QueryImpl;
 import ddf.catalog.operation.impl.QueryRequestImpl;
@@ -63,8 +65,6 @@
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.Phaser;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -107,12 +107,9 @@ public class CachingFederationStrategy implements FederationStrategy, PostIngest
 
     private static final int DEFAULT_MAX_START_INDEX = 50000;
 
-    private int maxStartIndex;
-
-    // register one party for scheduled phase advancer
-    private CacheCommitPhaser phaser = new CacheCommitPhaser(1);
+    private static final long DEFAULT_CACHE_COMMIT_TIMEOUT_MILLIS = 60000;
 
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private int maxStartIndex;
 
     /**
      * The {@link List} of pre-federated query plugins to execute on the query request before the
@@ -140,8 +137,6 @@ public CachingFederationStrategy(ExecutorService queryExecutorService,
         this.postQuery = postQuery;
         this.maxStartIndex = DEFAULT_MAX_START_INDEX;
         this.cache = cache;
-        // phase advancer blocks waiting for next phase advance, delay 1 second between advances
-        scheduler.scheduleWithFixedDelay(new PhaseAdvancer(phaser), 1, 1, TimeUnit.SECONDS);
     }
 
     @Override
@@ -366,12 +361,17 @@ public SourceResponse call() throws Exception {
                     request.getProperties()));
 
             if (INDEX_QUERY_MODE.equals(request.getPropertyValue(QUERY_MODE))) {
-                // block next phase
-                phaser.register();
-                // cache results
-                cache.create(getMetacards(sourceResponse.getResults()));
-                // unblock phase and wait for all other parties to unblock phase
-                phaser.awaitAdvance(phaser.arriveAndDeregister());
+                // cache results and wait for the commit that makes them visible
+                long timeout = request.getQuery().getTimeoutMillis() > 0 ? request.getQuery()
+                        .getTimeoutMillis() : DEFAULT_CACHE_COMMIT_TIMEOUT_MILLIS;
+                try {
+                    cache.create(getMetacards(sourceResponse.getResults())).get(timeout,
+                            TimeUnit.MILLISECONDS);
+                } catch (ExecutionException e) {
+                    logger.warn("Unable to commit results to cache.", e);
+                } catch (TimeoutException e) {
+                    logger.warn("Results were not committed to cache within {} ms.", timeout);
+                }
             } else if (!NATIVE_QUERY_MODE.equals(request.getPropertyValue(QUERY_MODE))) {
                 cacheExecutorService.submit(new Runnable() {
                     @Override public void run() {
@@ -556,7 +556,13 @@ public void run() {
                         totalHits += sourceResponse.getHits();
 
                         Map<String, Serializable> properties = sourceResponse.getProperties();
+                        Serializable facetResults = FacetResultImpl.merge(
+                                returnProperties.get(FacetResult.FACET_RESULTS),
+                                properties.get(FacetResult.FACET_RESULTS), request);
                         returnProperties.putAll(properties);
+                        if (facetResults != null) {
+                            returnProperties.put(FacetResult.FACET_RESULTS, facetResults);
+                        }
                     }
                 } catch (InterruptedException e) {
                     interruptRemainingSources(processingDetails, e);
@@ -622,42 +628,8 @@ private long getTimeRemaining(long deadline) {
 
     }
 
-    // Phaser that forces all added documents to commit to the cache on phase advance
-    private class CacheCommitPhaser extends Phaser {
-
-        public CacheCommitPhaser(int parties) {
-            super(parties);
-        }
-
-        @Override
-        protected boolean onAdvance(int phase, int registeredParties) {
-            // registeredParties should be 1 since all parties other than the first
-            // will arriveAndDeregister when advancing
-            cache.forceCommit();
-
-            return super.onAdvance(phase, registeredParties);
-        }
-
-    }
-
-    // Runnable that makes one party arrive to a phaser on run
-    private static class PhaseAdvancer implements Runnable {
-
-        private final Phaser phaser;
-
-        public PhaseAdvancer(Phaser phaser) {
-            this.phaser = phaser;
-        }
-
-        @Override
-        public void run() {
-            phaser.arriveAndAwaitAdvance();
-        }
-    }
-
     public void shutdown() {
-        phaser.forceTermination();
-        scheduler.shutdown();
+        cacheExecutorService.shutdown();
     }
 
 }
@@ -15,6 +15,7 @@
 package ddf.catalog.cache.solr.impl;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.MetacardCreationException;
 import ddf.catalog.data.impl.MetacardImpl;
@@ -44,9 +45,9 @@
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Catalog cache implementation using Apache Solr 4
@@ -67,6 +68,11 @@ public class SolrCache {
 
     public static final String CACHED_DATE = "cached" + SchemaFields.DATE_SUFFIX;
 
+    /**
+     * Maximum time in milliseconds before cached metacards are visible to cache queries
+     */
+    public static final long COMMIT_LATENCY = 1000;
+
     private FilterAdapter filterAdapter;
 
     private String url = SolrServerFactory.DEFAULT_HTTPS_ADDRESS;
@@ -77,8 +83,6 @@ public class SolrCache {
 
     private SolrMetacardClient client;
 
-    private AtomicBoolean dirty = new AtomicBoolean(false);
-
     private ScheduledExecutorService scheduler;
 
     private long expirationIntervalInMinutes = 10;
@@ -102,9 +106,14 @@ public SourceResponse query(QueryRequest request) throws UnsupportedQueryExcepti
         return client.query(request);
     }
 
-    public void create(List<Metacard> metacards) {
+    /**
+     * Caches the metacards.
+     *
+     * @return a future completed once the metacards are visible to cache queries
+     */
+    public Future<Void> create(List<Metacard> metacards) {
         if (metacards == null || metacards.size() == 0) {
-            return;
+            return Futures.immediateFuture(null);
         }
 
         List<Metacard> updatedMetacards = new ArrayList<>();
@@ -119,11 +128,16 @@ public void create(List<Metacard> metacards) {
             }
         }
 
+        if (updatedMetacards.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+
         try {
             client.add(updatedMetacards, false);
-            dirty.set(true);
+            return client.getCommitScheduler().getVisibility();
         } catch (SolrServerException | SolrException | IOException | MetacardCreationException e) {
             LOGGER.warn("Solr server exception caching metacard(s)", e);
+            return Futures.immediateFailedFuture(e);
         }
     }
 
@@ -145,7 +159,6 @@ public void delete(DeleteRequest deleteRequest) {
 
         try {
             client.deleteByIds(fieldName, deleteRequest.getAttributeValues(), false);
-            dirty.set(true);
         } catch (SolrServerException | IOException e) {
             LOGGER.error("Solr server exception while deleting from cache", e);
         }
@@ -207,21 +220,24 @@ public void updateServer(String newUrl) {
                 }
 
                 server = SolrServerFactory.getHttpSolrServer(url, METACARD_CACHE_CORE_NAME);
+                if (client != null) {
+                    client.shutdown();
+                }
                 client = new CacheSolrMetacardClient(this.server, filterAdapter, solrFilterDelegateFactory);
+                client.getCommitScheduler().setMaxLatency(COMMIT_LATENCY);
             }
         } else {
             this.url = null;
         }
     }
 
-    public void forceCommit() {
-        try {
-            if (dirty.compareAndSet(true, false)) {
-                server.commit();
-            }
-        } catch (SolrServerException | IOException e) {
-            LOGGER.warn("Unable to commit changes to cache.", e);
-        }
+    /**
+     * Commits the changes to the cache as soon as possible.
+     *
+     * @return a future completed once all the changes are visible to cache queries
+     */
+    public Future<Void> forceCommit() {
+        return client.getCommitScheduler().commit();
     }
 
     public String getMetacardId(SolrDocument doc) {
@@ -236,6 +252,7 @@ public void shutdown() {
         LOGGER.info("Shutting down cache expiration scheduler.");
         shutdownCacheExpirationScheduler();
         LOGGER.info("Shutting down solr server.");
+        client.shutdown();
         server.shutdown();
     }
 
@@ -299,9 +316,10 @@ protected SolrQuery getSolrQuery(QueryRequest request, SolrFilterDelegate solrFi
         }
 
         @Override
-        protected SolrInputDocument getSolrInputDocument(Metacard metacard)
-                throws MetacardCreationException {
-            SolrInputDocument solrInputDocument = super.getSolrInputDocument(metacard);
+        protected SolrInputDocument getSolrInputDocument(Metacard metacard,
+                SolrDocument previousDocument) throws MetacardCreationException {
+            SolrInputDocument solrInputDocument = super.getSolrInputDocument(metacard,
+                    previousDocument);
 
             solrInputDocument.addField(CACHED_DATE, new Date());
 
@@ -17,6 +17,7 @@
 import ddf.catalog.CatalogFramework;
 import ddf.catalog.Constants;
 import ddf.catalog.FanoutCatalogFramework;
+import ddf.catalog.StreamingIngest;
 import ddf.catalog.cache.impl.CacheKey;
 import ddf.catalog.cache.impl.ResourceCache;
 import ddf.catalog.data.BinaryContent;
@@ -35,6 +36,7 @@
 import ddf.catalog.operation.CreateResponse;
 import ddf.catalog.operation.DeleteRequest;
 import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.IngestProgress;
 import ddf.catalog.operation.ProcessingDetails;
 import ddf.catalog.operation.Query;
 import ddf.catalog.operation.QueryRequest;
@@ -77,6 +79,7 @@
 import ddf.catalog.source.ConnectedSource;
 import ddf.catalog.source.FederatedSource;
 import ddf.catalog.source.IngestException;
+import ddf.catalog.source.MetacardIdLookup;
 import ddf.catalog.source.Source;
 import ddf.catalog.source.SourceDescriptor;
 import ddf.catalog.source.SourceUnavailableException;
@@ -108,6 +111,7 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -116,6 +120,9 @@
 import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * CatalogFrameworkImpl is the core class of DDF. It is used for query, create, update, delete, and
@@ -125,7 +132,7 @@
  */
 @SuppressWarnings("deprecation")
 public class CatalogFrameworkImpl extends DescribableImpl implements ConfigurationWatcher,
-        CatalogFramework {
+        CatalogFramework, StreamingIngest {
 
     private static final String PRE_INGEST_ERROR = "Error during pre-ingest service invocation:\n\n";
 
@@ -136,6 +143,12 @@ public class CatalogFrameworkImpl extends DescribableImpl implements Configurati
 
     static final Logger INGEST_LOGGER = LoggerFactory.getLogger("ingestLogger");
 
+    private static final int DEFAULT_INGEST_BATCH_SIZE = 1000;
+
+    private static final int DEFAULT_INGEST_CONCURRENCY = 2;
+
+    private static final int MAX_INGEST_THREADS = 16;
+
     protected static final String FAILED_BY_GET_RESOURCE_PLUGIN = "Error during Pre/PostResourcePlugin.";
 
     private static final String FANOUT_MESSAGE = "Fanout proxy does not support " +
@@ -165,6 +178,28 @@ public class CatalogFrameworkImpl extends DescribableImpl implements Configurati
      */
     protected List<PostIngestPlugin> postIngest;
 
+    /**
+     * Runs the post-ingest plugins, on the request thread or on their own workers.
+     */
+    protected PostIngestDispatcher postIngestDispatcher;
+
+    /**
+     * Runs the {@link ddf.catalog.plugin.ReadOnlyPlugin}s without making the operations wait.
+     */
+    protected ReadOnlyPluginExecutor readOnlyPlugins = new ReadOnlyPluginExecutor();
+
+    /**
+     * Runs the readers and batches of the streaming ingests. It does not queue tasks, so that a
+     * reader never waits for a batch queued behind it, and rejects them once all its threads are
+     * busy, so that the ingest runs them on the submitting thread instead.
+     */
+    protected ExecutorService ingestPool = new ThreadPoolExecutor(0, MAX_INGEST_THREADS, 60L,
+            TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+
+    private int ingestBatchSize = DEFAULT_INGEST_BATCH_SIZE;
+
+    private int ingestConcurrency = DEFAULT_INGEST_CONCURRENCY;
+
     /**
      * The {@link List} of pre-query plugins to execute on the query request before the query is
      * executed on the catalog.
@@ -363,6 +398,8 @@ public CatalogFrameworkImpl(List<CatalogProvider> catalogProviders, BundleContex
 
         this.preIngest = preIngest;
         this.postIngest = postIngest;
+        this.postIngestDispatcher = new PostIngestDispatcher(postIngest, readOnlyPlugins,
+                context);
         this.preQuery = preQuery;
         this.postQuery = postQuery;
         this.preResource = preResource;
@@ -455,6 +492,64 @@ public void setCacheWhenCanceled(boolean cacheWhenCanceled) {
         this.reliableResourceDownloadManager.setCacheWhenCanceled(cacheWhenCanceled);
     }
 
+    /**
+     * Enables running the post-ingest plugins that are not configured as synchronous on their own
+     * workers, after the ingest operation returns.
+     */
+    public void setAsyncPostIngestEnabled(boolean asyncPostIngestEnabled) {
+        logger.debug("Setting asyncPostIngestEnabled = {}", asyncPostIngestEnabled);
+        postIngestDispatcher.setAsynchronous(asyncPostIngestEnabled);
+    }
+
+    /**
+     * Sets the class names of the post-ingest plugins that always run before the ingest operation
+     * returns.
+     */
+    public void setSynchronousPostIngestPlugins(List<String> synchronousPostIngestPlugins) {
+        logger.debug("Setting synchronousPostIngestPlugins = {}", synchronousPostIngestPlugins);
+        postIngestDispatcher.setSynchronousPlugins(synchronousPostIngestPlugins);
+    }
+
+    public void setPostIngestConcurrency(int postIngestConcurrency) {
+        logger.debug("Setting postIngestConcurrency = {}", postIngestConcurrency);
+        postIngestDispatcher.setConcurrency(postIngestConcurrency);
+    }
+
+    public void setPostIngestMaxRetries(int postIngestMaxRetries) {
+        logger.debug("Setting postIngestMaxRetries = {}", postIngestMaxRetries);
+        postIngestDispatcher.setMaxRetries(postIngestMaxRetries);
+    }
+
+    public void setPostIngestJournalDirectory(String postIngestJournalDirectory) {
+        logger.debug("Setting postIngestJournalDirectory = {}", postIngestJournalDirectory);
+        postIngestDispatcher.setJournalDirectory(postIngestJournalDirectory);
+    }
+
+    /**
+     * Sets the maximum number of metacards created by each request of a streaming ingest.
+     */
+    public void setIngestBatchSize(int ingestBatchSize) {
+        logger.debug("Setting ingestBatchSize = {}", ingestBatchSize);
+        this.ingestBatchSize = ingestBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of requests of a streaming ingest in progress at the same time.
+     */
+    public void setIngestConcurrency(int ingestConcurrency) {
+        logger.debug("Setting ingestConcurrency = {}", ingestConcurrency);
+        this.ingestConcurrency = ingestConcurrency;
+    }
+
+    /**
+     * Invoked by blueprint when the framework is destroyed.
+     */
+    public void destroy() {
+        postIngestDispatcher.shutdown();
+        readOnlyPlugins.shutdown();
+        ingestPool.shutdown();
+    }
+
     public void setRetrieveStatusEventPublisher(
             DownloadsStatusEventPublisher retrieveStatusEventPublisher) {
         this.retrieveStatusEventPublisher = retrieveStatusEventPublisher;
@@ -804,6 +899,10 @@ public CreateResponse create(CreateRequest createRequest) throws IngestException
         Exception ingestError = null;
         try {
             for (PreIngestPlugin plugin : preIngest) {
+                if (ReadOnlyPluginExecutor.isReadOnly(plugin)) {
+                    readOnlyPlugins.execute(plugin, createReq);
+                    continue;
+                }
                 try {
                     createReq = plugin.process(createReq);
                 } catch (PluginExecutionException e) {
@@ -840,15 +939,7 @@ public CreateResponse create(CreateRequest createRequest) throws IngestException
 
         try {
             createResponse = validateFixCreateResponse(createResponse, createReq);
-            for (final PostIngestPlugin plugin : postIngest) {
-                try {
-                    createResponse = plugin.process(createResponse);
-                } catch (PluginExecutionException e) {
-                    logger.info(
-                            "Plugin processing failed. This is allowable. Skipping to next plugin.",
-                            e);
-                }
-            }
+            createResponse = postIngestDispatcher.dispatch(createResponse);
         } catch (RuntimeException re) {
             logger.warn(
                     "Exception during runtime while performing doing post create operations (plugins and pubsub)",
@@ -867,6 +958,29 @@ public CreateResponse create(CreateRequest createRequest) throws IngestException
         return createResponse;
     }
 
+    @Override
+    public IngestProgress ingest(Iterator<Metacard> metacards,
+            Map<String, Serializable> properties) throws IngestException,
+            SourceUnavailableException {
+        if (fanoutEnabled) {
+            throw new IngestException(FANOUT_MESSAGE);
+        }
+        if (metacards == null) {
+            throw new IngestException("Cannot perform ingest with null metacards.");
+        }
+        if (!sourceIsAvailable(catalog)) {
+            throw new SourceUnavailableException(
+                    "Local provider is not available, cannot perform ingest operation.");
+        }
+
+        MetacardIdLookup idLookup = catalog instanceof MetacardIdLookup ? (MetacardIdLookup) catalog
+                : null;
+        StreamingIngestProgress ingest = new StreamingIngestProgress(this, idLookup,
+                postIngestDispatcher, metacards, properties, ingestBatchSize, ingestConcurrency);
+        ingest.start(ingestPool);
+        return ingest;
+    }
+
     @Override
     public UpdateResponse update(UpdateRequest updateRequest) throws IngestException,
             SourceUnavailableException {
@@ -891,6 +1005,10 @@ public UpdateResponse update(UpdateRequest updateRequest) throws IngestException
         try {
 
             for (PreIngestPlugin plugin : preIngest) {
+                if (ReadOnlyPluginExecutor.isReadOnly(plugin)) {
+                    readOnlyPlugins.execute(plugin, updateReq);
+                    continue;
+                }
                 try {
                     updateReq = plugin.process(updateReq);
                 } catch (PluginExecutionException e) {
@@ -906,13 +1024,7 @@ public UpdateResponse update(UpdateRequest updateRequest) throws IngestException
 
             // Handle the posting of messages to pubsub
             updateResponse = validateFixUpdateResponse(updateResponse, updateReq);
-            for (final PostIngestPlugin plugin : postIngest) {
-                try {
-                    updateResponse = plugin.process(updateResponse);
-                } catch (PluginExecutionException e) {
-                    logger.info("Plugin exception", e);
-                }
-            }
+            updateResponse = postIngestDispatcher.dispatch(updateResponse);
 
         } catch (StopProcessingException see) {
             logger.warn(PRE_INGEST_ERROR, see);
@@ -952,6 +1064,10 @@ public DeleteResponse delete(DeleteRequest deleteRequest) throws IngestException
         DeleteResponse deleteResponse = null;
         try {
             for (PreIngestPlugin plugin : preIngest) {
+                if (ReadOnlyPluginExecutor.isReadOnly(plugin)) {
+                    readOnlyPlugins.execute(plugin, deleteRequest);
+                    continue;
+                }
                 try {
                     deleteRequest = plugin.process(deleteRequest);
                 } catch (PluginExecutionException e) {
@@ -969,13 +1085,7 @@ public DeleteResponse delete(DeleteRequest deleteRequest) throws IngestException
 
             // Post results to be available for pubsub
             deleteResponse = validateFixDeleteResponse(deleteResponse, deleteRequest);
-            for (final PostIngestPlugin plugin : postIngest) {
-                try {
-                    deleteResponse = plugin.process(deleteResponse);
-                } catch (PluginExecutionException e) {
-                    logger.info("Plugin exception", e);
-                }
-            }
+            deleteResponse = postIngestDispatcher.dispatch(deleteResponse);
 
         } catch (StopProcessingException see) {
             logger.warn(PRE_INGEST_ERROR + see.getMessage(), see);
@@ -1048,6 +1158,10 @@ public QueryResponse query(QueryRequest queryRequest, FederationStrategy strateg
             }
 
             for (PreQueryPlugin service : preQuery) {
+                if (ReadOnlyPluginExecutor.isReadOnly(service)) {
+                    readOnlyPlugins.execute(service, queryReq);
+                    continue;
+                }
                 try {
                     queryReq = service.process(queryReq);
                 } catch (PluginExecutionException see) {
@@ -1077,6 +1191,10 @@ public QueryResponse query(QueryRequest queryRequest, FederationStrategy strateg
             validateFixQueryResponse(queryResponse, queryReq, overrideFanoutRename);
 
             for (PostQueryPlugin service : postQuery) {
+                if (ReadOnlyPluginExecutor.isReadOnly(service)) {
+                    readOnlyPlugins.execute(service, queryResponse);
+                    continue;
+                }
                 try {
                     queryResponse = service.process(queryResponse);
                 } catch (PluginExecutionException see) {
@@ -1202,7 +1320,13 @@ private QueryResponse doQuery(QueryRequest queryRequest, FederationStrategy stra
 
         if (addCatalogProvider) {
             if (sourceIsAvailable(catalog)) {
-                sourcesToQuery.add(catalog);
+                if (catalog instanceof MetacardIdLookup
+                        && MetacardIdLookupSource.getRequestedId(queryRequest.getQuery()) != null) {
+                    // the strategy still runs, only the search of the provider is skipped
+                    sourcesToQuery.add(new MetacardIdLookupSource(catalog));
+                } else {
+                    sourcesToQuery.add(catalog);
+                }
             } else {
                 exceptions.add(createUnavailableProcessingDetails(catalog));
             }
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.opengis.filter.Filter;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.ContentType;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.Query;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.SourceResponse;
+import ddf.catalog.operation.impl.QueryImpl;
+import ddf.catalog.operation.impl.SourceResponseImpl;
+import ddf.catalog.source.CatalogProvider;
+import ddf.catalog.source.MetacardIdLookup;
+import ddf.catalog.source.Source;
+import ddf.catalog.source.SourceMonitor;
+import ddf.catalog.source.UnsupportedQueryException;
+
+/**
+ * Stands for the local {@link CatalogProvider} in the sources given to the
+ * {@link ddf.catalog.federation.FederationStrategy} when a query is a lookup of a single ID. The
+ * strategy and its federated query plugins run as for any query; only the query of the provider
+ * is answered with a {@link MetacardIdLookup}, which skips the filter translation and the search.
+ * Any other query, such as one the strategy rewrote, is passed to the provider.
+ */
+class MetacardIdLookupSource implements Source {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetacardIdLookupSource.class);
+
+    private final CatalogProvider provider;
+
+    private final MetacardIdLookup idLookup;
+
+    /**
+     * @param provider
+     *            the local provider, which must implement {@link MetacardIdLookup}
+     */
+    MetacardIdLookupSource(CatalogProvider provider) {
+        this.provider = provider;
+        this.idLookup = (MetacardIdLookup) provider;
+    }
+
+    @Override
+    public SourceResponse query(QueryRequest request) throws UnsupportedQueryException {
+        String metacardId = getRequestedId(request.getQuery());
+        if (metacardId == null) {
+            return provider.query(request);
+        }
+
+        List<Metacard> metacards;
+        try {
+            metacards = idLookup.getMetacards(Collections.singletonList(metacardId));
+        } catch (UnsupportedQueryException e) {
+            LOGGER.debug("Lookup by id failed, running the query instead.", e);
+            return provider.query(request);
+        }
+
+        List<Result> results = new ArrayList<>(metacards.size());
+        for (Metacard metacard : metacards) {
+            results.add(new ResultImpl(metacard));
+        }
+        return new SourceResponseImpl(request, results);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return provider.isAvailable();
+    }
+
+    @Override
+    public boolean isAvailable(SourceMonitor callback) {
+        return provider.isAvailable(callback);
+    }
+
+    @Override
+    public Set<ContentType> getContentTypes() {
+        return provider.getContentTypes();
+    }
+
+    @Override
+    public String getVersion() {
+        return provider.getVersion();
+    }
+
+    @Override
+    public String getId() {
+        return provider.getId();
+    }
+
+    @Override
+    public String getTitle() {
+        return provider.getTitle();
+    }
+
+    @Override
+    public String getDescription() {
+        return provider.getDescription();
+    }
+
+    @Override
+    public String getOrganization() {
+        return provider.getOrganization();
+    }
+
+    /**
+     * @return the ID of the metacard the query is restricted to, or null if the query is not a
+     *         lookup of a single ID
+     */
+    static String getRequestedId(Query query) {
+        if (query == null || query.getStartIndex() > 1) {
+            return null;
+        }
+        Filter filter = query instanceof QueryImpl ? ((QueryImpl) query).getFilter() : query;
+        if (!(filter instanceof PropertyIsEqualTo)) {
+            return null;
+        }
+        PropertyIsEqualTo equalTo = (PropertyIsEqualTo) filter;
+        if (equalTo.isMatchingCase() && equalTo.getExpression1() instanceof PropertyName
+                && equalTo.getExpression2() instanceof Literal
+                && Metacard.ID.equals(((PropertyName) equalTo.getExpression1())
+                        .getPropertyName())) {
+            Object value = ((Literal) equalTo.getExpression2()).getValue();
+            return value == null ? null : value.toString();
+        }
+        return null;
+    }
+}
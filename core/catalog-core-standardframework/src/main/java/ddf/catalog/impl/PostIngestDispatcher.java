@@ -0,0 +1,861 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.impl;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.Update;
+import ddf.catalog.operation.UpdateResponse;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.operation.impl.DeleteRequestImpl;
+import ddf.catalog.operation.impl.DeleteResponseImpl;
+import ddf.catalog.operation.impl.UpdateRequestImpl;
+import ddf.catalog.operation.impl.UpdateResponseImpl;
+import ddf.catalog.plugin.PluginExecutionException;
+import ddf.catalog.plugin.PostIngestPlugin;
+
+/**
+ * Runs the {@link PostIngestPlugin}s on the responses of the ingest operations.
+ *
+ * <p>
+ * When asynchronous dispatch is disabled, every plugin runs on the request thread, in order, as
+ * part of the ingest operation. When it is enabled, only the plugins configured as synchronous run
+ * on the request thread. The response they return is appended to a {@link PostIngestJournal} and
+ * handed to the other plugins, each of which processes the responses on its own workers, retrying
+ * failures, while the ingest operation returns. The responses still journaled after a restart are
+ * dispatched to the asynchronous plugins again, so those plugins may process a response more than
+ * once.
+ * </p>
+ *
+ * <p>
+ * Read-only plugins that would run on the request thread are handed to a
+ * {@link ReadOnlyPluginExecutor} instead, when one is given.
+ * </p>
+ *
+ * <p>
+ * Each dispatched response is completed in the journal it was appended to, even if the journal
+ * directory changed in the meantime. Responses recovered from the journal are read with the class
+ * loaders of all the bundles, so that metacards of other bundles can be read back.
+ * </p>
+ */
+public class PostIngestDispatcher implements PostIngestDispatcherMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostIngestDispatcher.class);
+
+    public static final int DEFAULT_CONCURRENCY = 1;
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private static final String KARAF_HOME = "karaf.home";
+
+    private static final String DEFAULT_JOURNAL_DIRECTORY = "data" + File.separator
+            + "post-ingest";
+
+    private final List<PostIngestPlugin> plugins;
+
+    private final ReadOnlyPluginExecutor readOnlyPlugins;
+
+    private final ConcurrentMap<PostIngestPlugin, PluginWorker> workers = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService retryExecutor = new ScheduledThreadPoolExecutor(1,
+            new DispatchThreadFactory("post-ingest-retry"));
+
+    private final BundleContext context;
+
+    private volatile boolean asynchronous = false;
+
+    private volatile Set<String> synchronousPlugins = Collections.emptySet();
+
+    private volatile int concurrency = DEFAULT_CONCURRENCY;
+
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+    private String journalDirectory = "";
+
+    private PostIngestJournal journal;
+
+    /**
+     * Serialized operations recovered from the journal, read and dispatched with the first
+     * response dispatched asynchronously so that the plugins, and the bundles of their metacards,
+     * have been bound by then
+     */
+    private Map<Long, byte[]> recoveredOperations = Collections.emptyMap();
+
+    private PostIngestJournal recoveredJournal;
+
+    private ObjectName objectName;
+
+    /**
+     * @param plugins
+     *            the post-ingest plugins, in the order they run
+     */
+    public PostIngestDispatcher(List<PostIngestPlugin> plugins) {
+        this(plugins, null, null);
+    }
+
+    /**
+     * @param plugins
+     *            the post-ingest plugins, in the order they run
+     * @param readOnlyPlugins
+     *            executor of the read-only plugins run on the request thread, or null to run them
+     *            in order with the other plugins
+     */
+    public PostIngestDispatcher(List<PostIngestPlugin> plugins,
+            ReadOnlyPluginExecutor readOnlyPlugins) {
+        this(plugins, readOnlyPlugins, null);
+    }
+
+    /**
+     * @param plugins
+     *            the post-ingest plugins, in the order they run
+     * @param readOnlyPlugins
+     *            executor of the read-only plugins run on the request thread, or null to run them
+     *            in order with the other plugins
+     * @param context
+     *            context of the bundle of the framework, whose bundles load the classes of the
+     *            recovered responses, or null to load them with the class loader of the framework
+     */
+    public PostIngestDispatcher(List<PostIngestPlugin> plugins,
+            ReadOnlyPluginExecutor readOnlyPlugins, BundleContext context) {
+        this.plugins = plugins;
+        this.readOnlyPlugins = readOnlyPlugins;
+        this.context = context;
+    }
+
+    public CreateResponse dispatch(CreateResponse response) {
+        CreateResponse processed = response;
+        for (PostIngestPlugin plugin : getPlugins(true)) {
+            if (readOnlyPlugins != null && ReadOnlyPluginExecutor.isReadOnly(plugin)) {
+                readOnlyPlugins.execute(plugin, processed);
+                continue;
+            }
+            try {
+                processed = plugin.process(processed);
+            } catch (PluginExecutionException e) {
+                LOGGER.info("Plugin processing failed. This is allowable. Skipping to next plugin.",
+                        e);
+            }
+        }
+        if (asynchronous) {
+            dispatchAsynchronously(processed, Operation.forResponse(processed));
+        }
+        return processed;
+    }
+
+    public UpdateResponse dispatch(UpdateResponse response) {
+        UpdateResponse processed = response;
+        for (PostIngestPlugin plugin : getPlugins(true)) {
+            if (readOnlyPlugins != null && ReadOnlyPluginExecutor.isReadOnly(plugin)) {
+                readOnlyPlugins.execute(plugin, processed);
+                continue;
+            }
+            try {
+                processed = plugin.process(processed);
+            } catch (PluginExecutionException e) {
+                LOGGER.info("Plugin exception", e);
+            }
+        }
+        if (asynchronous) {
+            dispatchAsynchronously(processed, Operation.forResponse(processed));
+        }
+        return processed;
+    }
+
+    public DeleteResponse dispatch(DeleteResponse response) {
+        DeleteResponse processed = response;
+        for (PostIngestPlugin plugin : getPlugins(true)) {
+            if (readOnlyPlugins != null && ReadOnlyPluginExecutor.isReadOnly(plugin)) {
+                readOnlyPlugins.execute(plugin, processed);
+                continue;
+            }
+            try {
+                processed = plugin.process(processed);
+            } catch (PluginExecutionException e) {
+                LOGGER.info("Plugin exception", e);
+            }
+        }
+        if (asynchronous) {
+            dispatchAsynchronously(processed, Operation.forResponse(processed));
+        }
+        return processed;
+    }
+
+    /**
+     * @param asynchronous
+     *            true to run the plugins not configured as synchronous on their own workers,
+     *            false to run every plugin on the request thread
+     */
+    public synchronized void setAsynchronous(boolean asynchronous) {
+        if (asynchronous && !this.asynchronous) {
+            this.asynchronous = true;
+            recover();
+            registerMBean();
+        }
+        this.asynchronous = asynchronous;
+    }
+
+    /**
+     * @param synchronousPlugins
+     *            class names of the plugins that always run on the request thread
+     */
+    public void setSynchronousPlugins(Collection<String> synchronousPlugins) {
+        Set<String> names = new HashSet<>();
+        if (synchronousPlugins != null) {
+            for (String name : synchronousPlugins) {
+                if (name != null && !name.trim().isEmpty()) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        this.synchronousPlugins = names;
+    }
+
+    /**
+     * @param concurrency
+     *            number of responses each asynchronous plugin processes at the same time. With
+     *            more than one, a plugin may process the responses out of order.
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        for (PluginWorker worker : workers.values()) {
+            worker.setConcurrency(this.concurrency);
+        }
+    }
+
+    /**
+     * @param maxRetries
+     *            number of times a response is given again to an asynchronous plugin that failed
+     *            to process it
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /**
+     * @param journalDirectory
+     *            directory of the journal, or an empty string for data/post-ingest in the
+     *            installation directory
+     */
+    public synchronized void setJournalDirectory(String journalDirectory) {
+        String directory = journalDirectory == null ? "" : journalDirectory.trim();
+        if (directory.equals(this.journalDirectory)) {
+            return;
+        }
+        this.journalDirectory = directory;
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            if (asynchronous) {
+                recover();
+            }
+        }
+    }
+
+    @Override
+    public synchronized int getPendingCount() {
+        return journal == null ? 0 : journal.getPendingCount();
+    }
+
+    /**
+     * @return for each asynchronous plugin class, the time in milliseconds since the oldest
+     *         response it has not processed yet was dispatched, 0 if it is up to date
+     */
+    public Map<String, Long> getLagMillis() {
+        Map<String, Long> lag = new HashMap<>();
+        for (Entry<PostIngestPlugin, PluginWorker> worker : workers.entrySet()) {
+            lag.put(worker.getKey().getClass().getName(), worker.getValue().getLagMillis());
+        }
+        return lag;
+    }
+
+    @Override
+    public long getMaxLagMillis() {
+        long lag = 0;
+        for (PluginWorker worker : workers.values()) {
+            lag = Math.max(lag, worker.getLagMillis());
+        }
+        return lag;
+    }
+
+    @Override
+    public long getFailedCount() {
+        long failed = 0;
+        for (PluginWorker worker : workers.values()) {
+            failed += worker.failures.get();
+        }
+        return failed;
+    }
+
+    @Override
+    public String[] getPluginMetrics() {
+        List<String> metrics = new ArrayList<>();
+        for (Entry<PostIngestPlugin, PluginWorker> worker : workers.entrySet()) {
+            metrics.add(worker.getKey().getClass().getName() + " pending="
+                    + worker.getValue().pending.size() + " lagMillis="
+                    + worker.getValue().getLagMillis() + " failed="
+                    + worker.getValue().failures.get());
+        }
+        return metrics.toArray(new String[metrics.size()]);
+    }
+
+    /**
+     * Registers the metrics of this dispatcher with the platform MBean server.
+     */
+    private void registerMBean() {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            objectName = new ObjectName(PostIngestDispatcher.class.getName()
+                    + ":service=post-ingest-dispatcher");
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                mBeanServer.registerMBean(this, objectName);
+            } catch (InstanceAlreadyExistsException iaee) {
+                LOGGER.info("Re-registering Post-Ingest Dispatcher MBean");
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(this, objectName);
+            }
+        } catch (MalformedObjectNameException mone) {
+            LOGGER.info("Could not create objectName.", mone);
+        } catch (Exception e) {
+            LOGGER.warn("Could not register MBean.", e);
+        }
+    }
+
+    /**
+     * Stops the workers, waiting for the responses being processed, and unregisters the metrics.
+     * The responses not processed are left in the journal.
+     */
+    public void shutdown() {
+        retryExecutor.shutdownNow();
+        for (PluginWorker worker : workers.values()) {
+            worker.shutdown();
+        }
+        synchronized (this) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            if (objectName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                } catch (Exception e) {
+                    LOGGER.warn("Exception unregistering MBean: ", e);
+                }
+                objectName = null;
+            }
+        }
+    }
+
+    private List<PostIngestPlugin> getPlugins(boolean synchronous) {
+        if (!asynchronous) {
+            return synchronous ? plugins : Collections.<PostIngestPlugin> emptyList();
+        }
+
+        List<PostIngestPlugin> selected = new ArrayList<>();
+        Set<String> names = synchronousPlugins;
+        for (PostIngestPlugin plugin : plugins) {
+            if (names.contains(plugin.getClass().getName()) == synchronous) {
+                selected.add(plugin);
+            }
+        }
+        return selected;
+    }
+
+    private void dispatchAsynchronously(Object response, Operation operation) {
+        List<PostIngestPlugin> asynchronousPlugins = getPlugins(false);
+        if (asynchronousPlugins.isEmpty()) {
+            return;
+        }
+        dispatchRecovered(asynchronousPlugins);
+        PostIngestJournal currentJournal;
+        synchronized (this) {
+            currentJournal = journal;
+        }
+        long sequence = journal(currentJournal, operation);
+        Dispatch dispatch = new Dispatch(sequence == 0 ? null : currentJournal, sequence,
+                response, asynchronousPlugins.size());
+        for (PostIngestPlugin plugin : asynchronousPlugins) {
+            getWorker(plugin).submit(dispatch);
+        }
+        removeIdleWorkers(asynchronousPlugins);
+    }
+
+    /**
+     * Stops the workers of the plugins that are no longer asynchronous or bound, once they have
+     * processed their responses.
+     */
+    private void removeIdleWorkers(List<PostIngestPlugin> asynchronousPlugins) {
+        for (Entry<PostIngestPlugin, PluginWorker> worker : workers.entrySet()) {
+            if (!asynchronousPlugins.contains(worker.getKey())
+                    && worker.getValue().pending.isEmpty()
+                    && workers.remove(worker.getKey(), worker.getValue())) {
+                worker.getValue().executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Appends the operation to the journal, without failing the ingest operation if it cannot be.
+     * Returns once the operation is flushed to disk, together with those appended concurrently.
+     *
+     * @return the sequence number of the operation, or 0 if it is not journaled
+     */
+    private long journal(PostIngestJournal journal, Operation operation) {
+        if (journal == null) {
+            return 0;
+        }
+        try {
+            try {
+                return journal.append(operation);
+            } catch (NotSerializableException e) {
+                LOGGER.debug("Journaling post-ingest operation without its properties.", e);
+                return journal.append(operation.withoutProperties());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to journal post-ingest operation, it will be lost on restart.",
+                    e);
+            return 0;
+        }
+    }
+
+    /**
+     * Marks the operation completed in the journal it was appended to. Does nothing if that
+     * journal was closed since, so the operation is dispatched again when it is reopened.
+     */
+    private static void complete(PostIngestJournal journal, long sequence) {
+        if (journal == null || sequence == 0) {
+            return;
+        }
+        try {
+            journal.complete(sequence);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to mark post-ingest operation {} completed.", sequence, e);
+        }
+    }
+
+    /**
+     * Opens the journal and reads the operations it still holds.
+     */
+    private void recover() {
+        File directory = getJournalDirectory();
+        Map<Long, byte[]> operations;
+        try {
+            journal = new PostIngestJournal(directory);
+            operations = journal.recover();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to open the post-ingest journal in {}. Post-ingest operations "
+                    + "will be lost on restart.", directory, e);
+            journal = null;
+            return;
+        }
+
+        if (!operations.isEmpty()) {
+            LOGGER.info("Recovered {} journaled post-ingest operations.", operations.size());
+        }
+        recoveredOperations = operations;
+        recoveredJournal = journal;
+    }
+
+    private void dispatchRecovered(List<PostIngestPlugin> asynchronousPlugins) {
+        Map<Long, byte[]> operations;
+        PostIngestJournal operationsJournal;
+        synchronized (this) {
+            operations = recoveredOperations;
+            operationsJournal = recoveredJournal;
+            if (operations.isEmpty()) {
+                return;
+            }
+            recoveredOperations = Collections.emptyMap();
+            recoveredJournal = null;
+        }
+
+        LOGGER.info("Dispatching {} journaled post-ingest operations.", operations.size());
+        ClassLoader classLoader = new BundlesClassLoader(context);
+        for (Entry<Long, byte[]> operation : operations.entrySet()) {
+            Object response;
+            try {
+                response = ((Operation) PostIngestJournal.read(operation.getValue(), classLoader))
+                        .toResponse();
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                LOGGER.warn("Unable to read post-ingest operation {} from the journal, dropping "
+                        + "it.", operation.getKey(), e);
+                complete(operationsJournal, operation.getKey());
+                continue;
+            }
+            Dispatch dispatch = new Dispatch(operationsJournal, operation.getKey(), response,
+                    asynchronousPlugins.size());
+            for (PostIngestPlugin plugin : asynchronousPlugins) {
+                getWorker(plugin).submit(dispatch);
+            }
+        }
+    }
+
+    private File getJournalDirectory() {
+        if (!journalDirectory.isEmpty()) {
+            return new File(journalDirectory);
+        }
+        String karafHome = System.getProperty(KARAF_HOME);
+        return karafHome == null ? new File(DEFAULT_JOURNAL_DIRECTORY) : new File(karafHome,
+                DEFAULT_JOURNAL_DIRECTORY);
+    }
+
+    private PluginWorker getWorker(PostIngestPlugin plugin) {
+        PluginWorker worker = workers.get(plugin);
+        if (worker == null) {
+            PluginWorker newWorker = new PluginWorker(plugin, concurrency);
+            worker = workers.putIfAbsent(plugin, newWorker);
+            if (worker == null) {
+                worker = newWorker;
+            } else {
+                newWorker.shutdown();
+            }
+        }
+        return worker;
+    }
+
+    /**
+     * A response dispatched to the asynchronous plugins, completed in the journal once all of them
+     * are done with it.
+     */
+    private static final class Dispatch {
+
+        private final PostIngestJournal journal;
+
+        private final long sequence;
+
+        private final Object response;
+
+        private final AtomicInteger remainingPlugins;
+
+        private final long time = System.currentTimeMillis();
+
+        private Dispatch(PostIngestJournal journal, long sequence, Object response,
+                int plugins) {
+            this.journal = journal;
+            this.sequence = sequence;
+            this.response = response;
+            this.remainingPlugins = new AtomicInteger(plugins);
+        }
+
+        private void done() {
+            if (remainingPlugins.decrementAndGet() == 0) {
+                complete(journal, sequence);
+            }
+        }
+    }
+
+    /**
+     * Processes the responses dispatched to one plugin.
+     */
+    private final class PluginWorker {
+
+        private final PostIngestPlugin plugin;
+
+        private final ThreadPoolExecutor executor;
+
+        private final Map<Dispatch, Long> pending = new ConcurrentHashMap<>();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private PluginWorker(PostIngestPlugin plugin, int concurrency) {
+            this.plugin = plugin;
+            this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new DispatchThreadFactory("post-ingest-" + plugin.getClass().getSimpleName()));
+        }
+
+        private void submit(Dispatch dispatch) {
+            pending.put(dispatch, dispatch.time);
+            execute(dispatch, 0);
+        }
+
+        private void execute(final Dispatch dispatch, final int attempt) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        process(dispatch, attempt);
+                    }
+                });
+            } catch (RuntimeException e) {
+                LOGGER.debug("Post-ingest worker of {} is stopped.", plugin, e);
+                pending.remove(dispatch);
+            }
+        }
+
+        private void process(final Dispatch dispatch, final int attempt) {
+            try {
+                if (dispatch.response instanceof CreateResponse) {
+                    plugin.process((CreateResponse) dispatch.response);
+                } else if (dispatch.response instanceof UpdateResponse) {
+                    plugin.process((UpdateResponse) dispatch.response);
+                } else if (dispatch.response instanceof DeleteResponse) {
+                    plugin.process((DeleteResponse) dispatch.response);
+                }
+            } catch (PluginExecutionException | RuntimeException e) {
+                failures.incrementAndGet();
+                if (attempt < maxRetries) {
+                    LOGGER.debug("Post-ingest plugin {} failed, retrying.", plugin, e);
+                    try {
+                        retryExecutor.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                execute(dispatch, attempt + 1);
+                            }
+                        }, RETRY_DELAY_MILLIS << attempt, TimeUnit.MILLISECONDS);
+                        return;
+                    } catch (RuntimeException rejected) {
+                        LOGGER.debug("Post-ingest dispatcher is stopped.", rejected);
+                        pending.remove(dispatch);
+                        return;
+                    }
+                }
+                LOGGER.warn("Post-ingest plugin " + plugin + " failed after " + (attempt + 1)
+                        + " attempts, skipping the response.", e);
+            }
+            pending.remove(dispatch);
+            dispatch.done();
+        }
+
+        private void setConcurrency(int concurrency) {
+            if (concurrency > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(concurrency);
+                executor.setCorePoolSize(concurrency);
+            } else {
+                executor.setCorePoolSize(concurrency);
+                executor.setMaximumPoolSize(concurrency);
+            }
+        }
+
+        private long getLagMillis() {
+            long oldest = Long.MAX_VALUE;
+            for (Long time : pending.values()) {
+                oldest = Math.min(oldest, time);
+            }
+            return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+        }
+
+        private void shutdown() {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * The part of an ingest response journaled so that it can be dispatched again after a restart.
+     */
+    static final class Operation implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private enum Type {
+            CREATE, UPDATE, DELETE
+        }
+
+        private final Type type;
+
+        private final HashMap<String, Serializable> properties;
+
+        private final ArrayList<Metacard> metacards;
+
+        private final ArrayList<Metacard> oldMetacards;
+
+        private final String attributeName;
+
+        private final ArrayList<Serializable> attributeValues;
+
+        private Operation(Type type, Map<String, Serializable> properties,
+                List<Metacard> metacards, List<Metacard> oldMetacards, String attributeName,
+                List<? extends Serializable> attributeValues) {
+            this.type = type;
+            this.properties = properties == null ? new HashMap<String, Serializable>()
+                    : new HashMap<>(properties);
+            this.metacards = metacards == null ? new ArrayList<Metacard>() : new ArrayList<>(
+                    metacards);
+            this.oldMetacards = oldMetacards == null ? null : new ArrayList<>(oldMetacards);
+            this.attributeName = attributeName;
+            this.attributeValues = attributeValues == null ? null : new ArrayList<Serializable>(
+                    attributeValues);
+        }
+
+        static Operation forResponse(CreateResponse response) {
+            return new Operation(Type.CREATE, response.getProperties(),
+                    response.getCreatedMetacards(), null, null, null);
+        }
+
+        static Operation forResponse(UpdateResponse response) {
+            List<Metacard> newMetacards = new ArrayList<>();
+            List<Metacard> oldMetacards = new ArrayList<>();
+            if (response.getUpdatedMetacards() != null) {
+                for (Update update : response.getUpdatedMetacards()) {
+                    newMetacards.add(update.getNewMetacard());
+                    oldMetacards.add(update.getOldMetacard());
+                }
+            }
+            String attributeName = null;
+            List<Serializable> keys = null;
+            if (response.getRequest() != null && response.getRequest().getUpdates() != null) {
+                attributeName = response.getRequest().getAttributeName();
+                keys = new ArrayList<>();
+                for (Entry<Serializable, Metacard> update : response.getRequest().getUpdates()) {
+                    keys.add(update.getKey());
+                }
+            }
+            return new Operation(Type.UPDATE, response.getProperties(), newMetacards,
+                    oldMetacards, attributeName, keys);
+        }
+
+        static Operation forResponse(DeleteResponse response) {
+            String attributeName = null;
+            List<? extends Serializable> attributeValues = null;
+            if (response.getRequest() != null) {
+                attributeName = response.getRequest().getAttributeName();
+                attributeValues = response.getRequest().getAttributeValues();
+            }
+            return new Operation(Type.DELETE, response.getProperties(),
+                    response.getDeletedMetacards(), null, attributeName, attributeValues);
+        }
+
+        Operation withoutProperties() {
+            return new Operation(type, null, metacards, oldMetacards, attributeName,
+                    attributeValues);
+        }
+
+        Object toResponse() {
+            switch (type) {
+            case UPDATE:
+                List<Entry<Serializable, Metacard>> updates = new ArrayList<>();
+                for (int i = 0; i < metacards.size(); i++) {
+                    Metacard metacard = metacards.get(i);
+                    Serializable key = attributeValues != null && attributeValues.size() == metacards
+                            .size() ? attributeValues.get(i) : metacard.getId();
+                    updates.add(new SimpleEntry<Serializable, Metacard>(key, metacard));
+                }
+                return new UpdateResponseImpl(new UpdateRequestImpl(updates, attributeName,
+                        new HashMap<String, Serializable>()), new HashMap<>(properties),
+                        metacards, oldMetacards);
+            case DELETE:
+                return new DeleteResponseImpl(new DeleteRequestImpl(
+                        attributeValues == null ? new ArrayList<Serializable>() : attributeValues,
+                        attributeName, new HashMap<String, Serializable>()),
+                        new HashMap<>(properties), metacards);
+            default:
+                return new CreateResponseImpl(new CreateRequestImpl(metacards),
+                        new HashMap<>(properties), metacards);
+            }
+        }
+    }
+
+    /**
+     * Loads the classes of the recovered responses from the framework, then from any bundle.
+     */
+    private static final class BundlesClassLoader extends ClassLoader {
+
+        private final BundleContext context;
+
+        private BundlesClassLoader(BundleContext context) {
+            super(PostIngestDispatcher.class.getClassLoader());
+            this.context = context;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (context != null) {
+                for (Bundle bundle : context.getBundles()) {
+                    if (bundle.getState() == Bundle.UNINSTALLED) {
+                        continue;
+                    }
+                    try {
+                        return bundle.loadClass(name);
+                    } catch (ClassNotFoundException | IllegalStateException e) {
+                        LOGGER.trace("Class " + name + " not found in bundle " + bundle + ".", e);
+                    }
+                }
+            }
+            ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            if (contextClassLoader != null) {
+                return contextClassLoader.loadClass(name);
+            }
+            throw new ClassNotFoundException(name);
+        }
+    }
+
+    private static final class DispatchThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        private DispatchThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
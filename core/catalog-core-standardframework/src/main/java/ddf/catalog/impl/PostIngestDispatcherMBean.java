@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.impl;
+
+/**
+ * Metrics of the asynchronous post-ingest plugins.
+ */
+public interface PostIngestDispatcherMBean {
+
+    /**
+     * @return the number of responses that some asynchronous plugin has not processed yet
+     */
+    int getPendingCount();
+
+    /**
+     * @return the time in milliseconds since the oldest response that some asynchronous plugin has
+     *         not processed yet was dispatched, 0 if every plugin is up to date
+     */
+    long getMaxLagMillis();
+
+    /**
+     * @return the number of times an asynchronous plugin failed to process a response, retries
+     *         included
+     */
+    long getFailedCount();
+
+    /**
+     * @return for each asynchronous plugin, its class name followed by its pending count, lag and
+     *         failed count
+     */
+    String[] getPluginMetrics();
+}
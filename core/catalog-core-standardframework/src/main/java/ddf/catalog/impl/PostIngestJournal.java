@@ -0,0 +1,436 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the ingest operations waiting for their post-ingest plugins. An operation
+ * is appended before the ingest request returns, and marked completed once every plugin has
+ * processed it. Operations that were never completed are recovered when the journal is opened
+ * again.
+ *
+ * <p>
+ * {@link #append(Serializable)} returns once its operation is flushed to disk. The operations
+ * appended by concurrent threads are flushed together: one of the threads flushes every operation
+ * written so far, outside of the journal lock, while the others wait for that flush, or for the
+ * next one if it started before their operation was written.
+ * </p>
+ *
+ * <p>
+ * The file is truncated whenever no operation is pending. Under continuous ingest it is compacted
+ * instead, once the records of the completed operations take more than the compaction threshold
+ * and half of the file: the pending operations are copied to a new file, which replaces the
+ * journal.
+ * </p>
+ */
+public class PostIngestJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PostIngestJournal.class);
+
+    static final String FILE_NAME = "post-ingest.journal";
+
+    static final String COMPACTED_FILE_NAME = FILE_NAME + ".compacted";
+
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final byte APPENDED = 1;
+
+    private static final byte COMPLETED = 2;
+
+    // type and sequence number of a record
+    private static final int HEADER_LENGTH = 9;
+
+    private final File directory;
+
+    private final File file;
+
+    /**
+     * position and length of the records of the pending operations by sequence number, in the
+     * order they were appended
+     */
+    private Map<Long, Record> pending = new LinkedHashMap<>();
+
+    private RandomAccessFile output;
+
+    private boolean closed = false;
+
+    private long nextSequence = 1;
+
+    // every operation up to this sequence number is flushed to disk
+    private long flushedSequence = 0;
+
+    private boolean flushing = false;
+
+    // length of the records of the completed operations still in the file
+    private long completedLength = 0;
+
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /**
+     * @param directory
+     *            directory of the journal, created if it does not exist
+     */
+    public PostIngestJournal(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create the post-ingest journal directory "
+                    + directory.getAbsolutePath());
+        }
+        this.directory = directory;
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * @param compactionThreshold
+     *            length in bytes the records of the completed operations must exceed before the
+     *            journal is compacted
+     */
+    public synchronized void setCompactionThreshold(long compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Reads the operations appended to the journal that were not completed, and opens the journal
+     * for appending. A record that is only partly written, or whose length does not fit in the
+     * file, ends the journal: it and anything after it are dropped.
+     *
+     * @return the serialized pending operations by sequence number, in the order they were
+     *         appended, to be read with {@link #read(byte[], ClassLoader)}
+     */
+    public synchronized Map<Long, byte[]> recover() throws IOException {
+        Map<Long, byte[]> operations = new LinkedHashMap<>();
+        Map<Long, Record> records = new LinkedHashMap<>();
+        long length = 0;
+
+        if (file.isFile()) {
+            long fileLength = file.length();
+            DataInputStream input = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            try {
+                while (true) {
+                    byte type = input.readByte();
+                    long sequence = input.readLong();
+                    long position = length + HEADER_LENGTH;
+                    if (type == APPENDED) {
+                        int size = input.readInt();
+                        position += 4;
+                        if (size < 0 || size > fileLength - position) {
+                            LOGGER.warn("Invalid post-ingest journal record length {} at {}, "
+                                    + "dropping the rest of the journal.", size, length);
+                            break;
+                        }
+                        byte[] bytes = new byte[size];
+                        input.readFully(bytes);
+                        position += size;
+                        operations.put(sequence, bytes);
+                        records.put(sequence, new Record(length, (int) (position - length)));
+                    } else if (type == COMPLETED) {
+                        operations.remove(sequence);
+                        records.remove(sequence);
+                    } else {
+                        LOGGER.warn("Invalid post-ingest journal record type {} at {}, "
+                                + "dropping the rest of the journal.", type, length);
+                        break;
+                    }
+                    nextSequence = Math.max(nextSequence, sequence + 1);
+                    length = position;
+                }
+            } catch (EOFException e) {
+                LOGGER.debug("Read the post-ingest journal up to {} bytes.", length);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+
+        open();
+        // a record only partly written before a crash is discarded
+        output.setLength(length);
+        output.seek(length);
+        flushedSequence = nextSequence - 1;
+
+        pending.putAll(records);
+        if (pending.isEmpty()) {
+            output.setLength(0);
+            output.seek(0);
+        } else {
+            completedLength = length;
+            for (Record record : pending.values()) {
+                completedLength -= record.length;
+            }
+            compactIfNeeded();
+        }
+        return operations;
+    }
+
+    /**
+     * Appends an operation to the journal, and waits for it to be flushed to disk.
+     *
+     * @return the sequence number of the operation
+     */
+    public long append(Serializable operation) throws IOException {
+        byte[] bytes = serialize(operation);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + HEADER_LENGTH
+                + 4);
+        DataOutputStream data = new DataOutputStream(record);
+
+        long sequence;
+        synchronized (this) {
+            open();
+            sequence = nextSequence++;
+            data.writeByte(APPENDED);
+            data.writeLong(sequence);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+            data.flush();
+
+            long position = output.getFilePointer();
+            output.write(record.toByteArray());
+            pending.put(sequence, new Record(position, record.size()));
+        }
+
+        flush(sequence);
+        return sequence;
+    }
+
+    /**
+     * Marks an operation completed, truncating the journal if no other operation is pending, or
+     * compacting it if enough operations were completed. Does nothing once the journal is closed,
+     * so that the operation is recovered when it is opened again.
+     */
+    public synchronized void complete(long sequence) throws IOException {
+        if (closed) {
+            return;
+        }
+        open();
+        Record record = pending.remove(sequence);
+        if (pending.isEmpty()) {
+            output.setLength(0);
+            output.seek(0);
+            completedLength = 0;
+        } else {
+            output.writeByte(COMPLETED);
+            output.writeLong(sequence);
+            completedLength += HEADER_LENGTH + (record == null ? 0 : record.length);
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * @return the number of operations appended and not completed
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Flushes the journal and closes it. Operations can no longer be appended or completed.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (output != null) {
+            try {
+                output.getFD().sync();
+                flushedSequence = nextSequence - 1;
+            } catch (IOException e) {
+                LOGGER.warn("Unable to flush the post-ingest journal.", e);
+            }
+        }
+        IOUtils.closeQuietly(output);
+        output = null;
+        notifyAll();
+    }
+
+    /**
+     * Reads a serialized operation, resolving its classes with the given class loader first.
+     */
+    public static Serializable read(byte[] bytes, final ClassLoader classLoader)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass description) throws IOException,
+                ClassNotFoundException {
+                try {
+                    return Class.forName(description.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(description);
+                }
+            }
+        };
+        try {
+            return (Serializable) input.readObject();
+        } catch (ClassCastException e) {
+            throw new IOException("Journaled post-ingest operation is not serializable.", e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private void open() throws IOException {
+        if (closed) {
+            throw new IOException("The post-ingest journal is closed.");
+        }
+        if (output == null) {
+            output = new RandomAccessFile(file, "rw");
+            output.seek(output.length());
+        }
+    }
+
+    /**
+     * Waits for the operation to be flushed to disk. If no flush is in progress, flushes every
+     * operation written so far outside of the journal lock, so that the operations appended in
+     * the meantime are flushed together by the next flush.
+     */
+    private void flush(long sequence) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                RandomAccessFile flushed;
+                long flushedUpTo;
+                synchronized (this) {
+                    while (flushing && flushedSequence < sequence && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (flushedSequence >= sequence) {
+                        return;
+                    }
+                    if (closed) {
+                        throw new IOException("The post-ingest journal was closed before the "
+                                + "operation was flushed.");
+                    }
+                    flushing = true;
+                    flushed = output;
+                    flushedUpTo = nextSequence - 1;
+                }
+
+                IOException failure = null;
+                try {
+                    flushed.getFD().sync();
+                } catch (IOException e) {
+                    failure = e;
+                }
+
+                synchronized (this) {
+                    flushing = false;
+                    if (failure == null) {
+                        flushedSequence = Math.max(flushedSequence, flushedUpTo);
+                    }
+                    notifyAll();
+                    // a file closed by a compaction was flushed by it
+                    if (failure != null && flushedSequence < sequence) {
+                        throw new IOException("Unable to flush the post-ingest journal.",
+                                failure);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Copies the pending operations to a new file replacing the journal, once the completed ones
+     * take more than the compaction threshold and half of the file.
+     */
+    private void compactIfNeeded() throws IOException {
+        if (completedLength <= compactionThreshold
+                || completedLength * 2 <= output.length()) {
+            return;
+        }
+
+        File compacted = new File(directory, COMPACTED_FILE_NAME);
+        Map<Long, Record> records = new LinkedHashMap<>();
+        RandomAccessFile copy = new RandomAccessFile(compacted, "rw");
+        try {
+            copy.setLength(0);
+            for (Entry<Long, Record> entry : pending.entrySet()) {
+                Record record = entry.getValue();
+                byte[] bytes = new byte[record.length];
+                output.seek(record.position);
+                output.readFully(bytes);
+                records.put(entry.getKey(), new Record(copy.getFilePointer(), record.length));
+                copy.write(bytes);
+            }
+            copy.getFD().sync();
+        } catch (IOException e) {
+            output.seek(output.length());
+            throw e;
+        } finally {
+            IOUtils.closeQuietly(copy);
+        }
+
+        IOUtils.closeQuietly(output);
+        output = null;
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug("Compacted the post-ingest journal, dropping {} bytes of completed "
+                + "operations.", completedLength);
+
+        pending = records;
+        completedLength = 0;
+        flushedSequence = nextSequence - 1;
+        open();
+    }
+
+    static byte[] serialize(Serializable operation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutput = new ObjectOutputStream(bytes);
+        objectOutput.writeObject(operation);
+        objectOutput.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Position and length of the record of an operation in the file.
+     */
+    private static class Record {
+
+        private final long position;
+
+        private final int length;
+
+        private Record(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.impl;
+
+import java.io.Serializable;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.data.Attribute;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.MetacardType;
+import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.data.impl.ResultImpl;
+import ddf.catalog.operation.CreateRequest;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.DeleteRequest;
+import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.ProcessingDetails;
+import ddf.catalog.operation.QueryRequest;
+import ddf.catalog.operation.QueryResponse;
+import ddf.catalog.operation.Update;
+import ddf.catalog.operation.UpdateRequest;
+import ddf.catalog.operation.UpdateResponse;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.operation.impl.DeleteRequestImpl;
+import ddf.catalog.operation.impl.DeleteResponseImpl;
+import ddf.catalog.operation.impl.QueryRequestImpl;
+import ddf.catalog.operation.impl.QueryResponseImpl;
+import ddf.catalog.operation.impl.UpdateRequestImpl;
+import ddf.catalog.operation.impl.UpdateResponseImpl;
+import ddf.catalog.plugin.PostIngestPlugin;
+import ddf.catalog.plugin.PostQueryPlugin;
+import ddf.catalog.plugin.PreIngestPlugin;
+import ddf.catalog.plugin.PreQueryPlugin;
+import ddf.catalog.plugin.ReadOnlyPlugin;
+
+/**
+ * Runs the invocations of {@link ReadOnlyPlugin}s without making the operation wait for them. The
+ * invocations run on a small pool of threads; when its queue is full, they run on the thread of
+ * the operation instead, so that a slow plugin slows down the operations rather than accumulating
+ * work.
+ *
+ * <p>
+ * Since the operation goes on changing its requests and responses while the plugins run, each
+ * plugin is given a copy of them taken on the thread of the operation, whose lists and properties
+ * are copied into unmodifiable collections. The metacards are not copied, which would read every
+ * attribute and force lazy metacards to decode or fetch them: the plugin is given unmodifiable
+ * views of them instead, whose attributes are read from the metacards of the operation only when
+ * the plugin asks for them, and may then reflect changes made after the plugin was invoked.
+ * </p>
+ */
+public class ReadOnlyPluginExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadOnlyPluginExecutor.class);
+
+    private static final int QUEUE_SIZE = 1000;
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final ThreadPoolExecutor executor;
+
+    public ReadOnlyPluginExecutor() {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param threads
+     *            number of threads running the invocations
+     */
+    public ReadOnlyPluginExecutor(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new PluginThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return true if the plugin may be run by this executor
+     */
+    public static boolean isReadOnly(Object plugin) {
+        return plugin instanceof ReadOnlyPlugin;
+    }
+
+    /**
+     * Runs a read-only plugin on an unmodifiable copy of its input, logging its failure. The input is a
+     * request or response of the operations the plugin processes: create, update or delete
+     * requests for a {@link PreIngestPlugin}, their responses for a {@link PostIngestPlugin}, a
+     * query request for a {@link PreQueryPlugin} and a query response for a
+     * {@link PostQueryPlugin}.
+     *
+     * @param plugin
+     *            the plugin
+     * @param input
+     *            the request or response the plugin processes
+     */
+    public void execute(final Object plugin, Object input) {
+        final Object snapshot = snapshot(input);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    process(plugin, snapshot);
+                } catch (Exception e) {
+                    LOGGER.info("Read-only plugin {} failed. This is allowable.", plugin, e);
+                }
+            }
+        };
+
+        if (executor.isShutdown()) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void process(Object plugin, Object input) throws Exception {
+        if (input instanceof CreateRequest) {
+            ((PreIngestPlugin) plugin).process((CreateRequest) input);
+        } else if (input instanceof UpdateRequest) {
+            ((PreIngestPlugin) plugin).process((UpdateRequest) input);
+        } else if (input instanceof DeleteRequest) {
+            ((PreIngestPlugin) plugin).process((DeleteRequest) input);
+        } else if (input instanceof CreateResponse) {
+            ((PostIngestPlugin) plugin).process((CreateResponse) input);
+        } else if (input instanceof UpdateResponse) {
+            ((PostIngestPlugin) plugin).process((UpdateResponse) input);
+        } else if (input instanceof DeleteResponse) {
+            ((PostIngestPlugin) plugin).process((DeleteResponse) input);
+        } else if (input instanceof QueryRequest) {
+            ((PreQueryPlugin) plugin).process((QueryRequest) input);
+        } else if (input instanceof QueryResponse) {
+            ((PostQueryPlugin) plugin).process((QueryResponse) input);
+        } else {
+            throw new IllegalArgumentException("Unsupported read-only plugin input " + input);
+        }
+    }
+
+    static Object snapshot(Object input) {
+        if (input instanceof CreateRequest) {
+            return snapshot((CreateRequest) input);
+        } else if (input instanceof UpdateRequest) {
+            return snapshot((UpdateRequest) input);
+        } else if (input instanceof DeleteRequest) {
+            return snapshot((DeleteRequest) input);
+        } else if (input instanceof CreateResponse) {
+            CreateResponse response = (CreateResponse) input;
+            return new CreateResponseImpl(snapshot(response.getRequest()),
+                    snapshot(response.getProperties()), snapshot(response.getCreatedMetacards()));
+        } else if (input instanceof UpdateResponse) {
+            UpdateResponse response = (UpdateResponse) input;
+            List<Metacard> newMetacards = new ArrayList<>();
+            List<Metacard> oldMetacards = new ArrayList<>();
+            if (response.getUpdatedMetacards() != null) {
+                for (Update update : response.getUpdatedMetacards()) {
+                    newMetacards.add(update.getNewMetacard());
+                    oldMetacards.add(update.getOldMetacard());
+                }
+            }
+            return new UpdateResponseImpl(snapshot(response.getRequest()),
+                    snapshot(response.getProperties()), snapshot(newMetacards),
+                    snapshot(oldMetacards));
+        } else if (input instanceof DeleteResponse) {
+            DeleteResponse response = (DeleteResponse) input;
+            return new DeleteResponseImpl(snapshot(response.getRequest()),
+                    snapshot(response.getProperties()), snapshot(response.getDeletedMetacards()));
+        } else if (input instanceof QueryRequest) {
+            return snapshot((QueryRequest) input);
+        } else if (input instanceof QueryResponse) {
+            return snapshot((QueryResponse) input);
+        }
+        return input;
+    }
+
+    private static CreateRequest snapshot(CreateRequest request) {
+        if (request == null) {
+            return null;
+        }
+        return new CreateRequestImpl(snapshot(request.getMetacards()),
+                snapshot(request.getProperties()));
+    }
+
+    private static UpdateRequest snapshot(UpdateRequest request) {
+        if (request == null) {
+            return null;
+        }
+        List<Entry<Serializable, Metacard>> updates = new ArrayList<>();
+        if (request.getUpdates() != null) {
+            for (Entry<Serializable, Metacard> update : request.getUpdates()) {
+                updates.add(new SimpleImmutableEntry<Serializable, Metacard>(update.getKey(),
+                        snapshot(update.getValue())));
+            }
+        }
+        return new UpdateRequestImpl(Collections.unmodifiableList(updates),
+                request.getAttributeName(), snapshot(request.getProperties()));
+    }
+
+    private static DeleteRequest snapshot(DeleteRequest request) {
+        if (request == null) {
+            return null;
+        }
+        List<Serializable> values = request.getAttributeValues() == null ? null : Collections
+                .unmodifiableList(new ArrayList<Serializable>(request.getAttributeValues()));
+        return new DeleteRequestImpl(values, request.getAttributeName(),
+                snapshot(request.getProperties()));
+    }
+
+    private static QueryRequest snapshot(QueryRequest request) {
+        if (request == null) {
+            return null;
+        }
+        Set<String> sourceIds = request.getSourceIds() == null ? null : Collections
+                .unmodifiableSet(new HashSet<String>(request.getSourceIds()));
+        return new QueryRequestImpl(request.getQuery(), request.isEnterprise(), sourceIds,
+                snapshot(request.getProperties()));
+    }
+
+    private static QueryResponse snapshot(QueryResponse response) {
+        List<Result> results = new ArrayList<>();
+        if (response.getResults() != null) {
+            for (Result result : response.getResults()) {
+                ResultImpl copy = new ResultImpl(snapshot(result.getMetacard()));
+                copy.setRelevanceScore(result.getRelevanceScore());
+                copy.setDistanceInMeters(result.getDistanceInMeters());
+                results.add(copy);
+            }
+        }
+        QueryResponseImpl snapshot = new QueryResponseImpl(snapshot(response.getRequest()),
+                results, true, response.getHits(), snapshot(response.getProperties()));
+        if (response.getProcessingDetails() != null) {
+            snapshot.setProcessingDetails(Collections
+                    .unmodifiableSet(new HashSet<ProcessingDetails>(response
+                            .getProcessingDetails())));
+        }
+        return snapshot;
+    }
+
+    private static Map<String, Serializable> snapshot(Map<String, Serializable> properties) {
+        if (properties == null) {
+            return null;
+        }
+        return Collections.unmodifiableMap(new HashMap<String, Serializable>(properties));
+    }
+
+    private static List<Metacard> snapshot(List<Metacard> metacards) {
+        if (metacards == null) {
+            return null;
+        }
+        List<Metacard> snapshot = new ArrayList<>(metacards.size());
+        for (Metacard metacard : metacards) {
+            snapshot.add(snapshot(metacard));
+        }
+        return Collections.unmodifiableList(snapshot);
+    }
+
+    private static Metacard snapshot(Metacard metacard) {
+        return metacard == null ? null : new UnmodifiableMetacard(metacard);
+    }
+
+    private static class PluginThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "catalog-read-only-plugin-"
+                    + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * View of a metacard reading its attributes from it, and refusing to change them.
+     */
+    private static class UnmodifiableMetacard extends MetacardImpl {
+
+        private static final long serialVersionUID = 1L;
+
+        UnmodifiableMetacard(Metacard metacard) {
+            super(metacard);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Read-only plugins cannot change metacards.");
+        }
+
+        @Override
+        public void setSourceId(String sourceId) {
+            throw new UnsupportedOperationException("Read-only plugins cannot change metacards.");
+        }
+
+        @Override
+        public void setType(MetacardType type) {
+            throw new UnsupportedOperationException("Read-only plugins cannot change metacards.");
+        }
+
+        /**
+         * Serializes the attributes as a plain metacard, which can set them when it is read back.
+         */
+        private Object writeReplace() {
+            return new MetacardImpl(this);
+        }
+    }
+}
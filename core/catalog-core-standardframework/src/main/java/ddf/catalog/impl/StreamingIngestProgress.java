@@ -0,0 +1,394 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.Subject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.IngestFailure;
+import ddf.catalog.operation.IngestProgress;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.source.IngestException;
+import ddf.catalog.source.MetacardIdLookup;
+import ddf.catalog.source.SourceUnavailableException;
+import ddf.catalog.source.UnsupportedQueryException;
+
+/**
+ * Reads a stream of metacards in batches and creates each batch through
+ * {@link CatalogFramework#create(ddf.catalog.operation.CreateRequest)}. At most
+ * {@code concurrency} batches are read and not yet created at any time, which bounds the memory
+ * used by the ingest whatever the length of the stream. When a batch fails, its metacards are
+ * created one by one to report the failing metacards only.
+ * 
+ * <p>
+ * A batch may fail after the provider stored some of its metacards. When the provider implements
+ * {@link MetacardIdLookup}, the metacards without an ID are given one before their batch is
+ * created, and after a failure those the provider already holds are not created again, so the
+ * retry does not duplicate them. Since the failed create did not run the post-ingest plugins on
+ * them, they are dispatched to the post-ingest plugins then. Without it, the whole batch is
+ * retried.
+ * </p>
+ * 
+ * <p>
+ * The batches run with the {@link Subject} of the thread that started the ingest, so that the
+ * plugins see the same user as for a single create.
+ * </p>
+ */
+class StreamingIngestProgress implements IngestProgress {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingIngestProgress.class);
+
+    // failures kept for getFailures(), the others are only counted
+    static final int MAX_FAILURES = 1000;
+
+    private final CatalogFramework framework;
+
+    private final MetacardIdLookup idLookup;
+
+    private final PostIngestDispatcher postIngest;
+
+    private final Iterator<Metacard> metacards;
+
+    private final Map<String, Serializable> properties;
+
+    private final int batchSize;
+
+    private final Semaphore batches;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final List<IngestFailure> failures = Collections
+            .synchronizedList(new ArrayList<IngestFailure>());
+
+    // the reader and each batch not yet created
+    private final AtomicInteger running = new AtomicInteger(1);
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile boolean cancelled;
+
+    private Executor executor;
+
+    private Subject subject;
+
+    /**
+     * @param framework
+     *            the framework creating each batch
+     * @param idLookup
+     *            the catalog provider, if it can look up metacards by ID, or null
+     * @param postIngest
+     *            the post-ingest plugins of the framework, run on the metacards the provider
+     *            stored before their batch failed, or null
+     * @param metacards
+     *            the stream of metacards to create
+     * @param properties
+     *            the properties of each batch request, may be null
+     * @param batchSize
+     *            the maximum number of metacards of a batch
+     * @param concurrency
+     *            the maximum number of batches in progress
+     */
+    StreamingIngestProgress(CatalogFramework framework, MetacardIdLookup idLookup,
+            PostIngestDispatcher postIngest, Iterator<Metacard> metacards,
+            Map<String, Serializable> properties, int batchSize, int concurrency) {
+        this.framework = framework;
+        this.idLookup = idLookup;
+        this.postIngest = postIngest;
+        this.metacards = metacards;
+        this.properties = properties;
+        this.batchSize = Math.max(1, batchSize);
+        this.batches = new Semaphore(Math.max(1, concurrency));
+    }
+
+    /**
+     * Starts reading the stream.
+     * 
+     * @param ingestExecutor
+     *            executor running the reader and the batches, which must not queue tasks behind
+     *            each other; a task it rejects runs on the submitting thread
+     */
+    void start(Executor ingestExecutor) {
+        this.executor = ingestExecutor;
+        try {
+            subject = SecurityUtils.getSubject();
+        } catch (Exception e) {
+            LOGGER.debug("Could not determine the current user, ingesting without one.");
+        }
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        });
+    }
+
+    @Override
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    @Override
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    @Override
+    public List<IngestFailure> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures);
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void read() {
+        try {
+            while (!cancelled) {
+                batches.acquire();
+                final List<Metacard> batch = new ArrayList<>(batchSize);
+                try {
+                    while (batch.size() < batchSize && !cancelled && metacards.hasNext()) {
+                        batch.add(metacards.next());
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to read the metacards to ingest, stopping the ingest.", e);
+                    fail(null, e);
+                    cancelled = true;
+                }
+                if (batch.isEmpty()) {
+                    batches.release();
+                    break;
+                }
+
+                submittedCount.addAndGet(batch.size());
+                running.incrementAndGet();
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            create(batch);
+                        } finally {
+                            batches.release();
+                            finish();
+                        }
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while reading the metacards to ingest, stopping the ingest.");
+            cancelled = true;
+            Thread.currentThread().interrupt();
+        } finally {
+            finish();
+        }
+    }
+
+    private void create(List<Metacard> batch) {
+        Map<String, Serializable> requestProperties = new HashMap<>();
+        if (properties != null) {
+            requestProperties.putAll(properties);
+        }
+
+        Set<String> assignedIds = assignIds(batch);
+        try {
+            CreateResponse response = framework.create(new CreateRequestImpl(batch,
+                    requestProperties));
+            if (response != null && response.getCreatedMetacards() != null) {
+                createdCount.addAndGet(response.getCreatedMetacards().size());
+            }
+        } catch (SourceUnavailableException e) {
+            LOGGER.debug("Provider unavailable, {} metacards failed to ingest.", batch.size());
+            for (Metacard metacard : batch) {
+                fail(metacard, e);
+            }
+        } catch (IngestException | RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+            } else {
+                LOGGER.debug("Batch of {} metacards failed to ingest, retrying them one by one.",
+                        batch.size(), e);
+                Map<String, Metacard> created = findCreated(assignedIds);
+                createdCount.addAndGet(created.size());
+                dispatchCreated(batch, created, requestProperties);
+                for (Metacard metacard : batch) {
+                    if (!created.containsKey(metacard.getId())) {
+                        create(Collections.singletonList(metacard));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives an ID to the metacards of the batch that have none, so that they can be looked up
+     * if the batch fails. Metacards of another source are left to the provider to reject.
+     * 
+     * @return the IDs given
+     */
+    private Set<String> assignIds(List<Metacard> batch) {
+        if (idLookup == null || batch.size() == 1) {
+            return Collections.emptySet();
+        }
+        Set<String> ids = new HashSet<>();
+        for (Metacard metacard : batch) {
+            if (StringUtils.isEmpty(metacard.getId())
+                    && StringUtils.isEmpty(metacard.getSourceId())) {
+                String id = UUID.randomUUID().toString().replaceAll("-", "");
+                metacard.setAttribute(new AttributeImpl(Metacard.ID, id));
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the metacards the provider holds among the given IDs, by ID, or none if they cannot
+     *         be looked up
+     */
+    private Map<String, Metacard> findCreated(Set<String> ids) {
+        Map<String, Metacard> created = new HashMap<>();
+        if (ids.isEmpty()) {
+            return created;
+        }
+        try {
+            for (Metacard metacard : idLookup.getMetacards(ids)) {
+                created.put(metacard.getId(), metacard);
+            }
+        } catch (UnsupportedQueryException | RuntimeException e) {
+            LOGGER.debug("Unable to find the metacards created by the failed batch, "
+                    + "retrying all of them.", e);
+            created.clear();
+        }
+        return created;
+    }
+
+    /**
+     * Runs the post-ingest plugins on the metacards the provider stored before their batch
+     * failed, as the create would have if it had succeeded.
+     */
+    private void dispatchCreated(List<Metacard> batch, Map<String, Metacard> created,
+            Map<String, Serializable> requestProperties) {
+        if (postIngest == null || created.isEmpty()) {
+            return;
+        }
+        List<Metacard> requested = new ArrayList<>();
+        for (Metacard metacard : batch) {
+            if (created.containsKey(metacard.getId())) {
+                requested.add(metacard);
+            }
+        }
+        try {
+            postIngest.dispatch(new CreateResponseImpl(new CreateRequestImpl(requested,
+                    requestProperties), requestProperties, new ArrayList<>(created.values())));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to run the post-ingest plugins on the {} metacards created before "
+                    + "their batch failed.", created.size(), e);
+        }
+    }
+
+    private void fail(Metacard metacard, Exception exception) {
+        if (failedCount.incrementAndGet() <= MAX_FAILURES) {
+            failures.add(new Failure(metacard, exception));
+        }
+    }
+
+    private void execute(Runnable task) {
+        Runnable runnable = subject == null ? task : subject.associateWith(task);
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Ingest executor is busy or shut down, ingesting on the current thread.");
+            runnable.run();
+        }
+    }
+
+    private void finish() {
+        if (running.decrementAndGet() == 0) {
+            LOGGER.debug("Streaming ingest done: {} metacards read, {} created, {} failed.",
+                    new Object[] {submittedCount.get(), createdCount.get(), failedCount.get()});
+            done.countDown();
+        }
+    }
+
+    private static class Failure implements IngestFailure {
+
+        private final Metacard metacard;
+
+        private final Exception exception;
+
+        Failure(Metacard metacard, Exception exception) {
+            this.metacard = metacard;
+            this.exception = exception;
+        }
+
+        @Override
+        public Metacard getMetacard() {
+            return metacard;
+        }
+
+        @Override
+        public Exception getException() {
+            return exception;
+        }
+    }
+}
@@ -25,11 +25,14 @@
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import java.io.Serializable;
 import java.net.URI;
@@ -55,6 +58,8 @@
 import org.junit.rules.TestWatchman;
 import org.junit.runners.model.FrameworkMethod;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.osgi.framework.BundleContext;
@@ -69,6 +74,9 @@
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.federation.FederationException;
 import ddf.catalog.federation.FederationStrategy;
+import ddf.catalog.filter.impl.LiteralImpl;
+import ddf.catalog.filter.impl.PropertyIsEqualToLiteral;
+import ddf.catalog.filter.impl.PropertyNameImpl;
 import ddf.catalog.operation.CreateRequest;
 import ddf.catalog.operation.CreateResponse;
 import ddf.catalog.operation.DeleteRequest;
@@ -109,6 +117,7 @@
 import ddf.catalog.source.ConnectedSource;
 import ddf.catalog.source.FederatedSource;
 import ddf.catalog.source.IngestException;
+import ddf.catalog.source.MetacardIdLookup;
 import ddf.catalog.source.Source;
 import ddf.catalog.source.SourceDescriptor;
 import ddf.catalog.source.SourceMonitor;
@@ -582,6 +591,52 @@ public QueryResponse process(QueryResponse input) throws PluginExecutionExceptio
         framework.query(request);
     }
 
+    @Test
+    public void testQueryByIdUsesProviderLookup() throws Exception {
+        SourcePoller poller = mock(SourcePoller.class);
+        when(poller.getCachedSource(isA(Source.class))).thenReturn(null);
+
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId("123");
+        CatalogProvider provider = mock(CatalogProvider.class,
+                withSettings().extraInterfaces(MetacardIdLookup.class));
+        when(((MetacardIdLookup) provider).getMetacards(Collections.singletonList("123")))
+                .thenReturn(Collections.<Metacard> singletonList(metacard));
+        FederationStrategy federationStrategy = mock(FederationStrategy.class);
+        when(federationStrategy.federate(anyList(), any(QueryRequest.class))).thenAnswer(
+                new Answer<QueryResponse>() {
+                    @Override
+                    public QueryResponse answer(InvocationOnMock invocation) throws Exception {
+                        QueryRequest request = (QueryRequest) invocation.getArguments()[1];
+                        QueryResponseImpl response = new QueryResponseImpl(request);
+                        for (Object source : (List<?>) invocation.getArguments()[0]) {
+                            response.addResults(((Source) source).query(request).getResults(),
+                                    false);
+                        }
+                        response.closeResultQueue();
+                        return response;
+                    }
+                });
+
+        CatalogFrameworkImpl framework = new CatalogFrameworkImpl(
+                Collections.singletonList(provider), null,
+                new ArrayList<PreIngestPlugin>(), new ArrayList<PostIngestPlugin>(),
+                new ArrayList<PreQueryPlugin>(), new ArrayList<PostQueryPlugin>(),
+                new ArrayList<PreResourcePlugin>(), new ArrayList<PostResourcePlugin>(),
+                new ArrayList<ConnectedSource>(), new ArrayList<FederatedSource>(),
+                new ArrayList<ResourceReader>(), federationStrategy, null, poller, null, null, null);
+        framework.bind(provider);
+
+        QueryResponse response = framework.query(new QueryRequestImpl(new QueryImpl(
+                new PropertyIsEqualToLiteral(new PropertyNameImpl(Metacard.ID), new LiteralImpl(
+                        "123")))));
+
+        assertThat(response.getResults().size(), is(1));
+        assertEquals("123", response.getResults().get(0).getMetacard().getId());
+        verify(federationStrategy).federate(anyList(), any(QueryRequest.class));
+        verify(provider, never()).query(any(QueryRequest.class));
+    }
+
     @Ignore
     @Test
     public void testFederateQueryWithFrameworkName() {
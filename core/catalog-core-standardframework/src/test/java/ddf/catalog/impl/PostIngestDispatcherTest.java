@@ -0,0 +1,379 @@
+/**
+ * Copyright (c) Codice Foundation
+ *
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ *
+ **/
+package ddf.catalog.impl;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.data.impl.BasicTypes;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.DeleteResponse;
+import ddf.catalog.operation.UpdateResponse;
+import ddf.catalog.operation.impl.CreateRequestImpl;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.plugin.PluginExecutionException;
+import ddf.catalog.plugin.PostIngestPlugin;
+import ddf.catalog.plugin.ReadOnlyPlugin;
+
+public class PostIngestDispatcherTest {
+
+    @Rule
+    public TemporaryFolder journalFolder = new TemporaryFolder();
+
+    private PostIngestDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testSynchronousByDefault() throws Exception {
+        CreateResponse processed = createResponse("2");
+        PostIngestPlugin plugin = mock(PostIngestPlugin.class);
+        when(plugin.process(any(CreateResponse.class))).thenReturn(processed);
+        dispatcher = new PostIngestDispatcher(Collections.singletonList(plugin));
+
+        assertThat(dispatcher.dispatch(createResponse("1")), sameInstance(processed));
+        assertThat(journalFolder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void testAsynchronousDispatch() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        BlockingPlugin asynchronousPlugin = new BlockingPlugin(release);
+        CreateResponse processed = createResponse("2");
+        PostIngestPlugin synchronousPlugin = mock(PostIngestPlugin.class);
+        when(synchronousPlugin.process(any(CreateResponse.class))).thenReturn(processed);
+
+        dispatcher = createDispatcher(synchronousPlugin, asynchronousPlugin);
+        dispatcher.setSynchronousPlugins(Collections.singletonList(synchronousPlugin.getClass()
+                .getName()));
+
+        assertThat(dispatcher.dispatch(createResponse("1")), sameInstance(processed));
+        assertThat(dispatcher.getPendingCount(), is(1));
+
+        release.countDown();
+        assertTrue(asynchronousPlugin.processed.await(5, TimeUnit.SECONDS));
+        assertThat(asynchronousPlugin.response, sameInstance(processed));
+        waitForPending(0);
+    }
+
+    @Test
+    public void testReadOnlyPluginDoesNotBlock() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingPlugin readOnlyPlugin = new ReadOnlyBlockingPlugin(release);
+        ReadOnlyPluginExecutor executor = new ReadOnlyPluginExecutor(1);
+        dispatcher = new PostIngestDispatcher(
+                Collections.<PostIngestPlugin> singletonList(readOnlyPlugin), executor);
+
+        CreateResponse response = createResponse("1");
+        assertThat(dispatcher.dispatch(response), sameInstance(response));
+
+        release.countDown();
+        assertTrue(readOnlyPlugin.processed.await(5, TimeUnit.SECONDS));
+        Metacard view = readOnlyPlugin.response.getCreatedMetacards().get(0);
+        assertThat(view.getId(), is("1"));
+        try {
+            view.setAttribute(new AttributeImpl(Metacard.TITLE, "changed"));
+            fail("Read-only plugins must not change metacards.");
+        } catch (UnsupportedOperationException e) {
+            assertThat(response.getCreatedMetacards().get(0).getTitle(), is(nullValue()));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testReadOnlyPluginDoesNotReadMetacardsOnRequestThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingPlugin readOnlyPlugin = new ReadOnlyBlockingPlugin(release);
+        ReadOnlyPluginExecutor executor = new ReadOnlyPluginExecutor(1);
+        dispatcher = new PostIngestDispatcher(
+                Collections.<PostIngestPlugin> singletonList(readOnlyPlugin), executor);
+
+        Metacard metacard = mock(Metacard.class);
+        when(metacard.getMetacardType()).thenReturn(BasicTypes.BASIC_METACARD);
+        dispatcher.dispatch(new CreateResponseImpl(new CreateRequestImpl(metacard), null,
+                Collections.singletonList(metacard)));
+
+        verify(metacard, never()).getAttribute(anyString());
+        release.countDown();
+        assertTrue(readOnlyPlugin.processed.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRetryFailedPlugin() throws Exception {
+        PostIngestPlugin plugin = mock(PostIngestPlugin.class);
+        when(plugin.process(any(CreateResponse.class))).thenThrow(
+                new PluginExecutionException("failed")).thenReturn(null);
+
+        dispatcher = createDispatcher(plugin);
+        dispatcher.dispatch(createResponse("1"));
+
+        verify(plugin, timeout(5000).times(2)).process(any(CreateResponse.class));
+        waitForPending(0);
+    }
+
+    @Test
+    public void testRecoverJournaledOperations() throws Exception {
+        PostIngestJournal journal = new PostIngestJournal(journalFolder.getRoot());
+        journal.recover();
+        journal.append(PostIngestDispatcher.Operation.forResponse(createResponse("journaled")));
+        journal.close();
+
+        PostIngestPlugin plugin = mock(PostIngestPlugin.class);
+        dispatcher = createDispatcher(plugin);
+        assertThat(dispatcher.getPendingCount(), is(1));
+
+        dispatcher.dispatch(createResponse("new"));
+
+        ArgumentCaptor<CreateResponse> responses = ArgumentCaptor.forClass(CreateResponse.class);
+        verify(plugin, timeout(5000).times(2)).process(responses.capture());
+        List<String> ids = new ArrayList<>();
+        for (CreateResponse response : responses.getAllValues()) {
+            ids.add(response.getCreatedMetacards().get(0).getId());
+        }
+        assertThat(ids, is(Arrays.asList("journaled", "new")));
+        waitForPending(0);
+    }
+
+    @Test
+    public void testCompletedInJournalOfDispatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingPlugin plugin = new BlockingPlugin(release);
+        dispatcher = createDispatcher(plugin);
+        dispatcher.dispatch(createResponse("1"));
+
+        File newDirectory = journalFolder.newFolder("moved");
+        dispatcher.setJournalDirectory(newDirectory.getAbsolutePath());
+        release.countDown();
+        assertTrue(plugin.processed.await(5, TimeUnit.SECONDS));
+        waitForPending(0);
+
+        PostIngestJournal oldJournal = new PostIngestJournal(journalFolder.getRoot());
+        assertThat(oldJournal.recover().size(), is(1));
+        oldJournal.close();
+        PostIngestJournal newJournal = new PostIngestJournal(newDirectory);
+        assertThat(newJournal.recover().size(), is(0));
+        newJournal.close();
+    }
+
+    @Test
+    public void testRecoverStopsAtInvalidLength() throws Exception {
+        PostIngestJournal journal = new PostIngestJournal(journalFolder.getRoot());
+        journal.recover();
+        journal.append(PostIngestDispatcher.Operation.forResponse(createResponse("1")));
+        journal.close();
+
+        File file = new File(journalFolder.getRoot(), PostIngestJournal.FILE_NAME);
+        long length = file.length();
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(file, true))) {
+            output.writeByte(1);
+            output.writeLong(2);
+            output.writeInt(Integer.MAX_VALUE);
+        }
+
+        journal = new PostIngestJournal(journalFolder.getRoot());
+        assertThat(journal.recover().keySet(), is((Set<Long>) Collections.singleton(1L)));
+        journal.close();
+        assertThat(file.length(), is(length));
+    }
+
+    @Test
+    public void testConcurrentAppendsAreFlushedBeforeReturning() throws Exception {
+        final PostIngestJournal journal = new PostIngestJournal(journalFolder.getRoot());
+        journal.recover();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> sequences = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final String id = String.valueOf(i);
+            sequences.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    return journal.append(PostIngestDispatcher.Operation
+                            .forResponse(createResponse(id)));
+                }
+            }));
+        }
+        Set<Long> appended = new HashSet<>();
+        for (Future<Long> sequence : sequences) {
+            appended.add(sequence.get());
+        }
+        executor.shutdown();
+        journal.close();
+
+        PostIngestJournal reopened = new PostIngestJournal(journalFolder.getRoot());
+        assertThat(reopened.recover().keySet(), is(appended));
+        reopened.close();
+    }
+
+    @Test
+    public void testCompactsCompletedOperations() throws Exception {
+        PostIngestJournal journal = new PostIngestJournal(journalFolder.getRoot());
+        journal.recover();
+        journal.setCompactionThreshold(0);
+        long first = journal.append(PostIngestDispatcher.Operation
+                .forResponse(createResponse("1")));
+        File file = new File(journalFolder.getRoot(), PostIngestJournal.FILE_NAME);
+        long recordLength = file.length();
+        long second = journal.append(PostIngestDispatcher.Operation
+                .forResponse(createResponse("2")));
+        long third = journal.append(PostIngestDispatcher.Operation
+                .forResponse(createResponse("3")));
+
+        journal.complete(first);
+        journal.complete(second);
+
+        assertThat(file.length(), is(recordLength));
+        assertThat(new File(journalFolder.getRoot(), PostIngestJournal.COMPACTED_FILE_NAME)
+                .exists(), is(false));
+        long fourth = journal.append(PostIngestDispatcher.Operation
+                .forResponse(createResponse("4")));
+        journal.close();
+
+        journal = new PostIngestJournal(journalFolder.getRoot());
+        Map<Long, byte[]> operations = journal.recover();
+        assertThat(new ArrayList<>(operations.keySet()), is(Arrays.asList(third, fourth)));
+        assertThat(((PostIngestDispatcher.Operation) PostIngestJournal.read(
+                operations.get(third), getClass().getClassLoader())).toResponse(),
+                is(instanceOf(CreateResponse.class)));
+        journal.close();
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        PostIngestPlugin plugin = mock(PostIngestPlugin.class);
+        when(plugin.process(any(CreateResponse.class))).thenThrow(
+                new PluginExecutionException("failed"));
+        dispatcher = createDispatcher(plugin);
+        dispatcher.setMaxRetries(0);
+
+        dispatcher.dispatch(createResponse("1"));
+
+        verify(plugin, timeout(5000)).process(any(CreateResponse.class));
+        waitForPending(0);
+        assertThat(dispatcher.getFailedCount(), is(1L));
+        assertThat(dispatcher.getMaxLagMillis(), is(0L));
+        assertThat(dispatcher.getPluginMetrics().length, is(1));
+    }
+
+    private PostIngestDispatcher createDispatcher(PostIngestPlugin... plugins) {
+        PostIngestDispatcher postIngestDispatcher = new PostIngestDispatcher(
+                Arrays.asList(plugins));
+        postIngestDispatcher.setJournalDirectory(journalFolder.getRoot().getAbsolutePath());
+        postIngestDispatcher.setAsynchronous(true);
+        return postIngestDispatcher;
+    }
+
+    private void waitForPending(int count) throws InterruptedException {
+        for (int i = 0; i < 50 && dispatcher.getPendingCount() != count; i++) {
+            Thread.sleep(100);
+        }
+        assertThat(dispatcher.getPendingCount(), is(count));
+    }
+
+    private CreateResponse createResponse(String id) {
+        MetacardImpl metacard = new MetacardImpl();
+        metacard.setId(id);
+        List<Metacard> metacards = Collections.<Metacard> singletonList(metacard);
+        return new CreateResponseImpl(new CreateRequestImpl(metacards),
+                new HashMap<String, Serializable>(), metacards);
+    }
+
+    private static class BlockingPlugin implements PostIngestPlugin {
+
+        private final CountDownLatch release;
+
+        private final CountDownLatch processed = new CountDownLatch(1);
+
+        private volatile CreateResponse response;
+
+        BlockingPlugin(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public CreateResponse process(CreateResponse input) throws PluginExecutionException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new PluginExecutionException(e);
+            }
+            response = input;
+            processed.countDown();
+            return input;
+        }
+
+        @Override
+        public UpdateResponse process(UpdateResponse input) {
+            return input;
+        }
+
+        @Override
+        public DeleteResponse process(DeleteResponse input) {
+            return input;
+        }
+    }
+
+    private static class ReadOnlyBlockingPlugin extends BlockingPlugin implements ReadOnlyPlugin {
+
+        ReadOnlyBlockingPlugin(CountDownLatch release) {
+            super(release);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) Codice Foundation
+ * 
+ * This is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details. A copy of the GNU Lesser General Public License
+ * is distributed along with this program and can be found at
+ * <http://www.gnu.org/licenses/lgpl.html>.
+ * 
+ **/
+package ddf.catalog.impl;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ddf.catalog.CatalogFramework;
+import ddf.catalog.data.Metacard;
+import ddf.catalog.data.impl.MetacardImpl;
+import ddf.catalog.operation.CreateRequest;
+import ddf.catalog.operation.CreateResponse;
+import ddf.catalog.operation.IngestFailure;
+import ddf.catalog.operation.impl.CreateResponseImpl;
+import ddf.catalog.source.IngestException;
+import ddf.catalog.source.MetacardIdLookup;
+
+public class StreamingIngestProgressTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testIngestInBatches() throws Exception {
+        final AtomicInteger inProgress = new AtomicInteger();
+        final AtomicInteger maxInProgress = new AtomicInteger();
+        final List<Integer> batchSizes = new ArrayList<>();
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(any(CreateRequest.class))).thenAnswer(new Answer<CreateResponse>() {
+            @Override
+            public CreateResponse answer(InvocationOnMock invocation) throws Exception {
+                int current = inProgress.incrementAndGet();
+                synchronized (batchSizes) {
+                    maxInProgress.set(Math.max(maxInProgress.get(), current));
+                }
+                Thread.sleep(20);
+                inProgress.decrementAndGet();
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                synchronized (batchSizes) {
+                    batchSizes.add(request.getMetacards().size());
+                }
+                return new CreateResponseImpl(request, new HashMap<String, Serializable>(),
+                        request.getMetacards());
+            }
+        });
+
+        StreamingIngestProgress ingest = new StreamingIngestProgress(framework, null, null,
+                metacards(25), null, 10, 2);
+        ingest.start(executor);
+
+        assertTrue(ingest.await(5, TimeUnit.SECONDS));
+        assertThat(ingest.getSubmittedCount(), is(25L));
+        assertThat(ingest.getCreatedCount(), is(25L));
+        assertThat(ingest.getFailures().size(), is(0));
+        assertThat(batchSizes.size(), is(3));
+        assertThat(maxInProgress.get(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    public void testReportFailedMetacards() throws Exception {
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(any(CreateRequest.class))).thenAnswer(new Answer<CreateResponse>() {
+            @Override
+            public CreateResponse answer(InvocationOnMock invocation) throws Exception {
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                for (Metacard metacard : request.getMetacards()) {
+                    if ("3".equals(metacard.getId())) {
+                        throw new IngestException("invalid metacard");
+                    }
+                }
+                return new CreateResponseImpl(request, new HashMap<String, Serializable>(),
+                        request.getMetacards());
+            }
+        });
+
+        StreamingIngestProgress ingest = new StreamingIngestProgress(framework, null, null,
+                metacards(5), null, 5, 1);
+        ingest.start(executor);
+
+        assertTrue(ingest.await(5, TimeUnit.SECONDS));
+        assertThat(ingest.getCreatedCount(), is(4L));
+        List<IngestFailure> failures = ingest.getFailures();
+        assertThat(failures.size(), is(1));
+        assertThat(failures.get(0).getMetacard().getId(), is("3"));
+    }
+
+    @Test
+    public void testFailuresAreCapped() throws Exception {
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(any(CreateRequest.class))).thenThrow(
+                new IngestException("invalid metacard"));
+
+        int count = StreamingIngestProgress.MAX_FAILURES + 10;
+        StreamingIngestProgress ingest = new StreamingIngestProgress(framework, null, null,
+                metacards(count), null, 100, 1);
+        ingest.start(executor);
+
+        assertTrue(ingest.await(5, TimeUnit.SECONDS));
+        assertThat(ingest.getFailedCount(), is((long) count));
+        assertThat(ingest.getFailures().size(), is(StreamingIngestProgress.MAX_FAILURES));
+    }
+
+    @Test
+    public void testRetryDoesNotDuplicateCreatedMetacards() throws Exception {
+        final Map<String, Metacard> stored = new ConcurrentHashMap<>();
+        final AtomicInteger creates = new AtomicInteger();
+        CatalogFramework framework = mock(CatalogFramework.class);
+        when(framework.create(any(CreateRequest.class))).thenAnswer(new Answer<CreateResponse>() {
+            @Override
+            public CreateResponse answer(InvocationOnMock invocation) throws Exception {
+                CreateRequest request = (CreateRequest) invocation.getArguments()[0];
+                for (Metacard metacard : request.getMetacards()) {
+                    if ("invalid".equals(metacard.getTitle())) {
+                        throw new IngestException("invalid metacard");
+                    }
+                    creates.incrementAndGet();
+                    stored.put(metacard.getId(), metacard);
+                }
+                return new CreateResponseImpl(request, new HashMap<String, Serializable>(),
+                        request.getMetacards());
+            }
+        });
+        MetacardIdLookup idLookup = mock(MetacardIdLookup.class);
+        when(idLookup.getMetacards(anyCollectionOf(String.class))).thenAnswer(
+                new Answer<List<Metacard>>() {
+                    @Override
+                    public List<Metacard> answer(InvocationOnMock invocation) {
+                        List<Metacard> found = new ArrayList<>();
+                        for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                            if (stored.containsKey(id)) {
+                                found.add(stored.get(id));
+                            }
+                        }
+                        return found;
+                    }
+                });
+
+        List<Metacard> metacards = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            MetacardImpl metacard = new MetacardImpl();
+            metacard.setTitle(i == 2 ? "invalid" : "valid");
+            metacards.add(metacard);
+        }
+
+        PostIngestDispatcher postIngest = mock(PostIngestDispatcher.class);
+
+        StreamingIngestProgress ingest = new StreamingIngestProgress(framework, idLookup,
+                postIngest, metacards.iterator(), null, 5, 1);
+        ingest.start(executor);
+
+        assertTrue(ingest.await(5, TimeUnit.SECONDS));
+        assertThat(ingest.getCreatedCount(), is(4L));
+        assertThat(ingest.getFailedCount(), is(1L));
+        assertThat(stored.size(), is(4));
+        assertThat(creates.get(), is(4));
+
+        // the two metacards stored before the batch failed were never dispatched by the framework
+        ArgumentCaptor<CreateResponse> dispatched = ArgumentCaptor.forClass(CreateResponse.class);
+        verify(postIngest).dispatch(dispatched.capture());
+        assertThat(dispatched.getValue().getCreatedMetacards(),
+                containsInAnyOrder(metacards.get(0), metacards.get(1)));
+    }
+
+    @Test
+    public void testStreamFailure() throws Exception {
+        CatalogFramework framework = mock(CatalogFramework.class);
+        List<Metacard> list = new ArrayList<>();
+        list.add(new MetacardImpl());
+        Iterator<Metacard> metacards = list.iterator();
+        // a modified list makes its iterator fail on next()
+        list.add(new MetacardImpl());
+
+        StreamingIngestProgress ingest = new StreamingIngestProgress(framework, null, null,
+                metacards, null, 5, 1);
+        ingest.start(executor);
+
+        assertTrue(ingest.await(5, TimeUnit.SECONDS));
+        assertThat(ingest.getSubmittedCount(), is(0L));
+        assertThat(ingest.getFailedCount(), is(1L));
+        assertThat(ingest.getFailures().size(), is(1));
+        assertThat(ingest.getFailures().get(0).getMetacard(), nullValue());
+    }
+
+    private Iterator<Metacard> metacards(int count) {
+        List<Metacard> metacards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MetacardImpl metacard = new MetacardImpl();
+            metacard.setId(String.valueOf(i));
+            metacards.add(metacard);
+        }
+        return metacards.iterator();
+    }
+}
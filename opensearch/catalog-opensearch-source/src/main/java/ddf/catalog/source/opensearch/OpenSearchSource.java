@@ -23,6 +23,7 @@
 import ddf.catalog.data.ContentType;
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.Result;
+import ddf.catalog.data.impl.AttributeInterner;
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.data.impl.ResultImpl;
 import ddf.catalog.filter.FilterAdapter;
@@ -485,6 +486,7 @@ private List<Result> createResponseFromEntry(SyndEntry entry) throws Unsupported
 
         List<Result> results = new ArrayList<>();
         for (Metacard metacard : metacards) {
+            AttributeInterner.intern(metacard);
             ResultImpl result = new ResultImpl(metacard);
             if (relevance == null || relevance.isEmpty()) {
                 LOGGER.debug("couldn't find valid relevance. Setting relevance to 0");
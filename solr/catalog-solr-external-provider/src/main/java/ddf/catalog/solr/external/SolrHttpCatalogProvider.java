@@ -15,6 +15,7 @@
 package ddf.catalog.solr.external;
 
 import ddf.catalog.data.ContentType;
+import ddf.catalog.data.Metacard;
 import ddf.catalog.filter.FilterAdapter;
 import ddf.catalog.operation.CreateRequest;
 import ddf.catalog.operation.CreateResponse;
@@ -26,11 +27,15 @@
 import ddf.catalog.operation.UpdateResponse;
 import ddf.catalog.source.CatalogProvider;
 import ddf.catalog.source.IngestException;
+import ddf.catalog.source.MetacardIdLookup;
 import ddf.catalog.source.SourceMonitor;
 import ddf.catalog.source.UnsupportedQueryException;
+import ddf.catalog.source.solr.DecodedMetacardCache;
 import ddf.catalog.source.solr.DynamicSchemaResolver;
+import ddf.catalog.source.solr.PartitionedSolrCatalogProvider;
 import ddf.catalog.source.solr.SolrCatalogProvider;
 import ddf.catalog.source.solr.SolrFilterDelegateFactory;
+import ddf.catalog.source.solr.SolrWarmer;
 import ddf.catalog.util.impl.MaskableImpl;
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrServer;
@@ -40,13 +45,17 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 
 /**
  * Catalog Provider that interfaces with a Standalone external (HTTP) Solr Server
  */
-public class SolrHttpCatalogProvider extends MaskableImpl implements CatalogProvider {
+public class SolrHttpCatalogProvider extends MaskableImpl implements CatalogProvider,
+        MetacardIdLookup {
 
     private static final String PING_ERROR_MESSAGE = "Solr Server ping failed.";
 
@@ -70,6 +79,31 @@ public class SolrHttpCatalogProvider extends MaskableImpl implements CatalogProv
 
     private DynamicSchemaResolver resolver;
 
+    private int maxExtractedTextLength = DynamicSchemaResolver.DEFAULT_MAX_EXTRACTED_TEXT_LENGTH;
+
+    private List<String> skippedTextNamespaces = new ArrayList<>();
+
+    private boolean spatialPrefilterEnabled = false;
+
+    private int partitionCount = 1;
+
+    private List<String> projectedOutAttributes = new ArrayList<>();
+
+    private long commitLatency = 0;
+
+    private int commitMaxDocuments = 0;
+
+    private int warmupQueryCount = SolrWarmer.DEFAULT_QUERY_COUNT;
+
+    private double warmupAvailabilityThreshold = 0;
+
+    private int metacardCacheSize = 0;
+
+    private int metacardCacheMemory = (int) (DecodedMetacardCache.DEFAULT_MAX_MEMORY
+            / (1024 * 1024));
+
+    private List<SolrServer> partitionServers = new ArrayList<>();
+
     private static final Logger LOGGER = LoggerFactory.getLogger(SolrHttpCatalogProvider.class);
 
     private static final String SOLR_CATALOG_CONFIG_FILE = "solrcatalogconfig.xml";
@@ -125,9 +159,9 @@ public void maskId(String id) {
     }
 
     /**
-     * Used to signal to the Solr server to commit on every transaction. Updates
-     * the underlying ConfigurationStore so that the property is propagated
-     * throughout the Solr Catalog Provider code
+     * Used to make every transaction visible to searches before it returns. Transactions running
+     * at the same time share a commit. Updates the underlying ConfigurationStore so that the
+     * property is propagated throughout the Solr Catalog Provider code
      *
      * @param forceAutoCommit
      */
@@ -135,10 +169,100 @@ public void setForceAutoCommit(boolean forceAutoCommit) {
         ConfigurationStore.getInstance().setForceAutoCommit(forceAutoCommit);
     }
 
+    public void setCommitLatency(long commitLatency) {
+        this.commitLatency = commitLatency;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setCommitLatency(commitLatency);
+        }
+    }
+
+    public void setCommitMaxDocuments(int commitMaxDocuments) {
+        this.commitMaxDocuments = commitMaxDocuments;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setCommitMaxDocuments(commitMaxDocuments);
+        }
+    }
+
     public void setDisableTextPath(boolean disableTextPath) {
         ConfigurationStore.getInstance().setDisableTextPath(disableTextPath);
     }
 
+    public void setMaxExtractedTextLength(int maxExtractedTextLength) {
+        this.maxExtractedTextLength = maxExtractedTextLength;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setMaxExtractedTextLength(maxExtractedTextLength);
+        }
+    }
+
+    public void setSkippedTextNamespaces(List<String> skippedTextNamespaces) {
+        this.skippedTextNamespaces = skippedTextNamespaces;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setSkippedTextNamespaces(skippedTextNamespaces);
+        }
+    }
+
+    public void setSpatialPrefilterEnabled(boolean spatialPrefilterEnabled) {
+        this.spatialPrefilterEnabled = spatialPrefilterEnabled;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setSpatialPrefilterEnabled(spatialPrefilterEnabled);
+        }
+    }
+
+    public void setMetacardCacheSize(int metacardCacheSize) {
+        this.metacardCacheSize = metacardCacheSize;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setMetacardCacheSize(metacardCacheSize);
+        }
+    }
+
+    public void setMetacardCacheMemory(int metacardCacheMemory) {
+        this.metacardCacheMemory = metacardCacheMemory;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setMetacardCacheMemory(metacardCacheMemory);
+        }
+    }
+
+    public void setProjectedOutAttributes(List<String> projectedOutAttributes) {
+        this.projectedOutAttributes = projectedOutAttributes;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setProjectedOutAttributes(projectedOutAttributes);
+        }
+    }
+
+    public void setWarmupQueryCount(int warmupQueryCount) {
+        this.warmupQueryCount = warmupQueryCount;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setWarmupQueryCount(warmupQueryCount);
+        }
+    }
+
+    public void setWarmupAvailabilityThreshold(double warmupAvailabilityThreshold) {
+        this.warmupAvailabilityThreshold = warmupAvailabilityThreshold;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            solrCatalogProvider.setWarmupAvailabilityThreshold(warmupAvailabilityThreshold);
+        }
+    }
+
+    /**
+     * Sets the number of Solr cores the catalog is spread over. With more than one partition, the
+     * records are stored in the cores {@code catalog_0} to {@code catalog_<n-1>} by hashing their
+     * ID. Changing the number of partitions requires reindexing the catalog.
+     *
+     * @param partitionCount
+     *            number of cores, 1 to use the single {@code catalog} core
+     */
+    public void setPartitionCount(int partitionCount) {
+        int count = Math.max(1, partitionCount);
+        if (count != this.partitionCount) {
+            this.partitionCount = count;
+            firstUse = true;
+        }
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
     @Override
     public Set<ContentType> getContentTypes() {
         return getProvider().getContentTypes();
@@ -198,11 +322,21 @@ public UpdateResponse update(UpdateRequest updateRequest) throws IngestException
         return getProvider().update(updateRequest);
     }
 
+    @Override
+    public List<Metacard> getMetacards(Collection<String> ids) throws UnsupportedQueryException {
+        CatalogProvider provider = getProvider();
+        if (provider instanceof MetacardIdLookup) {
+            return ((MetacardIdLookup) provider).getMetacards(ids);
+        }
+        throw new UnsupportedQueryException("Solr Server is not connected.");
+    }
+
     /**
      * Shutdown the connection to the Solr Server and releases resources.
      */
     public void shutdown() {
         LOGGER.info("Releasing connection to solr server.");
+        closeProvider();
         if (server != null) {
             server.shutdown();
         }
@@ -235,6 +369,9 @@ public void updateServer(String urlValue) {
             if (!StringUtils.equalsIgnoreCase(urlValue.trim(), url) || server == null) {
                 url = urlValue.trim();
 
+                // the provider commits its pending documents while its server is still open
+                closeProvider();
+
                 if (server != null) {
                     LOGGER.info(
                             "Shutting down the connection manager to the Solr Server and releasing allocated resources.");
@@ -254,8 +391,12 @@ public void updateServer(String urlValue) {
     }
 
     private CatalogProvider getProvider() {
+        if (firstUse && partitionCount > 1) {
+            return getPartitionedProvider();
+        }
         if (firstUse) {
             if (isServerUp(this.server)) {
+                closeProvider();
                 if (resolver == null) {
                     provider = new SolrCatalogProvider(server, filterAdapter,
                             solrFilterDelegateFactory);
@@ -264,6 +405,7 @@ private CatalogProvider getProvider() {
                             solrFilterDelegateFactory, resolver);
                 }
                 provider.maskId(getId());
+                configureProvider((SolrCatalogProvider) provider);
                 this.firstUse = false;
                 return provider;
             }
@@ -273,6 +415,76 @@ private CatalogProvider getProvider() {
 
     }
 
+    private CatalogProvider getPartitionedProvider() {
+        closeProvider();
+
+        for (int i = 0; i < partitionCount; i++) {
+            SolrServer partitionServer = SolrServerFactory.getHttpSolrServer(url,
+                    SOLR_CATALOG_CORE_NAME + "_" + i, SOLR_CATALOG_CONFIG_FILE);
+            partitionServers.add(partitionServer);
+            if (!isServerUp(partitionServer)) {
+                closeProvider();
+                return new UnconfiguredCatalogProvider();
+            }
+        }
+
+        PartitionedSolrCatalogProvider partitionedProvider = new PartitionedSolrCatalogProvider(
+                partitionServers, filterAdapter, solrFilterDelegateFactory);
+        partitionedProvider.maskId(getId());
+        provider = partitionedProvider;
+        for (SolrCatalogProvider solrCatalogProvider : getSolrCatalogProviders()) {
+            configureProvider(solrCatalogProvider);
+        }
+        this.firstUse = false;
+        return provider;
+    }
+
+    /**
+     * Releases the current provider before it is replaced, for instance when the partition count
+     * or the URL changes. The partition servers are closed, the main server is left to its owner.
+     */
+    private void closeProvider() {
+        if (provider instanceof PartitionedSolrCatalogProvider) {
+            ((PartitionedSolrCatalogProvider) provider).shutdown();
+        } else if (provider instanceof SolrCatalogProvider) {
+            ((SolrCatalogProvider) provider).release();
+        }
+        provider = new UnconfiguredCatalogProvider();
+        for (SolrServer partitionServer : partitionServers) {
+            partitionServer.shutdown();
+        }
+        partitionServers = new ArrayList<>();
+    }
+
+    private List<SolrCatalogProvider> getSolrCatalogProviders() {
+        List<SolrCatalogProvider> solrCatalogProviders = new ArrayList<>();
+        if (provider instanceof SolrCatalogProvider) {
+            solrCatalogProviders.add((SolrCatalogProvider) provider);
+        } else if (provider instanceof PartitionedSolrCatalogProvider) {
+            for (CatalogProvider partition : ((PartitionedSolrCatalogProvider) provider)
+                    .getPartitions()) {
+                if (partition instanceof SolrCatalogProvider) {
+                    solrCatalogProviders.add((SolrCatalogProvider) partition);
+                }
+            }
+        }
+        return solrCatalogProviders;
+    }
+
+    private void configureProvider(SolrCatalogProvider solrCatalogProvider) {
+        solrCatalogProvider.setCommitLatency(commitLatency);
+        solrCatalogProvider.setCommitMaxDocuments(commitMaxDocuments);
+        solrCatalogProvider.setMaxExtractedTextLength(maxExtractedTextLength);
+        solrCatalogProvider.setSkippedTextNamespaces(skippedTextNamespaces);
+        solrCatalogProvider.setSpatialPrefilterEnabled(spatialPrefilterEnabled);
+        solrCatalogProvider.setMetacardCacheMemory(metacardCacheMemory);
+        solrCatalogProvider.setMetacardCacheSize(metacardCacheSize);
+        solrCatalogProvider.setProjectedOutAttributes(projectedOutAttributes);
+        solrCatalogProvider.setWarmupQueryCount(warmupQueryCount);
+        solrCatalogProvider.setWarmupAvailabilityThreshold(warmupAvailabilityThreshold);
+        solrCatalogProvider.init();
+    }
+
     private boolean isServerUp(SolrServer solrServer) {
 
         if (solrServer == null) {
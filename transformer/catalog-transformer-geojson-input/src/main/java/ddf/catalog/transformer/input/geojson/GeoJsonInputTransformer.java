@@ -34,6 +34,7 @@
 import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.MetacardTypeRegistry;
 import ddf.catalog.data.QualifiedMetacardType;
+import ddf.catalog.data.impl.AttributeInterner;
 import ddf.catalog.data.impl.BasicTypes;
 import ddf.catalog.data.impl.MetacardImpl;
 import ddf.catalog.transform.CatalogTransformerException;
@@ -232,6 +233,8 @@ public Metacard transform(InputStream input, String id) throws IOException,
             metacard.setId(id);
         }
 
+        AttributeInterner.intern(metacard);
+
         return metacard;
     }
 
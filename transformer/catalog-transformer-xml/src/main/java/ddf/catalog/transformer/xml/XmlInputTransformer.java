@@ -30,6 +30,7 @@
 import ddf.catalog.data.Metacard;
 import ddf.catalog.data.MetacardType;
 import ddf.catalog.data.impl.AttributeImpl;
+import ddf.catalog.data.impl.AttributeInterner;
 import ddf.catalog.transform.CatalogTransformerException;
 import ddf.catalog.transform.InputTransformer;
 import ddf.catalog.transformer.xml.adapter.MetacardTypeAdapter;
@@ -81,6 +82,8 @@ public Metacard transform(InputStream input, String id) throws IOException,
             throw new CatalogTransformerException(FAILED_TRANSFORMATION);
         }
 
+        AttributeInterner.intern(metacard);
+
         return metacard;
     }
 